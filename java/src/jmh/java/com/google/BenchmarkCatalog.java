@@ -0,0 +1,37 @@
+package com.google;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A class used to create the synthetic catalogs the benchmarks run on.
+ */
+final class BenchmarkCatalog {
+
+  private BenchmarkCatalog() {
+  }
+
+  /**
+   * Write a catalog of the given number of videos to a temporary file, deleted when the JVM exits.
+   * The id of the video at position i is CatalogGenerator.videoId(i).
+   * @param size The number of videos
+   * @return The catalog file
+   */
+  static File write(int size) throws IOException {
+    Path file = Files.createTempFile("catalog-" + size + "-", ".txt");
+    file.toFile().deleteOnExit();
+    new CatalogGenerator(size, 42).write(file);
+    return file.toFile();
+  }
+
+  /**
+   * Discard everything printed to System.out, so the benchmarks measure the commands and not the console.
+   */
+  static void discardOutput() {
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+}
@@ -0,0 +1,76 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the searches and listings going through the whole catalog, by number of threads of the parallel
+ * scan. With 1 thread, the videos are scanned by the calling thread; the speedup is bounded by the number of cores of
+ * the machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dyoutube.searchCache.entries=0"}) //Every search scans the videos
+public class ParallelScanBenchmark {
+
+  @Param({"100000", "1000000"})
+  int catalogSize;
+
+  @Param({"1", "2", "4", "8"})
+  int threads;
+
+  private VideoPlayer videoPlayer;
+  private ParallelScan parallelScan;
+  private String searchTerm;
+
+  @Setup
+  public void createVideoPlayer() throws IOException {
+    VideoLibrary videoLibrary = new VideoLibrary(BenchmarkCatalog.write(catalogSize));
+    parallelScan = new ParallelScan(threads, ParallelScan.DEFAULT_THRESHOLD);
+    videoPlayer = new VideoPlayer(videoLibrary);
+    videoPlayer.setParallelScan(parallelScan);
+    videoPlayer.setInteractive(false);
+    searchTerm = videoLibrary.getVideo(CatalogGenerator.videoId(0)).getTitle().toLowerCase().split(" ")[0];
+    BenchmarkCatalog.discardOutput();
+  }
+
+  @TearDown
+  public void closePool() {
+    parallelScan.close();
+  }
+
+  @Benchmark
+  public void searchVideos() {
+    videoPlayer.searchVideos(searchTerm);
+  }
+
+  @Benchmark
+  public void searchVideosWithTag() {
+    videoPlayer.searchVideosWithTag(CatalogGenerator.tagName(1));
+  }
+
+  @Benchmark
+  public void showAllVideos() {
+    videoPlayer.showAllVideos();
+  }
+
+  @Benchmark
+  public void playRandomVideo() {
+    videoPlayer.playRandomVideo();
+  }
+}
@@ -0,0 +1,74 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the retrieval of the 10 videos the most relevant to a query, with MaxScore and by scoring all the
+ * postings of the terms of the query.
+ * Queries are made of 1 to 3 words taken from random titles of the catalog, so frequent words are frequent in the
+ * queries too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RankedSearchBenchmark {
+
+  @Param({"10000", "1000000"})
+  int catalogSize;
+
+  private RelevanceIndex relevanceIndex;
+  private final List<List<String>> queries = new ArrayList<>();
+  private int next = 0;
+
+  @Setup
+  public void buildIndex() throws IOException {
+    VideoLibrary videoLibrary = new VideoLibrary(BenchmarkCatalog.write(catalogSize));
+    BenchmarkCatalog.discardOutput();
+    relevanceIndex = videoLibrary.getRelevanceIndex();
+
+    Random random = new Random(42);
+    for (int query = 0; query < 1000; query++) {
+      StringBuilder text = new StringBuilder();
+      for (int word = 0; word <= random.nextInt(3); word++) {
+        String[] words = videoLibrary.getVideo(random.nextInt(catalogSize)).getTitle().split(" ");
+        text.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      queries.add(RelevanceIndex.queryTerms(text.toString()));
+    }
+    relevanceIndex.search(queries.get(0), 10); //We build the index before the measurements
+  }
+
+  private List<String> nextQuery() {
+    List<String> query = queries.get(next);
+    next = next + 1 == queries.size() ? 0 : next + 1;
+    return query;
+  }
+
+  @Benchmark
+  public int[] maxScore() {
+    return relevanceIndex.search(nextQuery(), 10);
+  }
+
+  @Benchmark
+  public int[] exhaustive() {
+    return relevanceIndex.searchExhaustively(nextQuery(), 10);
+  }
+}
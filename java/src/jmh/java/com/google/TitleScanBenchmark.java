@@ -0,0 +1,55 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the search of the videos whose lower case title contains a term, in the folded titles with SWAR and
+ * by decoding and lower casing each title as a String.
+ * The terms go from a frequent letter, whose first and last bytes match everywhere, to a term found nowhere.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TitleScanBenchmark {
+
+  @Param({"10000", "1000000"})
+  int catalogSize;
+
+  @Param({"a", "vo", "sogoma", "qzx"})
+  String term;
+
+  private TitleScanner titleScanner;
+
+  @Setup
+  public void buildArena() throws IOException {
+    VideoLibrary videoLibrary = new VideoLibrary(BenchmarkCatalog.write(catalogSize));
+    BenchmarkCatalog.discardOutput();
+    titleScanner = videoLibrary.getTitleScanner();
+    titleScanner.scan(term); //We build the arena before the measurements
+  }
+
+  @Benchmark
+  public int[] swar() {
+    return titleScanner.scan(term);
+  }
+
+  @Benchmark
+  public int[] strings() {
+    return titleScanner.scanStrings(term);
+  }
+}
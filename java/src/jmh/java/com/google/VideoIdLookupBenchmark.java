@@ -0,0 +1,83 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the lookup of a video by id, with the perfect hash index of the library, with the hash table
+ * used while loading, and with a HashMap from video id to ordinal as a reference.
+ * Lookups cycle through the ids of the catalog, followed by as many unknown ids. Each lookup uses a new copy of
+ * the id, whose hash code isn't cached yet, as for ids parsed from a command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VideoIdLookupBenchmark {
+
+  @Param({"1000", "1000000"})
+  int catalogSize;
+
+  private PerfectHashIndex perfectHashIndex;
+  private VideoIdIndex videoIdIndex;
+  private HashMap<String, Integer> hashMap;
+  private String[] videoIds;
+  private int next = 0;
+
+  @Setup
+  public void buildIndexes() throws IOException {
+    VideoLibrary videoLibrary = new VideoLibrary(BenchmarkCatalog.write(catalogSize));
+    BenchmarkCatalog.discardOutput();
+
+    VideoStore store = new VideoStore(new TagDictionary());
+    videoIdIndex = new VideoIdIndex(store);
+    hashMap = new HashMap<>();
+    for (int ordinal = 0; ordinal < catalogSize; ordinal++) {
+      Video video = videoLibrary.getVideo(ordinal);
+      store.add(video.getTitle(), video.getVideoId(), new int[0]);
+      videoIdIndex.add(ordinal);
+      hashMap.put(video.getVideoId(), ordinal);
+    }
+    perfectHashIndex = PerfectHashIndex.build(store, catalogSize);
+
+    videoIds = new String[2 * catalogSize];
+    for (int index = 0; index < videoIds.length; index++) {
+      videoIds[index] = CatalogGenerator.videoId(index);
+    }
+  }
+
+  private String nextVideoId() {
+    String videoId = videoIds[next];
+    next = next + 1 == videoIds.length ? 0 : next + 1;
+    return new String(videoId);
+  }
+
+  @Benchmark
+  public int perfectHashIndex() {
+    return perfectHashIndex.find(nextVideoId());
+  }
+
+  @Benchmark
+  public int videoIdIndex() {
+    return videoIdIndex.find(nextVideoId());
+  }
+
+  @Benchmark
+  public Integer hashMap() {
+    return hashMap.get(nextVideoId());
+  }
+}
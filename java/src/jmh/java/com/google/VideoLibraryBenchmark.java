@@ -0,0 +1,44 @@
+package com.google;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the loading of a catalog file by the VideoLibrary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VideoLibraryBenchmark {
+
+  @Param({"1000", "100000", "1000000", "10000000"})
+  int catalogSize;
+
+  private File catalog;
+
+  @Setup
+  public void writeCatalog() throws IOException {
+    catalog = BenchmarkCatalog.write(catalogSize);
+    BenchmarkCatalog.discardOutput();
+  }
+
+  @Benchmark
+  public VideoLibrary load() {
+    return new VideoLibrary(catalog);
+  }
+}
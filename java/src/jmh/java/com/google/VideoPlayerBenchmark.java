@@ -0,0 +1,71 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the VideoPlayer operations going through the whole catalog.
+ * Run with "-prof gc" to also report the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dyoutube.searchCache.entries=0"}) //Every search scans the videos
+public class VideoPlayerBenchmark {
+
+  @Param({"1000", "100000", "1000000", "10000000"})
+  int catalogSize;
+
+  private VideoPlayer videoPlayer;
+  private Video video;
+  private String searchTerm;
+
+  @Setup
+  public void createVideoPlayer() throws IOException {
+    VideoLibrary videoLibrary = new VideoLibrary(BenchmarkCatalog.write(catalogSize));
+    videoPlayer = new VideoPlayer(videoLibrary);
+    videoPlayer.setInteractive(false);
+    video = videoLibrary.getVideo(CatalogGenerator.videoId(new Random(7).nextInt(catalogSize)));
+    searchTerm = videoLibrary.getVideo(CatalogGenerator.videoId(0)).getTitle().toLowerCase().split(" ")[0];
+    BenchmarkCatalog.discardOutput();
+  }
+
+  @Benchmark
+  public void searchVideos() {
+    videoPlayer.searchVideos(searchTerm);
+  }
+
+  @Benchmark
+  public void searchVideosWithTag() {
+    videoPlayer.searchVideosWithTag(CatalogGenerator.tagName(42));
+  }
+
+  @Benchmark
+  public void showAllVideos() {
+    videoPlayer.showAllVideos();
+  }
+
+  @Benchmark
+  public void playRandomVideo() {
+    videoPlayer.playRandomVideo();
+  }
+
+  @Benchmark
+  public String getFullDisplayString() {
+    return video.getFullDisplayString();
+  }
+}
@@ -0,0 +1,69 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the playlist operations on large playlists.
+ * The playlist holds all the videos of the catalog but the last one, which is the benchmarked video.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VideoPlaylistBenchmark {
+
+  @Param({"1000", "100000", "1000000"})
+  int playlistSize;
+
+  private VideoPlaylist playlist;
+  private Video lastVideo;
+
+  @Setup
+  public void createPlaylist() throws IOException {
+    VideoLibrary videoLibrary = new VideoLibrary(BenchmarkCatalog.write(playlistSize));
+    BenchmarkCatalog.discardOutput();
+
+    List<Video> videos = new ArrayList<>();
+    for (int index = 0; index < playlistSize; index++) {
+      videos.add(videoLibrary.getVideo(CatalogGenerator.videoId(index)));
+    }
+    playlist = new VideoPlaylist("benchmark");
+    playlist.addAll(videos.subList(0, playlistSize - 1));
+    lastVideo = videos.get(playlistSize - 1);
+  }
+
+  /**
+   * The check done by the video player before adding or removing a video, for a video not in the playlist.
+   */
+  @Benchmark
+  public boolean contains() {
+    return playlist.contains(lastVideo);
+  }
+
+  /**
+   * Add the video at the end of the playlist, then remove it, as ADD_TO_PLAYLIST and REMOVE_FROM_PLAYLIST do.
+   */
+  @Benchmark
+  public boolean addAndRemove() {
+    if (!playlist.contains(lastVideo)) {
+      playlist.add(lastVideo);
+    }
+    return playlist.contains(lastVideo) && playlist.remove(lastVideo);
+  }
+}
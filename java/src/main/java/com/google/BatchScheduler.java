@@ -0,0 +1,95 @@
+package com.google;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A class used to execute a batch of commands.
+ * Consecutive read-only commands run in parallel on a pool of worker threads, while the other commands run
+ * one at a time in their original order. The output is always printed in the original order of the commands.
+ */
+class BatchScheduler implements AutoCloseable {
+
+  private final CommandParser commandParser;
+  private final ExecutorService workers;
+
+  /**
+   * @param commandParser The parser executing the commands
+   * @param numberOfThreads The number of worker threads running the read-only commands
+   */
+  BatchScheduler(CommandParser commandParser, int numberOfThreads) {
+    this.commandParser = commandParser;
+    this.workers = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+      Thread thread = new Thread(runnable, "batch-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Execute the given commands, stopping at the first EXIT command.
+   * @param commands The commands, as already split command words
+   */
+  void execute(List<List<String>> commands) {
+
+    //Consecutive read-only commands waiting to be executed together
+    List<List<String>> readOnlyCommands = new ArrayList<>();
+
+    for (List<String> command: commands) {
+      if (command.size() == 1 && command.get(0).equalsIgnoreCase("exit")) {
+        break;
+      }
+      if (commandParser.isReadOnly(command)) {
+        readOnlyCommands.add(command);
+      } else {
+        //All the previous read-only commands must be done before the state is modified
+        executeInParallel(readOnlyCommands);
+        readOnlyCommands.clear();
+        commandParser.executeCommand(command);
+      }
+    }
+    executeInParallel(readOnlyCommands);
+  }
+
+  /**
+   * Execute the given read-only commands in parallel, then print their output in order.
+   */
+  private void executeInParallel(List<List<String>> readOnlyCommands) {
+
+    if (readOnlyCommands.size() <= 1) { //Nothing to parallelize
+      for (List<String> command: readOnlyCommands) {
+        commandParser.executeCommand(command);
+      }
+      return;
+    }
+
+    List<Future<byte[]>> outputs = new ArrayList<>(readOnlyCommands.size());
+    for (List<String> command: readOnlyCommands) {
+      outputs.add(workers.submit(() -> CommandOutput.capture(() -> commandParser.executeCommand(command))));
+    }
+
+    PrintStream out = CommandOutput.out();
+    for (Future<byte[]> output: outputs) {
+      try {
+        byte[] bytes = output.get();
+        out.write(bytes, 0, bytes.length);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("A read-only command failed", e.getCause());
+      }
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() {
+    workers.shutdown();
+  }
+}
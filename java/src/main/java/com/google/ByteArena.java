@@ -0,0 +1,272 @@
+package com.google;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class used to store byte strings off-heap, in direct ByteBuffer chunks.
+ * Each entry is written as its length (a variable-length int) followed by its bytes, and is identified by its
+ * address: the index of its chunk in the high 32 bits and its offset in the chunk in the low 32 bits.
+ * Entries are only appended, and can be read by several threads at the same time.
+ */
+class ByteArena implements AutoCloseable {
+
+  /** The default maximum size of a chunk: 64 MB. */
+  static final int DEFAULT_CHUNK_SIZE = 1 << 26;
+  private static final int FIRST_CHUNK_SIZE = 1 << 12;
+
+  private final int maxChunkSize;
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+  private ByteBuffer currentChunk;
+  private long usedBytes = 0;
+  private long allocatedBytes = 0;
+
+  ByteArena() {
+    this(DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param maxChunkSize The maximum size of the direct buffers allocated by the arena.
+   *     Chunks start small and double in size up to this size, so that small libraries use little memory
+   */
+  ByteArena(int maxChunkSize) {
+    this.maxChunkSize = maxChunkSize;
+  }
+
+  /**
+   * Allocate a new chunk. Subclasses can override it to store the chunks elsewhere, e.g. in a mapped file.
+   * @param size The size of the chunk
+   * @return An empty buffer of the given size
+   */
+  protected ByteBuffer allocateChunk(int size) {
+    return ByteBuffer.allocateDirect(size);
+  }
+
+  /**
+   * Append an entry.
+   * @param bytes The bytes of the entry
+   * @return The address of the entry
+   */
+  long append(byte[] bytes) {
+    int entrySize = varIntSize(bytes.length) + bytes.length;
+    if (entrySize > maxChunkSize) {
+      throw new IllegalArgumentException("Entry of " + bytes.length + " bytes is larger than a chunk");
+    }
+    if (currentChunk == null || currentChunk.remaining() < entrySize) {
+      int size = currentChunk == null ? FIRST_CHUNK_SIZE : (int) Math.min(maxChunkSize, 2L * currentChunk.capacity());
+      currentChunk = allocateChunk(Math.max(size, entrySize));
+      chunks.add(currentChunk);
+      allocatedBytes += currentChunk.capacity();
+    }
+    long address = ((long) (chunks.size() - 1) << 32) | currentChunk.position();
+    int length = bytes.length;
+    while (length >= 0x80) {
+      currentChunk.put((byte) (length | 0x80));
+      length >>>= 7;
+    }
+    currentChunk.put((byte) length);
+    currentChunk.put(bytes);
+    usedBytes += entrySize;
+    return address;
+  }
+
+  /**
+   * Append a String entry, encoded in UTF-8.
+   */
+  long append(String string) {
+    return append(string.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Get the length of an entry.
+   * @param address The address of the entry
+   * @return The number of bytes of the entry
+   */
+  int length(long address) {
+    ByteBuffer chunk = chunks.get((int) (address >>> 32));
+    int offset = (int) address;
+    int length = 0;
+    int shift = 0;
+    byte current;
+    do {
+      current = chunk.get(offset++);
+      length |= (current & 0x7F) << shift;
+      shift += 7;
+    } while (current < 0);
+    return length;
+  }
+
+  /**
+   * Get the offset, in its chunk, of the first byte of an entry.
+   */
+  private int dataOffset(long address) {
+    ByteBuffer chunk = chunks.get((int) (address >>> 32));
+    int offset = (int) address;
+    while (chunk.get(offset) < 0) {
+      offset++;
+    }
+    return offset + 1;
+  }
+
+  /**
+   * Get the bytes of an entry.
+   * @param address The address of the entry
+   * @return A copy of the bytes of the entry
+   */
+  byte[] get(long address) {
+    ByteBuffer chunk = chunks.get((int) (address >>> 32));
+    int length = length(address);
+    int offset = dataOffset(address);
+    byte[] bytes = new byte[length];
+    for (int index = 0; index < length; index++) {
+      bytes[index] = chunk.get(offset + index);
+    }
+    return bytes;
+  }
+
+  /**
+   * Get an entry decoded from UTF-8.
+   */
+  String getString(long address) {
+    return new String(get(address), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Whether an entry is equal to the given bytes, without copying the entry.
+   */
+  boolean equalsBytes(long address, byte[] bytes) {
+    if (length(address) != bytes.length) {
+      return false;
+    }
+    ByteBuffer chunk = chunks.get((int) (address >>> 32));
+    int offset = dataOffset(address);
+    for (int index = 0; index < bytes.length; index++) {
+      if (chunk.get(offset + index) != bytes[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether an entry is equal to the UTF-8 encoding of the given String.
+   * ASCII Strings are compared without being encoded.
+   */
+  boolean equalsString(long address, String string) {
+    if (!isAscii(string)) {
+      return equalsBytes(address, string.getBytes(StandardCharsets.UTF_8));
+    }
+    ByteBuffer chunk = chunks.get((int) (address >>> 32));
+    int offset = (int) address;
+    int length = string.length();
+    if (length < 0x80) {
+      //We read the 1-byte length prefix directly
+      if (chunk.get(offset) != length) {
+        return false;
+      }
+      offset++;
+    } else {
+      if (length(address) != length) {
+        return false;
+      }
+      offset = dataOffset(address);
+    }
+    for (int index = 0; index < length; index++) {
+      if (chunk.get(offset + index) != string.charAt(index)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the hash of an entry, equal to hash(bytes) of the bytes of the entry.
+   */
+  long hash(long address) {
+    ByteBuffer chunk = chunks.get((int) (address >>> 32));
+    int length = length(address);
+    int offset = dataOffset(address);
+    long hash = 0xcbf29ce484222325L;
+    for (int index = 0; index < length; index++) {
+      hash = (hash ^ (chunk.get(offset + index) & 0xFF)) * 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  /**
+   * Get the hash of some bytes (FNV-1a followed by a finalizer spreading the bits).
+   */
+  static long hash(byte[] bytes) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte current: bytes) {
+      hash = (hash ^ (current & 0xFF)) * 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  /**
+   * Get the hash of the UTF-8 encoding of a String, equal to hash(bytes) of the encoded bytes.
+   * ASCII Strings are hashed without being encoded.
+   */
+  static long hash(String string) {
+    if (!isAscii(string)) {
+      return hash(string.getBytes(StandardCharsets.UTF_8));
+    }
+    long hash = 0xcbf29ce484222325L;
+    for (int index = 0; index < string.length(); index++) {
+      hash = (hash ^ string.charAt(index)) * 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private static boolean isAscii(String string) {
+    for (int index = 0; index < string.length(); index++) {
+      if (string.charAt(index) >= 0x80) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * Get the number of bytes used by the entries.
+   * @return The number of used bytes, length prefixes included
+   */
+  long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /**
+   * Get the number of bytes allocated for the chunks.
+   * @return The allocated off-heap bytes
+   */
+  long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /**
+   * Release the resources of the arena once no entry is read anymore. The direct chunks are freed by the garbage
+   * collector, subclasses storing the chunks elsewhere release them here.
+   */
+  @Override
+  public void close() {
+  }
+
+  private static int varIntSize(int value) {
+    int size = 1;
+    while (value >= 0x80) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+}
@@ -0,0 +1,225 @@
+package com.google;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A class used to generate synthetic catalogs, in the "title | video_id | tag1, tag2" format of videos.txt.
+ * Title words and tags follow Zipfian distributions, so a few words and tags are very frequent and most are rare,
+ * and the number of words of a title follows a Poisson distribution.
+ *
+ * Usage: CatalogGenerator --output=catalog.txt [--videos=1000000] [--title-words-mean=4] [--title-words-max=12]
+ * [--vocabulary=20000] [--word-skew=1.0] [--tags=5000] [--tag-skew=1.1] [--tags-max=5] [--seed=42]
+ */
+class CatalogGenerator {
+
+  private static final String ID_CHARACTERS =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+  private final int numberOfVideos;
+  private final double titleWordsMean;
+  private final int titleWordsMax;
+  private final String[] vocabulary;
+  private final ZipfSampler wordSampler;
+  private final int tagsMax;
+  private final ZipfSampler tagSampler;
+  private final long seed;
+
+  /**
+   * @param numberOfVideos The number of videos of the catalog
+   * @param titleWordsMean The average number of words of a title
+   * @param titleWordsMax The maximum number of words of a title
+   * @param vocabularySize The number of distinct title words
+   * @param wordSkew The exponent of the Zipfian distribution of the title words
+   * @param numberOfTags The number of distinct tags
+   * @param tagSkew The exponent of the Zipfian distribution of the tags
+   * @param tagsMax The maximum number of tags of a video, the number of tags of a video being uniform in [0, tagsMax]
+   * @param seed The seed of the random generator, the same seed always generates the same catalog
+   */
+  CatalogGenerator(int numberOfVideos, double titleWordsMean, int titleWordsMax, int vocabularySize,
+      double wordSkew, int numberOfTags, double tagSkew, int tagsMax, long seed) {
+    this.numberOfVideos = numberOfVideos;
+    this.titleWordsMean = titleWordsMean;
+    this.titleWordsMax = titleWordsMax;
+    this.vocabulary = createVocabulary(vocabularySize, seed);
+    this.wordSampler = new ZipfSampler(vocabularySize, wordSkew);
+    this.tagsMax = tagsMax;
+    this.tagSampler = new ZipfSampler(numberOfTags, tagSkew);
+    this.seed = seed;
+  }
+
+  /**
+   * Create a catalog generator with the default distributions.
+   * @param numberOfVideos The number of videos of the catalog
+   * @param seed The seed of the random generator
+   */
+  CatalogGenerator(int numberOfVideos, long seed) {
+    this(numberOfVideos, 4, 12, 20_000, 1.0, 5_000, 1.1, 5, seed);
+  }
+
+  /**
+   * Get the video id of the video at the given position of the generated catalog.
+   * Ids are 11 characters long like YouTube ids, and unique since they encode a bijection of the position.
+   * @param index The position of the video in the catalog
+   * @return The video id
+   */
+  static String videoId(long index) {
+    long scrambled = (index + 1) * 0x9E3779B97F4A7C15L;
+    scrambled ^= scrambled >>> 29;
+    char[] id = new char[11];
+    for (int position = 10; position >= 0; position--) {
+      id[position] = ID_CHARACTERS.charAt((int) (scrambled & 63));
+      scrambled >>>= 6;
+    }
+    return new String(id);
+  }
+
+  /**
+   * Get the name of the tag of the given rank (0 being the most frequent tag).
+   */
+  static String tagName(int rank) {
+    return "#tag" + rank;
+  }
+
+  /**
+   * Write the catalog to the given file.
+   * @param file The file the catalog is written to
+   */
+  void write(Path file) throws IOException {
+    Random random = new Random(seed);
+    boolean[] usedTags = new boolean[tagSampler.size()];
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      StringBuilder line = new StringBuilder(128);
+      for (long index = 0; index < numberOfVideos; index++) {
+        line.setLength(0);
+
+        int numberOfWords = Math.min(titleWordsMax, 1 + poisson(random, titleWordsMean - 1));
+        for (int word = 0; word < numberOfWords; word++) {
+          String titleWord = vocabulary[wordSampler.sample(random)];
+          line.append(word == 0 ? Character.toUpperCase(titleWord.charAt(0)) + titleWord.substring(1) : titleWord);
+          line.append(' ');
+        }
+        line.setLength(line.length() - 1);
+        line.append(" | ").append(videoId(index)).append(" |");
+
+        //Tags of a video are distinct
+        int numberOfTags = random.nextInt(tagsMax + 1);
+        int[] tags = new int[numberOfTags];
+        int written = 0;
+        for (int attempt = 0; written < numberOfTags && attempt < 4 * numberOfTags; attempt++) {
+          int tag = tagSampler.sample(random);
+          if (!usedTags[tag]) {
+            usedTags[tag] = true;
+            tags[written++] = tag;
+            line.append(written == 1 ? " " : ", ").append(tagName(tag));
+          }
+        }
+        for (int tag = 0; tag < written; tag++) {
+          usedTags[tags[tag]] = false;
+        }
+
+        writer.append(line).append('\n');
+      }
+    }
+  }
+
+  /**
+   * Draw a number from a Poisson distribution of the given mean (Knuth's algorithm, fine for small means).
+   */
+  private static int poisson(Random random, double mean) {
+    if (mean <= 0) {
+      return 0;
+    }
+    double limit = Math.exp(-mean);
+    double product = random.nextDouble();
+    int count = 0;
+    while (product > limit) {
+      product *= random.nextDouble();
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Create pronounceable words made of alternating consonants and vowels.
+   */
+  private static String[] createVocabulary(int size, long seed) {
+    String consonants = "bcdfghjklmnprstvwz";
+    String vowels = "aeiou";
+    Random random = new Random(seed ^ 0x5DEECE66DL);
+    HashSet<String> seen = new HashSet<>();
+    String[] words = new String[size];
+    int count = 0;
+    while (count < size) {
+      int length = 2 + random.nextInt(8);
+      StringBuilder word = new StringBuilder(length);
+      for (int position = 0; position < length; position++) {
+        String letters = position % 2 == 0 ? consonants : vowels;
+        word.append(letters.charAt(random.nextInt(letters.length())));
+      }
+      if (seen.add(word.toString())) {
+        words[count++] = word.toString();
+      }
+    }
+    return words;
+  }
+
+  /**
+   * A class used to draw ranks from a Zipfian distribution, by binary search in its cumulative distribution.
+   */
+  static final class ZipfSampler {
+
+    private final double[] cumulative;
+
+    ZipfSampler(int size, double skew) {
+      cumulative = new double[size];
+      double sum = 0;
+      for (int rank = 0; rank < size; rank++) {
+        sum += 1 / Math.pow(rank + 1, skew);
+        cumulative[rank] = sum;
+      }
+      for (int rank = 0; rank < size; rank++) {
+        cumulative[rank] /= sum;
+      }
+    }
+
+    int size() {
+      return cumulative.length;
+    }
+
+    int sample(Random random) {
+      int index = Arrays.binarySearch(cumulative, random.nextDouble());
+      return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = LoadDriver.parseOptions(args);
+    if (!options.containsKey("output")) {
+      System.out.println("Please enter --output=<file> and the optional generator settings.");
+      return;
+    }
+    CatalogGenerator generator = new CatalogGenerator(
+        Integer.parseInt(options.getOrDefault("videos", "1000000")),
+        Double.parseDouble(options.getOrDefault("title-words-mean", "4")),
+        Integer.parseInt(options.getOrDefault("title-words-max", "12")),
+        Integer.parseInt(options.getOrDefault("vocabulary", "20000")),
+        Double.parseDouble(options.getOrDefault("word-skew", "1.0")),
+        Integer.parseInt(options.getOrDefault("tags", "5000")),
+        Double.parseDouble(options.getOrDefault("tag-skew", "1.1")),
+        Integer.parseInt(options.getOrDefault("tags-max", "5")),
+        Long.parseLong(options.getOrDefault("seed", "42")));
+    long start = System.nanoTime();
+    generator.write(Paths.get(options.get("output")));
+    System.out.printf("Generated %s videos in %d ms%n", options.getOrDefault("videos", "1000000"),
+        (System.nanoTime() - start) / 1_000_000);
+  }
+}
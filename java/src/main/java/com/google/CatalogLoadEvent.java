@@ -0,0 +1,30 @@
+package com.google;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event emitted when the VideoLibrary loads a catalog file.
+ */
+@Name("com.google.youtube.CatalogLoad")
+@Label("Catalog Load")
+@Category("YouTube")
+@Description("Loading of the videos of a catalog file")
+class CatalogLoadEvent extends jdk.jfr.Event {
+
+  @Label("Source")
+  String source;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+
+  @Label("Lines")
+  long lines;
+
+  @Label("Videos")
+  long videos;
+}
@@ -0,0 +1,186 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A class used to add the videos appended to a catalog file to the library loaded from it, while the commands run.
+ * The tailer remembers the offset of the catalog it read up to, and only reads the complete lines after it: a line
+ * being written is read once its end of line is written. Each read is added to the library as one batch, up to
+ * MAX_BATCH_BYTES, so the commands see either none or all of its videos. When the catalog becomes smaller than the
+ * offset, e.g. when it is replaced, it is read again from its start, the videos already in the library being skipped.
+ * The directory of the catalog is watched to read the appended lines as soon as they are written, and the catalog is
+ * also checked at a fixed interval, as some watch services only report the changes after a few seconds.
+ */
+class CatalogTailer implements AutoCloseable {
+
+  /** The maximum number of bytes of the catalog added as one batch. */
+  static final int MAX_BATCH_BYTES = 4 << 20;
+
+  private final VideoLibrary videoLibrary;
+  private final Path catalog;
+  private final Metrics metrics;
+  private long offset; //The offset of the catalog read up to
+  private boolean aligned; //Whether the offset is the start of a line
+  private WatchService watchService;
+  private volatile boolean closed = false;
+
+  /**
+   * @param videoLibrary The library the appended videos are added to
+   * @param catalog The catalog file the library was loaded from
+   * @param offset The offset of the catalog the library was loaded up to
+   * @param metrics The metrics recording the added batches, their cost and their lag
+   */
+  CatalogTailer(VideoLibrary videoLibrary, Path catalog, long offset, Metrics metrics) {
+    this.videoLibrary = videoLibrary;
+    this.catalog = catalog.toAbsolutePath();
+    this.metrics = metrics;
+    this.offset = offset;
+    this.aligned = offset == 0;
+  }
+
+  /**
+   * Start a thread watching the catalog, and adding the appended videos to the library.
+   * @param intervalMillis The maximum time between two reads of the catalog, when no change is reported
+   */
+  void start(long intervalMillis) throws IOException {
+    watchService = catalog.getFileSystem().newWatchService();
+    catalog.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+    Thread thread = new Thread(() -> watch(intervalMillis), "catalog-tailer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void watch(long intervalMillis) {
+    while (!closed) {
+      try {
+        WatchKey key = watchService.poll(intervalMillis, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          key.pollEvents(); //Any change of the directory may be an append to the catalog, which is cheap to check
+          key.reset();
+        }
+        poll();
+      } catch (ClosedWatchServiceException | InterruptedException e) {
+        return;
+      } catch (IOException e) {
+        System.err.println("Couldn't read the videos appended to " + catalog + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Add the videos of the lines appended to the catalog since the last read to the library.
+   * @return The number of videos added
+   */
+  synchronized int poll() throws IOException {
+    int added = 0;
+    try (FileChannel channel = FileChannel.open(catalog, StandardOpenOption.READ)) {
+      while (true) {
+        long size = channel.size();
+        if (size < offset) { //The catalog was replaced or truncated
+          metrics.counter("catalog_ingest_truncations_total").increment();
+          offset = 0;
+          aligned = true;
+        }
+        if (size == offset) {
+          return added;
+        }
+        //We read the byte before the offset when it may be in the middle of a line, to find where the next one starts
+        long position = aligned ? offset : offset - 1;
+        long modified = Files.getLastModifiedTime(catalog).toMillis();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - position, MAX_BATCH_BYTES));
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+          //We read until the buffer is full, or the end of the catalog if it was truncated meanwhile
+        }
+        byte[] bytes = buffer.array();
+        int end = buffer.position();
+        while (end > 0 && bytes[end - 1] != '\n') {
+          end--;
+        }
+        if (end == 0) {
+          if (buffer.position() < MAX_BATCH_BYTES) { //The last line is being written
+            return added;
+          }
+          //A line longer than a batch is not a video, we skip it
+          metrics.counter("catalog_ingest_skipped_lines_total").increment();
+          offset = position + buffer.position();
+          aligned = false;
+          continue;
+        }
+        int start = 0;
+        if (!aligned) {
+          while (bytes[start] != '\n') {
+            start++;
+          }
+          start++;
+        }
+        if (start < end) {
+          added += append(bytes, start, end, modified);
+        }
+        offset = position + end;
+        aligned = true;
+      }
+    }
+  }
+
+  /**
+   * Add the videos of complete lines of the catalog to the library as one batch.
+   * @param bytes The bytes read from the catalog
+   * @param start The offset of the first line in the bytes
+   * @param end The offset after the end of line of the last line in the bytes
+   * @param modified The time the catalog was last modified, in milliseconds since the epoch
+   * @return The number of videos added
+   */
+  private int append(byte[] bytes, int start, int end, long modified) {
+    CatalogLoadEvent event = new CatalogLoadEvent();
+    event.begin();
+    String text = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    List<String> lines = text.lines().filter(line -> !line.isBlank()).collect(Collectors.toList());
+    long mergeStart = System.nanoTime();
+    int videos = videoLibrary.append(lines);
+    metrics.histogram("catalog_ingest_batch").record(System.nanoTime() - mergeStart);
+    //The time between the last write of the catalog and the videos being visible to the commands
+    long lagMillis = Math.max(0, System.currentTimeMillis() - modified);
+    metrics.histogram("catalog_ingest_lag").record(TimeUnit.MILLISECONDS.toNanos(lagMillis));
+    metrics.counter("catalog_ingest_batches_total").increment();
+    metrics.counter("catalog_ingested_videos_total").add(videos);
+    metrics.counter("catalog_ingest_skipped_lines_total").add(lines.size() - videos);
+    event.end();
+    if (event.shouldCommit()) {
+      event.source = catalog.toString();
+      event.bytes = end - start;
+      event.lines = lines.size();
+      event.videos = videos;
+      event.commit();
+    }
+    return videos;
+  }
+
+  /**
+   * Get the offset of the catalog read up to.
+   */
+  synchronized long getOffset() {
+    return offset;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    if (watchService != null) {
+      watchService.close();
+    }
+  }
+}
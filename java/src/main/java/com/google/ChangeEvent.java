@@ -0,0 +1,76 @@
+package com.google;
+
+/**
+ * A class used to represent a change of the flags of the videos or of the playlists, as published by the ChangeFeed.
+ */
+final class ChangeEvent {
+
+  /**
+   * The kinds of changes.
+   */
+  enum Type {
+    VIDEO_FLAGGED,
+    VIDEO_ALLOWED,
+    PLAYLIST_CREATED,
+    PLAYLIST_VIDEO_ADDED,
+    PLAYLIST_VIDEO_REMOVED,
+    PLAYLIST_CLEARED,
+    PLAYLIST_DELETED;
+
+    /**
+     * Whether the change sets the whole state of a video, a later change of the same video replacing it.
+     */
+    boolean isVideoState() {
+      return this == VIDEO_FLAGGED || this == VIDEO_ALLOWED;
+    }
+  }
+
+  private final long sequence;
+  private final Type type;
+  private final String videoId;
+  private final String playlistName;
+  private final String reason;
+
+  /**
+   * @param sequence The number of the change, increasing in the order of the changes
+   * @param type The kind of change
+   * @param videoId The id of the changed video, null for the changes of a whole playlist
+   * @param playlistName The name of the changed playlist, null for the flags
+   * @param reason The reason of a flag, null for the other changes
+   */
+  ChangeEvent(long sequence, Type type, String videoId, String playlistName, String reason) {
+    this.sequence = sequence;
+    this.type = type;
+    this.videoId = videoId;
+    this.playlistName = playlistName;
+    this.reason = reason;
+  }
+
+  long getSequence() {
+    return sequence;
+  }
+
+  Type getType() {
+    return type;
+  }
+
+  String getVideoId() {
+    return videoId;
+  }
+
+  String getPlaylistName() {
+    return playlistName;
+  }
+
+  String getReason() {
+    return reason;
+  }
+
+  @Override
+  public String toString() {
+    return sequence + " " + type
+        + (playlistName != null ? " " + playlistName : "")
+        + (videoId != null ? " " + videoId : "")
+        + (reason != null ? " (reason: " + reason + ")" : "");
+  }
+}
@@ -0,0 +1,326 @@
+package com.google;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A class used to publish the changes of the flags and playlists to the subscribers of the video player, e.g.
+ * indexers, caches or an audit log.
+ * Each subscriber has its own bounded buffer of changes, filled by the commands and drained by a delivery thread
+ * as the subscriber requests them: a command only adds its change to the buffers, and never waits for a subscriber
+ * to process it. A subscriber receives the changes by batches, each batch being one item of its demand.
+ * When a buffer is full, the change is handled as chosen by the subscriber:
+ * DROP_OLDEST drops the oldest change,
+ * COALESCE keeps only the latest flag change of each video, then drops the oldest change.
+ * There is no policy waiting for the subscriber, as a command would then wait for the slowest subscriber.
+ * Without subscribers, publishing a change costs a volatile read.
+ */
+class ChangeFeed implements Flow.Publisher<List<ChangeEvent>>, AutoCloseable {
+
+  /** The number of changes a subscriber buffers by default. */
+  static final int DEFAULT_CAPACITY = 1024;
+
+  /** The maximum number of changes of a batch by default. */
+  static final int DEFAULT_BATCH_SIZE = 64;
+
+  /**
+   * What happens to a change published when the buffer of a subscriber is full.
+   */
+  enum OverflowPolicy {
+    DROP_OLDEST, COALESCE
+  }
+
+  private final Metrics metrics;
+  private final List<FeedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final AtomicLong sequence = new AtomicLong();
+  private volatile boolean closed = false;
+  private ExecutorService deliveryThreads; //Created on the first subscription
+
+  /**
+   * @param metrics The metrics counting the published and dropped changes
+   */
+  ChangeFeed(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Subscribe with a buffer of DEFAULT_CAPACITY changes dropping the oldest change when full, and batches of up to
+   * DEFAULT_BATCH_SIZE changes.
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super List<ChangeEvent>> subscriber) {
+    subscribe(subscriber, DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Subscribe to the changes published from now on.
+   * @param subscriber The subscriber
+   * @param capacity The maximum number of changes buffered for the subscriber
+   * @param policy What happens to a change when the buffer is full
+   * @param batchSize The maximum number of changes of a batch
+   */
+  void subscribe(Flow.Subscriber<? super List<ChangeEvent>> subscriber, int capacity, OverflowPolicy policy,
+      int batchSize) {
+    if (capacity < 1 || batchSize < 1) {
+      throw new IllegalArgumentException("The capacity and the batch size must be positive");
+    }
+    FeedSubscription subscription = new FeedSubscription(subscriber, capacity, policy, batchSize);
+    subscriptions.add(subscription);
+    subscriber.onSubscribe(subscription);
+    if (closed) { //The subscriber is completed at once
+      subscription.close();
+    }
+  }
+
+  /**
+   * Publish a change to the subscribers.
+   * @param type The kind of change
+   * @param videoId The id of the changed video, null for the changes of a whole playlist
+   * @param playlistName The name of the changed playlist, null for the flags
+   * @param reason The reason of a flag, null for the other changes
+   */
+  void publish(ChangeEvent.Type type, String videoId, String playlistName, String reason) {
+    if (subscriptions.isEmpty() || closed) {
+      return;
+    }
+    ChangeEvent event = new ChangeEvent(sequence.incrementAndGet(), type, videoId, playlistName, reason);
+    metrics.counter("change_events_published_total").increment();
+    for (FeedSubscription subscription: subscriptions) {
+      subscription.offer(event);
+    }
+  }
+
+  private synchronized ExecutorService getDeliveryThreads() {
+    if (deliveryThreads == null) {
+      deliveryThreads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return deliveryThreads;
+  }
+
+  /**
+   * Stop publishing: each subscriber is completed once it has received the changes in its buffer.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (FeedSubscription subscription: subscriptions) {
+      subscription.close();
+    }
+  }
+
+  /**
+   * The buffer and the demand of a subscriber. At most one delivery thread drains it at a time, so that the
+   * subscriber receives its batches one after the other, in the order of the changes, and is never called by a
+   * command. With COALESCE, a flag change replaced by a later one of the same video stays in the buffer until it is
+   * drained or compacted, and is skipped: the latest change of each video is the one of the video in latestStates.
+   */
+  private final class FeedSubscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super List<ChangeEvent>> subscriber;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final int batchSize;
+    private final ArrayDeque<ChangeEvent> buffer = new ArrayDeque<>();
+    private final Map<String, ChangeEvent> latestStates = new HashMap<>(); //The pending flag changes by video id
+    private final ReentrantLock lock = new ReentrantLock();
+    private int pending = 0; //The number of changes of the buffer not replaced by a later one
+    private long demand = 0;
+    private boolean draining = false;
+    private boolean cancelled = false;
+    private boolean closing = false;
+    private Throwable error; //The error to deliver to the subscriber, after which it receives nothing
+
+    FeedSubscription(Flow.Subscriber<? super List<ChangeEvent>> subscriber, int capacity, OverflowPolicy policy,
+        int batchSize) {
+      this.subscriber = subscriber;
+      this.capacity = capacity;
+      this.policy = policy;
+      this.batchSize = batchSize;
+    }
+
+    void offer(ChangeEvent event) {
+      boolean drain;
+      lock.lock();
+      try {
+        if (cancelled || closing || error != null) {
+          return;
+        }
+        boolean coalesced = policy == OverflowPolicy.COALESCE && event.getType().isVideoState();
+        if (coalesced) {
+          //The new flag change replaces the previous one of the video, as it sets the whole state of the video
+          if (latestStates.put(event.getVideoId(), event) != null) {
+            pending--;
+            metrics.counter("change_events_coalesced_total").increment();
+          }
+        }
+        if (pending == capacity) {
+          pollPending();
+          metrics.counter("change_events_dropped_total").increment();
+        }
+        buffer.addLast(event);
+        pending++;
+        if (buffer.size() > 2 * capacity) {
+          //We remove the replaced changes once they outnumber the capacity, so at most once every capacity changes
+          buffer.removeIf(this::isReplaced);
+        }
+        drain = startDraining();
+      } finally {
+        lock.unlock();
+      }
+      if (drain) {
+        getDeliveryThreads().execute(this);
+      }
+    }
+
+    /**
+     * Whether a change of the buffer was replaced by a later change of the same video, called with the lock held.
+     */
+    private boolean isReplaced(ChangeEvent event) {
+      return policy == OverflowPolicy.COALESCE && event.getType().isVideoState()
+          && latestStates.get(event.getVideoId()) != event;
+    }
+
+    /**
+     * Remove the oldest change of the buffer not replaced by a later one, called with the lock held.
+     */
+    private ChangeEvent pollPending() {
+      while (true) {
+        ChangeEvent event = buffer.pollFirst();
+        if (!isReplaced(event)) {
+          if (policy == OverflowPolicy.COALESCE && event.getType().isVideoState()) {
+            latestStates.remove(event.getVideoId());
+          }
+          pending--;
+          return event;
+        }
+      }
+    }
+
+    /**
+     * Whether a delivery thread must be started, called with the lock held.
+     */
+    private boolean startDraining() {
+      if (draining || cancelled
+          || !((demand > 0 && pending > 0) || (closing && pending == 0) || error != null)) {
+        return false;
+      }
+      draining = true;
+      return true;
+    }
+
+    @Override
+    public void request(long n) {
+      boolean drain;
+      lock.lock();
+      try {
+        if (n <= 0) {
+          //The error is delivered by the delivery thread, so that it never overlaps a batch being delivered
+          if (error == null) {
+            error = new IllegalArgumentException("The number of requested batches must be positive");
+          }
+        } else {
+          demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+        drain = startDraining();
+      } finally {
+        lock.unlock();
+      }
+      if (drain) {
+        getDeliveryThreads().execute(this);
+      }
+    }
+
+    @Override
+    public void cancel() {
+      lock.lock();
+      try {
+        cancelled = true;
+        buffer.clear();
+        latestStates.clear();
+        pending = 0;
+      } finally {
+        lock.unlock();
+      }
+      subscriptions.remove(this);
+    }
+
+    void close() {
+      boolean drain;
+      lock.lock();
+      try {
+        closing = true;
+        drain = startDraining();
+      } finally {
+        lock.unlock();
+      }
+      if (drain) {
+        getDeliveryThreads().execute(this);
+      }
+    }
+
+    /**
+     * Deliver the buffered changes by batches while the subscriber requests them.
+     */
+    @Override
+    public void run() {
+      while (true) {
+        List<ChangeEvent> batch;
+        Throwable failure = null;
+        lock.lock();
+        try {
+          if (cancelled) {
+            draining = false;
+            return;
+          }
+          if (error != null) {
+            failure = error;
+            batch = null;
+          } else if (demand > 0 && pending > 0) {
+            batch = new ArrayList<>(Math.min(batchSize, pending));
+            while (batch.size() < batchSize && pending > 0) {
+              batch.add(pollPending());
+            }
+            demand--;
+          } else if (closing && pending == 0) {
+            batch = null;
+          } else {
+            draining = false;
+            return;
+          }
+        } finally {
+          lock.unlock();
+        }
+
+        if (batch == null) { //The subscriber failed, or the feed is closed and it received all the changes
+          cancel();
+          if (failure != null) {
+            subscriber.onError(failure);
+          } else {
+            subscriber.onComplete();
+          }
+          return;
+        }
+        try {
+          subscriber.onNext(Collections.unmodifiableList(batch));
+        } catch (RuntimeException e) { //The subscriber is broken, it does not receive more changes
+          cancel();
+          subscriber.onError(e);
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.google;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event emitted for every command executed by the CommandParser.
+ */
+@Name("com.google.youtube.Command")
+@Label("Command Execution")
+@Category("YouTube")
+@Description("Execution of a user command")
+class CommandEvent extends jdk.jfr.Event {
+
+  @Label("Command")
+  String command;
+
+  @Label("Arguments")
+  @Description("Number of arguments of the command, the command word excluded")
+  int argumentsSize;
+
+  @Label("Result")
+  @Description("executed, unknown command, invalid arguments or failed")
+  String result;
+}
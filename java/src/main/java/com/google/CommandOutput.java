@@ -0,0 +1,48 @@
+package com.google;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+/**
+ * A class used to select where the output of a command is printed.
+ * By default commands print to System.out; a thread can capture the output of the commands it runs,
+ * so that commands executed in parallel do not interleave their output.
+ */
+final class CommandOutput {
+
+  private static final ThreadLocal<PrintStream> capturedOutput = new ThreadLocal<>();
+
+  private CommandOutput() {
+  }
+
+  /**
+   * Get the stream the current thread must print to.
+   * @return The capture stream of the current thread if any, otherwise System.out
+   */
+  static PrintStream out() {
+    PrintStream captured = capturedOutput.get();
+    return captured != null ? captured : System.out;
+  }
+
+  /**
+   * Run the given action, capturing everything it prints in the current thread.
+   * @param action The action to run
+   * @return The captured output
+   */
+  static byte[] capture(Runnable action) {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    PrintStream previous = capturedOutput.get();
+    capturedOutput.set(new PrintStream(buffer, false));
+    try {
+      action.run();
+    } finally {
+      capturedOutput.get().flush();
+      if (previous != null) {
+        capturedOutput.set(previous);
+      } else {
+        capturedOutput.remove();
+      }
+    }
+    return buffer.toByteArray();
+  }
+}
@@ -1,160 +1,373 @@
 package com.google;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class used to parse and execute a user Command.
  */
 class CommandParser {
 
+  private static final String INVALID_COMMAND_MESSAGE =
+      "Please enter a valid command, type HELP for a list of available commands.";
+  private static final String SEARCH_VIDEOS_RANKED_MESSAGE =
+      "Please enter SEARCH_VIDEOS_RANKED command followed by a search query, optionally followed by LIMIT <k>.";
+  private static final int DEFAULT_RANKED_RESULTS = 10;
+  private static final String AUTOCOMPLETE_MESSAGE = "Please enter AUTOCOMPLETE command followed by a prefix, "
+      + "optionally followed by a number of completions between 1 and " + CompletionIndex.MAX_COMPLETIONS + ".";
+  private static final int DEFAULT_COMPLETIONS = 5;
+  private static final String SEARCH_VIDEOS_FUZZY_MESSAGE = "Please enter SEARCH_VIDEOS_FUZZY command followed by "
+      + "a search term, optionally followed by a maximum number of edits between 0 and " + FuzzyIndex.MAX_EDITS + ".";
+  private static final String QUERY_MESSAGE = "Please enter QUERY command followed by predicates, "
+      + "e.g. title:cat tag:#animal -tag:#dog flagged:false, optionally followed by FACETS <n>.";
+  private static final String EXPLAIN_MESSAGE = "Please enter EXPLAIN command followed by the predicates of a query, "
+      + "e.g. title:cat tag:#animal -tag:#dog flagged:false.";
+  private static final int MAX_PREDICATES = 16;
+  private static final int MAX_FACETS = 20;
+  private static final String SEARCH_VIDEOS_WITH_TAG_MESSAGE = "Please enter SEARCH_VIDEOS_WITH_TAG command followed "
+      + "by a video tag, optionally followed by FACETS <n>.";
+
   private final VideoPlayer videoPlayer;
+  private final CommandRegistry registry;
+  //The time budget of the read-only commands, 0 for no budget
+  private final long budgetMillis;
 
   CommandParser(VideoPlayer videoPlayer) {
+    this(videoPlayer, Long.getLong("youtube.command.budget", 0));
+  }
+
+  /**
+   * @param videoPlayer The player running the commands
+   * @param budgetMillis The time budget of each read-only command in milliseconds, after which the searches and
+   *     listings display the results found so far. 0 for no budget
+   */
+  CommandParser(VideoPlayer videoPlayer, long budgetMillis) {
     this.videoPlayer = videoPlayer;
+    this.registry = createRegistry();
+    this.budgetMillis = budgetMillis;
   }
 
   /**
-   * Executes the given user command.
+   * Register all the available commands, with their number of arguments and the message
+   * displayed when the number of arguments is invalid.
+   */
+  private CommandRegistry createRegistry() {
+    CommandRegistry commands = new CommandRegistry();
+    commands.register("NUMBER_OF_VIDEOS", 0, 0, true, INVALID_COMMAND_MESSAGE,
+        arguments -> this.videoPlayer.numberOfVideos());
+    commands.register("SHOW_ALL_VIDEOS", 0, 0, true, INVALID_COMMAND_MESSAGE,
+        arguments -> this.videoPlayer.showAllVideos());
+    commands.register("PLAY", 1, 1, false,
+        "Please enter PLAY command followed by video_id.",
+        arguments -> this.videoPlayer.playVideo(arguments.get(0)));
+    commands.register("PLAY_RANDOM", 0, 0, false, INVALID_COMMAND_MESSAGE,
+        arguments -> this.videoPlayer.playRandomVideo());
+    commands.register("STOP", 0, 0, false, INVALID_COMMAND_MESSAGE,
+        arguments -> this.videoPlayer.stopVideo());
+    commands.register("PAUSE", 0, 0, false, INVALID_COMMAND_MESSAGE,
+        arguments -> this.videoPlayer.pauseVideo());
+    commands.register("CONTINUE", 0, 0, false, INVALID_COMMAND_MESSAGE,
+        arguments -> this.videoPlayer.continueVideo());
+    commands.register("SHOW_PLAYING", 0, 0, true, INVALID_COMMAND_MESSAGE,
+        arguments -> this.videoPlayer.showPlaying());
+    commands.register("CREATE_PLAYLIST", 1, 1, false,
+        "Please enter CREATE_PLAYLIST command followed by a playlist name.",
+        arguments -> this.videoPlayer.createPlaylist(arguments.get(0)));
+    commands.register("ADD_TO_PLAYLIST", 2, 2, false,
+        "Please enter ADD_TO_PLAYLIST command followed by a playlist name and video_id to add.",
+        arguments -> this.videoPlayer.addVideoToPlaylist(arguments.get(0), arguments.get(1)));
+    commands.register("REMOVE_FROM_PLAYLIST", 2, 2, false,
+        "Please enter REMOVE_FROM_PLAYLIST command followed by a playlist name and video_id to remove.",
+        arguments -> this.videoPlayer.removeFromPlaylist(arguments.get(0), arguments.get(1)));
+    commands.register("CLEAR_PLAYLIST", 1, 1, false,
+        "Please enter CLEAR_PLAYLIST command followed by a playlist name.",
+        arguments -> this.videoPlayer.clearPlaylist(arguments.get(0)));
+    commands.register("DELETE_PLAYLIST", 1, 1, false,
+        "Please enter DELETE_PLAYLIST command followed by a playlist name.",
+        arguments -> this.videoPlayer.deletePlaylist(arguments.get(0)));
+    commands.register("SHOW_PLAYLIST", 1, 1, true,
+        "Please enter SHOW_PLAYLIST command followed by a playlist name.",
+        arguments -> this.videoPlayer.showPlaylist(arguments.get(0)));
+    commands.register("SHOW_ALL_PLAYLISTS", 0, 0, true, INVALID_COMMAND_MESSAGE,
+        arguments -> this.videoPlayer.showAllPlaylists());
+    commands.register("SEARCH_VIDEOS", 1, 5, true,
+        "Please enter SEARCH_VIDEOS command followed by a search term.",
+        arguments -> {
+          if (arguments.size() == 1) {
+            this.videoPlayer.searchVideos(arguments.get(0));
+          } else if (isPageArguments(arguments)) {
+            this.videoPlayer.searchVideos(arguments.get(0), parsePositiveInt(arguments.get(2)),
+                arguments.size() == 5 ? arguments.get(4) : null);
+          } else if (arguments.size() == 3 && parseFacets(arguments, 1) > 0) {
+            this.videoPlayer.searchVideos(arguments.get(0), parseFacets(arguments, 1));
+          } else {
+            CommandOutput.out().println("Please enter SEARCH_VIDEOS command followed by a search term, "
+                + "optionally followed by LIMIT <k> and AFTER <cursor>, or by FACETS <n>.");
+          }
+        });
+    commands.register("SEARCH_VIDEOS_RANKED", 1, 3, true, SEARCH_VIDEOS_RANKED_MESSAGE,
+        arguments -> {
+          if (arguments.size() == 1) {
+            this.videoPlayer.searchVideosRanked(arguments.get(0), DEFAULT_RANKED_RESULTS);
+          } else if (isPageArguments(arguments)) {
+            this.videoPlayer.searchVideosRanked(arguments.get(0), parsePositiveInt(arguments.get(2)));
+          } else {
+            CommandOutput.out().println(SEARCH_VIDEOS_RANKED_MESSAGE);
+          }
+        });
+    commands.register("SEARCH_VIDEOS_FUZZY", 1, 2, true, SEARCH_VIDEOS_FUZZY_MESSAGE,
+        arguments -> {
+          int maxEdits = arguments.size() == 2 ? parseMaxEdits(arguments.get(1)) : -1;
+          if (arguments.size() == 1 || maxEdits >= 0) {
+            this.videoPlayer.searchVideosFuzzy(arguments.get(0), maxEdits);
+          } else {
+            CommandOutput.out().println(SEARCH_VIDEOS_FUZZY_MESSAGE);
+          }
+        });
+    commands.register("SEARCH_VIDEOS_WITH_TAG", 1, 3, true, SEARCH_VIDEOS_WITH_TAG_MESSAGE,
+        arguments -> {
+          if (arguments.size() == 1) {
+            this.videoPlayer.searchVideosWithTag(arguments.get(0));
+          } else if (arguments.size() == 3 && parseFacets(arguments, 1) > 0) {
+            this.videoPlayer.searchVideosWithTag(arguments.get(0), parseFacets(arguments, 1));
+          } else {
+            CommandOutput.out().println(SEARCH_VIDEOS_WITH_TAG_MESSAGE);
+          }
+        });
+    commands.register("QUERY", 1, MAX_PREDICATES + 2, true, QUERY_MESSAGE,
+        arguments -> {
+          //The predicates can be followed by FACETS <n>
+          int facets = arguments.size() > 2 ? parseFacets(arguments, arguments.size() - 2) : 0;
+          List<String> predicates = facets == 0 ? arguments : arguments.subList(0, arguments.size() - 2);
+          VideoQuery query = facets < 0 ? null : VideoQuery.parse(predicates);
+          if (query != null) {
+            this.videoPlayer.query(query, toQueryText(predicates), facets);
+          } else {
+            CommandOutput.out().println(QUERY_MESSAGE);
+          }
+        });
+    commands.register("EXPLAIN", 1, MAX_PREDICATES, true, EXPLAIN_MESSAGE,
+        arguments -> {
+          VideoQuery query = VideoQuery.parse(arguments);
+          if (query != null) {
+            this.videoPlayer.explainQuery(query, toQueryText(arguments));
+          } else {
+            CommandOutput.out().println(EXPLAIN_MESSAGE);
+          }
+        });
+    commands.register("AUTOCOMPLETE", 1, 2, true, AUTOCOMPLETE_MESSAGE,
+        arguments -> {
+          int limit = arguments.size() == 2 ? parseCompletions(arguments.get(1)) : DEFAULT_COMPLETIONS;
+          if (limit > 0) {
+            this.videoPlayer.autocomplete(arguments.get(0), limit);
+          } else {
+            CommandOutput.out().println(AUTOCOMPLETE_MESSAGE);
+          }
+        });
+    //The words after the video id are the flag reason, whether it is quoted or not
+    commands.register("FLAG_VIDEO", 1, Integer.MAX_VALUE, false,
+        "Please enter FLAG_VIDEO command followed by a video_id and an optional flag reason.",
+        arguments -> {
+          if (arguments.size() > 1) {
+            this.videoPlayer.flagVideo(arguments.get(0), String.join(" ", arguments.subList(1, arguments.size())));
+          } else {
+            this.videoPlayer.flagVideo(arguments.get(0));
+          }
+        });
+    commands.register("ALLOW_VIDEO", 1, 1, false,
+        "Please enter ALLOW_VIDEO command followed by a video_id.",
+        arguments -> this.videoPlayer.allowVideo(arguments.get(0)));
+    commands.register("RELOAD_CATALOG", 1, 1, false,
+        "Please enter RELOAD_CATALOG command followed by the path of a catalog file.",
+        arguments -> this.videoPlayer.reloadCatalog(arguments.get(0)));
+    commands.register("STATS", 0, 1, true,
+        "Please enter STATS command, optionally followed by MEMORY.",
+        arguments -> {
+          if (arguments.isEmpty()) {
+            this.videoPlayer.showStats();
+          } else if (arguments.get(0).equalsIgnoreCase("MEMORY")) {
+            this.videoPlayer.showMemoryStats();
+          } else {
+            CommandOutput.out().println("Please enter STATS command, optionally followed by MEMORY.");
+          }
+        });
+    commands.register("HELP", 0, 0, true, INVALID_COMMAND_MESSAGE,
+        arguments -> this.getHelp());
+    return commands;
+  }
+
+  /**
+   * Whether the given command only reads state, and can therefore run in parallel with other read-only
+   * commands. Searches are only read-only when the video player does not prompt the user to play a result.
+   * Unknown commands and commands with invalid arguments only print a message, so they are read-only.
+   */
+  boolean isReadOnly(List<String> command) {
+    if (command.isEmpty()) {
+      return true;
+    }
+    CommandRegistry.Command selectedCommand = registry.lookup(command.get(0));
+    if (selectedCommand == null || !selectedCommand.accepts(command.size() - 1)) {
+      return true;
+    }
+    return selectedCommand.isReadOnly() && !videoPlayer.isInteractive();
+  }
+
+  /**
+   * Executes the given user input line.
+   */
+  public void executeCommand(String line) {
+    executeCommand(CommandTokenizer.tokenize(line));
+  }
+
+  /**
+   * Executes the given user command, within the time budget of the parser if it is read-only.
    */
   public void executeCommand(List<String> command) {
+    executeCommand(command, null);
+  }
+
+  /**
+   * Executes the given user command with a deadline, e.g. to cancel it from another thread.
+   * @param command The command words
+   * @param deadline The deadline of the command if it is read-only, or null to use the time budget of the parser
+   */
+  public void executeCommand(List<String> command, Deadline deadline) {
+    CommandEvent event = new CommandEvent();
+    event.begin();
+    Metrics metrics = videoPlayer.getMetrics();
     if (command.isEmpty()) {
-      System.out.println(
-          "Please enter a valid command, " +
-              "type HELP for a list of available commands.");
+      metrics.counter("commands_invalid_total").increment();
+      CommandOutput.out().println(INVALID_COMMAND_MESSAGE);
+      commitEvent(event, "", 0, "unknown command");
       return;
     }
 
-    switch (command.get(0).toUpperCase()) {
-      case "NUMBER_OF_VIDEOS":
-        this.videoPlayer.numberOfVideos();
-        break;
-      case "SHOW_ALL_VIDEOS":
-        this.videoPlayer.showAllVideos();
-        break;
-      case "PLAY":
-        try {
-          this.videoPlayer.playVideo(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter PLAY command followed by video_id.");
-        }
-        break;
-      case "PLAY_RANDOM":
-        this.videoPlayer.playRandomVideo();
-        break;
-      case "STOP":
-        this.videoPlayer.stopVideo();
-        break;
-      case "PAUSE":
-        this.videoPlayer.pauseVideo();
-        break;
-      case "CONTINUE":
-        this.videoPlayer.continueVideo();
-        break;
-      case "SHOW_PLAYING":
-        this.videoPlayer.showPlaying();
-        break;
-      case "CREATE_PLAYLIST":
-        try {
-          this.videoPlayer.createPlaylist(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
-              "Please enter CREATE_PLAYLIST command followed by a " +
-                  "playlist name.");
-        }
-        break;
-      case "ADD_TO_PLAYLIST":
-        try {
-          this.videoPlayer.addVideoToPlaylist(command.get(1), command.get(2));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
-              "Please enter ADD_TO_PLAYLIST command followed by a "
-                  + "playlist name and video_id to add.");
-        }
-        break;
-      case "REMOVE_FROM_PLAYLIST":
-        try {
-          this.videoPlayer.removeFromPlaylist(command.get(1), command.get(2));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
-              "Please enter REMOVE_FROM_PLAYLIST command followed by a "
-                  + "playlist name and video_id to remove.");
-        }
-        break;
-      case "CLEAR_PLAYLIST":
-        try {
-          this.videoPlayer.clearPlaylist(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
-              "Please enter CLEAR_PLAYLIST command followed by a "
-                  + "playlist name.");
-        }
-        break;
-      case "DELETE_PLAYLIST":
-        try {
-          this.videoPlayer.deletePlaylist(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
-              "Please enter DELETE_PLAYLIST command followed by a " +
-                  "playlist name.");
-        }
-        break;
-      case "SHOW_PLAYLIST":
-        try {
-          this.videoPlayer.showPlaylist(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter SHOW_PLAYLIST command followed by a " +
-              "playlist name.");
-        }
-        break;
-      case "SHOW_ALL_PLAYLISTS":
-        this.videoPlayer.showAllPlaylists();
-        break;
-      case "SEARCH_VIDEOS":
-        try {
-          this.videoPlayer.searchVideos(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter SEARCH_VIDEOS command followed by a " +
-              "search term.");
-        }
-        break;
-      case "SEARCH_VIDEOS_WITH_TAG":
-        try {
-          this.videoPlayer.searchVideosWithTag(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
-              "Please enter SEARCH_VIDEOS_WITH_TAG command followed by a " +
-                  "video tag.");
-        }
-        break;
-      case "FLAG_VIDEO":
-        try {
-          this.videoPlayer.flagVideo(command.get(1), command.get(2));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          try {
-            this.videoPlayer.flagVideo(command.get(1));
-          } catch (ArrayIndexOutOfBoundsException f) {
-            System.out.println("Please enter FLAG_VIDEO command followed by a" +
-                "video_id and an optional flag reason.");
-          }
-        }
-        break;
-      case "ALLOW_VIDEO":
-        try {
-          this.videoPlayer.allowVideo(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter ALLOW_VIDEO command followed by a " +
-              "video_id.");
-        }
-        break;
-      case "HELP":
-        this.getHelp();
-        break;
-      default:
-        System.out.println(
-            "Please enter a valid command, type HELP for a list of "
-            + "available commands.");
-        break;
+    CommandRegistry.Command selectedCommand = registry.lookup(command.get(0));
+    if (selectedCommand == null) { //Unknown command word
+      metrics.counter("commands_invalid_total").increment();
+      CommandOutput.out().println(INVALID_COMMAND_MESSAGE);
+      commitEvent(event, command.get(0), command.size() - 1, "unknown command");
+      return;
+    }
+
+    //The arguments are validated before calling the handler, so handlers never read a missing argument
+    List<String> arguments = command.subList(1, command.size());
+    if (!selectedCommand.accepts(arguments.size())) {
+      metrics.counter("commands_invalid_total").increment();
+      CommandOutput.out().println(selectedCommand.getUsage());
+      commitEvent(event, selectedCommand.getName(), arguments.size(), "invalid arguments");
+      return;
+    }
+
+    long start = System.nanoTime();
+    String result = "failed";
+    try {
+      //The command runs on a single version of the catalog, and never sees a batch of appended videos partially added
+      Runnable handler = () -> videoPlayer.runCommand(selectedCommand.isReadOnly(),
+          () -> selectedCommand.getHandler().execute(arguments));
+      if (selectedCommand.isReadOnly() && (deadline != null || budgetMillis > 0)) {
+        //Only searches and listings are bounded, a command modifying the state always completes
+        Deadline commandDeadline = deadline != null ? deadline : Deadline.after(budgetMillis, TimeUnit.MILLISECONDS);
+        Deadline.run(commandDeadline, handler);
+        result = commandDeadline.wasReached() ? "truncated" : "executed";
+      } else {
+        handler.run();
+        result = "executed";
+      }
+    } finally {
+      metrics.latency(selectedCommand.getName()).record(System.nanoTime() - start);
+      commitEvent(event, selectedCommand.getName(), arguments.size(), result);
+    }
+  }
+
+  /**
+   * Commit the flight recorder event of a command, if the event is enabled.
+   */
+  private static void commitEvent(CommandEvent event, String command, int argumentsSize, String result) {
+    if (event.shouldCommit()) {
+      event.command = command;
+      event.argumentsSize = argumentsSize;
+      event.result = result;
+      event.commit();
+    }
+  }
+
+  /**
+   * Check if the arguments of a search request a number of results: the search term, LIMIT and a positive number
+   * of results, optionally followed by AFTER and a cursor.
+   */
+  private static boolean isPageArguments(List<String> arguments) {
+    if ((arguments.size() != 3 && arguments.size() != 5) || !arguments.get(1).equalsIgnoreCase("LIMIT")
+        || (arguments.size() == 5 && !arguments.get(3).equalsIgnoreCase("AFTER"))) {
+      return false;
+    }
+    return parsePositiveInt(arguments.get(2)) > 0;
+  }
+
+  /**
+   * Get the text of a query as it can be typed again, the predicates containing whitespaces being quoted.
+   */
+  private static String toQueryText(List<String> arguments) {
+    StringBuilder text = new StringBuilder();
+    for (String argument: arguments) {
+      if (text.length() > 0) {
+        text.append(' ');
+      }
+      text.append(CommandTokenizer.quote(argument));
+    }
+    return text.toString();
+  }
+
+  /**
+   * Parse a FACETS <n> clause of the search commands.
+   * @param arguments The arguments of the command
+   * @param index The index of the FACETS argument
+   * @return The number of tags to display, 0 if the arguments are not a FACETS clause, or -1 if the number of tags
+   *     is not a number between 1 and MAX_FACETS
+   */
+  private static int parseFacets(List<String> arguments, int index) {
+    if (!arguments.get(index).equalsIgnoreCase("FACETS")) {
+      return 0;
+    }
+    int facets = parsePositiveInt(arguments.get(index + 1));
+    return facets >= 1 && facets <= MAX_FACETS ? facets : -1;
+  }
+
+  /**
+   * Parse the maximum number of edits of SEARCH_VIDEOS_FUZZY.
+   * @return The maximum number of edits, or -1 if it is not a number between 0 and FuzzyIndex.MAX_EDITS
+   */
+  private static int parseMaxEdits(String argument) {
+    int maxEdits = parsePositiveInt(argument);
+    return maxEdits <= FuzzyIndex.MAX_EDITS ? maxEdits : -1;
+  }
+
+  /**
+   * Parse the number of completions of AUTOCOMPLETE.
+   * @return The number of completions, or -1 if it is not a number between 1 and CompletionIndex.MAX_COMPLETIONS
+   */
+  private static int parseCompletions(String argument) {
+    int limit = parsePositiveInt(argument);
+    return limit >= 1 && limit <= CompletionIndex.MAX_COMPLETIONS ? limit : -1;
+  }
+
+  /**
+   * Parse a number argument, e.g. a number of results. Only digits are accepted, so 0 is the smallest number.
+   * @return The number, or -1 if the argument is not a number or is larger than Integer.MAX_VALUE
+   */
+  static int parsePositiveInt(String argument) {
+    if (argument.isEmpty()) {
+      return -1;
+    }
+    int number = 0;
+    for (int i = 0; i < argument.length(); i++) {
+      int digit = argument.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || number > (Integer.MAX_VALUE - digit) / 10) {
+        return -1;
+      }
+      number = number * 10 + digit;
     }
+    return number;
   }
 
   /**
@@ -179,11 +392,22 @@ class CommandParser {
             + "    SHOW_PLAYLIST <playlist_name> - List all the videos in this playlist.\n"
             + "    SHOW_ALL_PLAYLISTS - Display all the available playlists.\n"
             + "    SEARCH_VIDEOS <search_term> - Display all the videos whose titles contain the search_term.\n"
-            + "    SEARCH_VIDEOS_WITH_TAG <tag_name> -Display all videos whose tags contains the provided tag.\n"
+            + "    SEARCH_VIDEOS <search_term> LIMIT <k> [AFTER <cursor>] - Display a page of k of these videos.\n"
+            + "    SEARCH_VIDEOS <search_term> FACETS <n> - Display these videos followed by the n (at most 20) tags of the most of them.\n"
+            + "    SEARCH_VIDEOS_RANKED <query> [LIMIT <k>] - Display the k (10 by default) videos the most relevant to the words and #tags of the query.\n"
+            + "    SEARCH_VIDEOS_FUZZY <search_term> [max_edits] - Display the 100 videos whose titles contain the words the closest to the words of the search_term.\n"
+            + "    SEARCH_VIDEOS_WITH_TAG <tag_name> [FACETS <n>] -Display all videos whose tags contains the provided tag.\n"
+            + "    QUERY <predicates> - Display the videos matching all the predicates: title:<text>, tag:<tag_name> and flagged:<true|false>, negated by a leading -. Only not flagged videos match by default. QUERY <predicates> FACETS <n> also displays the n tags of the most results.\n"
+            + "    EXPLAIN <predicates> - Run a QUERY and display the indexes and filters it went through, with the number of videos examined.\n"
+            + "    AUTOCOMPLETE <prefix> [k] - Display the k (5 by default, at most 10) titles and tags starting with the prefix.\n"
             + "    FLAG_VIDEO <video_id> <flag_reason> - Mark a video as flagged.\n"
             + "    ALLOW_VIDEO <video_id> - Removes a flag from a video.\n"
+            + "    RELOAD_CATALOG <path> - Load the videos of a catalog file in the background, then replace the videos by them, keeping the flags and playlists.\n"
+            + "    STATS - Displays the number of executions and latency percentiles of each command.\n"
+            + "    STATS MEMORY - Displays the estimated memory used by the videos, playlists, indexes and caches.\n"
             + "    HELP - Displays help.\n"
-            + "    EXIT - Terminates the program execution.\n";
-    System.out.println(helpText);
+            + "    EXIT - Terminates the program execution.\n"
+            + "Arguments containing whitespaces can be surrounded by double quotes, e.g. FLAG_VIDEO <video_id> \"<flag reason>\".\n";
+    CommandOutput.out().println(helpText);
   }
 }
@@ -0,0 +1,114 @@
+package com.google;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A class used to register the available commands, with the number of arguments they accept.
+ * Commands are looked up case-insensitively, without creating an upper-cased copy of the command word.
+ */
+final class CommandRegistry {
+
+  /**
+   * The action executed for a command, once its arguments have been validated.
+   */
+  interface Handler {
+
+    /**
+     * Execute the command.
+     * @param arguments The arguments of the command (the command word excluded)
+     */
+    void execute(List<String> arguments);
+  }
+
+  /**
+   * A class used to represent a registered command.
+   */
+  static final class Command {
+
+    private final String name;
+    private final int minArguments;
+    private final int maxArguments;
+    private final boolean readOnly;
+    private final String usage;
+    private final Handler handler;
+
+    private Command(String name, int minArguments, int maxArguments, boolean readOnly, String usage,
+        Handler handler) {
+      this.name = name;
+      this.minArguments = minArguments;
+      this.maxArguments = maxArguments;
+      this.readOnly = readOnly;
+      this.usage = usage;
+      this.handler = handler;
+    }
+
+    /**
+     * Get the (upper case) name of the command.
+     * @return The name of the command
+     */
+    String getName() {
+      return name;
+    }
+
+    /**
+     * Whether the command accepts the given number of arguments. Like the original parser, the commands with a
+     * fixed number of arguments ignore the arguments after them, while the commands with optional arguments reject
+     * them, as they may be a mistyped option.
+     * @param numberOfArguments The number of arguments, the command word excluded
+     * @return True if the number of arguments is valid for this command
+     */
+    boolean accepts(int numberOfArguments) {
+      return numberOfArguments >= minArguments
+          && (numberOfArguments <= maxArguments || minArguments == maxArguments);
+    }
+
+    /**
+     * Whether the command only reads the state of the player and the library.
+     * Read-only commands can safely run at the same time as each other.
+     * @return True if the command never modifies any state
+     */
+    boolean isReadOnly() {
+      return readOnly;
+    }
+
+    /**
+     * Get the message displayed when the command is used with an invalid number of arguments.
+     * @return The usage message of the command
+     */
+    String getUsage() {
+      return usage;
+    }
+
+    /**
+     * Get the action executed by the command.
+     * @return The handler of the command
+     */
+    Handler getHandler() {
+      return handler;
+    }
+  }
+
+  private final TreeMap<String, Command> commands = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+  /**
+   * Register a command.
+   * @param name The command word
+   * @param minArguments The minimum number of arguments of the command
+   * @param maxArguments The maximum number of arguments of the command
+   * @param readOnly Whether the command never modifies any state
+   * @param usage The message displayed when the number of arguments is invalid
+   * @param handler The action executed by the command
+   */
+  void register(String name, int minArguments, int maxArguments, boolean readOnly, String usage,
+      Handler handler) {
+    commands.put(name, new Command(name, minArguments, maxArguments, readOnly, usage, handler));
+  }
+
+  /**
+   * Get a command by its (case-insensitive) command word. Returns null if the command is not registered.
+   */
+  Command lookup(String name) {
+    return commands.get(name);
+  }
+}
@@ -0,0 +1,84 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class used to split a user input line into command words.
+ * Words are separated by whitespaces, and a word surrounded by double quotes can contain whitespaces.
+ */
+final class CommandTokenizer {
+
+  private CommandTokenizer() {
+  }
+
+  /**
+   * Split the given input line into command words.
+   * The only allocations are the returned List and the words themselves.
+   * @param line The input line typed by the user
+   * @return The command words, empty if the line is blank
+   */
+  static List<String> tokenize(String line) {
+
+    int length = line.length();
+    int position = skipWhitespaces(line, 0);
+    if (position == length) {
+      return Collections.emptyList();
+    }
+
+    List<String> words = new ArrayList<>(4);
+    while (position < length) {
+
+      int start;
+      int end;
+      if (line.charAt(position) == '"') {
+        //Quoted word: it ends at the closing quote, or at the end of the line if the quote is not closed
+        start = position + 1;
+        end = line.indexOf('"', start);
+        if (end < 0) {
+          end = length;
+          position = length;
+        } else {
+          position = end + 1;
+        }
+      } else {
+        start = position;
+        while (position < length && !Character.isWhitespace(line.charAt(position))) {
+          position++;
+        }
+        end = position;
+      }
+
+      words.add(line.substring(start, end));
+      position = skipWhitespaces(line, position);
+    }
+    return words;
+  }
+
+  /**
+   * Get a word as it is typed in an input line, surrounded by double quotes if it contains whitespaces, so that
+   * tokenize splits it back into the same word.
+   * @param word The command word
+   * @return The word, quoted if needed
+   */
+  static String quote(String word) {
+    for (int index = 0; index < word.length(); index++) {
+      if (Character.isWhitespace(word.charAt(index))) {
+        return "\"" + word + "\"";
+      }
+    }
+    return word;
+  }
+
+  /**
+   * Get the index of the first non-whitespace character at or after the given position.
+   */
+  private static int skipWhitespaces(String line, int position) {
+    int length = line.length();
+    while (position < length && Character.isWhitespace(line.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+}
@@ -0,0 +1,480 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class used to complete the beginning of a title or of a tag, as typed by the user, with the titles and tags of
+ * the videos that are not flagged. Completions are compared case-insensitively, and the completions shared by the
+ * most videos come first, then the completions in alphabetical order.
+ * The completions are the keys of a compressed trie (a trie whose chains of nodes with a single child are merged):
+ * each node stores the best completions of the keys under it, so a prefix is completed by walking down the trie,
+ * then reading the completions of the node the prefix ends in. When a video is flagged or allowed, the completions
+ * of the nodes on the path of its title and tags are computed again from their children.
+ * The nodes are stored in arrays, the children of a node being consecutive. The characters of the node labels are
+ * not stored: they are read from a key under the node.
+ * The index is built on first use, and can be dropped to save memory: the completions are then found by scanning
+ * the videos, until the index is enabled and built again. They are also found by scanning while the index is built
+ * in the background for a command with a time budget.
+ */
+class CompletionIndex {
+
+  /** The maximum number of completions of a prefix. */
+  static final int MAX_COMPLETIONS = 10;
+
+  private final VideoStore store;
+  private final TagDictionary tagDictionary;
+  private final IndexBuilder indexBuilder;
+  private volatile boolean enabled = true;
+  private volatile boolean built = false;
+
+  //The completions, in the order of their keys: a title (by the ordinal of its first video), or a tag (by -1 - id)
+  private int[] sources;
+  private int[] weights; //The number of not flagged videos with each completion
+
+  private int nodeCount;
+  private int[] depths; //The length of the prefix of each node, the label of a node ending there
+  private int[] labelEntries; //A completion under each node, to read its label from
+  private char[] firstCharacters; //The first character of the label of each node
+  private int[] nodeEntries; //The completion equal to the prefix of each node, -1 if none
+  private int[] firstChildren;
+  private int[] childCounts;
+  private int[] listStarts; //The position of the best completions of each node in lists, -1 for the leaves
+  private byte[] listCapacities;
+  private int[] lists = new int[0]; //The best completions of the nodes, each list ending at its capacity or at a -1
+  private int listsSize;
+
+  /**
+   * @param store The store the videos are in
+   * @param tagDictionary The dictionary of the tags of the videos
+   * @param indexBuilder The builder of the index outside of the time budget of the commands
+   */
+  CompletionIndex(VideoStore store, TagDictionary tagDictionary, IndexBuilder indexBuilder) {
+    this.store = store;
+    this.tagDictionary = tagDictionary;
+    this.indexBuilder = indexBuilder;
+  }
+
+  /**
+   * Get the titles and tags starting with the given prefix, compared case-insensitively, excluding the flagged
+   * videos.
+   * @param prefix The prefix
+   * @param limit The maximum number of completions, at most MAX_COMPLETIONS
+   * @return The completions, the completions shared by the most videos first
+   */
+  List<String> complete(String prefix, int limit) {
+    //The index was dropped to save memory, or is being built in the background
+    if (!enabled || (!built && !indexBuilder.buildsNow(this, this::buildIfNeeded))) {
+      return completeByScanning(prefix, limit);
+    }
+    return completeWithIndex(prefix, limit);
+  }
+
+  private synchronized List<String> completeWithIndex(String prefix, int limit) {
+    if (!enabled) { //The index was dropped meanwhile
+      return completeByScanning(prefix, limit);
+    }
+    buildIfNeeded();
+    List<String> completions = new ArrayList<>();
+    int node = find(fold(prefix), null);
+    if (node == -1) {
+      return completions;
+    }
+    if (listStarts[node] == -1) { //A leaf, its only completion is its key
+      if (weights[nodeEntries[node]] > 0) {
+        completions.add(display(nodeEntries[node]));
+      }
+      return completions;
+    }
+    for (int index = 0; index < Math.min(limit, listCapacities[node]); index++) {
+      int entry = lists[listStarts[node] + index];
+      if (entry == -1) {
+        break;
+      }
+      completions.add(display(entry));
+    }
+    return completions;
+  }
+
+  /**
+   * Flag or allow a video, and update the completions of its title and tags. The video is flagged or allowed while
+   * no build of the index reads the flags, so that the build either sees the change or is updated by it.
+   * @param ordinal The ordinal of the video
+   * @param eligible True if the video is allowed, false if it is flagged
+   * @param change The action flagging or allowing the video
+   */
+  synchronized void update(int ordinal, boolean eligible, Runnable change) {
+    change.run();
+    if (!built) { //The index is built from the current flags
+      return;
+    }
+    //A video counts once for its title, and once for each of its tags, whatever their case
+    List<String> tagKeys = new ArrayList<>();
+    for (int index = 0; index < store.getTagCount(ordinal); index++) {
+      String key = fold(store.getTag(ordinal, index));
+      if (!tagKeys.contains(key)) {
+        tagKeys.add(key);
+      }
+    }
+    List<String> keys = new ArrayList<>(tagKeys);
+    keys.add(fold(store.getTitle(ordinal)));
+    for (String key: keys) {
+      List<Integer> path = new ArrayList<>();
+      int node = find(key, path);
+      weights[nodeEntries[node]] += eligible ? 1 : -1;
+      for (int index = path.size() - 1; index >= 0; index--) {
+        computeList(path.get(index));
+      }
+    }
+  }
+
+  /**
+   * Find the node a prefix ends in: the node whose label contains the last character of the prefix.
+   * @param prefix The case-folded prefix
+   * @param path If not null, the nodes from the root to the found node are added to it
+   * @return The node, or -1 if no completion starts with the prefix
+   */
+  private int find(String prefix, List<Integer> path) {
+    if (nodeCount == 0) {
+      return -1;
+    }
+    int node = 0;
+    int depth = 0;
+    while (true) {
+      if (path != null) {
+        path.add(node);
+      }
+      int end = Math.min(depths[node], prefix.length());
+      if (!key(labelEntries[node]).regionMatches(depth, prefix, depth, end - depth)) {
+        return -1;
+      }
+      if (prefix.length() <= depths[node]) {
+        return node;
+      }
+      depth = depths[node];
+      node = findChild(node, prefix.charAt(depth));
+      if (node == -1) {
+        return -1;
+      }
+    }
+  }
+
+  private int findChild(int node, char character) {
+    int low = firstChildren[node];
+    int high = low + childCounts[node] - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (firstCharacters[middle] < character) {
+        low = middle + 1;
+      } else if (firstCharacters[middle] > character) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  private static String fold(String text) {
+    return text.toLowerCase(Locale.ROOT);
+  }
+
+  private String display(int entry) {
+    return sources[entry] >= 0 ? store.getTitle(sources[entry]) : tagDictionary.getTag(-1 - sources[entry]);
+  }
+
+  private String key(int entry) {
+    return fold(display(entry));
+  }
+
+  /**
+   * Get the rank of a completion: a higher rank is a completion shared by more videos, or with a lower key.
+   */
+  private long rank(int entry) {
+    return (long) weights[entry] << 32 | (~entry & 0xFFFFFFFFL);
+  }
+
+  private synchronized void buildIfNeeded() {
+    if (enabled && !built) {
+      build();
+    }
+  }
+
+  private void build() {
+    IndexBuildEvent event = new IndexBuildEvent();
+    event.begin();
+    HashMap<String, int[]> completions = collect("", Deadline.none()); //The index has all the videos, whatever the deadline
+    int size = completions.size();
+    String[] keys = completions.keySet().toArray(new String[0]);
+    Arrays.sort(keys);
+    sources = new int[size];
+    weights = new int[size];
+    for (int entry = 0; entry < size; entry++) {
+      int[] completion = completions.get(keys[entry]);
+      sources[entry] = completion[0];
+      weights[entry] = completion[1];
+    }
+    completions = null;
+
+    //A compressed trie has less than two nodes per key
+    int capacity = 2 * size + 1;
+    depths = new int[capacity];
+    labelEntries = new int[capacity];
+    firstCharacters = new char[capacity];
+    nodeEntries = new int[capacity];
+    firstChildren = new int[capacity];
+    childCounts = new int[capacity];
+    listStarts = new int[capacity];
+    listCapacities = new byte[capacity];
+    lists = new int[Math.max(16, size)];
+    listsSize = 0;
+    nodeCount = 0;
+    if (size > 0) {
+      nodeCount = 1;
+      buildNode(keys, 0, 0, size, 0);
+    }
+    //We release the unused capacity
+    depths = Arrays.copyOf(depths, nodeCount);
+    labelEntries = Arrays.copyOf(labelEntries, nodeCount);
+    firstCharacters = Arrays.copyOf(firstCharacters, nodeCount);
+    nodeEntries = Arrays.copyOf(nodeEntries, nodeCount);
+    firstChildren = Arrays.copyOf(firstChildren, nodeCount);
+    childCounts = Arrays.copyOf(childCounts, nodeCount);
+    listStarts = Arrays.copyOf(listStarts, nodeCount);
+    listCapacities = Arrays.copyOf(listCapacities, nodeCount);
+    lists = Arrays.copyOf(lists, listsSize);
+    built = true;
+
+    event.index = "Completion trie";
+    event.entries = size;
+    event.bytes = estimateBytes();
+    event.attempts = 1;
+    event.commit();
+  }
+
+  /**
+   * Build a node and the nodes under it.
+   * @param keys The sorted keys of the completions
+   * @param node The node
+   * @param from The first completion under the node
+   * @param to The completion after the last completion under the node
+   * @param parentDepth The length of the prefix of the parent of the node
+   */
+  private void buildNode(String[] keys, int node, int from, int to, int parentDepth) {
+    String first = keys[from];
+    int depth = first.length();
+    if (to - from > 1) { //The keys are sorted, so the common prefix of the keys is the one of the first and last key
+      String last = keys[to - 1];
+      depth = 0;
+      while (depth < Math.min(first.length(), last.length()) && first.charAt(depth) == last.charAt(depth)) {
+        depth++;
+      }
+    }
+    depths[node] = depth;
+    labelEntries[node] = from;
+    firstCharacters[node] = depth > parentDepth ? first.charAt(parentDepth) : 0;
+    nodeEntries[node] = first.length() == depth ? from : -1;
+    int childrenFrom = first.length() == depth ? from + 1 : from;
+
+    int children = 0;
+    for (int index = childrenFrom; index < to; index++) {
+      if (index == childrenFrom || keys[index].charAt(depth) != keys[index - 1].charAt(depth)) {
+        children++;
+      }
+    }
+    firstChildren[node] = nodeCount;
+    childCounts[node] = children;
+    nodeCount += children;
+    int child = firstChildren[node];
+    int start = childrenFrom;
+    for (int index = childrenFrom + 1; index <= to; index++) {
+      if (index == to || keys[index].charAt(depth) != keys[start].charAt(depth)) {
+        buildNode(keys, child++, start, index, depth);
+        start = index;
+      }
+    }
+
+    if (children == 0) {
+      listStarts[node] = -1;
+      return;
+    }
+    int listCapacity = Math.min(MAX_COMPLETIONS, to - from);
+    if (listsSize + listCapacity > lists.length) {
+      lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listsSize + listCapacity));
+    }
+    listStarts[node] = listsSize;
+    listCapacities[node] = (byte) listCapacity;
+    listsSize += listCapacity;
+    computeList(node);
+  }
+
+  /**
+   * Compute the best completions of a node from its own completion and the best completions of its children.
+   */
+  private void computeList(int node) {
+    if (listStarts[node] == -1) {
+      return;
+    }
+    long[] candidates = new long[1 + childCounts[node] * MAX_COMPLETIONS];
+    int size = 0;
+    if (nodeEntries[node] != -1 && weights[nodeEntries[node]] > 0) {
+      candidates[size++] = rank(nodeEntries[node]);
+    }
+    for (int child = firstChildren[node]; child < firstChildren[node] + childCounts[node]; child++) {
+      if (listStarts[child] == -1) {
+        if (weights[nodeEntries[child]] > 0) {
+          candidates[size++] = rank(nodeEntries[child]);
+        }
+        continue;
+      }
+      for (int index = listStarts[child]; index < listStarts[child] + listCapacities[child]; index++) {
+        if (lists[index] == -1) {
+          break;
+        }
+        candidates[size++] = rank(lists[index]);
+      }
+    }
+    Arrays.sort(candidates, 0, size);
+    for (int index = 0; index < listCapacities[node]; index++) {
+      lists[listStarts[node] + index] = index < size ? ~(int) candidates[size - 1 - index] : -1;
+    }
+  }
+
+  /**
+   * Collect the completions starting with a prefix, by scanning the videos and the tags.
+   * @param prefix The case-folded prefix
+   * @param deadline The deadline the scan stops at, with the completions of the videos scanned so far
+   * @return The source and the weight of each completion, by key
+   */
+  private HashMap<String, int[]> collect(String prefix, Deadline deadline) {
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    HashMap<String, int[]> completions = new HashMap<>();
+    for (int ordinal = 0; ordinal < store.size(); ordinal++) {
+      if (deadline.shouldStop(ordinal)) {
+        break;
+      }
+      String key = fold(store.getTitle(ordinal));
+      if (key.startsWith(prefix)) {
+        //Titles are represented by their first video
+        int firstOrdinal = ordinal;
+        int[] completion = completions.computeIfAbsent(key, title -> new int[] {firstOrdinal, 0});
+        completion[1] += store.isFlagged(ordinal) ? 0 : 1;
+      }
+    }
+    //A tag and a title with the same key are a single completion, displayed as the tag
+    HashMap<Integer, String> keysPerFoldedTag = new HashMap<>();
+    for (int id = tagDictionary.size() - 1; id >= 0; id--) {
+      String key = fold(tagDictionary.getTag(id));
+      if (key.startsWith(prefix)) {
+        keysPerFoldedTag.put(tagDictionary.getFoldedId(id), key);
+        completions.computeIfAbsent(key, tag -> new int[2])[0] = -1 - id;
+      }
+    }
+    for (int ordinal = 0; ordinal < store.size() && !keysPerFoldedTag.isEmpty(); ordinal++) {
+      if (deadline.shouldStop(ordinal)) {
+        break;
+      }
+      if (store.isFlagged(ordinal)) {
+        continue;
+      }
+      List<Integer> countedFoldedIds = new ArrayList<>();
+      for (int index = 0; index < store.getTagCount(ordinal); index++) {
+        int foldedId = tagDictionary.findFoldedId(store.getTag(ordinal, index));
+        String key = keysPerFoldedTag.get(foldedId);
+        if (key != null && !countedFoldedIds.contains(foldedId)) {
+          countedFoldedIds.add(foldedId);
+          completions.get(key)[1]++;
+        }
+      }
+    }
+    event.commitIfLarge("autocomplete", store.size(), completions.size());
+    return completions;
+  }
+
+  /**
+   * Get the completions of a prefix by scanning the videos, as a reference for complete.
+   * @param prefix The prefix
+   * @param limit The maximum number of completions
+   * @return The completions, the completions shared by the most videos first
+   */
+  List<String> completeByScanning(String prefix, int limit) {
+    TreeMap<String, int[]> completions = new TreeMap<>(collect(fold(prefix), Deadline.current()));
+    List<Map.Entry<String, int[]>> best = new ArrayList<>();
+    for (Map.Entry<String, int[]> completion: completions.entrySet()) {
+      if (completion.getValue()[1] > 0) {
+        best.add(completion);
+      }
+    }
+    //The sort is stable, completions shared by as many videos stay in alphabetical order
+    best.sort((first, second) -> Integer.compare(second.getValue()[1], first.getValue()[1]));
+    List<String> results = new ArrayList<>();
+    for (Map.Entry<String, int[]> completion: best.subList(0, Math.min(limit, best.size()))) {
+      int source = completion.getValue()[0];
+      results.add(source >= 0 ? store.getTitle(source) : tagDictionary.getTag(-1 - source));
+    }
+    return results;
+  }
+
+  /**
+   * Build the index now rather than on first use, if the index it replaces is built.
+   * @param previous The index of the library replaced by a reload of the catalog
+   */
+  void warmUp(CompletionIndex previous) {
+    if (previous.built) {
+      buildIfNeeded();
+    }
+  }
+
+  /**
+   * Enable or disable the index. A disabled index is dropped, and is built again once it is enabled and used.
+   */
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      invalidate();
+    }
+  }
+
+  /**
+   * Drop the index after videos are appended to the store, as their titles and tags can be new completions. It is
+   * built again on the next use.
+   */
+  synchronized void invalidate() {
+    built = false;
+    sources = null;
+    weights = null;
+    depths = null;
+    labelEntries = null;
+    firstCharacters = null;
+    nodeEntries = null;
+    firstChildren = null;
+    childCounts = null;
+    listStarts = null;
+    listCapacities = null;
+    lists = new int[0];
+    nodeCount = 0;
+  }
+
+  private long estimateBytes() {
+    int capacity = depths.length;
+    return 2 * MemoryReport.array(sources.length, 4) + 6 * MemoryReport.array(capacity, 4)
+        + MemoryReport.array(capacity, 2) + MemoryReport.array(capacity, 1) + MemoryReport.array(lists.length, 4);
+  }
+
+  /**
+   * Add the estimated memory used by the index to the given report.
+   */
+  synchronized void estimateMemory(MemoryReport report) {
+    if (!built) {
+      report.add("Completion index", 0, "not built");
+      return;
+    }
+    report.add("Completion index", estimateBytes(), sources.length + " completions, " + nodeCount + " nodes");
+  }
+}
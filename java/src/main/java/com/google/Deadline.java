@@ -0,0 +1,134 @@
+package com.google;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class used to bound the time spent by a command searching or listing videos.
+ * A deadline is both a time budget and a cancellation token: it is reached once the budget is spent, or once it is
+ * cancelled from another thread. The loops going through many videos check it every CHECK_INTERVAL videos, which
+ * only costs a call to System.nanoTime, and stop early once it is reached; the command then displays the results
+ * found so far, marked as truncated.
+ * The deadline of a command is set for the thread running it, as its output is by CommandOutput, so that the
+ * indexes and the player do not have to pass it along.
+ */
+final class Deadline {
+
+  /** The number of videos a loop goes through between two checks of the deadline, a power of 2. */
+  static final int CHECK_INTERVAL = 1024;
+
+  private static final Deadline NONE = new Deadline(-1);
+  private static final ThreadLocal<Deadline> currentDeadline = new ThreadLocal<>();
+
+  private final long budgetNanos; //-1 for no budget
+  private final long deadlineNanos;
+  private volatile boolean cancelled = false;
+  private volatile boolean reached = false;
+
+  private Deadline(long budgetNanos) {
+    this.budgetNanos = budgetNanos;
+    this.deadlineNanos = System.nanoTime() + Math.max(0, budgetNanos);
+  }
+
+  /**
+   * Create a deadline reached once the given time has passed, or once it is cancelled.
+   * @param budget The time budget, starting now
+   * @param unit The unit of the budget
+   */
+  static Deadline after(long budget, TimeUnit unit) {
+    return new Deadline(Math.max(0, unit.toNanos(budget)));
+  }
+
+  /**
+   * Create a deadline only reached once it is cancelled.
+   */
+  static Deadline cancellable() {
+    return new Deadline(-1);
+  }
+
+  /**
+   * Get the deadline of the command run by the current thread.
+   * @return The deadline set by run, or a deadline that is never reached
+   */
+  static Deadline current() {
+    Deadline deadline = currentDeadline.get();
+    return deadline != null ? deadline : NONE;
+  }
+
+  /**
+   * Get a deadline that is never reached, for the work that must not stop early, e.g. building an index.
+   */
+  static Deadline none() {
+    return NONE;
+  }
+
+  /**
+   * Run the given action with the given deadline as the deadline of the current thread.
+   * @param deadline The deadline
+   * @param action The action to run
+   */
+  static void run(Deadline deadline, Runnable action) {
+    Deadline previous = currentDeadline.get();
+    currentDeadline.set(deadline);
+    try {
+      action.run();
+    } finally {
+      if (previous != null) {
+        currentDeadline.set(previous);
+      } else {
+        currentDeadline.remove();
+      }
+    }
+  }
+
+  /**
+   * Whether the deadline has a time budget, rather than being only reached once it is cancelled.
+   */
+  boolean hasBudget() {
+    return budgetNanos >= 0;
+  }
+
+  /**
+   * Cancel the deadline: the loops checking it stop at their next check.
+   */
+  void cancel() {
+    if (this != NONE) {
+      cancelled = true;
+    }
+  }
+
+  /**
+   * Check if a loop must stop, the deadline being only read every CHECK_INTERVAL videos.
+   * @param videos The number of videos the loop went through
+   * @return True if the deadline is reached, and the loop must stop
+   */
+  boolean shouldStop(long videos) {
+    return (videos & (CHECK_INTERVAL - 1)) == 0 && isReached();
+  }
+
+  /**
+   * Check if the deadline is reached now.
+   * @return True if the budget is spent or the deadline is cancelled
+   */
+  boolean isReached() {
+    if (!reached && (cancelled || (budgetNanos >= 0 && System.nanoTime() - deadlineNanos >= 0))) {
+      reached = true;
+    }
+    return reached;
+  }
+
+  /**
+   * Whether a loop found the deadline reached, and stopped before the end.
+   * @return True if the results of the command are partial
+   */
+  boolean wasReached() {
+    return reached;
+  }
+
+  /**
+   * Get a description of why the results are partial.
+   */
+  String describe() {
+    return cancelled ? "the command was cancelled"
+        : "the time budget of " + TimeUnit.NANOSECONDS.toMillis(budgetNanos) + " ms was spent";
+  }
+}
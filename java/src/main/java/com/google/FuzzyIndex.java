@@ -0,0 +1,444 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A class used to find the videos whose titles contain words close to the words of a search term, so that a search
+ * still finds the videos when the term has typos. Words are compared with their edit distance (Levenshtein distance):
+ * the number of characters to insert, delete or replace to turn a word into the other.
+ * The distinct title words are kept in a BK-tree: the children of a word are indexed by their distance to the word,
+ * and as the edit distance is a metric, only the children at a distance from the word close to the distance between
+ * the word and the searched word can contain close words. The videos containing the close words are then read from
+ * the postings of the relevance index, instead of comparing the words of every title.
+ * A searched word only matches its MAX_EXPANSIONS closest words, the most frequent ones first, so that a short word
+ * matching a lot of words does not make the search go through most of the videos, and only the best results are
+ * sorted, so that the cost of a search does not grow with the number of videos matching a frequent word.
+ * While the tree is built in the background for a command with a time budget, the words of every title are compared.
+ */
+class FuzzyIndex {
+
+  /** The maximum number of edits between a searched word and a title word. */
+  static final int MAX_EDITS = 2;
+  /** The maximum number of title words a searched word matches. */
+  static final int MAX_EXPANSIONS = 50;
+  /** The maximum number of videos displayed by a fuzzy search. */
+  static final int MAX_RESULTS = 100;
+
+  private final VideoStore store;
+  private final RelevanceIndex relevanceIndex;
+  private final TitleIndex titleIndex;
+  private final IndexBuilder indexBuilder;
+  private volatile Tree tree;
+  private volatile boolean enabled = true;
+
+  /**
+   * A BK-tree of words, the children of each word being stored as a linked list.
+   */
+  private static final class Tree {
+    private final String[] words;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final int[] distances; //The distance between each word and its parent
+
+    private Tree(List<String> words) {
+      this.words = words.toArray(new String[0]);
+      this.firstChildren = new int[this.words.length];
+      this.nextSiblings = new int[this.words.length];
+      this.distances = new int[this.words.length];
+      Arrays.fill(firstChildren, -1);
+      for (int word = 1; word < this.words.length; word++) {
+        insert(word);
+      }
+    }
+
+    private void insert(int word) {
+      nextSiblings[word] = -1;
+      int node = 0;
+      while (true) {
+        int distance = distance(words[node], words[word]);
+        int child = firstChildren[node];
+        while (child != -1 && distances[child] != distance) {
+          child = nextSiblings[child];
+        }
+        if (child == -1) {
+          distances[word] = distance;
+          nextSiblings[word] = firstChildren[node];
+          firstChildren[node] = word;
+          return;
+        }
+        node = child;
+      }
+    }
+
+    /**
+     * Get the words within a number of edits of a word.
+     * @return The indexes of the words, and their distance to the word
+     */
+    private List<int[]> search(String word, int maxEdits) {
+      List<int[]> matches = new ArrayList<>();
+      if (words.length == 0) {
+        return matches;
+      }
+      int[] stack = new int[words.length];
+      int size = 0;
+      stack[size++] = 0;
+      while (size > 0) {
+        int node = stack[--size];
+        int distance = distance(words[node], word);
+        if (distance <= maxEdits) {
+          matches.add(new int[] {node, distance});
+        }
+        for (int child = firstChildren[node]; child != -1; child = nextSiblings[child]) {
+          if (Math.abs(distances[child] - distance) <= maxEdits) {
+            stack[size++] = child;
+          }
+        }
+      }
+      return matches;
+    }
+  }
+
+  /**
+   * @param store The store the videos are in
+   * @param relevanceIndex The index the videos containing each word are read from
+   * @param titleIndex The index the best results are sorted with
+   * @param indexBuilder The builder of the tree outside of the time budget of the commands
+   */
+  FuzzyIndex(VideoStore store, RelevanceIndex relevanceIndex, TitleIndex titleIndex, IndexBuilder indexBuilder) {
+    this.store = store;
+    this.relevanceIndex = relevanceIndex;
+    this.titleIndex = titleIndex;
+    this.indexBuilder = indexBuilder;
+  }
+
+  /**
+   * Get the edit distance between two words.
+   */
+  static int distance(String first, String second) {
+    int[] previous = new int[second.length() + 1];
+    int[] current = new int[second.length() + 1];
+    for (int index = 0; index <= second.length(); index++) {
+      previous[index] = index;
+    }
+    for (int firstIndex = 1; firstIndex <= first.length(); firstIndex++) {
+      current[0] = firstIndex;
+      for (int secondIndex = 1; secondIndex <= second.length(); secondIndex++) {
+        int replace = previous[secondIndex - 1]
+            + (first.charAt(firstIndex - 1) == second.charAt(secondIndex - 1) ? 0 : 1);
+        current[secondIndex] = Math.min(replace, Math.min(previous[secondIndex], current[secondIndex - 1]) + 1);
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[second.length()];
+  }
+
+  /**
+   * Get the default maximum number of edits of a word: none for words of 1 or 2 characters, which would match
+   * most short words, 1 up to 5 characters, and 2 for longer words.
+   */
+  static int defaultMaxEdits(String word) {
+    return word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : MAX_EDITS;
+  }
+
+  /**
+   * Get the not flagged videos whose title contains, for each word of the search term, a word within the maximum
+   * number of edits of it.
+   * @param searchTerm The search term
+   * @param maxEdits The maximum number of edits of each word, or -1 for the default maximum of each word
+   * @param limit The maximum number of videos
+   * @return The ordinals of the videos, by increasing total number of edits, then by title
+   */
+  int[] search(String searchTerm, int maxEdits, int limit) {
+    Tree tree = getTree();
+    if (tree == null) { //The index or the relevance index was dropped to save memory, or is being built
+      return searchByScanning(searchTerm, maxEdits, limit);
+    }
+    List<String> searchedWords = RelevanceIndex.titleWords(searchTerm);
+    if (searchedWords.isEmpty()) {
+      return new int[0];
+    }
+
+    int[] candidates = null; //The videos matching all the words so far, by increasing ordinal
+    int[] candidateEdits = null;
+    byte[] wordEdits = new byte[store.size()]; //1 + the number of edits of the closest match of the current word
+    //Once the deadline is reached, the current word only matches the videos read so far, by their closest matches as
+    //the matches are read from the closest, and the next words match no videos
+    Deadline deadline = Deadline.current();
+    long read = 0;
+    for (String searchedWord: searchedWords) {
+      List<int[]> matches = tree.search(searchedWord, maxEdits == -1 ? defaultMaxEdits(searchedWord) : maxEdits);
+      //We keep the closest matches, then the most frequent ones
+      matches.sort(Comparator.<int[]>comparingInt(match -> match[1])
+          .thenComparing(match -> -frequency(tree.words[match[0]]))
+          .thenComparing(match -> tree.words[match[0]]));
+      int matchedVideos = 0;
+      for (int[] match: matches.subList(0, Math.min(MAX_EXPANSIONS, matches.size()))) {
+        if (deadline.wasReached()) {
+          break;
+        }
+        int[] ordinals = relevanceIndex.findVideos(tree.words[match[0]]);
+        if (ordinals == null) { //The relevance index was dropped during the search
+          return searchByScanning(searchTerm, maxEdits, limit);
+        }
+        for (int ordinal: ordinals) {
+          if (deadline.shouldStop(read++)) {
+            break;
+          }
+          if (wordEdits[ordinal] == 0) {
+            wordEdits[ordinal] = (byte) (1 + match[1]);
+            matchedVideos++;
+          }
+        }
+      }
+
+      if (candidates == null) {
+        candidates = new int[matchedVideos];
+        candidateEdits = new int[matchedVideos];
+        int size = 0;
+        for (int ordinal = 0; ordinal < wordEdits.length && size < matchedVideos; ordinal++) {
+          if (wordEdits[ordinal] != 0) {
+            candidates[size] = ordinal;
+            candidateEdits[size++] = wordEdits[ordinal] - 1;
+          }
+        }
+        Arrays.fill(wordEdits, (byte) 0);
+      } else {
+        int size = 0;
+        for (int index = 0; index < candidates.length; index++) {
+          if (wordEdits[candidates[index]] != 0) {
+            candidateEdits[size] = candidateEdits[index] + wordEdits[candidates[index]] - 1;
+            candidates[size++] = candidates[index];
+          }
+        }
+        Arrays.fill(wordEdits, (byte) 0);
+        candidates = Arrays.copyOf(candidates, size);
+        candidateEdits = Arrays.copyOf(candidateEdits, size);
+      }
+    }
+
+    int size = 0;
+    for (int index = 0; index < candidates.length; index++) {
+      if (!store.isFlagged(candidates[index])) {
+        candidateEdits[size] = candidateEdits[index];
+        candidates[size++] = candidates[index];
+      }
+    }
+    return best(candidates, candidateEdits, size, limit);
+  }
+
+  private int frequency(String word) {
+    int[] ordinals = relevanceIndex.findVideos(word);
+    return ordinals == null ? 0 : ordinals.length;
+  }
+
+  /**
+   * Get the results of search by comparing the words of every title with the words of the search term, as a
+   * reference for search. Every title word within the maximum number of edits matches, however many there are.
+   */
+  int[] searchByScanning(String searchTerm, int maxEdits, int limit) {
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    List<String> searchedWords = RelevanceIndex.titleWords(searchTerm);
+    int[] results = new int[16];
+    int[] edits = new int[16];
+    int size = 0;
+    Deadline deadline = Deadline.current();
+    for (int ordinal = 0; ordinal < store.size() && !searchedWords.isEmpty(); ordinal++) {
+      if (deadline.shouldStop(ordinal)) {
+        break;
+      }
+      if (store.isFlagged(ordinal)) {
+        continue;
+      }
+      List<String> titleWords = RelevanceIndex.titleWords(store.getTitle(ordinal));
+      int totalEdits = 0;
+      for (String searchedWord: searchedWords) {
+        int wordMaxEdits = maxEdits == -1 ? defaultMaxEdits(searchedWord) : maxEdits;
+        int wordEdits = Integer.MAX_VALUE;
+        for (String titleWord: titleWords) {
+          if (Math.abs(titleWord.length() - searchedWord.length()) <= wordMaxEdits) {
+            wordEdits = Math.min(wordEdits, distance(titleWord, searchedWord));
+          }
+        }
+        if (wordEdits > wordMaxEdits) {
+          totalEdits = -1;
+          break;
+        }
+        totalEdits += wordEdits;
+      }
+      if (totalEdits >= 0) {
+        if (size == results.length) {
+          results = Arrays.copyOf(results, size * 2);
+          edits = Arrays.copyOf(edits, size * 2);
+        }
+        results[size] = ordinal;
+        edits[size++] = totalEdits;
+      }
+    }
+    event.commitIfLarge("searchVideosFuzzy", store.size(), size);
+    return best(results, edits, size, limit);
+  }
+
+  /**
+   * Get the best videos: by increasing number of edits, then by title, then by ordinal.
+   * When there are more videos than the limit, the videos are picked by going through the title index, instead of
+   * reading and sorting the titles of all the videos, which a frequent word can make most of the library.
+   * @param ordinals The ordinals of the videos
+   * @param edits The number of edits of each video
+   * @param size The number of videos
+   * @param limit The maximum number of videos
+   * @return The ordinals of the best videos
+   */
+  private int[] best(int[] ordinals, int[] edits, int size, int limit) {
+    int[] titleOrder = size > limit ? titleIndex.getOrdinals() : null;
+    if (titleOrder == null) {
+      int[] sorted = sort(ordinals, edits, size);
+      return sorted.length > limit ? Arrays.copyOf(sorted, limit) : sorted;
+    }
+
+    //We count the videos of each number of edits, to know how many videos to pick with each number of edits
+    int maxEdits = 0;
+    for (int index = 0; index < size; index++) {
+      maxEdits = Math.max(maxEdits, edits[index]);
+    }
+    int[] counts = new int[maxEdits + 1];
+    for (int index = 0; index < size; index++) {
+      counts[edits[index]]++;
+    }
+    int[] positions = new int[maxEdits + 1]; //The position in best of the next video with each number of edits
+    int[] ends = new int[maxEdits + 1];
+    for (int group = 0, picked = 0; group <= maxEdits; group++) {
+      positions[group] = picked;
+      picked += Math.min(counts[group], limit - picked);
+      ends[group] = picked;
+    }
+    int[] editsPerOrdinal = new int[store.size()];
+    Arrays.fill(editsPerOrdinal, -1);
+    for (int index = 0; index < size; index++) {
+      editsPerOrdinal[ordinals[index]] = edits[index];
+    }
+
+    int[] best = new int[limit];
+    for (int position = 0, picked = 0; position < titleOrder.length && picked < limit; position++) {
+      int ordinal = titleOrder[position];
+      int videoEdits = editsPerOrdinal[ordinal];
+      if (videoEdits >= 0 && positions[videoEdits] < ends[videoEdits]) {
+        best[positions[videoEdits]++] = ordinal;
+        picked++;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Sort videos by increasing number of edits, then by title, then by ordinal.
+   * @param ordinals The ordinals of the videos
+   * @param edits The number of edits of each video
+   * @param size The number of videos
+   * @return The sorted ordinals
+   */
+  private int[] sort(int[] ordinals, int[] edits, int size) {
+    String[] titles = new String[size];
+    int[] positions = new int[size];
+    for (int index = 0; index < size; index++) {
+      titles[index] = store.getTitle(ordinals[index]);
+      positions[index] = index;
+    }
+    IntSorter.sort(positions, 0, size, (first, second) -> {
+      int comparison = Integer.compare(edits[first], edits[second]);
+      if (comparison == 0) {
+        comparison = titles[first].compareTo(titles[second]);
+      }
+      return comparison != 0 ? comparison : Integer.compare(ordinals[first], ordinals[second]);
+    });
+    int[] sorted = new int[size];
+    for (int index = 0; index < size; index++) {
+      sorted[index] = ordinals[positions[index]];
+    }
+    return sorted;
+  }
+
+  /**
+   * Get the BK-tree of the title words, building it if needed.
+   * @return The tree, or null if the index or the relevance index is disabled, or being built in the background
+   */
+  private Tree getTree() {
+    Tree tree = this.tree;
+    if (tree == null && enabled) {
+      if (!indexBuilder.buildsNow(this, this::getTree)) {
+        return null;
+      }
+      synchronized (this) {
+        tree = this.tree;
+        if (tree == null && enabled) {
+          List<String> words = relevanceIndex.getTitleWords();
+          if (words == null) {
+            return null;
+          }
+          IndexBuildEvent event = new IndexBuildEvent();
+          event.begin();
+          words.sort(null); //The tree does not depend on the order of the words in the relevance index
+          tree = new Tree(words);
+          this.tree = tree;
+          event.index = "Title words BK-tree";
+          event.entries = words.size();
+          event.bytes = estimateBytes(tree);
+          event.attempts = 1;
+          event.commit();
+        }
+      }
+    }
+    return tree;
+  }
+
+  /**
+   * Build the index now rather than on first use, if the index it replaces is built.
+   * @param previous The index of the library replaced by a reload of the catalog
+   */
+  void warmUp(FuzzyIndex previous) {
+    if (previous.tree != null) {
+      getTree();
+    }
+  }
+
+  /**
+   * Enable or disable the index. A disabled index is dropped, and is built again once it is enabled and used.
+   */
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      tree = null;
+    }
+  }
+
+  /**
+   * Drop the index after videos are appended to the store, as their titles can have new words. It is built again on
+   * the next use.
+   */
+  synchronized void invalidate() {
+    tree = null;
+  }
+
+  private static long estimateBytes(Tree tree) {
+    long bytes = MemoryReport.array(tree.words.length, MemoryReport.REFERENCE)
+        + 3 * MemoryReport.array(tree.words.length, 4);
+    for (String word: tree.words) {
+      bytes += MemoryReport.string(word);
+    }
+    return bytes;
+  }
+
+  /**
+   * Add the estimated memory used by the index to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    Tree tree = this.tree;
+    report.add("Fuzzy index", tree == null ? 0 : estimateBytes(tree),
+        tree == null ? "not built" : tree.words.length + " title words");
+  }
+}
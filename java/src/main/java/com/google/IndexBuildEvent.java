@@ -0,0 +1,30 @@
+package com.google;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event emitted when an index of the videos of the library is built.
+ */
+@Name("com.google.youtube.IndexBuild")
+@Label("Index Build")
+@Category("YouTube")
+@Description("Building of an index of the videos of the library")
+class IndexBuildEvent extends jdk.jfr.Event {
+
+  @Label("Index")
+  String index;
+
+  @Label("Entries")
+  long entries;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+
+  @Label("Attempts")
+  int attempts;
+}
@@ -0,0 +1,57 @@
+package com.google;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A class used to build the indexes of a library outside of the time budget of the commands.
+ * Building an index goes through all the videos, which takes seconds for a large library: a command with a time
+ * budget that finds an index not built does not build it, it starts building it on a background thread and scans the
+ * videos meanwhile, within its budget. The commands without a budget build the indexes they use themselves.
+ * The background builds run one at a time, while holding the read lock of the library as a command does, so that no
+ * videos are appended during a build.
+ */
+final class IndexBuilder {
+
+  private static final ExecutorService buildThread = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "index-builder");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final Consumer<Runnable> reader;
+  private final Set<Object> pendingBuilds = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param reader Runs an action while no videos are appended to the library, e.g. VideoLibrary.read
+   */
+  IndexBuilder(Consumer<Runnable> reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Check if the current thread builds an index itself, or lets the background thread build it.
+   * @param index The index, built once at a time in the background
+   * @param build The action building the index, run without a deadline
+   * @return True if the command run by the current thread has no time budget, and must build the index; false if
+   *     the index is built in the background, and the command must scan the videos until it is built
+   */
+  boolean buildsNow(Object index, Runnable build) {
+    if (!Deadline.current().hasBudget()) {
+      return true;
+    }
+    if (pendingBuilds.add(index)) {
+      buildThread.execute(() -> {
+        try {
+          reader.accept(build);
+        } finally {
+          pendingBuilds.remove(index);
+        }
+      });
+    }
+    return false;
+  }
+}
@@ -0,0 +1,68 @@
+package com.google;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A class used to sort ints, e.g. ordinals, in the order of a comparator, without boxing them into an Integer[].
+ * The sort is a merge sort, so it is stable: ints the comparator finds equal keep their order. The merges only copy
+ * the first half of a run, into a buffer of half the size of the sorted range.
+ */
+final class IntSorter {
+
+  //The length of the runs sorted by insertion, below which a merge sort costs more than it saves
+  private static final int INSERTION_SORT_THRESHOLD = 32;
+
+  private IntSorter() {
+  }
+
+  /**
+   * Sort a range of an array, stably.
+   * @param values The array to sort
+   * @param from The index of the first int to sort
+   * @param to The index after the last int to sort
+   * @param comparator The comparator of two ints, negative if the first one comes first
+   */
+  static void sort(int[] values, int from, int to, IntBinaryOperator comparator) {
+    if (to - from > INSERTION_SORT_THRESHOLD) {
+      sort(values, from, to, new int[(to - from + 1) / 2], comparator);
+    } else {
+      insertionSort(values, from, to, comparator);
+    }
+  }
+
+  private static void sort(int[] values, int from, int to, int[] buffer, IntBinaryOperator comparator) {
+    if (to - from <= INSERTION_SORT_THRESHOLD) {
+      insertionSort(values, from, to, comparator);
+      return;
+    }
+    int middle = (from + to) >>> 1;
+    sort(values, from, middle, buffer, comparator);
+    sort(values, middle, to, buffer, comparator);
+    if (comparator.applyAsInt(values[middle - 1], values[middle]) <= 0) {
+      return; //The two runs are already in order
+    }
+    //We merge the first run, moved to the buffer, with the second one, in place
+    int firstLength = middle - from;
+    System.arraycopy(values, from, buffer, 0, firstLength);
+    int first = 0;
+    int second = middle;
+    int merged = from;
+    while (first < firstLength && second < to) {
+      //An int of the second run only goes first when it is strictly lower, to keep the sort stable
+      values[merged++] = comparator.applyAsInt(values[second], buffer[first]) < 0 ? values[second++] : buffer[first++];
+    }
+    System.arraycopy(buffer, first, values, merged, firstLength - first);
+  }
+
+  private static void insertionSort(int[] values, int from, int to, IntBinaryOperator comparator) {
+    for (int index = from + 1; index < to; index++) {
+      int value = values[index];
+      int position = index;
+      while (position > from && comparator.applyAsInt(values[position - 1], value) > 0) {
+        values[position] = values[position - 1];
+        position--;
+      }
+      values[position] = value;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.google;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class used to record latencies in a log-bucketed histogram.
+ * Each power of two is split into 32 linear sub-buckets, so recorded values are kept with a precision of about 3%.
+ * Recording never takes a lock, so a histogram can be shared by the threads executing commands.
+ */
+final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalValue = new LongAdder();
+  private final AtomicLong maxValue = new AtomicLong();
+
+  /**
+   * Record a value.
+   * @param value The value to record, in nanoseconds. Negative values are recorded as 0
+   */
+  void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(bucketIndex(value));
+    totalCount.increment();
+    totalValue.add(value);
+
+    long max = maxValue.get();
+    while (value > max && !maxValue.compareAndSet(max, value)) {
+      max = maxValue.get();
+    }
+  }
+
+  /**
+   * Get the number of recorded values.
+   * @return The number of recorded values
+   */
+  long getCount() {
+    return totalCount.sum();
+  }
+
+  /**
+   * Get the sum of the recorded values.
+   * @return The sum of the recorded values, in nanoseconds
+   */
+  long getSum() {
+    return totalValue.sum();
+  }
+
+  /**
+   * Get the largest recorded value.
+   * @return The largest recorded value, in nanoseconds
+   */
+  long getMax() {
+    return maxValue.get();
+  }
+
+  /**
+   * Get the value below which the given fraction of the recorded values fall.
+   * @param quantile The quantile, between 0 and 1
+   * @return The upper bound of the bucket containing the quantile (capped by the max), 0 if nothing was recorded
+   */
+  long getValueAtQuantile(double quantile) {
+    long count = 0;
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int index = 0; index < BUCKET_COUNT; index++) {
+      snapshot[index] = counts.get(index);
+      count += snapshot[index];
+    }
+    if (count == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    long seen = 0;
+    for (int index = 0; index < BUCKET_COUNT; index++) {
+      seen += snapshot[index];
+      if (seen >= rank) {
+        return Math.min(highestValueOf(index), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Get the index of the bucket a value is recorded in.
+   */
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int highestBit = 63 - Long.numberOfLeadingZeros(value);
+    int shift = highestBit - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift); //Between SUB_BUCKET_COUNT and 2 * SUB_BUCKET_COUNT - 1
+    return (shift + 1) * SUB_BUCKET_COUNT + subBucket - SUB_BUCKET_COUNT;
+  }
+
+  /**
+   * Get the largest value recorded in the given bucket.
+   */
+  static long highestValueOf(int bucketIndex) {
+    if (bucketIndex < SUB_BUCKET_COUNT) {
+      return bucketIndex;
+    }
+    int shift = bucketIndex / SUB_BUCKET_COUNT - 1;
+    long subBucket = bucketIndex % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,200 @@
+package com.google;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A class used to replay a random mix of commands through the CommandParser, and report the throughput and the
+ * latency percentiles.
+ *
+ * In closed-loop mode each command starts as soon as the previous one is done. In fixed-rate mode commands are
+ * scheduled at regular intervals, and latencies are measured from the scheduled start rather than the actual start,
+ * so that commands delayed by a slow command are accounted for (coordinated omission correction).
+ *
+ * Usage: LoadDriver --catalog=catalog.txt [--operations=100000] [--warmup=10000] [--rate=0 (closed loop)]
+ * [--mix=search:30,tag:20,play:30,flag:10,playlist:10] [--seed=42]
+ */
+class LoadDriver {
+
+  /**
+   * The kinds of commands of the mix.
+   */
+  enum Operation {
+    SEARCH, TAG, PLAY, FLAG, PLAYLIST
+  }
+
+  private final CommandParser commandParser;
+  private final String[] videoIds;
+  private final String[] tags;
+  private final String[] titleWords;
+  private final Operation[] operationOfWeight;
+  private final Random random;
+  private int playlistEdits = 0;
+
+  /**
+   * @param videoPlayer The video player the commands are sent to, it must not be interactive
+   * @param videoLibrary The library of the video player, used to pick existing video ids, tags and title words
+   * @param mix The weight of each kind of command in the mix
+   * @param seed The seed of the random generator picking the commands
+   */
+  LoadDriver(VideoPlayer videoPlayer, VideoLibrary videoLibrary, Map<Operation, Integer> mix, long seed) {
+    this.commandParser = new CommandParser(videoPlayer);
+    this.random = new Random(seed);
+
+    List<String> ids = new ArrayList<>();
+    LinkedHashSet<String> distinctTags = new LinkedHashSet<>();
+    LinkedHashSet<String> words = new LinkedHashSet<>();
+    for (Video video: videoLibrary.getVideos()) {
+      ids.add(video.getVideoId());
+      distinctTags.addAll(video.getTags());
+      if (words.size() < 100_000) {
+        for (String word: video.getTitle().toLowerCase().split(" ")) {
+          words.add(word);
+        }
+      }
+    }
+    this.videoIds = ids.toArray(new String[0]);
+    this.tags = distinctTags.toArray(new String[0]);
+    this.titleWords = words.toArray(new String[0]);
+
+    List<Operation> weights = new ArrayList<>();
+    for (Map.Entry<Operation, Integer> entry: mix.entrySet()) {
+      for (int weight = 0; weight < entry.getValue(); weight++) {
+        weights.add(entry.getKey());
+      }
+    }
+    this.operationOfWeight = weights.toArray(new Operation[0]);
+
+    commandParser.executeCommand(List.of("CREATE_PLAYLIST", "load"));
+  }
+
+  /**
+   * Pick the next command of the mix.
+   * @return The command words
+   */
+  List<String> nextCommand() {
+    Operation operation = operationOfWeight[random.nextInt(operationOfWeight.length)];
+    switch (operation) {
+      case SEARCH:
+        return List.of("SEARCH_VIDEOS", titleWords[random.nextInt(titleWords.length)]);
+      case TAG:
+        return tags.length == 0 ? List.of("NUMBER_OF_VIDEOS")
+            : List.of("SEARCH_VIDEOS_WITH_TAG", tags[random.nextInt(tags.length)]);
+      case PLAY:
+        return List.of("PLAY", randomVideoId());
+      case FLAG:
+        //Allow as many videos as are flagged, so the share of flagged videos stays small
+        return random.nextBoolean() ? List.of("FLAG_VIDEO", randomVideoId(), "load")
+            : List.of("ALLOW_VIDEO", randomVideoId());
+      default:
+        playlistEdits++;
+        return List.of(playlistEdits % 2 == 0 ? "REMOVE_FROM_PLAYLIST" : "ADD_TO_PLAYLIST", "load",
+            randomVideoId());
+    }
+  }
+
+  private String randomVideoId() {
+    return videoIds[random.nextInt(videoIds.length)];
+  }
+
+  /**
+   * Run the given number of commands and record their latencies.
+   * @param operations The number of commands
+   * @param rate The number of commands per second, 0 to run in closed loop
+   * @param latencies The histogram the latencies are recorded into
+   * @return The duration of the run, in nanoseconds
+   */
+  long run(int operations, double rate, LatencyHistogram latencies) {
+    long intervalNanos = rate > 0 ? (long) (1e9 / rate) : 0;
+    long start = System.nanoTime();
+    for (int index = 0; index < operations; index++) {
+      List<String> command = nextCommand();
+      long scheduledStart;
+      if (intervalNanos > 0) {
+        scheduledStart = start + index * intervalNanos;
+        long wait;
+        while ((wait = scheduledStart - System.nanoTime()) > 0) {
+          LockSupport.parkNanos(wait);
+        }
+      } else {
+        scheduledStart = System.nanoTime();
+      }
+      commandParser.executeCommand(command);
+      latencies.record(System.nanoTime() - scheduledStart);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Parse "--key=value" arguments.
+   */
+  static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg: args) {
+      String option = arg.startsWith("--") ? arg.substring(2) : arg;
+      int separator = option.indexOf('=');
+      if (separator > 0) {
+        options.put(option.substring(0, separator), option.substring(separator + 1));
+      } else {
+        options.put(option, "true");
+      }
+    }
+    return options;
+  }
+
+  /**
+   * Parse a command mix such as "search:30,tag:20,play:30,flag:10,playlist:10".
+   */
+  static Map<Operation, Integer> parseMix(String mix) {
+    Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    for (String entry: mix.split(",")) {
+      String[] split = entry.split(":");
+      weights.put(Operation.valueOf(split[0].strip().toUpperCase(Locale.ROOT)), Integer.parseInt(split[1].strip()));
+    }
+    return weights;
+  }
+
+  public static void main(String[] args) {
+    Map<String, String> options = parseOptions(args);
+    if (!options.containsKey("catalog")) {
+      System.out.println("Please enter --catalog=<file> and the optional load settings.");
+      return;
+    }
+    int operations = Integer.parseInt(options.getOrDefault("operations", "100000"));
+    int warmup = Integer.parseInt(options.getOrDefault("warmup", "10000"));
+    double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+
+    //The output of the commands is not part of the measure
+    PrintStream console = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+    VideoLibrary videoLibrary = new VideoLibrary(new File(options.get("catalog")));
+    VideoPlayer videoPlayer = new VideoPlayer(videoLibrary);
+    videoPlayer.setInteractive(false);
+    LoadDriver driver = new LoadDriver(videoPlayer, videoLibrary,
+        parseMix(options.getOrDefault("mix", "search:30,tag:20,play:30,flag:10,playlist:10")),
+        Long.parseLong(options.getOrDefault("seed", "42")));
+
+    driver.run(warmup, rate, new LatencyHistogram());
+    LatencyHistogram latencies = new LatencyHistogram();
+    long duration = driver.run(operations, rate, latencies);
+    System.setOut(console);
+
+    console.printf(Locale.ROOT, "%d commands in %.2f s (%s): %.0f commands/s%n", operations, duration / 1e9,
+        rate > 0 ? "fixed rate of " + rate + "/s" : "closed loop", operations / (duration / 1e9));
+    console.printf(Locale.ROOT, "Latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+        latencies.getValueAtQuantile(0.5) / 1e3, latencies.getValueAtQuantile(0.9) / 1e3,
+        latencies.getValueAtQuantile(0.99) / 1e3, latencies.getValueAtQuantile(0.999) / 1e3,
+        latencies.getMax() / 1e3);
+  }
+}
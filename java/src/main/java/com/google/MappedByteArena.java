@@ -0,0 +1,56 @@
+package com.google;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class used to store byte strings in a memory-mapped temporary file instead of direct memory.
+ * The operating system keeps the recently read pages in memory and can write the others back to the file,
+ * so that rarely read entries do not take any memory.
+ * Closing the arena deletes the file: the chunks already mapped stay readable until they are garbage collected.
+ */
+class MappedByteArena extends ByteArena {
+
+  private final FileChannel channel;
+  private long fileSize = 0;
+
+  /**
+   * @param directory The directory the file of the arena is created in. The file is deleted when the JVM exits
+   * @param name The prefix of the name of the file
+   */
+  MappedByteArena(Path directory, String name) {
+    try {
+      Path file = Files.createTempFile(directory, name, ".arena");
+      channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.DELETE_ON_CLOSE);
+      file.toFile().deleteOnExit();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  protected ByteBuffer allocateChunk(int size) {
+    try {
+      ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, size);
+      fileSize += size;
+      return chunk;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
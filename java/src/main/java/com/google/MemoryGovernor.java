@@ -0,0 +1,206 @@
+package com.google;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * A class used to drop the optional structures of the video player when the heap is almost full, before the JVM
+ * runs out of memory, and to bring them back once the memory is available again.
+ * Optional structures are registered with a priority: caches are dropped first, then the indexes that can be
+ * rebuilt, the commands falling back to scanning the videos. The usage of the old generation measured after each
+ * garbage collection is compared to a ceiling: the JVM notifies the governor as soon as it goes over the shed ratio
+ * of the ceiling, and the governor checks periodically whether it went back under the restore ratio.
+ * A single priority is dropped at a time, and the next one is only dropped if the usage is still too high after
+ * another garbage collection.
+ */
+class MemoryGovernor implements AutoCloseable {
+
+  /**
+   * The priorities of the optional structures, in the order they are dropped.
+   */
+  enum Priority {
+    CACHE,
+    INDEX
+  }
+
+  private static final class Registration {
+    private final String name;
+    private final Priority priority;
+    private final Runnable shed;
+    private final Runnable restore;
+
+    private Registration(String name, Priority priority, Runnable shed, Runnable restore) {
+      this.name = name;
+      this.priority = priority;
+      this.shed = shed;
+      this.restore = restore;
+    }
+  }
+
+  private final long ceiling;
+  private final double shedRatio;
+  private final double restoreRatio;
+  private final Metrics metrics;
+  private final List<Registration> registrations = new ArrayList<>();
+  private int shedPriorities = 0; //The number of priorities currently dropped, from the first one
+  private long collectionsAtLastShed = -1;
+  private final List<MemoryPoolMXBean> oldGenerationPools = new ArrayList<>();
+  private final NotificationListener listener = this::handleNotification;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param ceiling The heap usage, in bytes, the optional structures must keep the heap under
+   * @param shedRatio The ratio of the ceiling over which the optional structures are dropped
+   * @param restoreRatio The ratio of the ceiling under which the dropped structures are restored
+   * @param metrics The metrics the sheds and restores are counted in
+   */
+  MemoryGovernor(long ceiling, double shedRatio, double restoreRatio, Metrics metrics) {
+    this.ceiling = ceiling;
+    this.shedRatio = shedRatio;
+    this.restoreRatio = restoreRatio;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Register an optional structure. A structure registered with the name of a registered structure replaces it, e.g.
+   * the indexes of a reloaded catalog replace the indexes of the previous catalog.
+   * @param name The name of the structure
+   * @param priority The priority of the structure, CACHE structures are dropped before INDEX structures
+   * @param shed Drops the structure, so that its memory can be reclaimed
+   * @param restore Brings the structure back
+   */
+  synchronized void register(String name, Priority priority, Runnable shed, Runnable restore) {
+    Registration registration = new Registration(name, priority, shed, restore);
+    registrations.removeIf(registered -> registered.name.equals(name));
+    registrations.add(registration);
+    if (priority.ordinal() < shedPriorities) {
+      registration.shed.run();
+    }
+  }
+
+  /**
+   * Start listening to the heap usage of the JVM.
+   * @param checkIntervalSeconds The number of seconds between two checks of whether the structures can be restored
+   */
+  synchronized void start(long checkIntervalSeconds) {
+    //Only the old generation supports usage thresholds, the young generation is emptied by each collection anyway
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+          && pool.isCollectionUsageThresholdSupported()) {
+        oldGenerationPools.add(pool);
+        long max = pool.getUsage().getMax();
+        long threshold = (long) (ceiling * shedRatio);
+        pool.setCollectionUsageThreshold(Math.max(1, max > 0 ? Math.min(threshold, max) : threshold));
+      }
+    }
+    ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(listener, null, null);
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "memory-governor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::checkHeap, checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+  }
+
+  private void handleNotification(Notification notification, Object handback) {
+    if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+      checkHeap();
+    }
+  }
+
+  private void checkHeap() {
+    long used = 0;
+    for (MemoryPoolMXBean pool: oldGenerationPools) {
+      if (pool.getCollectionUsage() != null) {
+        used += pool.getCollectionUsage().getUsed();
+      }
+    }
+    long collections = 0;
+    for (GarbageCollectorMXBean collector: ManagementFactory.getGarbageCollectorMXBeans()) {
+      collections += Math.max(0, collector.getCollectionCount());
+    }
+    check(used, collections);
+  }
+
+  /**
+   * Drop or restore the optional structures of one priority, depending on the heap usage.
+   * @param used The usage of the old generation after the last garbage collection
+   * @param collections The number of garbage collections so far, a priority is only dropped if there was a
+   *     collection since the previous one was dropped, so that the memory it used is not counted anymore
+   */
+  synchronized void check(long used, long collections) {
+    if (used > ceiling * shedRatio && shedPriorities < Priority.values().length
+        && collections > collectionsAtLastShed) {
+      collectionsAtLastShed = collections;
+      Priority priority = Priority.values()[shedPriorities++];
+      for (Registration registration: registrations) {
+        if (registration.priority == priority) {
+          registration.shed.run();
+        }
+      }
+      metrics.counter("memory_sheds_total").increment();
+    } else if (used < ceiling * restoreRatio && shedPriorities > 0) {
+      Priority priority = Priority.values()[--shedPriorities];
+      for (Registration registration: registrations) {
+        if (registration.priority == priority) {
+          registration.restore.run();
+        }
+      }
+      metrics.counter("memory_restores_total").increment();
+    }
+  }
+
+  /**
+   * Get the names of the structures currently dropped.
+   */
+  synchronized List<String> getShedStructures() {
+    List<String> names = new ArrayList<>();
+    for (Registration registration: registrations) {
+      if (registration.priority.ordinal() < shedPriorities) {
+        names.add(registration.name);
+      }
+    }
+    return names;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (scheduler == null) {
+      return;
+    }
+    scheduler.shutdown();
+    try {
+      ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(listener);
+    } catch (ListenerNotFoundException e) {
+      //The listener was already removed
+    }
+    for (MemoryPoolMXBean pool: oldGenerationPools) {
+      pool.setCollectionUsageThreshold(0);
+    }
+  }
+
+  /**
+   * Create a governor configured with the system properties youtube.memory.ceiling (the maximum heap size by
+   * default), youtube.memory.shedRatio (0.85 by default) and youtube.memory.restoreRatio (0.6 by default).
+   */
+  static MemoryGovernor fromSystemProperties(Metrics metrics) {
+    long ceiling = Long.getLong("youtube.memory.ceiling", Runtime.getRuntime().maxMemory());
+    return new MemoryGovernor(ceiling,
+        Double.parseDouble(System.getProperty("youtube.memory.shedRatio", "0.85")),
+        Double.parseDouble(System.getProperty("youtube.memory.restoreRatio", "0.6")),
+        metrics);
+  }
+}
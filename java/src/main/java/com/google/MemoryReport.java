@@ -0,0 +1,199 @@
+package com.google;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A class used to estimate the memory retained by the data structures of the video player, on and off the heap.
+ * Sizes are computed from the HotSpot object layout (object headers, references and 8-byte alignment),
+ * and each structure adds its own line to the report.
+ */
+class MemoryReport {
+
+  /** The size of a reference, 4 bytes with compressed oops. */
+  static final int REFERENCE = usesCompressedOops() ? 4 : 8;
+  /** The size of an object header. */
+  static final int OBJECT_HEADER = usesCompressedOops() ? 12 : 16;
+  /** The size of an array header, including its length. */
+  static final int ARRAY_HEADER = usesCompressedOops() ? 16 : 24;
+  /** The size of a String object, without its characters. */
+  static final long STRING = object(REFERENCE + 4 + 1 + 1);
+  /** The size of a HashMap node. */
+  static final long HASH_MAP_NODE = object(4 + 3 * REFERENCE);
+  /** The size of a TreeMap entry. */
+  static final long TREE_MAP_ENTRY = object(5 * REFERENCE + 1);
+  /** The size of an ArrayList object, without its elements array. */
+  static final long ARRAY_LIST = object(4 + 4 + REFERENCE);
+
+  private final List<String> names = new ArrayList<>();
+  private final List<Long> sizes = new ArrayList<>();
+  private final List<String> details = new ArrayList<>();
+  private final List<Boolean> offHeap = new ArrayList<>();
+
+  /**
+   * Add a structure stored on the heap to the report.
+   * @param name The name of the structure
+   * @param bytes The estimated retained size of the structure
+   * @param detail Additional information displayed next to the size, can be empty
+   */
+  void add(String name, long bytes, String detail) {
+    names.add(name);
+    sizes.add(bytes);
+    details.add(detail);
+    offHeap.add(false);
+  }
+
+  /**
+   * Add a structure stored outside of the heap (direct or mapped buffers) to the report.
+   * @param name The name of the structure
+   * @param bytes The allocated size of the structure
+   * @param detail Additional information displayed next to the size, can be empty
+   */
+  void addOffHeap(String name, long bytes, String detail) {
+    add(name, bytes, detail);
+    offHeap.set(offHeap.size() - 1, true);
+  }
+
+  /**
+   * Get the sum of the sizes of the structures of the report stored on the heap.
+   * @return The total estimated heap size in bytes
+   */
+  long getTotal() {
+    return getTotal(false);
+  }
+
+  /**
+   * Get the sum of the sizes of the structures of the report stored outside of the heap.
+   * @return The total off-heap size in bytes
+   */
+  long getOffHeapTotal() {
+    return getTotal(true);
+  }
+
+  private long getTotal(boolean ofOffHeap) {
+    long total = 0;
+    for (int index = 0; index < sizes.size(); index++) {
+      if (offHeap.get(index) == ofOffHeap) {
+        total += sizes.get(index);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Get the estimated size of a structure of the report.
+   * @param name The name of the structure
+   * @return The estimated size in bytes, 0 if the structure is not in the report
+   */
+  long getSize(String name) {
+    int index = names.indexOf(name);
+    return index < 0 ? 0 : sizes.get(index);
+  }
+
+  /**
+   * Print the report, followed by the total and the given averages.
+   */
+  void print(PrintStream out, long numberOfVideos, long numberOfPlaylistEntries, long playlistBytes) {
+    out.println("Estimated memory usage:");
+    for (int index = 0; index < names.size(); index++) {
+      String detail = offHeap.get(index) ? "off-heap" : "";
+      if (!details.get(index).isEmpty()) {
+        detail = detail.isEmpty() ? details.get(index) : detail + ", " + details.get(index);
+      }
+      out.println("  " + names.get(index) + ": " + formatBytes(sizes.get(index))
+          + (detail.isEmpty() ? "" : " (" + detail + ")"));
+    }
+    out.println("  Total: " + formatBytes(getTotal()) + " on heap, " + formatBytes(getOffHeapTotal()) + " off-heap");
+    out.printf(Locale.ROOT, "  Per video: %.1f bytes on heap, %.1f bytes off-heap%n",
+        numberOfVideos == 0 ? 0.0 : (double) (getTotal() - playlistBytes) / numberOfVideos,
+        numberOfVideos == 0 ? 0.0 : (double) getOffHeapTotal() / numberOfVideos);
+    out.printf(Locale.ROOT, "  Per playlist entry: %.1f bytes%n",
+        numberOfPlaylistEntries == 0 ? 0.0 : (double) playlistBytes / numberOfPlaylistEntries);
+  }
+
+  private static String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + " B";
+    }
+    if (bytes < 1024 * 1024) {
+      return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+    }
+    return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024.0));
+  }
+
+  /**
+   * Get the size of an object with fields of the given total size.
+   */
+  static long object(long fieldsBytes) {
+    return align(OBJECT_HEADER + fieldsBytes);
+  }
+
+  /**
+   * Get the size of an array.
+   * @param length The length of the array
+   * @param elementBytes The size of an element (REFERENCE for an array of objects)
+   */
+  static long array(long length, int elementBytes) {
+    return align(ARRAY_HEADER + length * elementBytes);
+  }
+
+  /**
+   * Get the size of a String and its characters, stored with one byte per character when possible.
+   */
+  static long string(String string) {
+    int bytesPerCharacter = 1;
+    for (int index = 0; index < string.length(); index++) {
+      if (string.charAt(index) > 0xFF) {
+        bytesPerCharacter = 2;
+        break;
+      }
+    }
+    return STRING + array(string.length(), bytesPerCharacter);
+  }
+
+  /**
+   * Get the size of a HashMap with the given number of entries, its keys and values excluded.
+   */
+  static long hashMap(long entries) {
+    long capacity = 0;
+    if (entries > 0) {
+      capacity = 16;
+      while (entries > capacity * 3 / 4) {
+        capacity *= 2;
+      }
+    }
+    return object(4 * 4 + 4 * REFERENCE) + (capacity == 0 ? 0 : array(capacity, REFERENCE))
+        + entries * HASH_MAP_NODE;
+  }
+
+  /**
+   * Get the capacity of an ArrayList after the given number of elements were added one by one.
+   */
+  static long arrayListCapacity(long elements) {
+    if (elements == 0) {
+      return 0;
+    }
+    long capacity = 10;
+    while (capacity < elements) {
+      capacity += capacity >> 1;
+    }
+    return capacity;
+  }
+
+  private static long align(long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+  private static boolean usesCompressedOops() {
+    try {
+      com.sun.management.HotSpotDiagnosticMXBean diagnostic =
+          ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+      return diagnostic == null || Boolean.parseBoolean(diagnostic.getVMOption("UseCompressedOops").getValue());
+    } catch (RuntimeException e) {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.google;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class used to collect the metrics of the video player: a latency histogram per command,
+ * named latency histograms of the internal operations, and named counters.
+ */
+class Metrics {
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+  /**
+   * Get the latency histogram of a command, creating it if needed.
+   * @param command The (upper case) command word
+   * @return The latency histogram of the command
+   */
+  LatencyHistogram latency(String command) {
+    LatencyHistogram histogram = latencies.get(command);
+    if (histogram == null) {
+      histogram = latencies.computeIfAbsent(command, key -> new LatencyHistogram());
+    }
+    return histogram;
+  }
+
+  /**
+   * Get the latency histogram of an internal operation, creating it if needed.
+   * @param name The name of the histogram
+   * @return The latency histogram
+   */
+  LatencyHistogram histogram(String name) {
+    LatencyHistogram histogram = histograms.get(name);
+    if (histogram == null) {
+      histogram = histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+    return histogram;
+  }
+
+  /**
+   * Get a counter by name, creating it if needed.
+   * @param name The name of the counter
+   * @return The counter
+   */
+  LongAdder counter(String name) {
+    LongAdder counter = counters.get(name);
+    if (counter == null) {
+      counter = counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+    return counter;
+  }
+
+  /**
+   * Print the count and latency percentiles of every executed command and internal operation, and the counters.
+   * @param out The stream to print to
+   */
+  void printStats(PrintStream out) {
+    out.println("Command statistics (latency in microseconds):");
+    printHistograms(out, latencies);
+    if (!histograms.isEmpty()) {
+      out.println("Internal operations (latency in microseconds):");
+      printHistograms(out, histograms);
+    }
+    if (!counters.isEmpty()) {
+      out.println("Counters:");
+      for (Map.Entry<String, LongAdder> entry: new TreeMap<>(counters).entrySet()) {
+        out.printf("  %s: %d%n", entry.getKey(), entry.getValue().sum());
+      }
+    }
+  }
+
+  private static void printHistograms(PrintStream out, Map<String, LatencyHistogram> histograms) {
+    for (Map.Entry<String, LatencyHistogram> entry: new TreeMap<>(histograms).entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      out.printf(Locale.ROOT, "  %s: count=%d p50=%.1f p90=%.1f p99=%.1f max=%.1f%n",
+          entry.getKey(), histogram.getCount(),
+          histogram.getValueAtQuantile(0.5) / 1e3, histogram.getValueAtQuantile(0.9) / 1e3,
+          histogram.getValueAtQuantile(0.99) / 1e3, histogram.getMax() / 1e3);
+    }
+  }
+
+  /**
+   * Get all the metrics in the Prometheus text exposition format.
+   * @return The metrics as Prometheus text
+   */
+  String toPrometheusText() {
+    StringBuilder text = new StringBuilder();
+    text.append("# HELP youtube_command_latency_seconds Latency of the executed commands.\n");
+    text.append("# TYPE youtube_command_latency_seconds summary\n");
+    for (Map.Entry<String, LatencyHistogram> entry: new TreeMap<>(latencies).entrySet()) {
+      String command = entry.getKey();
+      LatencyHistogram histogram = entry.getValue();
+      for (double quantile: QUANTILES) {
+        text.append(String.format(Locale.ROOT,
+            "youtube_command_latency_seconds{command=\"%s\",quantile=\"%s\"} %.9f%n",
+            command, quantile, histogram.getValueAtQuantile(quantile) / 1e9));
+      }
+      text.append(String.format(Locale.ROOT, "youtube_command_latency_seconds_sum{command=\"%s\"} %.9f%n",
+          command, histogram.getSum() / 1e9));
+      text.append(String.format(Locale.ROOT, "youtube_command_latency_seconds_count{command=\"%s\"} %d%n",
+          command, histogram.getCount()));
+    }
+    for (Map.Entry<String, LatencyHistogram> entry: new TreeMap<>(histograms).entrySet()) {
+      String name = "youtube_" + entry.getKey().replaceAll("[^a-zA-Z0-9_]", "_") + "_seconds";
+      LatencyHistogram histogram = entry.getValue();
+      text.append("# TYPE ").append(name).append(" summary\n");
+      for (double quantile: QUANTILES) {
+        text.append(String.format(Locale.ROOT, "%s{quantile=\"%s\"} %.9f%n",
+            name, quantile, histogram.getValueAtQuantile(quantile) / 1e9));
+      }
+      text.append(String.format(Locale.ROOT, "%s_sum %.9f%n", name, histogram.getSum() / 1e9));
+      text.append(String.format(Locale.ROOT, "%s_count %d%n", name, histogram.getCount()));
+    }
+    for (Map.Entry<String, LongAdder> entry: new TreeMap<>(counters).entrySet()) {
+      String name = "youtube_" + entry.getKey().replaceAll("[^a-zA-Z0-9_]", "_");
+      text.append("# TYPE ").append(name).append(" counter\n");
+      text.append(name).append(' ').append(entry.getValue().sum()).append('\n');
+    }
+    return text.toString();
+  }
+}
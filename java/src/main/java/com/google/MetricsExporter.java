@@ -0,0 +1,57 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class used to periodically write the metrics to a local file, in the Prometheus text format.
+ * The file is replaced atomically, so a scraper never reads a partially written file.
+ */
+class MetricsExporter implements AutoCloseable {
+
+  private final Metrics metrics;
+  private final Path file;
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Start writing the metrics to the given file.
+   * @param metrics The metrics to write
+   * @param file The file the metrics are written to
+   * @param intervalSeconds The number of seconds between two writes
+   */
+  MetricsExporter(Metrics metrics, Path file, long intervalSeconds) {
+    this.metrics = metrics;
+    this.file = file.toAbsolutePath();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metrics-exporter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler.scheduleAtFixedRate(this::export, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Write the current metrics to the file.
+   */
+  void export() {
+    try {
+      Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(temporaryFile, metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8));
+      Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      System.err.println("Couldn't write the metrics to " + file + ": " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdown();
+    export();
+  }
+}
@@ -0,0 +1,271 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * A class used to scan the videos on several threads.
+ * A scan goes through a range of dense ordinals, or of positions in an array of ordinals. Above a size threshold, the
+ * range is split in chunks by a fork-join pool, each chunk is scanned on its own, and the results of the chunks are
+ * merged two by two, in the order of the chunks. Below the threshold, or with a single thread, the whole range is
+ * scanned by the calling thread, so that small catalogs do not pay for the tasks.
+ * The deadline of the calling thread is the deadline of every chunk.
+ */
+class ParallelScan implements AutoCloseable {
+
+  /** The number of videos above which a scan is split, by default. */
+  static final int DEFAULT_THRESHOLD = 65_536;
+
+  /** The smallest number of videos of a chunk. */
+  static final int MIN_CHUNK = 4096;
+
+  /**
+   * The scan of a chunk.
+   * @param <T> The type of the result of the scan
+   */
+  interface RangeScan<T> {
+    /**
+     * Scan a chunk.
+     * @param from The first ordinal, or position, of the chunk
+     * @param to The ordinal, or position, after the last one of the chunk
+     * @return The result of the chunk
+     */
+    T scan(int from, int to);
+  }
+
+  private final int parallelism;
+  private final int threshold;
+  private ForkJoinPool pool; //Created on the first scan above the threshold
+
+  /**
+   * @param parallelism The number of threads of the pool, 1 to always scan on the calling thread
+   * @param threshold The number of videos above which a scan is split
+   */
+  ParallelScan(int parallelism, int threshold) {
+    this.parallelism = Math.max(1, parallelism);
+    this.threshold = Math.max(1, threshold);
+  }
+
+  /**
+   * Create a scan with the number of threads of the system property youtube.parallel.threads (the number of
+   * processors by default) above the number of videos of youtube.parallel.threshold (65536 by default).
+   */
+  static ParallelScan fromSystemProperties() {
+    return new ParallelScan(Integer.getInteger("youtube.parallel.threads", Runtime.getRuntime().availableProcessors()),
+        Integer.getInteger("youtube.parallel.threshold", DEFAULT_THRESHOLD));
+  }
+
+  /**
+   * Get the number of threads the scans are split on.
+   */
+  int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Whether a scan of the given number of videos is split.
+   */
+  boolean isParallel(int size) {
+    return parallelism > 1 && size >= threshold;
+  }
+
+  private synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    return pool;
+  }
+
+  /**
+   * Scan a range split in chunks, and merge the results of the chunks.
+   * @param size The size of the range, starting at 0
+   * @param scan The scan of a chunk
+   * @param merge The merge of the results of two consecutive chunks, the first chunk first
+   * @return The result of the whole range
+   */
+  <T> T reduce(int size, RangeScan<T> scan, BinaryOperator<T> merge) {
+    Deadline deadline = Deadline.current();
+    if (!isParallel(size)) {
+      return scan.scan(0, size);
+    }
+    //A few chunks per thread, so that a thread finishing early takes over the chunks of another one
+    int chunk = Math.max(MIN_CHUNK, (size + 4 * parallelism - 1) / (4 * parallelism));
+    return getPool().invoke(new Chunk<>(0, size, chunk, scan, merge, deadline));
+  }
+
+  private static final class Chunk<T> extends RecursiveTask<T> {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int chunk;
+    private final RangeScan<T> scan;
+    private final BinaryOperator<T> merge;
+    private final Deadline deadline;
+
+    Chunk(int from, int to, int chunk, RangeScan<T> scan, BinaryOperator<T> merge, Deadline deadline) {
+      this.from = from;
+      this.to = to;
+      this.chunk = chunk;
+      this.scan = scan;
+      this.merge = merge;
+      this.deadline = deadline;
+    }
+
+    @Override
+    protected T compute() {
+      if (to - from <= chunk) {
+        Object[] result = new Object[1];
+        Deadline.run(deadline, () -> result[0] = scan.scan(from, to));
+        @SuppressWarnings("unchecked")
+        T chunkResult = (T) result[0];
+        return chunkResult;
+      }
+      int middle = (from + to) >>> 1;
+      Chunk<T> left = new Chunk<>(from, middle, chunk, scan, merge, deadline);
+      left.fork();
+      T right = new Chunk<>(middle, to, chunk, scan, merge, deadline).compute();
+      return merge.apply(left.join(), right);
+    }
+  }
+
+  /**
+   * Find the ordinals matching a predicate.
+   * @param size The number of videos
+   * @param matches The predicate tested on each ordinal
+   * @return The matching ordinals, in increasing order
+   */
+  int[] filter(int size, IntPredicate matches) {
+    return reduce(size, (from, to) -> filterRange(from, to, matches), ParallelScan::concat);
+  }
+
+  /**
+   * Find the ordinals of a chunk matching a predicate, on the calling thread.
+   * @param from The first ordinal of the chunk
+   * @param to The ordinal after the last one of the chunk
+   * @param matches The predicate tested on each ordinal
+   * @return The matching ordinals, in increasing order
+   */
+  static int[] filterRange(int from, int to, IntPredicate matches) {
+    Deadline deadline = Deadline.current();
+    int[] ordinals = new int[16];
+    int count = 0;
+    for (int ordinal = from; ordinal < to; ordinal++) {
+      if (deadline.shouldStop(ordinal - from)) {
+        break;
+      }
+      if (matches.test(ordinal)) {
+        if (count == ordinals.length) {
+          ordinals = Arrays.copyOf(ordinals, 2 * count);
+        }
+        ordinals[count++] = ordinal;
+      }
+    }
+    return Arrays.copyOf(ordinals, count);
+  }
+
+  /**
+   * Get all the ordinals of a chunk.
+   * @return The ordinals from the first one to the one before to
+   */
+  static int[] range(int from, int to) {
+    int[] ordinals = new int[to - from];
+    for (int ordinal = from; ordinal < to; ordinal++) {
+      ordinals[ordinal - from] = ordinal;
+    }
+    return ordinals;
+  }
+
+  private static int[] concat(int[] first, int[] second) {
+    int[] ordinals = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, ordinals, first.length, second.length);
+    return ordinals;
+  }
+
+  /**
+   * Sort videos by title, keeping the last video of each title as a TreeMap would.
+   * @param size The size of the range of ordinals, or positions, the candidates are read from
+   * @param candidates The ordinals of the candidates of a chunk, in increasing order
+   * @param titles The title of a video from its ordinal
+   * @return The ordinals of the videos, sorted by title, the highest ordinal being kept among the same titles
+   */
+  int[] sortByTitle(int size, RangeScan<int[]> candidates, IntFunction<String> titles) {
+    return reduce(size, (from, to) -> TitleRun.sort(candidates.scan(from, to), titles), TitleRun::merge).ordinals;
+  }
+
+  /**
+   * Ordinals sorted by title, one per title, with their title.
+   */
+  private static final class TitleRun {
+    final String[] titles;
+    final int[] ordinals;
+
+    TitleRun(String[] titles, int[] ordinals) {
+      this.titles = titles;
+      this.ordinals = ordinals;
+    }
+
+    static TitleRun sort(int[] candidates, IntFunction<String> titleOf) {
+      Deadline deadline = Deadline.current();
+      int[] order = new int[candidates.length];
+      String[] candidateTitles = new String[candidates.length];
+      int count = 0;
+      for (; count < candidates.length; count++) {
+        if (deadline.shouldStop(count)) {
+          break;
+        }
+        order[count] = count;
+        candidateTitles[count] = titleOf.apply(candidates[count]);
+      }
+      //The sort is stable: the candidates of the same title stay by increasing ordinal, and the last one is kept
+      IntSorter.sort(order, 0, count, (first, second) -> candidateTitles[first].compareTo(candidateTitles[second]));
+      String[] titles = new String[count];
+      int[] ordinals = new int[count];
+      int length = 0;
+      for (int position = 0; position < count; position++) {
+        int index = order[position];
+        if (length > 0 && titles[length - 1].equals(candidateTitles[index])) {
+          length--;
+        }
+        titles[length] = candidateTitles[index];
+        ordinals[length++] = candidates[index];
+      }
+      return new TitleRun(Arrays.copyOf(titles, length), Arrays.copyOf(ordinals, length));
+    }
+
+    static TitleRun merge(TitleRun first, TitleRun second) {
+      String[] titles = new String[first.titles.length + second.titles.length];
+      int[] ordinals = new int[titles.length];
+      int length = 0;
+      int i = 0;
+      int j = 0;
+      while (i < first.titles.length || j < second.titles.length) {
+        int comparison = i == first.titles.length ? 1
+            : j == second.titles.length ? -1 : first.titles[i].compareTo(second.titles[j]);
+        if (comparison < 0) {
+          titles[length] = first.titles[i];
+          ordinals[length++] = first.ordinals[i++];
+        } else { //The second chunk has the highest ordinals, its video is kept for the same title
+          if (comparison == 0) {
+            i++;
+          }
+          titles[length] = second.titles[j];
+          ordinals[length++] = second.ordinals[j++];
+        }
+      }
+      return new TitleRun(Arrays.copyOf(titles, length), Arrays.copyOf(ordinals, length));
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A class used to find the ordinal of a video from its video id, built once for the videos of a loaded catalog.
+ * It is a perfect hash table built with the CHD (compress, hash and displace) algorithm: the video ids are
+ * hashed into small buckets, and each bucket stores the pilot value that sends all its ids to distinct slots.
+ * A lookup hashes the video id once, reads the pilot of its bucket and goes straight to its slot, without any
+ * probing. Each slot stores the ordinal of its video and an 8-bit fingerprint of its video id, so that most
+ * unknown ids are rejected without comparing the video id stored in the VideoStore.
+ * The index is not minimal: the store keeps the order of the catalog, which the listings and the other indexes rely
+ * on, so the slots can't be the ordinals themselves. The slots are packed instead, with as many bits as the largest
+ * ordinal needs, followed by the fingerprint.
+ */
+class PerfectHashIndex {
+
+  private static final int KEYS_PER_BUCKET = 3;
+  private static final double LOAD_FACTOR = 0.97;
+  private static final int MAX_PILOT = Character.MAX_VALUE;
+  private static final int MAX_SEEDS = 16;
+
+  private final VideoStore store;
+  private final long seed;
+  private final char[] pilots;
+  private final int numberOfSlots;
+  private final int slotBits;
+  //The slots packed with slotBits bits each: the ordinal of the video + 1 (0 for an empty slot), then its fingerprint
+  private final long[] packedSlots;
+  private final int size;
+
+  private PerfectHashIndex(VideoStore store, long seed, char[] pilots, int[] ordinals, byte[] fingerprints, int size) {
+    this.store = store;
+    this.seed = seed;
+    this.pilots = pilots;
+    this.numberOfSlots = ordinals.length;
+    this.slotBits = 64 - Long.numberOfLeadingZeros(size) + Byte.SIZE;
+    this.packedSlots = new long[(int) (((long) numberOfSlots * slotBits + Long.SIZE - 1) / Long.SIZE)];
+    for (int slot = 0; slot < numberOfSlots; slot++) {
+      long value = ((long) (ordinals[slot] + 1) << Byte.SIZE) | (fingerprints[slot] & 0xff);
+      long bit = (long) slot * slotBits;
+      int word = (int) (bit >>> 6);
+      int shift = (int) bit & 63;
+      packedSlots[word] |= value << shift;
+      if (shift + slotBits > Long.SIZE) {
+        packedSlots[word + 1] |= value >>> (Long.SIZE - shift);
+      }
+    }
+    this.size = size;
+  }
+
+  /**
+   * Build the index of the first videos of a store.
+   * @param store The store the indexed videos are in, their video ids must be distinct
+   * @param size The number of videos to index, from ordinal 0
+   * @return The index, or null if two video ids have the same 64-bit hash and can't be told apart
+   */
+  static PerfectHashIndex build(VideoStore store, int size) {
+    IndexBuildEvent event = new IndexBuildEvent();
+    event.begin();
+    long[] hashes = new long[size];
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      hashes[ordinal] = store.hashVideoId(ordinal);
+    }
+    for (long seed = 0; seed < MAX_SEEDS; seed++) {
+      PerfectHashIndex index = tryBuild(store, hashes, seed);
+      if (index != null) {
+        event.index = "Video id perfect hash";
+        event.entries = size;
+        event.bytes = index.getMemory();
+        event.attempts = (int) seed + 1;
+        event.commit();
+        return index;
+      }
+    }
+    return null;
+  }
+
+  private static PerfectHashIndex tryBuild(VideoStore store, long[] hashes, long seed) {
+    int size = hashes.length;
+    int numberOfBuckets = Math.max(1, (size + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+    int numberOfSlots = Math.max(1, (int) Math.ceil(size / LOAD_FACTOR));
+
+    //We group the ordinals by bucket with a counting sort
+    int[] bucketStarts = new int[numberOfBuckets + 1];
+    for (long hash: hashes) {
+      bucketStarts[bucket(hash, seed, numberOfBuckets) + 1]++;
+    }
+    int maxBucketSize = 0;
+    for (int bucket = 0; bucket < numberOfBuckets; bucket++) {
+      maxBucketSize = Math.max(maxBucketSize, bucketStarts[bucket + 1]);
+      bucketStarts[bucket + 1] += bucketStarts[bucket];
+    }
+    int[] bucketOrdinals = new int[size];
+    int[] nextPositions = Arrays.copyOf(bucketStarts, numberOfBuckets);
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      bucketOrdinals[nextPositions[bucket(hashes[ordinal], seed, numberOfBuckets)]++] = ordinal;
+    }
+
+    //We place the largest buckets first, while the table is still mostly empty
+    int[] sizeStarts = new int[maxBucketSize + 2];
+    for (int bucket = 0; bucket < numberOfBuckets; bucket++) {
+      sizeStarts[maxBucketSize - (bucketStarts[bucket + 1] - bucketStarts[bucket]) + 1]++;
+    }
+    for (int index = 0; index <= maxBucketSize; index++) {
+      sizeStarts[index + 1] += sizeStarts[index];
+    }
+    int[] bucketsBySize = new int[numberOfBuckets];
+    for (int bucket = 0; bucket < numberOfBuckets; bucket++) {
+      bucketsBySize[sizeStarts[maxBucketSize - (bucketStarts[bucket + 1] - bucketStarts[bucket])]++] = bucket;
+    }
+
+    char[] pilots = new char[numberOfBuckets];
+    int[] ordinals = new int[numberOfSlots];
+    Arrays.fill(ordinals, -1);
+    byte[] fingerprints = new byte[numberOfSlots];
+    int[] slots = new int[maxBucketSize];
+    for (int bucket: bucketsBySize) {
+      int start = bucketStarts[bucket];
+      int bucketSize = bucketStarts[bucket + 1] - start;
+      if (bucketSize == 0) {
+        break;
+      }
+      int pilot = findPilot(hashes, bucketOrdinals, start, bucketSize, ordinals, seed, slots);
+      if (pilot < 0) {
+        return null;
+      }
+      pilots[bucket] = (char) pilot;
+      for (int index = 0; index < bucketSize; index++) {
+        int ordinal = bucketOrdinals[start + index];
+        ordinals[slots[index]] = ordinal;
+        fingerprints[slots[index]] = fingerprint(hashes[ordinal]);
+      }
+    }
+    return new PerfectHashIndex(store, seed, pilots, ordinals, fingerprints, size);
+  }
+
+  /**
+   * Find the first pilot sending all the video ids of a bucket to distinct empty slots.
+   * @return The pilot, written with the slots of the video ids in the given array, or -1 if there is none
+   */
+  private static int findPilot(long[] hashes, int[] bucketOrdinals, int start, int bucketSize, int[] ordinals,
+      long seed, int[] slots) {
+    nextPilot:
+    for (int pilot = 0; pilot <= MAX_PILOT; pilot++) {
+      for (int index = 0; index < bucketSize; index++) {
+        int slot = slot(hashes[bucketOrdinals[start + index]], seed, pilot, ordinals.length);
+        if (ordinals[slot] >= 0) {
+          continue nextPilot;
+        }
+        for (int previous = 0; previous < index; previous++) {
+          if (slots[previous] == slot) {
+            continue nextPilot;
+          }
+        }
+        slots[index] = slot;
+      }
+      return pilot;
+    }
+    return -1;
+  }
+
+  /**
+   * Get the ordinal of a video.
+   * @param videoId The video id of the video
+   * @return The ordinal of the video, or -1 if there is no indexed video with this id
+   */
+  int find(String videoId) {
+    long hash = ByteArena.hash(videoId);
+    int slot = slot(hash, seed, pilots[bucket(hash, seed, pilots.length)], numberOfSlots);
+    long value = packedSlot(slot);
+    int ordinal = (int) (value >>> Byte.SIZE) - 1;
+    if (ordinal < 0 || (byte) value != fingerprint(hash) || !store.hasVideoId(ordinal, videoId)) {
+      return -1;
+    }
+    return ordinal;
+  }
+
+  private long packedSlot(int slot) {
+    long bit = (long) slot * slotBits;
+    int word = (int) (bit >>> 6);
+    int shift = (int) bit & 63;
+    long value = packedSlots[word] >>> shift;
+    if (shift + slotBits > Long.SIZE) {
+      value |= packedSlots[word + 1] << (Long.SIZE - shift);
+    }
+    return value & ((1L << slotBits) - 1);
+  }
+
+  /**
+   * Get the number of indexed videos.
+   */
+  int size() {
+    return size;
+  }
+
+  private long getMemory() {
+    return MemoryReport.object(8 + 3 * MemoryReport.REFERENCE + 3 * 4) + MemoryReport.array(pilots.length, 2)
+        + MemoryReport.array(packedSlots.length, 8);
+  }
+
+  /**
+   * Add the estimated memory used by the index to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    report.add("Video id perfect hash", getMemory(), size + " videos, "
+        + String.format(Locale.ROOT, "%.1f", size == 0 ? 0.0 : getMemory() * 8.0 / size)
+        + " bits per video");
+  }
+
+  private static int bucket(long hash, long seed, int numberOfBuckets) {
+    return reduce(mix(hash ^ seed * 0x9e3779b97f4a7c15L), numberOfBuckets);
+  }
+
+  private static int slot(long hash, long seed, int pilot, int numberOfSlots) {
+    return reduce(mix(hash ^ ((seed << 16) + pilot + 1) * 0xc2b2ae3d27d4eb4fL), numberOfSlots);
+  }
+
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  private static byte fingerprint(long hash) {
+    return (byte) (hash >>> 8);
+  }
+
+  /**
+   * Map a hash uniformly to [0, range) with a multiplication instead of a modulo.
+   */
+  private static int reduce(long hash, int range) {
+    return (int) Math.multiplyHigh(hash & Long.MAX_VALUE, (long) range << 1);
+  }
+}
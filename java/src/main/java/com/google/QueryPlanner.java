@@ -0,0 +1,351 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A class used to choose how to run a QUERY, and to run it.
+ * A plan reads candidate videos with an access path, then tests them with the other predicates of the query, the
+ * filters. The access paths are the tag index for a tag, the folded titles for a title, the flagged videos for
+ * flagged:true, and the scan of all the videos.
+ * The planner estimates the number of videos matching each predicate: exactly from the tag index and the number of
+ * flagged videos, and from a sample of the videos for the titles, or for the tags when the tag index is dropped.
+ * Predicates are assumed independent. The filters are ordered by cost per video eliminated, and the plan with the
+ * lowest estimated cost is chosen, the costs being relative to testing whether a video is flagged.
+ */
+class QueryPlanner {
+
+  /** The number of videos the titles are tested on to estimate the selectivity of a title predicate. */
+  static final int SAMPLE_SIZE = 1024;
+
+  private static final double FLAGGED_COST = 1;
+  private static final double TAG_COST = 2;
+  private static final double TITLE_COST = 10; //Decoding and lower casing the title
+  private static final double INDEX_READ_COST = 1;
+  private static final double TITLE_SCAN_COST = 2; //Per video, in the folded titles
+
+  /**
+   * The ways of reading the candidate videos of a plan.
+   */
+  enum Access {
+    TAG_INDEX("Tag index lookup"),
+    TITLE_SCAN("Title scan"),
+    FLAGGED_VIDEOS("Flagged videos"),
+    FULL_SCAN("Full scan");
+
+    private final String description;
+
+    Access(String description) {
+      this.description = description;
+    }
+  }
+
+  /**
+   * A predicate of the query with its estimates, and the number of videos matching it when the plan is run.
+   */
+  private static final class Step {
+    final VideoQuery.Predicate predicate;
+    //The case-folded id of the tag of a TAG predicate, TagDictionary.UNKNOWN if no video has the tag
+    final int foldedTagId;
+    final double estimatedRows;
+    long actualRows = 0;
+
+    Step(VideoQuery.Predicate predicate, int foldedTagId, double estimatedRows) {
+      this.predicate = predicate;
+      this.foldedTagId = foldedTagId;
+      this.estimatedRows = estimatedRows;
+    }
+
+    double cost() {
+      switch (predicate.field) {
+        case TITLE:
+          return TITLE_COST;
+        case TAG:
+          return TAG_COST;
+        default:
+          return FLAGGED_COST;
+      }
+    }
+  }
+
+  /**
+   * The access path and the ordered filters chosen for a query, and what happened when it was run.
+   */
+  static final class Plan {
+    private final Access access;
+    private final Step driver; //The predicate read by the access path, null for a full scan
+    private final List<Step> filters;
+    private final double estimatedCost;
+    private long rowsExamined = 0;
+    private long actualRows = 0;
+    private final int size;
+
+    private Plan(Access access, Step driver, List<Step> filters, double estimatedCost, int size) {
+      this.access = access;
+      this.driver = driver;
+      this.filters = filters;
+      this.estimatedCost = estimatedCost;
+      this.size = size;
+    }
+
+    Access getAccess() {
+      return access;
+    }
+
+    /**
+     * Get the estimated cost of the plan, relative to testing whether a video is flagged.
+     */
+    double getEstimatedCost() {
+      return estimatedCost;
+    }
+
+    /**
+     * Get the number of videos read by the access path when the plan was run.
+     */
+    long getRowsExamined() {
+      return rowsExamined;
+    }
+
+    /**
+     * Describe the steps of the plan, with their estimated and actual numbers of videos.
+     * @return One line per step, the access path first
+     */
+    List<String> describe() {
+      List<String> lines = new ArrayList<>();
+      double estimatedRows = driver == null ? size : driver.estimatedRows;
+      lines.add(access.description + (driver == null ? "" : " " + driver.predicate)
+          + " (estimated rows: " + Math.round(estimatedRows) + ", actual rows: " + actualRows + ")");
+      for (Step filter: filters) {
+        estimatedRows *= selectivity(filter, size);
+        lines.add("Filter " + filter.predicate
+            + " (estimated rows: " + Math.round(estimatedRows) + ", actual rows: " + filter.actualRows + ")");
+      }
+      return lines;
+    }
+  }
+
+  private final VideoStore store;
+  private final TagDictionary tagDictionary;
+  private final TagIndex tagIndex;
+  private final TitleScanner titleScanner;
+
+  /**
+   * @param store The store the queried videos are in
+   * @param tagDictionary The dictionary the tags of the predicates are looked up in
+   * @param tagIndex The index read for the tag predicates
+   * @param titleScanner The scanner read for the title predicates
+   */
+  QueryPlanner(VideoStore store, TagDictionary tagDictionary, TagIndex tagIndex, TitleScanner titleScanner) {
+    this.store = store;
+    this.tagDictionary = tagDictionary;
+    this.tagIndex = tagIndex;
+    this.titleScanner = titleScanner;
+  }
+
+  /**
+   * Choose the cheapest plan of a query.
+   * @param query The query
+   * @return The plan, which can be run once
+   */
+  Plan plan(VideoQuery query) {
+    int size = store.size();
+    List<Step> steps = new ArrayList<>();
+    for (VideoQuery.Predicate predicate: query.getPredicates()) {
+      int foldedTagId = predicate.field == VideoQuery.Field.TAG
+          ? tagDictionary.findFoldedId(predicate.value) : TagDictionary.UNKNOWN;
+      steps.add(new Step(predicate, foldedTagId, estimateRows(predicate, foldedTagId, size)));
+    }
+
+    Plan best = createPlan(Access.FULL_SCAN, null, steps, size);
+    for (Step step: steps) {
+      Access access = getAccess(step);
+      if (access != null) {
+        Plan plan = createPlan(access, step, steps, size);
+        if (plan.estimatedCost < best.estimatedCost) {
+          best = plan;
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Get the access path reading the videos matching a predicate.
+   * @return The access path, or null if the videos matching the predicate can only be found by a full scan
+   */
+  private Access getAccess(Step step) {
+    VideoQuery.Predicate predicate = step.predicate;
+    if (predicate.field == VideoQuery.Field.TAG && !predicate.negated) {
+      return Access.TAG_INDEX;
+    } else if (predicate.field == VideoQuery.Field.TITLE && !predicate.negated) {
+      return Access.TITLE_SCAN;
+    } else if (predicate.field == VideoQuery.Field.FLAGGED && predicate.value.equals("true") != predicate.negated) {
+      return Access.FLAGGED_VIDEOS;
+    }
+    return null;
+  }
+
+  private Plan createPlan(Access access, Step driver, List<Step> steps, int size) {
+    List<Step> filters = new ArrayList<>(steps);
+    filters.remove(driver);
+    //We test first the filters which eliminate the most videos for their cost
+    filters.sort(Comparator.comparingDouble(filter -> filter.cost() / Math.max(1e-9, 1 - selectivity(filter, size))));
+
+    double cost;
+    double rows;
+    if (access == Access.FULL_SCAN) {
+      cost = 0;
+      rows = size;
+    } else if (access == Access.TITLE_SCAN) {
+      cost = size * (titleScanner.isEnabled() ? TITLE_SCAN_COST : TITLE_COST);
+      rows = driver.estimatedRows;
+    } else if (access == Access.TAG_INDEX && driver.foldedTagId != TagDictionary.UNKNOWN
+        && tagIndex.count(driver.foldedTagId) < 0) {
+      cost = size * TAG_COST; //The index was dropped, the tags of all the videos are read
+      rows = driver.estimatedRows;
+    } else {
+      cost = driver.estimatedRows * INDEX_READ_COST;
+      rows = driver.estimatedRows;
+    }
+    for (Step filter: filters) {
+      cost += rows * filter.cost();
+      rows *= selectivity(filter, size);
+    }
+    return new Plan(access, driver, filters, cost, size);
+  }
+
+  private static double selectivity(Step step, int size) {
+    return size == 0 ? 0 : step.estimatedRows / size;
+  }
+
+  /**
+   * Estimate the number of videos matching a predicate.
+   */
+  private double estimateRows(VideoQuery.Predicate predicate, int foldedTagId, int size) {
+    double rows;
+    if (predicate.field == VideoQuery.Field.FLAGGED) {
+      int flagged = store.getFlaggedCount();
+      rows = predicate.value.equals("true") ? flagged : size - flagged;
+    } else if (predicate.field == VideoQuery.Field.TAG && foldedTagId == TagDictionary.UNKNOWN) {
+      rows = 0;
+    } else if (predicate.field == VideoQuery.Field.TAG && tagIndex.count(foldedTagId) >= 0) {
+      rows = tagIndex.count(foldedTagId);
+    } else { //We test the predicate on videos spread over the whole store
+      int sampleSize = Math.min(size, SAMPLE_SIZE);
+      int matches = 0;
+      for (int sample = 0; sample < sampleSize; sample++) {
+        if (matchesField(predicate, foldedTagId, (int) ((long) sample * size / sampleSize))) {
+          matches++;
+        }
+      }
+      rows = sampleSize == 0 ? 0 : (double) matches * size / sampleSize;
+    }
+    return predicate.negated ? size - rows : rows;
+  }
+
+  /**
+   * Run a plan.
+   * @param plan The plan returned by plan
+   * @return The ordinals of the videos matching the query, by increasing ordinal
+   */
+  int[] execute(Plan plan) {
+    int[] candidates = readCandidates(plan);
+    int[] ordinals = new int[16];
+    int count = 0;
+    Deadline deadline = Deadline.current();
+    long tested = 0;
+    for (int ordinal: candidates) {
+      if (deadline.shouldStop(tested++)) {
+        break;
+      }
+      boolean matches = true;
+      for (Step filter: plan.filters) {
+        if (!matches(filter, ordinal)) {
+          matches = false;
+          break;
+        }
+        filter.actualRows++;
+      }
+      if (matches) {
+        if (count == ordinals.length) {
+          ordinals = Arrays.copyOf(ordinals, 2 * count);
+        }
+        ordinals[count++] = ordinal;
+      }
+    }
+    return Arrays.copyOf(ordinals, count);
+  }
+
+  /**
+   * Read the videos of the access path of a plan, counting the videos read.
+   */
+  private int[] readCandidates(Plan plan) {
+    int size = store.size();
+    int[] candidates = null;
+    switch (plan.access) {
+      case TAG_INDEX:
+        candidates = plan.driver.foldedTagId == TagDictionary.UNKNOWN ? new int[0]
+            : tagIndex.find(plan.driver.foldedTagId);
+        plan.rowsExamined = candidates == null ? size : candidates.length;
+        break;
+      case TITLE_SCAN:
+        candidates = titleScanner.scan(plan.driver.predicate.value);
+        plan.rowsExamined = size;
+        break;
+      case FLAGGED_VIDEOS:
+        candidates = new int[store.getFlaggedCount()];
+        int count = 0;
+        for (int ordinal = store.nextFlagged(0); ordinal >= 0; ordinal = store.nextFlagged(ordinal + 1)) {
+          if (count == candidates.length) {
+            candidates = Arrays.copyOf(candidates, 2 * count + 1);
+          }
+          candidates[count++] = ordinal;
+        }
+        candidates = Arrays.copyOf(candidates, count);
+        plan.rowsExamined = count;
+        break;
+      default:
+        plan.rowsExamined = size;
+    }
+
+    if (candidates == null) { //A full scan, or the tag index was dropped since the plan was chosen
+      candidates = new int[16];
+      int count = 0;
+      Deadline deadline = Deadline.current();
+      for (int ordinal = 0; ordinal < size; ordinal++) {
+        if (deadline.shouldStop(ordinal)) {
+          break;
+        }
+        if (plan.driver == null || matches(plan.driver, ordinal)) {
+          if (count == candidates.length) {
+            candidates = Arrays.copyOf(candidates, 2 * count);
+          }
+          candidates[count++] = ordinal;
+        }
+      }
+      candidates = Arrays.copyOf(candidates, count);
+    }
+    plan.actualRows = candidates.length;
+    return candidates;
+  }
+
+  private boolean matches(Step step, int ordinal) {
+    return matchesField(step.predicate, step.foldedTagId, ordinal) != step.predicate.negated;
+  }
+
+  /**
+   * Whether a video matches a predicate, ignoring its negation.
+   */
+  private boolean matchesField(VideoQuery.Predicate predicate, int foldedTagId, int ordinal) {
+    switch (predicate.field) {
+      case TITLE:
+        return store.getTitle(ordinal).toLowerCase().contains(predicate.value);
+      case TAG:
+        return foldedTagId != TagDictionary.UNKNOWN && store.hasTag(ordinal, foldedTagId);
+      default:
+        return store.isFlagged(ordinal) == predicate.value.equals("true");
+    }
+  }
+}
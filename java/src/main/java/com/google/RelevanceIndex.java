@@ -0,0 +1,517 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class used to rank the videos by relevance to a query, with the BM25 model: the words of the titles and the
+ * tags of the videos are the terms of the documents, rare terms weigh more than frequent ones, and a term weighs
+ * less in a long document than in a short one.
+ * The score of a term in a video (its impact) is computed when the index is built and rounded to an integer, so that
+ * the score of a video is an exact sum, whatever the order in which its terms are added.
+ * The best videos are retrieved with the MaxScore algorithm: the terms of the query are sorted by their highest
+ * impact, and once the k-th best score is higher than the sum of the highest impacts of the least important terms,
+ * the videos only containing these terms are skipped, and their postings are only read for the videos containing
+ * the other terms.
+ * The index is built on first use, and can be dropped to save memory: the scores are then computed by scanning the
+ * videos, until the index is enabled and built again. They are also computed by scanning while the index is built in
+ * the background for a command with a time budget.
+ */
+class RelevanceIndex {
+
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+  private static final double IMPACT_SCALE = 1000;
+  private static final char MAX_IMPACT = Character.MAX_VALUE;
+
+  /**
+   * The videos containing a term, by increasing ordinal, with the impact of the term in each video.
+   */
+  private static final class Postings {
+    private final int[] ordinals;
+    private final char[] impacts;
+    private int size = 0;
+    private int maxImpact = 0;
+
+    private Postings(int documentFrequency) {
+      this.ordinals = new int[documentFrequency];
+      this.impacts = new char[documentFrequency];
+    }
+
+    private void add(int ordinal, char impact) {
+      ordinals[size] = ordinal;
+      impacts[size++] = impact;
+      maxImpact = Math.max(maxImpact, impact);
+    }
+  }
+
+  private final VideoStore store;
+  private final IndexBuilder indexBuilder;
+  private volatile Map<String, Postings> postings;
+  private volatile boolean enabled = true;
+  private LongAdder postingsTotal = new LongAdder();
+  private LongAdder postingsScored = new LongAdder();
+
+  /**
+   * @param store The store the indexed videos are in
+   * @param indexBuilder The builder of the index outside of the time budget of the commands
+   */
+  RelevanceIndex(VideoStore store, IndexBuilder indexBuilder) {
+    this.store = store;
+    this.indexBuilder = indexBuilder;
+  }
+
+  /**
+   * Record the number of postings of the searched terms, and the number of them that were actually scored, in the
+   * given metrics.
+   */
+  void setMetrics(Metrics metrics) {
+    postingsTotal = metrics.counter("ranked_search_postings_total");
+    postingsScored = metrics.counter("ranked_search_postings_scored_total");
+  }
+
+  /**
+   * Get the terms of a query: the lower case words of the query, each of them also matching the tag made of the word,
+   * and the lower case tags (words starting with #) of the query.
+   * @param query The query
+   * @return The distinct terms of the query
+   */
+  static List<String> queryTerms(String query) {
+    List<String> terms = new ArrayList<>();
+    for (String word: query.trim().split("\\s+")) {
+      if (word.startsWith("#")) {
+        addDistinct(terms, word.toLowerCase());
+        continue;
+      }
+      for (String term: documentTerms(word, List.of())) {
+        addDistinct(terms, term);
+        addDistinct(terms, "#" + term);
+      }
+    }
+    return terms;
+  }
+
+  private static void addDistinct(List<String> terms, String term) {
+    if (!terms.contains(term)) {
+      terms.add(term);
+    }
+  }
+
+  /**
+   * Get the terms of a document: the lower case words of the title, a word being a sequence of letters and digits,
+   * and the lower case tags, with their leading #.
+   */
+  private static List<String> documentTerms(String title, List<String> tags) {
+    List<String> terms = new ArrayList<>();
+    int start = -1;
+    for (int index = 0; index <= title.length(); index++) {
+      boolean wordCharacter = index < title.length() && Character.isLetterOrDigit(title.charAt(index));
+      if (wordCharacter && start == -1) {
+        start = index;
+      } else if (!wordCharacter && start != -1) {
+        terms.add(title.substring(start, index).toLowerCase());
+        start = -1;
+      }
+    }
+    for (String tag: tags) {
+      terms.add(tag.toLowerCase());
+    }
+    return terms;
+  }
+
+  /**
+   * Get the lower case words of a title, a word being a sequence of letters and digits.
+   */
+  static List<String> titleWords(String title) {
+    return documentTerms(title, List.of());
+  }
+
+  private List<String> documentTerms(int ordinal) {
+    List<String> tags = new ArrayList<>(store.getTagCount(ordinal));
+    for (int index = 0; index < store.getTagCount(ordinal); index++) {
+      tags.add(store.getTag(ordinal, index));
+    }
+    return documentTerms(store.getTitle(ordinal), tags);
+  }
+
+  /**
+   * Compute the impact of a term in a video with BM25.
+   * @param termFrequency The number of occurrences of the term in the video
+   * @param length The number of terms of the video
+   * @param documentFrequency The number of videos containing the term
+   * @param size The number of videos
+   * @param averageLength The average number of terms of the videos
+   */
+  private static char impact(int termFrequency, int length, int documentFrequency, int size, double averageLength) {
+    double idf = Math.log(1 + (size - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    double tf = termFrequency * (K1 + 1) / (termFrequency + K1 * (1 - B + B * length / averageLength));
+    //Every posting weighs at least 1, so that a video containing a term of the query is always a result
+    return (char) Math.max(1, Math.min(MAX_IMPACT, Math.round(idf * tf * IMPACT_SCALE)));
+  }
+
+  /**
+   * Get the postings of each term, building them if needed.
+   * @return The postings, or null if the index is disabled or being built in the background
+   */
+  private Map<String, Postings> getPostings() {
+    Map<String, Postings> postings = this.postings;
+    if (postings == null && enabled) {
+      if (!indexBuilder.buildsNow(this, this::getPostings)) {
+        return null;
+      }
+      synchronized (this) {
+        postings = this.postings;
+        if (postings == null && enabled) {
+          postings = build();
+          this.postings = postings;
+        }
+      }
+    }
+    return postings;
+  }
+
+  private Map<String, Postings> build() {
+    IndexBuildEvent event = new IndexBuildEvent();
+    event.begin();
+    int size = store.size();
+
+    //We count the videos containing each term, to size the postings
+    HashMap<String, int[]> documentFrequencies = new HashMap<>();
+    int[] lengths = new int[size];
+    long totalLength = 0;
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      List<String> terms = documentTerms(ordinal);
+      lengths[ordinal] = terms.size();
+      totalLength += terms.size();
+      Collections.sort(terms);
+      for (int index = 0; index < terms.size(); index++) {
+        if (index == 0 || !terms.get(index).equals(terms.get(index - 1))) {
+          documentFrequencies.computeIfAbsent(terms.get(index), term -> new int[1])[0]++;
+        }
+      }
+    }
+    double averageLength = size == 0 ? 0 : (double) totalLength / size;
+
+    HashMap<String, Postings> postings = new HashMap<>();
+    for (Map.Entry<String, int[]> entry: documentFrequencies.entrySet()) {
+      postings.put(entry.getKey(), new Postings(entry.getValue()[0]));
+    }
+    long postingsCount = 0;
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      List<String> terms = documentTerms(ordinal);
+      Collections.sort(terms);
+      int start = 0;
+      for (int index = 1; index <= terms.size(); index++) {
+        if (index == terms.size() || !terms.get(index).equals(terms.get(start))) {
+          Postings termPostings = postings.get(terms.get(start));
+          termPostings.add(ordinal,
+              impact(index - start, lengths[ordinal], termPostings.ordinals.length, size, averageLength));
+          postingsCount++;
+          start = index;
+        }
+      }
+    }
+
+    event.index = "Relevance postings";
+    event.entries = postings.size();
+    event.bytes = estimateBytes(postings, postingsCount);
+    event.attempts = 1;
+    event.commit();
+    return postings;
+  }
+
+  /**
+   * Get the videos whose title or tags contain a term, flagged or not.
+   * @param term A lower case title word, or a lower case tag
+   * @return The ordinals of the videos by increasing ordinal, which must not be modified, or null if the index is
+   *     disabled
+   */
+  int[] findVideos(String term) {
+    Map<String, Postings> postings = getPostings();
+    if (postings == null) {
+      return null;
+    }
+    Postings termPostings = postings.get(term);
+    return termPostings == null ? new int[0] : termPostings.ordinals;
+  }
+
+  /**
+   * Get the distinct words of the titles of the videos.
+   * @return The words, or null if the index is disabled
+   */
+  List<String> getTitleWords() {
+    Map<String, Postings> postings = getPostings();
+    if (postings == null) {
+      return null;
+    }
+    List<String> words = new ArrayList<>();
+    for (String term: postings.keySet()) {
+      if (!term.startsWith("#")) {
+        words.add(term);
+      }
+    }
+    return words;
+  }
+
+  /**
+   * Get the videos the most relevant to a query, skipping the flagged videos.
+   * @param terms The terms of the query, as returned by queryTerms
+   * @param limit The maximum number of videos
+   * @return The ordinals of the videos, by decreasing score, then by increasing ordinal
+   */
+  int[] search(List<String> terms, int limit) {
+    Map<String, Postings> postings = getPostings();
+    if (postings == null) { //The index was dropped to save memory
+      return scan(terms, limit);
+    }
+
+    List<Postings> queryPostings = new ArrayList<>();
+    for (String term: terms) {
+      Postings termPostings = postings.get(term);
+      if (termPostings != null) {
+        queryPostings.add(termPostings);
+        postingsTotal.add(termPostings.size);
+      }
+    }
+    //We sort the terms from the least to the most important one
+    queryPostings.sort(Comparator.comparingInt(termPostings -> termPostings.maxImpact));
+    int count = queryPostings.size();
+    long[] upperBounds = new long[count]; //The highest score of a video only containing the terms up to this one
+    for (int index = 0; index < count; index++) {
+      upperBounds[index] = (index == 0 ? 0 : upperBounds[index - 1]) + queryPostings.get(index).maxImpact;
+    }
+    int[] positions = new int[count];
+
+    PriorityQueue<Long> best = new PriorityQueue<>();
+    long threshold = -1; //The k-th best score, a video must score strictly more to enter the results
+    int firstEssential = 0;
+    long scored = 0;
+    Deadline deadline = Deadline.current();
+    long candidates = 0;
+    while (!deadline.shouldStop(candidates++)) { //Once stopped, the results are the best of the videos read so far
+      //The terms before firstEssential cannot make a video enter the results by themselves
+      while (firstEssential < count && upperBounds[firstEssential] <= threshold) {
+        firstEssential++;
+      }
+      int candidate = Integer.MAX_VALUE;
+      for (int index = firstEssential; index < count; index++) {
+        Postings termPostings = queryPostings.get(index);
+        if (positions[index] < termPostings.size) {
+          candidate = Math.min(candidate, termPostings.ordinals[positions[index]]);
+        }
+      }
+      if (candidate == Integer.MAX_VALUE) {
+        break;
+      }
+
+      long score = 0;
+      for (int index = firstEssential; index < count; index++) {
+        Postings termPostings = queryPostings.get(index);
+        if (positions[index] < termPostings.size && termPostings.ordinals[positions[index]] == candidate) {
+          score += termPostings.impacts[positions[index]++];
+          scored++;
+        }
+      }
+      if (store.isFlagged(candidate)) {
+        continue;
+      }
+      for (int index = firstEssential - 1; index >= 0 && score + upperBounds[index] > threshold; index--) {
+        Postings termPostings = queryPostings.get(index);
+        positions[index] = advance(termPostings, positions[index], candidate);
+        if (positions[index] < termPostings.size && termPostings.ordinals[positions[index]] == candidate) {
+          score += termPostings.impacts[positions[index]];
+          scored++;
+        }
+      }
+
+      //Videos come by increasing ordinal, so a video with the same score as the k-th best one never enters
+      if (score > threshold) {
+        best.add(key(score, candidate));
+        if (best.size() > limit) {
+          best.poll();
+        }
+        if (best.size() == limit) {
+          threshold = best.peek() >>> 32;
+        }
+      }
+    }
+    postingsScored.add(scored);
+
+    return ordinals(best);
+  }
+
+  /**
+   * Get the position of the first posting with an ordinal greater than or equal to the given ordinal, galloping
+   * from the current position.
+   */
+  private static int advance(Postings termPostings, int position, int ordinal) {
+    int step = 1;
+    int low = position;
+    int high = position;
+    while (high < termPostings.size && termPostings.ordinals[high] < ordinal) {
+      low = high + 1;
+      high += step;
+      step <<= 1;
+    }
+    high = Math.min(high, termPostings.size);
+    int index = Arrays.binarySearch(termPostings.ordinals, low, high, ordinal);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  /**
+   * Get the videos the most relevant to a query by scoring all the postings of its terms, as a reference for search.
+   * @param terms The terms of the query, as returned by queryTerms
+   * @param limit The maximum number of videos
+   * @return The ordinals of the videos, by decreasing score, then by increasing ordinal
+   */
+  int[] searchExhaustively(List<String> terms, int limit) {
+    Map<String, Postings> postings = getPostings();
+    if (postings == null) {
+      return scan(terms, limit);
+    }
+    long[] scores = new long[store.size()];
+    for (String term: terms) {
+      Postings termPostings = postings.get(term);
+      if (termPostings != null) {
+        for (int index = 0; index < termPostings.size; index++) {
+          scores[termPostings.ordinals[index]] += termPostings.impacts[index];
+        }
+      }
+    }
+    return best(scores, limit);
+  }
+
+  /**
+   * Get the videos the most relevant to a query without the index, by going through all the videos twice: once to
+   * get the statistics of the terms, and once to score the videos. When the deadline is reached during the first
+   * pass, no video is scored, as the statistics of the terms are not known.
+   */
+  private int[] scan(List<String> terms, int limit) {
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    int size = store.size();
+    int[] documentFrequencies = new int[terms.size()];
+    long totalLength = 0;
+    Deadline deadline = Deadline.current();
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      if (deadline.shouldStop(ordinal)) {
+        return new int[0];
+      }
+      List<String> documentTerms = documentTerms(ordinal);
+      totalLength += documentTerms.size();
+      for (int index = 0; index < terms.size(); index++) {
+        if (documentTerms.contains(terms.get(index))) {
+          documentFrequencies[index]++;
+        }
+      }
+    }
+    double averageLength = size == 0 ? 0 : (double) totalLength / size;
+
+    long[] scores = new long[size];
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      if (deadline.shouldStop(ordinal)) { //The results are the best of the videos scored so far
+        break;
+      }
+      List<String> documentTerms = documentTerms(ordinal);
+      for (int index = 0; index < terms.size(); index++) {
+        int termFrequency = Collections.frequency(documentTerms, terms.get(index));
+        if (termFrequency > 0) {
+          scores[ordinal] += impact(termFrequency, documentTerms.size(), documentFrequencies[index], size,
+              averageLength);
+        }
+      }
+    }
+    int[] results = best(scores, limit);
+    event.commitIfLarge("searchVideosRanked", 2L * size, results.length);
+    return results;
+  }
+
+  private int[] best(long[] scores, int limit) {
+    PriorityQueue<Long> best = new PriorityQueue<>();
+    for (int ordinal = 0; ordinal < scores.length; ordinal++) {
+      if (scores[ordinal] > 0 && !store.isFlagged(ordinal)) {
+        best.add(key(scores[ordinal], ordinal));
+        if (best.size() > limit) {
+          best.poll();
+        }
+      }
+    }
+    return ordinals(best);
+  }
+
+  /**
+   * Get the key of a result: a video with a higher key is more relevant, a higher score or a lower ordinal.
+   */
+  private static long key(long score, int ordinal) {
+    return score << 32 | (~ordinal & 0xFFFFFFFFL);
+  }
+
+  private static int[] ordinals(PriorityQueue<Long> best) {
+    int[] ordinals = new int[best.size()];
+    for (int index = ordinals.length - 1; index >= 0; index--) {
+      ordinals[index] = ~(int) (long) best.poll();
+    }
+    return ordinals;
+  }
+
+  /**
+   * Build the index now rather than on first use, if the index it replaces is built.
+   * @param previous The index of the library replaced by a reload of the catalog
+   */
+  void warmUp(RelevanceIndex previous) {
+    if (previous.postings != null) {
+      getPostings();
+    }
+  }
+
+  /**
+   * Enable or disable the index. A disabled index is dropped, and is built again once it is enabled and used.
+   */
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      postings = null;
+    }
+  }
+
+  /**
+   * Drop the index after videos are appended to the store, as they change the scores of the other videos. It is
+   * built again on the next use.
+   */
+  synchronized void invalidate() {
+    postings = null;
+  }
+
+  private static long estimateBytes(Map<String, Postings> postings, long postingsCount) {
+    long bytes = MemoryReport.hashMap(postings.size()) + postingsCount * (4 + 2);
+    for (String term: postings.keySet()) {
+      bytes += MemoryReport.string(term) + MemoryReport.object(3 * MemoryReport.REFERENCE + 8)
+          + MemoryReport.array(0, 4) + MemoryReport.array(0, 2);
+    }
+    return bytes;
+  }
+
+  /**
+   * Add the estimated memory used by the index to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    Map<String, Postings> postings = this.postings;
+    if (postings == null) {
+      report.add("Relevance index", 0, "not built");
+      return;
+    }
+    long postingsCount = 0;
+    for (Postings termPostings: postings.values()) {
+      postingsCount += termPostings.size;
+    }
+    report.add("Relevance index", estimateBytes(postings, postingsCount),
+        postings.size() + " terms, " + postingsCount + " postings");
+  }
+}
@@ -1,24 +1,104 @@
 package com.google;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 public class Run {
-  public static void main(String[] args){
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0) {
+      runBatch(args[0]);
+      return;
+    }
     System.out.println("Hello and welcome to YouTube, what would you like to do? "
         + "Enter HELP for list of available commands or EXIT to terminate.");
     var videoPlayer = new VideoPlayer();
+    var metricsExporter = startMetricsExporter(videoPlayer);
+    var memoryGovernor = startMemoryGovernor(videoPlayer);
+    startCatalogTailer(videoPlayer);
     var parser = new CommandParser(videoPlayer);
     var scanner = new Scanner(System.in);
     while (true) {
+      videoPlayer.showNotices();
       System.out.print("YT> ");
       var input = scanner.nextLine();
       if (input.equalsIgnoreCase("exit")) {
         System.out.println("YouTube has now terminated its execution. " +
             "Thank you and goodbye!");
+        if (metricsExporter != null) {
+          metricsExporter.close();
+        }
+        memoryGovernor.close();
+        videoPlayer.stopTailing();
         return;
       }
-      parser.executeCommand(Arrays.asList(input.split("\\s+")));
+      parser.executeCommand(input);
+    }
+  }
+
+  /**
+   * Execute all the commands of the given file, one command per line, without prompting the user.
+   * The number of threads running the read-only commands can be set with -Dyoutube.batch.threads.
+   */
+  private static void runBatch(String commandsFile) throws IOException {
+    var videoPlayer = new VideoPlayer();
+    videoPlayer.setInteractive(false);
+    var metricsExporter = startMetricsExporter(videoPlayer);
+    var memoryGovernor = startMemoryGovernor(videoPlayer);
+    var parser = new CommandParser(videoPlayer);
+
+    List<List<String>> commands = new ArrayList<>();
+    for (String line: Files.readAllLines(Paths.get(commandsFile))) {
+      commands.add(CommandTokenizer.tokenize(line));
+    }
+
+    int numberOfThreads = Integer.getInteger("youtube.batch.threads",
+        Runtime.getRuntime().availableProcessors());
+    try (var scheduler = new BatchScheduler(parser, numberOfThreads)) {
+      scheduler.execute(commands);
     }
+    videoPlayer.showNotices();
+    if (metricsExporter != null) {
+      metricsExporter.close();
+    }
+    memoryGovernor.close();
+  }
+
+  /**
+   * Start writing the metrics of the video player to the file set with -Dyoutube.metrics.file, every
+   * -Dyoutube.metrics.interval seconds (10 by default). Returns null if no metrics file is set.
+   */
+  private static MetricsExporter startMetricsExporter(VideoPlayer videoPlayer) {
+    String metricsFile = System.getProperty("youtube.metrics.file");
+    if (metricsFile == null) {
+      return null;
+    }
+    long intervalSeconds = Long.getLong("youtube.metrics.interval", 10);
+    return new MetricsExporter(videoPlayer.getMetrics(), Paths.get(metricsFile), intervalSeconds);
+  }
+
+  /**
+   * Start adding the videos appended to the catalog file to the library when -Dyoutube.catalog.tail=true, checking
+   * the catalog at least every -Dyoutube.catalog.tail.interval milliseconds (1000 by default). After a
+   * RELOAD_CATALOG, the reloaded catalog file is tailed.
+   */
+  private static void startCatalogTailer(VideoPlayer videoPlayer) throws IOException {
+    if (Boolean.getBoolean("youtube.catalog.tail")) {
+      videoPlayer.startTailing(Long.getLong("youtube.catalog.tail.interval", 1000));
+    }
+  }
+
+  /**
+   * Start dropping the caches of the video player when the heap is almost full, see MemoryGovernor for the
+   * configuration. The heap usage is checked every -Dyoutube.memory.interval seconds (5 by default).
+   */
+  private static MemoryGovernor startMemoryGovernor(VideoPlayer videoPlayer) {
+    var memoryGovernor = MemoryGovernor.fromSystemProperties(videoPlayer.getMetrics());
+    videoPlayer.registerOptionalStructures(memoryGovernor);
+    memoryGovernor.start(Long.getLong("youtube.memory.interval", 5));
+    return memoryGovernor;
   }
 }
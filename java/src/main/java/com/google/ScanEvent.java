@@ -0,0 +1,44 @@
+package com.google;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event emitted when a search or listing operation scans many items.
+ * Only scans of at least -Dyoutube.jfr.scanThreshold items (10000 by default) are recorded.
+ */
+@Name("com.google.youtube.Scan")
+@Label("Scan")
+@Category("YouTube")
+@Description("Search or listing operation scanning a large number of items")
+class ScanEvent extends jdk.jfr.Event {
+
+  static final int THRESHOLD = Integer.getInteger("youtube.jfr.scanThreshold", 10_000);
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Scanned Items")
+  long scanned;
+
+  @Label("Matched Items")
+  long matched;
+
+  /**
+   * Commit the event if the operation scanned at least THRESHOLD items.
+   * @param operation The name of the operation
+   * @param scanned The number of items the operation went through
+   * @param matched The number of items the operation kept
+   */
+  void commitIfLarge(String operation, long scanned, long matched) {
+    if (scanned < THRESHOLD || !shouldCommit()) {
+      return;
+    }
+    this.operation = operation;
+    this.scanned = scanned;
+    this.matched = matched;
+    commit();
+  }
+}
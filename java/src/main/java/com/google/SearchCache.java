@@ -0,0 +1,201 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class used to keep the results of the recent searches, so that repeated searches do not scan the catalog.
+ * The results of a search only change when a video is flagged or allowed. Instead of clearing the cache, each
+ * result is stamped with a generation: title searches with a global generation, bumped whenever a video is
+ * flagged or allowed, and tag searches with the generation of their tag, only bumped when a video with this tag
+ * is flagged or allowed. Results with an outdated generation are dropped when they are read, as well as the
+ * results cached before videos were appended to the library.
+ * The cache is bounded both by its number of results and by the estimated size of the results, the least
+ * recently used results being evicted first.
+ */
+class SearchCache {
+
+  //The links of the LinkedHashMap entry and the Entry object, the HashMap node is counted by MemoryReport.hashMap
+  private static final long ENTRY_OVERHEAD =
+      2 * MemoryReport.REFERENCE + MemoryReport.object(8 + MemoryReport.REFERENCE + 8 + 4);
+
+  private final VideoLibrary videoLibrary;
+  private final int maxEntries;
+  private final long maxBytes;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes = 0;
+  private boolean enabled = true;
+  private long titleGeneration = 0;
+  private final HashMap<Integer, Long> tagGenerations = new HashMap<>(); //Per case-folded tag id, 0 if absent
+  private LongAdder hits = new LongAdder();
+  private LongAdder misses = new LongAdder();
+  private LongAdder evictions = new LongAdder();
+
+  private static final class Entry {
+    private final int[] ordinals;
+    private final long generation;
+    private final long bytes;
+    private final int librarySize; //The number of videos of the library when the results were cached
+
+    private Entry(int[] ordinals, long generation, long bytes, int librarySize) {
+      this.ordinals = ordinals;
+      this.generation = generation;
+      this.bytes = bytes;
+      this.librarySize = librarySize;
+    }
+  }
+
+  /**
+   * @param videoLibrary The library the searched videos are in
+   * @param maxEntries The maximum number of cached results, 0 to disable the cache
+   * @param maxBytes The maximum estimated size of the cached results
+   */
+  SearchCache(VideoLibrary videoLibrary, int maxEntries, long maxBytes) {
+    this.videoLibrary = videoLibrary;
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Record the hits, misses and evictions of the cache in the given metrics.
+   */
+  synchronized void setMetrics(Metrics metrics) {
+    hits = metrics.counter("search_cache_hits_total");
+    misses = metrics.counter("search_cache_misses_total");
+    evictions = metrics.counter("search_cache_evictions_total");
+  }
+
+  /**
+   * Get the cached results of a search by title.
+   * @param searchTerm The search term, as given to SEARCH_VIDEOS
+   * @return The results, or null if they are not cached
+   */
+  synchronized List<Video> getTitleSearch(String searchTerm) {
+    return get("title:" + searchTerm, titleGeneration);
+  }
+
+  synchronized void putTitleSearch(String searchTerm, List<Video> results) {
+    put("title:" + searchTerm, results, titleGeneration);
+  }
+
+  /**
+   * Get the cached results of a search by tag.
+   * @param foldedTagId The case-folded id of the searched tag, so that all the cases of a tag share their results
+   * @return The results, or null if they are not cached
+   */
+  synchronized List<Video> getTagSearch(int foldedTagId) {
+    return get("tag:" + foldedTagId, tagGenerations.getOrDefault(foldedTagId, 0L));
+  }
+
+  synchronized void putTagSearch(int foldedTagId, List<Video> results) {
+    put("tag:" + foldedTagId, results, tagGenerations.getOrDefault(foldedTagId, 0L));
+  }
+
+  /**
+   * Invalidate the results a video may be part of, after it is flagged or allowed.
+   * @param video The flagged or allowed video
+   */
+  synchronized void invalidate(Video video) {
+    titleGeneration++;
+    TagDictionary tagDictionary = videoLibrary.getTagDictionary();
+    for (String tag: video.getTags()) {
+      tagGenerations.merge(tagDictionary.findFoldedId(tag), 1L, Long::sum);
+    }
+  }
+
+  /**
+   * Remove all the cached results.
+   */
+  synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Enable or disable the cache. A disabled cache is emptied, and does not keep any result until it is enabled.
+   */
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      clear();
+    }
+  }
+
+  private List<Video> get(String key, long generation) {
+    Entry entry = entries.get(key);
+    if (entry != null && (entry.generation != generation || entry.librarySize != videoLibrary.size())) {
+      remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    List<Video> results = new ArrayList<>(entry.ordinals.length);
+    for (int ordinal: entry.ordinals) {
+      results.add(videoLibrary.getVideo(ordinal));
+    }
+    return results;
+  }
+
+  private void put(String key, List<Video> results, long generation) {
+    long entryBytes = ENTRY_OVERHEAD + MemoryReport.string(key) + MemoryReport.array(results.size(), 4);
+    if (!enabled || maxEntries == 0 || entryBytes > maxBytes) {
+      return;
+    }
+    int[] ordinals = new int[results.size()];
+    for (int index = 0; index < ordinals.length; index++) {
+      ordinals[index] = results.get(index).getOrdinal();
+    }
+    remove(key);
+    entries.put(key, new Entry(ordinals, generation, entryBytes, videoLibrary.size()));
+    bytes += entryBytes;
+
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (entries.size() > maxEntries || bytes > maxBytes) {
+      bytes -= eldest.next().bytes;
+      eldest.remove();
+      evictions.increment();
+    }
+  }
+
+  private void remove(String key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      bytes -= entry.bytes;
+    }
+  }
+
+  /**
+   * Get the number of cached results.
+   */
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Add the estimated memory used by the cache to the given report.
+   */
+  synchronized void estimateMemory(MemoryReport report) {
+    long hitCount = hits.sum();
+    long lookups = hitCount + misses.sum();
+    report.add("Search cache", MemoryReport.hashMap(entries.size()) + bytes
+            + MemoryReport.hashMap(tagGenerations.size()) + tagGenerations.size() * 2 * MemoryReport.object(8),
+        entries.size() + " results, " + (lookups == 0 ? 0 : hitCount * 100 / lookups) + "% hits, "
+            + evictions.sum() + " evictions");
+  }
+
+  /**
+   * Create a cache bounded by the system properties youtube.searchCache.entries (1000 results by default, 0 to
+   * disable the cache) and youtube.searchCache.bytes (16 MB by default).
+   */
+  static SearchCache fromSystemProperties(VideoLibrary videoLibrary) {
+    return new SearchCache(videoLibrary, Integer.getInteger("youtube.searchCache.entries", 1000),
+        Long.getLong("youtube.searchCache.bytes", 16L << 20));
+  }
+}
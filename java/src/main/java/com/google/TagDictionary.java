@@ -0,0 +1,133 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A class used to give each distinct tag of the library a dense int id.
+ * Videos store the ids of their tags instead of their own copies of the tag Strings.
+ * Each tag is also case-folded once, so that searching by tag compares ints instead of Strings.
+ */
+class TagDictionary {
+
+  /** The id returned for a tag that is not in the dictionary. */
+  static final int UNKNOWN = -1;
+
+  private final HashMap<String, Integer> idsPerTag = new HashMap<>();
+  private final List<String> tags = new ArrayList<>();
+  private final HashMap<String, Integer> foldedIdsPerTag = new HashMap<>();
+  private final List<String> foldedTags = new ArrayList<>();
+  private int[] foldedIds = new int[16];
+
+  /**
+   * Get the id of the given tag, adding the tag to the dictionary if it is not there yet.
+   * @param tag The tag, as written in the catalog
+   * @return The id of the tag
+   */
+  int add(String tag) {
+    Integer id = idsPerTag.get(tag);
+    if (id != null) {
+      return id;
+    }
+    id = tags.size();
+    idsPerTag.put(tag, id);
+    tags.add(tag);
+
+    String foldedTag = fold(tag);
+    Integer foldedId = foldedIdsPerTag.get(foldedTag);
+    if (foldedId == null) {
+      foldedId = foldedIdsPerTag.size();
+      foldedIdsPerTag.put(foldedTag, foldedId);
+      foldedTags.add(foldedTag);
+    }
+    if (id == foldedIds.length) {
+      int[] grown = new int[foldedIds.length * 2];
+      System.arraycopy(foldedIds, 0, grown, 0, foldedIds.length);
+      foldedIds = grown;
+    }
+    foldedIds[id] = foldedId;
+    return id;
+  }
+
+  /**
+   * Get a tag by id.
+   * @param id The id of the tag
+   * @return The tag, as written in the catalog
+   */
+  String getTag(int id) {
+    return tags.get(id);
+  }
+
+  /**
+   * Get a case-folded tag by folded id.
+   * @param foldedId The case-folded id of the tag
+   * @return The tag in lower case
+   */
+  String getFoldedTag(int foldedId) {
+    return foldedTags.get(foldedId);
+  }
+
+  /**
+   * Get the case-folded id of a tag: tags only differing by their case have the same folded id.
+   * @param id The id of the tag
+   * @return The case-folded id of the tag
+   */
+  int getFoldedId(int id) {
+    return foldedIds[id];
+  }
+
+  /**
+   * Get the case-folded id a tag searched by the user, without adding it to the dictionary.
+   * @param tag The searched tag, in any case
+   * @return The case-folded id, or UNKNOWN if no video has this tag
+   */
+  int findFoldedId(String tag) {
+    Integer foldedId = foldedIdsPerTag.get(fold(tag));
+    return foldedId == null ? UNKNOWN : foldedId;
+  }
+
+  /**
+   * Get the number of distinct tags.
+   * @return The number of tags of the dictionary
+   */
+  int size() {
+    return tags.size();
+  }
+
+  /**
+   * Get the number of distinct case-folded tags.
+   * @return The number of folded ids, folded ids are between 0 and this number - 1
+   */
+  int foldedSize() {
+    return foldedIdsPerTag.size();
+  }
+
+  /**
+   * Add the estimated memory used by the dictionary to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    long tagsBytes = 0;
+    long foldedTagsBytes = 0;
+    for (String tag: tags) {
+      tagsBytes += MemoryReport.string(tag);
+    }
+    for (String foldedTag: foldedIdsPerTag.keySet()) {
+      foldedTagsBytes += MemoryReport.string(foldedTag);
+    }
+    long integersBytes = (tags.size() + foldedIdsPerTag.size()) * MemoryReport.object(4);
+    report.add("Tag dictionary",
+        MemoryReport.hashMap(tags.size()) + MemoryReport.ARRAY_LIST
+            + MemoryReport.array(MemoryReport.arrayListCapacity(tags.size()), MemoryReport.REFERENCE)
+            + MemoryReport.hashMap(foldedIdsPerTag.size()) + MemoryReport.array(foldedIds.length, 4)
+            + MemoryReport.ARRAY_LIST
+            + MemoryReport.array(MemoryReport.arrayListCapacity(foldedTags.size()), MemoryReport.REFERENCE)
+            + tagsBytes + foldedTagsBytes + integersBytes,
+        tags.size() + " distinct tags");
+  }
+
+  private static String fold(String tag) {
+    return tag.toLowerCase(Locale.ROOT);
+  }
+}
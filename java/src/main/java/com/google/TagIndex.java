@@ -0,0 +1,370 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A class used to find the videos with a tag without going through the tags of every video.
+ * The index stores the ordinals of the videos of each case-folded tag one after the other, by increasing ordinal,
+ * in a single array: the videos with the tag of folded id i are between offsets[i] and offsets[i + 1].
+ * The tags of many videos also have a bitset of their videos, smaller than their ordinals, so that the number of
+ * videos of a result set with the tag is the number of bits set in the intersection of two bitsets.
+ * The index is built on first use, and can be dropped to save memory: the videos are then scanned, as they are
+ * while the index is built in the background for a command with a time budget. The videos appended to the store
+ * are merged into the built index, without going through the tags of the other videos.
+ */
+class TagIndex {
+
+  //The result sets with less than 1 video in 256 of the store, or less videos than tags, are counted by scanning
+  private static final int SCANNED_RESULTS_RATIO = 256;
+
+  private final VideoStore store;
+  private final TagDictionary tagDictionary;
+  private final IndexBuilder indexBuilder;
+  private volatile Postings postings;
+  private volatile boolean enabled = true;
+
+  /**
+   * The ordinals of the videos of all the tags.
+   */
+  private static final class Postings {
+    final int[] offsets;
+    final int[] ordinals;
+    //The bitsets of the videos of the tags with more than 1 video in 32, null for the other tags
+    final long[][] bitsets;
+    //The folded ids of the tags, by decreasing number of videos
+    final int[] tagsByCount;
+    final int size; //The number of videos of the store when the index was built
+
+    Postings(int[] offsets, int[] ordinals, long[][] bitsets, int[] tagsByCount, int size) {
+      this.offsets = offsets;
+      this.ordinals = ordinals;
+      this.bitsets = bitsets;
+      this.tagsByCount = tagsByCount;
+      this.size = size;
+    }
+  }
+
+  /**
+   * A tag and the number of videos of a result set with this tag.
+   */
+  static final class Facet {
+    final int foldedTagId;
+    final int count;
+
+    Facet(int foldedTagId, int count) {
+      this.foldedTagId = foldedTagId;
+      this.count = count;
+    }
+  }
+
+  /**
+   * @param store The store the indexed videos are in
+   * @param tagDictionary The dictionary the tag ids of the videos refer to
+   * @param indexBuilder The builder of the index outside of the time budget of the commands
+   */
+  TagIndex(VideoStore store, TagDictionary tagDictionary, IndexBuilder indexBuilder) {
+    this.store = store;
+    this.tagDictionary = tagDictionary;
+    this.indexBuilder = indexBuilder;
+  }
+
+  private Postings getPostings() {
+    Postings postings = this.postings;
+    if (postings == null && enabled) {
+      if (!indexBuilder.buildsNow(this, this::getPostings)) {
+        return null;
+      }
+      synchronized (this) {
+        postings = this.postings;
+        if (postings == null && enabled) {
+          postings = build(null);
+          this.postings = postings;
+        }
+      }
+    }
+    return postings;
+  }
+
+  /**
+   * Add the videos appended to the store since the index was built to the index, if it is built.
+   * Their ordinals are higher than the ordinals in the index, so they are added at the end of the videos of each tag.
+   */
+  synchronized void append() {
+    Postings postings = this.postings;
+    if (postings != null && postings.size < store.size()) {
+      this.postings = build(postings);
+    }
+  }
+
+  /**
+   * Build the index from the videos of the store.
+   * @param previous The index of the first videos of the store, or null to go through all the videos
+   */
+  private Postings build(Postings previous) {
+    IndexBuildEvent event = new IndexBuildEvent();
+    event.begin();
+    int from = previous == null ? 0 : previous.size;
+    int size = store.size();
+    int tagCount = tagDictionary.foldedSize();
+    //A video can have two tags with the same folded id, we only count it once: lastOrdinals[i] is the last video
+    //counted for the tag of folded id i, plus 1
+    int[] lastOrdinals = new int[tagCount];
+    int[] offsets = new int[tagCount + 1];
+    if (previous != null) {
+      for (int foldedId = 0; foldedId < previous.offsets.length - 1; foldedId++) {
+        offsets[foldedId + 1] = previous.offsets[foldedId + 1] - previous.offsets[foldedId];
+      }
+    }
+    for (int ordinal = from; ordinal < size; ordinal++) {
+      for (int index = 0; index < store.getTagCount(ordinal); index++) {
+        int foldedId = store.getFoldedTagId(ordinal, index);
+        if (lastOrdinals[foldedId] != ordinal + 1) {
+          lastOrdinals[foldedId] = ordinal + 1;
+          offsets[foldedId + 1]++;
+        }
+      }
+    }
+    for (int foldedId = 0; foldedId < tagCount; foldedId++) {
+      offsets[foldedId + 1] += offsets[foldedId];
+    }
+
+    int[] ordinals = new int[offsets[tagCount]];
+    int[] ends = Arrays.copyOf(offsets, tagCount);
+    if (previous != null) {
+      for (int foldedId = 0; foldedId < previous.offsets.length - 1; foldedId++) {
+        int start = previous.offsets[foldedId];
+        int length = previous.offsets[foldedId + 1] - start;
+        System.arraycopy(previous.ordinals, start, ordinals, ends[foldedId], length);
+        ends[foldedId] += length;
+      }
+    }
+    Arrays.fill(lastOrdinals, 0);
+    for (int ordinal = from; ordinal < size; ordinal++) {
+      for (int index = 0; index < store.getTagCount(ordinal); index++) {
+        int foldedId = store.getFoldedTagId(ordinal, index);
+        if (lastOrdinals[foldedId] != ordinal + 1) {
+          lastOrdinals[foldedId] = ordinal + 1;
+          ordinals[ends[foldedId]++] = ordinal;
+        }
+      }
+    }
+
+    long[][] bitsets = new long[tagCount][];
+    //We sort the tags by decreasing number of videos, then by folded id, as longs holding both
+    long[] tagsByCount = new long[tagCount];
+    for (int foldedId = 0; foldedId < tagCount; foldedId++) {
+      tagsByCount[foldedId] = ((long) (size - (offsets[foldedId + 1] - offsets[foldedId])) << 32) | foldedId;
+      //A bitset takes 1 bit per video, the ordinals 32 bits per video with the tag
+      if (offsets[foldedId + 1] - offsets[foldedId] > size / 32) {
+        int start = offsets[foldedId];
+        if (previous != null && foldedId < previous.bitsets.length && previous.bitsets[foldedId] != null) {
+          //Only the bits of the appended videos are set
+          bitsets[foldedId] = Arrays.copyOf(previous.bitsets[foldedId], (size + 63) >>> 6);
+          start += previous.offsets[foldedId + 1] - previous.offsets[foldedId];
+        } else {
+          bitsets[foldedId] = new long[(size + 63) >>> 6];
+        }
+        for (int index = start; index < offsets[foldedId + 1]; index++) {
+          bitsets[foldedId][ordinals[index] >>> 6] |= 1L << ordinals[index];
+        }
+      }
+    }
+    Arrays.sort(tagsByCount);
+    int[] foldedIdsByCount = new int[tagCount];
+    for (int index = 0; index < tagCount; index++) {
+      foldedIdsByCount[index] = (int) tagsByCount[index];
+    }
+
+    Postings postings = new Postings(offsets, ordinals, bitsets, foldedIdsByCount, size);
+    event.index = "Tag postings";
+    event.entries = tagCount;
+    event.bytes = estimateBytes(postings);
+    event.attempts = 1;
+    event.commit();
+    return postings;
+  }
+
+  /**
+   * Get the videos with a tag, flagged or not.
+   * @param foldedTagId The case-folded id of the tag in the tag dictionary
+   * @return The ordinals of the videos by increasing ordinal, or null if the index is disabled
+   */
+  int[] find(int foldedTagId) {
+    Postings postings = getPostings();
+    if (postings == null) {
+      return null;
+    }
+    if (foldedTagId >= postings.offsets.length - 1) { //The tag was added after the index was built
+      return new int[0];
+    }
+    return Arrays.copyOfRange(postings.ordinals, postings.offsets[foldedTagId], postings.offsets[foldedTagId + 1]);
+  }
+
+  /**
+   * Get the number of videos with a tag, flagged or not.
+   * @param foldedTagId The case-folded id of the tag in the tag dictionary
+   * @return The number of videos, or -1 if the index is disabled
+   */
+  int count(int foldedTagId) {
+    Postings postings = getPostings();
+    if (postings == null) {
+      return -1;
+    }
+    if (foldedTagId >= postings.offsets.length - 1) {
+      return 0;
+    }
+    return postings.offsets[foldedTagId + 1] - postings.offsets[foldedTagId];
+  }
+
+  /**
+   * Count the videos of a result set with each tag, by intersecting the result set with the videos of each tag.
+   * The tags are read by decreasing number of videos, and once the number of videos of a tag is lower than the
+   * count of the last of the best tags found, no other tag can be counted more.
+   * A small result set is counted by scanning instead: the intersections cost a bitset of the whole store, and a
+   * pass over the tags, while the tags of a few videos are cheap to go through.
+   * @param ordinals The ordinals of the videos of the result set, without duplicates
+   * @param limit The maximum number of tags
+   * @return The tags of the most videos of the result set, by decreasing count, then by case-folded tag
+   */
+  List<Facet> countTags(int[] ordinals, int limit) {
+    Postings postings = getPostings();
+    if (postings == null || isCountedByScanning(postings, ordinals.length)) {
+      return countTagsByScanning(ordinals, limit);
+    }
+    return countTagsByIntersecting(postings, ordinals, limit);
+  }
+
+  /**
+   * Whether countTags counts the tags of a result set by scanning its videos rather than with the index.
+   * @param resultSize The number of videos of the result set
+   */
+  boolean isCountedByScanning(int resultSize) {
+    Postings postings = getPostings();
+    return postings == null || isCountedByScanning(postings, resultSize);
+  }
+
+  private static boolean isCountedByScanning(Postings postings, int resultSize) {
+    return resultSize < Math.max(postings.tagsByCount.length, postings.size / SCANNED_RESULTS_RATIO);
+  }
+
+  /**
+   * Count the videos of a result set with each tag with the index, whatever the size of the result set.
+   * @return The tags of the most videos of the result set, or null if the index is disabled
+   */
+  List<Facet> countTagsByIntersecting(int[] ordinals, int limit) {
+    Postings postings = getPostings();
+    return postings == null ? null : countTagsByIntersecting(postings, ordinals, limit);
+  }
+
+  private List<Facet> countTagsByIntersecting(Postings postings, int[] ordinals, int limit) {
+    long[] resultSet = new long[(store.size() + 63) >>> 6];
+    for (int ordinal: ordinals) {
+      resultSet[ordinal >>> 6] |= 1L << ordinal;
+    }
+
+    Comparator<Facet> ranking = facetRanking();
+    PriorityQueue<Facet> best = new PriorityQueue<>(ranking.reversed()); //The worst of the best tags comes first
+    for (int foldedId: postings.tagsByCount) {
+      int tagSize = postings.offsets[foldedId + 1] - postings.offsets[foldedId];
+      if (best.size() == limit && Math.min(tagSize, ordinals.length) < best.peek().count) {
+        break;
+      }
+      int count = 0;
+      long[] bitset = postings.bitsets[foldedId];
+      if (bitset != null) {
+        for (int index = 0; index < bitset.length; index++) {
+          count += Long.bitCount(bitset[index] & resultSet[index]);
+        }
+      } else {
+        for (int index = postings.offsets[foldedId]; index < postings.offsets[foldedId + 1]; index++) {
+          count += (int) (resultSet[postings.ordinals[index] >>> 6] >>> postings.ordinals[index]) & 1;
+        }
+      }
+      if (count > 0) {
+        best.add(new Facet(foldedId, count));
+        if (best.size() > limit) {
+          best.poll();
+        }
+      }
+    }
+    List<Facet> facets = new ArrayList<>(best);
+    facets.sort(ranking);
+    return facets;
+  }
+
+  /**
+   * Count the videos of a result set with each tag by going through the tags of each video.
+   * This is how the tags are counted when the index is disabled, and the reference it is compared to.
+   */
+  List<Facet> countTagsByScanning(int[] ordinals, int limit) {
+    Map<Integer, int[]> counts = new HashMap<>();
+    for (int ordinal: ordinals) {
+      for (int index = 0; index < store.getTagCount(ordinal); index++) {
+        int foldedId = store.getFoldedTagId(ordinal, index);
+        int[] count = counts.computeIfAbsent(foldedId, id -> new int[] {0, -1});
+        if (count[1] != ordinal) { //A video with a tag twice is counted once
+          count[0]++;
+          count[1] = ordinal;
+        }
+      }
+    }
+    List<Facet> facets = new ArrayList<>();
+    for (Map.Entry<Integer, int[]> entry: counts.entrySet()) {
+      facets.add(new Facet(entry.getKey(), entry.getValue()[0]));
+    }
+    facets.sort(facetRanking());
+    return facets.size() > limit ? new ArrayList<>(facets.subList(0, limit)) : facets;
+  }
+
+  private Comparator<Facet> facetRanking() {
+    return Comparator.comparingInt((Facet facet) -> -facet.count)
+        .thenComparing(facet -> tagDictionary.getFoldedTag(facet.foldedTagId));
+  }
+
+  /**
+   * Build the index now rather than on first use, if the index it replaces is built.
+   * @param previous The index of the library replaced by a reload of the catalog
+   */
+  void warmUp(TagIndex previous) {
+    if (previous.postings != null) {
+      getPostings();
+    }
+  }
+
+  /**
+   * Enable or disable the index. A disabled index is dropped, and is built again once it is enabled and used.
+   */
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      postings = null;
+    }
+  }
+
+  /**
+   * Add the estimated memory used by the index to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    Postings postings = this.postings;
+    report.add("Tag index", postings == null ? 0 : estimateBytes(postings),
+        postings == null ? "not built" : (postings.offsets.length - 1) + " tags");
+  }
+
+  private static long estimateBytes(Postings postings) {
+    long bytes = MemoryReport.array(postings.offsets.length, 4) + MemoryReport.array(postings.ordinals.length, 4)
+        + MemoryReport.array(postings.bitsets.length, MemoryReport.REFERENCE)
+        + MemoryReport.array(postings.tagsByCount.length, 4);
+    for (long[] bitset: postings.bitsets) {
+      if (bitset != null) {
+        bytes += MemoryReport.array(bitset.length, 8);
+      }
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,150 @@
+package com.google;
+
+/**
+ * A class used to go through the videos of a store in the order of their titles, as the search results are
+ * displayed, without sorting the videos for each search.
+ * The index is the array of the ordinals of the videos sorted by title, then by ordinal. It is built on first use,
+ * and can be dropped to save memory: it is then built again on the next use. The videos appended to the store are
+ * inserted into the built index, without sorting the other videos again. A command with a time budget does not
+ * build the index, it is built in the background by the IndexBuilder.
+ */
+class TitleIndex {
+
+  private final VideoStore store;
+  private final IndexBuilder indexBuilder;
+  private volatile int[] ordinals;
+  private volatile boolean enabled = true;
+
+  /**
+   * @param store The store the indexed videos are in
+   * @param indexBuilder The builder of the index outside of the time budget of the commands
+   */
+  TitleIndex(VideoStore store, IndexBuilder indexBuilder) {
+    this.store = store;
+    this.indexBuilder = indexBuilder;
+  }
+
+  /**
+   * Get the ordinals of the videos sorted by title, then by ordinal, building them if needed.
+   * @return The sorted ordinals, or null if the index is disabled or being built in the background
+   */
+  int[] getOrdinals() {
+    int[] ordinals = this.ordinals;
+    if (ordinals == null && enabled) {
+      if (!indexBuilder.buildsNow(this, this::getOrdinals)) {
+        return null;
+      }
+      synchronized (this) {
+        ordinals = this.ordinals;
+        if (ordinals == null && enabled) {
+          ordinals = build();
+          this.ordinals = ordinals;
+        }
+      }
+    }
+    return ordinals;
+  }
+
+  private int[] build() {
+    IndexBuildEvent event = new IndexBuildEvent();
+    event.begin();
+    int size = store.size();
+    //We decode each title once, instead of twice per comparison
+    String[] titles = new String[size];
+    int[] ordinals = new int[size];
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      titles[ordinal] = store.getTitle(ordinal);
+      ordinals[ordinal] = ordinal;
+    }
+    //The sort is stable, videos with the same title stay in the order of their ordinals
+    IntSorter.sort(ordinals, 0, size, (first, second) -> titles[first].compareTo(titles[second]));
+    event.index = "Title order";
+    event.entries = size;
+    event.bytes = MemoryReport.array(size, 4);
+    event.attempts = 1;
+    event.commit();
+    return ordinals;
+  }
+
+  /**
+   * Insert the videos appended to the store since the index was built into the index, if it is built.
+   * The appended videos are sorted, then each of them is inserted after the videos of the same or a lower title,
+   * found by binary search, so that only the titles of the appended videos and of log(n) videos each are decoded.
+   */
+  synchronized void append() {
+    int[] ordinals = this.ordinals;
+    if (ordinals == null || ordinals.length == store.size()) {
+      return;
+    }
+    int from = ordinals.length;
+    int count = store.size() - from;
+    String[] titles = new String[count];
+    int[] sortedOrdinals = new int[count];
+    for (int index = 0; index < count; index++) {
+      titles[index] = store.getTitle(from + index);
+      sortedOrdinals[index] = from + index;
+    }
+    IntSorter.sort(sortedOrdinals, 0, count, (first, second) -> titles[first - from].compareTo(titles[second - from]));
+
+    //The appended videos have the highest ordinals, they come after the indexed videos of the same title
+    int[] merged = new int[from + count];
+    int copied = 0;
+    for (int index = 0; index < count; index++) {
+      int position = positionAfter(ordinals, titles[sortedOrdinals[index] - from]);
+      System.arraycopy(ordinals, copied, merged, copied + index, position - copied);
+      copied = position;
+      merged[position + index] = sortedOrdinals[index];
+    }
+    System.arraycopy(ordinals, copied, merged, copied + count, from - copied);
+    this.ordinals = merged;
+  }
+
+  /**
+   * Get the position of the first video whose title comes after the given title.
+   * @param ordinals The ordinals returned by getOrdinals
+   * @param title The title
+   * @return The position in ordinals, ordinals.length if no title comes after the given title
+   */
+  int positionAfter(int[] ordinals, String title) {
+    int low = 0;
+    int high = ordinals.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (store.getTitle(ordinals[middle]).compareTo(title) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Build the index now rather than on first use, if the index it replaces is built.
+   * @param previous The index of the library replaced by a reload of the catalog
+   */
+  void warmUp(TitleIndex previous) {
+    if (previous.ordinals != null) {
+      getOrdinals();
+    }
+  }
+
+  /**
+   * Enable or disable the index. A disabled index is dropped, and is built again once it is enabled and used.
+   */
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      ordinals = null;
+    }
+  }
+
+  /**
+   * Add the estimated memory used by the index to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    int[] ordinals = this.ordinals;
+    report.add("Title index", ordinals == null ? 0 : MemoryReport.array(ordinals.length, 4),
+        ordinals == null ? "not built" : ordinals.length + " videos");
+  }
+}
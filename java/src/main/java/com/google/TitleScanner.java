@@ -0,0 +1,318 @@
+package com.google;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A class used to find the videos whose lower case title contains a search term, without decoding and lower casing
+ * each title for each search.
+ * The titles are lower cased once and copied one after the other, in UTF-8, in a direct buffer: the arena.
+ * A search reads the arena 8 bytes at a time, and compares each of the 8 bytes at once to the first and to the last
+ * byte of the term with bitwise operations on the long (SWAR, SIMD within a register). Only the positions where both
+ * bytes are equal are compared to the whole term.
+ * The arena is built on first use, and can be dropped to save memory: titles are then scanned as Strings, as they are
+ * while the arena is built in the background for a command with a time budget.
+ * The titles of the videos appended to the store are added at the end of the built arena.
+ */
+class TitleScanner {
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+  private final VideoStore store;
+  private final IndexBuilder indexBuilder;
+  private volatile Arena arena;
+  private volatile boolean enabled = true;
+  private volatile boolean tooLarge = false;
+
+  /**
+   * The lower case titles of the videos.
+   */
+  private static final class Arena {
+    //The bytes of the titles, followed by 8 bytes of padding so that longs can be read up to the last byte
+    final ByteBuffer bytes;
+    //The title of the video of ordinal i is between offsets[i] and offsets[i + 1]
+    final int[] offsets;
+
+    Arena(ByteBuffer bytes, int[] offsets) {
+      this.bytes = bytes;
+      this.offsets = offsets;
+    }
+  }
+
+  /**
+   * @param store The store the scanned videos are in
+   * @param indexBuilder The builder of the arena outside of the time budget of the commands
+   */
+  TitleScanner(VideoStore store, IndexBuilder indexBuilder) {
+    this.store = store;
+    this.indexBuilder = indexBuilder;
+  }
+
+  private Arena getArena() {
+    Arena arena = this.arena;
+    if (arena == null && enabled && !tooLarge) {
+      if (!indexBuilder.buildsNow(this, this::getArena)) {
+        return null;
+      }
+      synchronized (this) {
+        arena = this.arena;
+        if (arena == null && enabled && !tooLarge) {
+          arena = build();
+          this.arena = arena;
+          tooLarge = arena == null;
+        }
+      }
+    }
+    return arena;
+  }
+
+  private Arena build() {
+    IndexBuildEvent event = new IndexBuildEvent();
+    event.begin();
+    int size = store.size();
+    int[] offsets = new int[size + 1];
+    byte[] bytes = new byte[1 << 16];
+    int length = 0;
+    for (int ordinal = 0; ordinal < size; ordinal++) {
+      //The titles are stored in UTF-8, so they have no unpaired surrogates and their bytes match as their chars do
+      byte[] titleBytes = store.getTitle(ordinal).toLowerCase().getBytes(StandardCharsets.UTF_8);
+      if ((long) length + titleBytes.length + Long.BYTES > Integer.MAX_VALUE) {
+        return null; //The titles do not fit in a buffer, they are scanned as Strings
+      }
+      if (length + titleBytes.length > bytes.length) {
+        bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - Long.BYTES,
+            Math.max(2L * bytes.length, length + titleBytes.length)));
+      }
+      System.arraycopy(titleBytes, 0, bytes, length, titleBytes.length);
+      length += titleBytes.length;
+      offsets[ordinal + 1] = length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length + Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(bytes, 0, length);
+    event.index = "Folded titles";
+    event.entries = size;
+    event.bytes = buffer.capacity() + MemoryReport.array(offsets.length, 4);
+    event.attempts = 1;
+    event.commit();
+    return new Arena(buffer, offsets);
+  }
+
+  /**
+   * Add the lower case titles of the videos appended to the store since the arena was built to the arena, if it is
+   * built. The buffer grows by half of its capacity when it is full, so that small batches are not copied each time.
+   */
+  synchronized void append() {
+    Arena arena = this.arena;
+    int size = store.size();
+    if (arena == null || arena.offsets.length - 1 == size) {
+      return;
+    }
+    int from = arena.offsets.length - 1;
+    int[] offsets = Arrays.copyOf(arena.offsets, size + 1);
+    byte[][] titles = new byte[size - from][];
+    long length = offsets[from];
+    for (int ordinal = from; ordinal < size; ordinal++) {
+      titles[ordinal - from] = store.getTitle(ordinal).toLowerCase().getBytes(StandardCharsets.UTF_8);
+      length += titles[ordinal - from].length;
+      if (length + Long.BYTES > Integer.MAX_VALUE) { //The titles do not fit in a buffer anymore
+        this.arena = null;
+        tooLarge = true;
+        return;
+      }
+      offsets[ordinal + 1] = (int) length;
+    }
+
+    ByteBuffer bytes = arena.bytes;
+    if (length + Long.BYTES > bytes.capacity()) {
+      int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(length + Long.BYTES, bytes.capacity() * 3L / 2));
+      ByteBuffer previousBytes = arena.bytes.duplicate();
+      previousBytes.position(0).limit(offsets[from]);
+      bytes = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+      bytes.put(previousBytes);
+    }
+    //The bytes after the titles are still 0, they are the padding of the arena
+    ByteBuffer end = bytes.duplicate();
+    end.position(offsets[from]);
+    for (byte[] title: titles) {
+      end.put(title);
+    }
+    this.arena = new Arena(bytes, offsets);
+  }
+
+  private static boolean hasUnpairedSurrogate(String text) {
+    for (int index = 0; index < text.length(); index++) {
+      char character = text.charAt(index);
+      if (Character.isHighSurrogate(character) && index + 1 < text.length()
+          && Character.isLowSurrogate(text.charAt(index + 1))) {
+        index++; //A pair is encoded as 4 bytes, which are only equal to the bytes of the same pair
+      } else if (Character.isSurrogate(character)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find the videos whose lower case title contains the search term, as String.contains would, flagged or not.
+   * @param searchTerm The search term, compared as is to the lower case titles
+   * @return The ordinals of the videos, in increasing order
+   */
+  int[] scan(String searchTerm) {
+    return scan(searchTerm, 0, store.size());
+  }
+
+  /**
+   * Find the videos of a range of ordinals whose lower case title contains the search term, flagged or not.
+   * Ranges can be scanned by several threads at the same time.
+   * @param searchTerm The search term, compared as is to the lower case titles
+   * @param from The first ordinal of the range
+   * @param to The ordinal after the last ordinal of the range
+   * @return The ordinals of the videos, in increasing order
+   */
+  int[] scan(String searchTerm, int from, int to) {
+    Arena arena = getArena();
+    if (arena == null || hasUnpairedSurrogate(searchTerm)) { //An unpaired surrogate would be encoded as '?'
+      return scanStrings(searchTerm, from, to);
+    }
+    byte[] term = searchTerm.getBytes(StandardCharsets.UTF_8);
+    int[] offsets = arena.offsets;
+    to = Math.min(to, offsets.length - 1);
+    from = Math.min(from, to);
+    int[] ordinals = new int[16];
+    int count = 0;
+    if (term.length == 0) { //Every title contains the empty term
+      ordinals = new int[to - from];
+      for (int ordinal = from; ordinal < to; ordinal++) {
+        ordinals[ordinal - from] = ordinal;
+      }
+      return ordinals;
+    }
+
+    ByteBuffer bytes = arena.bytes;
+    long first = (term[0] & 0xFF) * ONES;
+    long last = (term[term.length - 1] & 0xFF) * ONES;
+    int end = offsets[to] - term.length; //The last position where the term can start
+    int ordinal = from;
+    int position = offsets[from];
+    Deadline deadline = Deadline.current();
+    long words = 0;
+    while (position <= end) {
+      if (deadline.shouldStop(words++)) { //Checked every 8 KB of titles
+        break;
+      }
+      long candidates = equalBytes(bytes.getLong(position), first)
+          & equalBytes(bytes.getLong(position + term.length - 1), last);
+      int next = position + Long.BYTES;
+      while (candidates != 0) {
+        int candidate = position + (Long.numberOfTrailingZeros(candidates) >>> 3);
+        candidates &= candidates - 1;
+        if (candidate > end) {
+          break;
+        }
+        while (offsets[ordinal + 1] <= candidate) {
+          ordinal++;
+        }
+        if (candidate + term.length <= offsets[ordinal + 1] && matches(bytes, candidate, term)) {
+          if (count == ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, 2 * count);
+          }
+          ordinals[count++] = ordinal;
+          //We only need one match per title, we go on from the next title
+          next = offsets[ordinal + 1];
+          break;
+        }
+      }
+      position = next;
+    }
+
+    return Arrays.copyOf(ordinals, count);
+  }
+
+  /**
+   * Set the high bit of each byte of the value equal to the corresponding byte of the pattern, and clear all the
+   * other bits. Unlike the usual (x - 0x01..01) & ~x & 0x80..80, there are no false positives after a borrow.
+   */
+  private static long equalBytes(long value, long pattern) {
+    long difference = value ^ pattern;
+    return ~(((difference & LOW_BITS) + LOW_BITS) | difference | LOW_BITS);
+  }
+
+  private static boolean matches(ByteBuffer bytes, int position, byte[] term) {
+    //The first and last bytes are already equal
+    for (int index = 1; index < term.length - 1; index++) {
+      if (bytes.get(position + index) != term[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find the videos whose lower case title contains the search term by decoding and lower casing each title.
+   * This is how the arena is searched when it is disabled, and the reference it is compared to.
+   * @param searchTerm The search term
+   * @return The ordinals of the videos, in increasing order
+   */
+  int[] scanStrings(String searchTerm) {
+    return scanStrings(searchTerm, 0, store.size());
+  }
+
+  private int[] scanStrings(String searchTerm, int from, int to) {
+    int[] ordinals = new int[16];
+    int count = 0;
+    Deadline deadline = Deadline.current();
+    for (int ordinal = from; ordinal < to; ordinal++) {
+      if (deadline.shouldStop(ordinal - from)) {
+        break;
+      }
+      if (store.getTitle(ordinal).toLowerCase().contains(searchTerm)) {
+        if (count == ordinals.length) {
+          ordinals = Arrays.copyOf(ordinals, 2 * count);
+        }
+        ordinals[count++] = ordinal;
+      }
+    }
+    return Arrays.copyOf(ordinals, count);
+  }
+
+  /**
+   * Whether searches go through the arena, instead of decoding the titles.
+   */
+  boolean isEnabled() {
+    return enabled && !tooLarge;
+  }
+
+  /**
+   * Build the index now rather than on first use, if the index it replaces is built.
+   * @param previous The index of the library replaced by a reload of the catalog
+   */
+  void warmUp(TitleScanner previous) {
+    if (previous.arena != null) {
+      getArena();
+    }
+  }
+
+  /**
+   * Enable or disable the arena. A disabled arena is dropped, and is built again once it is enabled and used.
+   */
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      arena = null;
+    }
+  }
+
+  /**
+   * Add the estimated memory used by the arena to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    Arena arena = this.arena;
+    report.addOffHeap("Folded titles", arena == null ? 0 : arena.bytes.capacity(),
+        arena == null ? "not built" : (arena.offsets.length - 1) + " videos");
+    report.add("Folded title offsets", arena == null ? 0 : MemoryReport.array(arena.offsets.length, 4),
+        arena == null ? "not built" : (arena.offsets.length - 1) + " videos");
+  }
+}
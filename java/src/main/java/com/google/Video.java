@@ -1,21 +1,36 @@
 package com.google;
 
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
 
-/** A class used to represent a video. */
+/**
+ * A class used to represent a video.
+ * A Video is a lightweight view of a video of a VideoStore: it only holds the ordinal of the video, and its
+ * title, video id and tags are read from the store when requested. The title and video id are decoded once,
+ * when they are first requested.
+ */
 class Video {
 
-  private final String title;
-  private final String videoId;
-  private final List<String> tags;
-  private boolean flagged = false;
-  private String flagReason = "";
+  private final VideoStore store;
+  private final int ordinal;
+  private String title;
+  private String videoId;
 
-  Video(String title, String videoId, List<String> tags) {
-    this.title = title;
-    this.videoId = videoId;
-    this.tags = Collections.unmodifiableList(tags);
+  /**
+   * @param store The store the video is in
+   * @param ordinal The ordinal of the video in the store
+   */
+  Video(VideoStore store, int ordinal) {
+    this.store = store;
+    this.ordinal = ordinal;
+  }
+
+  /**
+   * Returns the ordinal of the video in its store.
+   * @return The ordinal of the video
+   */
+  int getOrdinal() {
+    return ordinal;
   }
 
   /**
@@ -23,6 +38,12 @@ class Video {
    * @return The title of the video
    */
   public String getTitle() {
+    //Concurrent calls may decode the title twice, but always see a fully constructed String
+    String title = this.title;
+    if (title == null) {
+      title = store.getTitle(ordinal);
+      this.title = title;
+    }
     return title;
   }
 
@@ -31,6 +52,11 @@ class Video {
    * @return The video id of the video
    * */
   public String getVideoId() {
+    String videoId = this.videoId;
+    if (videoId == null) {
+      videoId = store.getVideoId(ordinal);
+      this.videoId = videoId;
+    }
     return videoId;
   }
 
@@ -39,7 +65,26 @@ class Video {
    * @return A collection of the tags of the video
    */
   public List<String> getTags() {
-    return tags;
+    return new AbstractList<>() {
+      @Override
+      public String get(int index) {
+        return store.getTag(ordinal, index);
+      }
+
+      @Override
+      public int size() {
+        return store.getTagCount(ordinal);
+      }
+    };
+  }
+
+  /**
+   * Whether the video has a tag, compared case-insensitively.
+   * @param foldedTagId The case-folded id of the tag in the tag dictionary
+   * @return True if one of the tags of the video has this case-folded id
+   */
+  boolean hasTag(int foldedTagId) {
+    return store.hasTag(ordinal, foldedTagId);
   }
 
   /**
@@ -48,14 +93,14 @@ class Video {
    */
   public String getFullDisplayString() {
 
-    String displayString = title + " (" + videoId + ") [";
-    for (String tag: tags) {
-      displayString = displayString + tag + " ";
+    String displayString = getTitle() + " (" + getVideoId() + ") [";
+    for (int index = 0; index < store.getTagCount(ordinal); index++) {
+      displayString = displayString + store.getTag(ordinal, index) + " ";
     }
     displayString = displayString.trim() + "]";
 
-    if (flagged) {
-      displayString = displayString + " - FLAGGED (reason: " + flagReason + ")";
+    if (isFlagged()) {
+      displayString = displayString + " - FLAGGED (reason: " + getFlagReason() + ")";
     }
 
     return displayString;
@@ -66,10 +111,7 @@ class Video {
    * @param reason The reason supplied by the user to flag the video
    */
   public void flag(String reason) {
-
-    flagged = true;
-    flagReason = reason;
-
+    store.flag(ordinal, reason);
   }
 
   /**
@@ -77,7 +119,7 @@ class Video {
    * @return True if the video is flagged, otherwise false
    */
   public boolean isFlagged() {
-    return flagged;
+    return store.isFlagged(ordinal);
   }
 
   /**
@@ -85,17 +127,31 @@ class Video {
    * @return The flag reason
    */
   public String getFlagReason() {
-    return flagReason;
+    return store.getFlagReason(ordinal);
   }
 
   /**
    * Un-flag the video.
    */
   public void allow() {
+    store.allow(ordinal);
+  }
 
-    flagged = false;
-    flagReason = "";
+  /**
+   * Two videos are equal if they are views of the same video of the same store.
+   */
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Video)) {
+      return false;
+    }
+    Video otherVideo = (Video) other;
+    return store == otherVideo.store && ordinal == otherVideo.ordinal;
+  }
 
+  @Override
+  public int hashCode() {
+    return ordinal;
   }
 
 }
@@ -0,0 +1,132 @@
+package com.google;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class used to keep the most used videos of a VideoStore decoded on the heap.
+ * It is a segmented LRU cache: a video enters the probation segment when it is first requested, and is promoted
+ * to the protected segment when it is requested again. Scans through the catalog only go through the probation
+ * segment, so that they do not evict the videos that are requested again and again.
+ */
+class VideoCache {
+
+  private static final double PROTECTED_RATIO = 0.8;
+
+  private final VideoStore store;
+  private final int protectedCapacity;
+  private final int probationCapacity;
+  private final LinkedHashMap<Integer, Video> protectedVideos = new LinkedHashMap<>(16, 0.75f, true);
+  private final LinkedHashMap<Integer, Video> probationVideos = new LinkedHashMap<>(16, 0.75f, true);
+  private boolean enabled = true;
+  private LongAdder hits = new LongAdder();
+  private LongAdder misses = new LongAdder();
+  private LatencyHistogram missLatency = new LatencyHistogram();
+
+  /**
+   * @param store The store the cached videos are decoded from
+   * @param capacity The maximum number of cached videos
+   */
+  VideoCache(VideoStore store, int capacity) {
+    this.store = store;
+    this.protectedCapacity = (int) (capacity * PROTECTED_RATIO);
+    this.probationCapacity = Math.max(1, capacity - protectedCapacity);
+  }
+
+  /**
+   * Record the hits, misses and latency of the misses of the cache in the given metrics.
+   */
+  synchronized void setMetrics(Metrics metrics) {
+    hits = metrics.counter("video_cache_hits_total");
+    misses = metrics.counter("video_cache_misses_total");
+    missLatency = metrics.histogram("video_cache_miss_latency");
+  }
+
+  /**
+   * Enable or disable the cache. A disabled cache is emptied, and does not keep any video until it is enabled.
+   */
+  synchronized void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      protectedVideos.clear();
+      probationVideos.clear();
+    }
+  }
+
+  /**
+   * Get a decoded video, decoding it if it is not in the cache.
+   * @param ordinal The ordinal of the video
+   * @return The video, with its title and video id decoded
+   */
+  synchronized Video get(int ordinal) {
+    if (!enabled) {
+      return new Video(store, ordinal);
+    }
+    Video video = protectedVideos.get(ordinal);
+    if (video != null) {
+      hits.increment();
+      return video;
+    }
+    video = probationVideos.remove(ordinal);
+    if (video != null) {
+      hits.increment();
+      protectedVideos.put(ordinal, video);
+      if (protectedVideos.size() > protectedCapacity) {
+        //We give the least recently used protected video another chance in the probation segment
+        Iterator<Map.Entry<Integer, Video>> eldest = protectedVideos.entrySet().iterator();
+        Map.Entry<Integer, Video> demoted = eldest.next();
+        eldest.remove();
+        addToProbation(demoted.getKey(), demoted.getValue());
+      }
+      return video;
+    }
+
+    misses.increment();
+    long start = System.nanoTime();
+    video = new Video(store, ordinal);
+    video.getTitle();
+    video.getVideoId();
+    missLatency.record(System.nanoTime() - start);
+    addToProbation(ordinal, video);
+    return video;
+  }
+
+  private void addToProbation(int ordinal, Video video) {
+    probationVideos.put(ordinal, video);
+    if (probationVideos.size() > probationCapacity) {
+      Iterator<Video> eldest = probationVideos.values().iterator();
+      eldest.next();
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Get the number of cached videos.
+   */
+  synchronized int size() {
+    return protectedVideos.size() + probationVideos.size();
+  }
+
+  /**
+   * Add the estimated memory used by the cache to the given report.
+   */
+  synchronized void estimateMemory(MemoryReport report) {
+    long bytes = 2 * MemoryReport.hashMap(0);
+    for (Video video: protectedVideos.values()) {
+      bytes += MemoryReport.string(video.getTitle()) + MemoryReport.string(video.getVideoId());
+    }
+    for (Video video: probationVideos.values()) {
+      bytes += MemoryReport.string(video.getTitle()) + MemoryReport.string(video.getVideoId());
+    }
+    int size = size();
+    long entryBytes = MemoryReport.HASH_MAP_NODE + 2 * MemoryReport.REFERENCE //LinkedHashMap entry
+        + MemoryReport.object(4) //Integer key
+        + MemoryReport.object(4 + 3 * MemoryReport.REFERENCE); //Video
+    bytes += size * entryBytes + MemoryReport.array(protectedCapacity * 2L, MemoryReport.REFERENCE)
+        + MemoryReport.array(probationCapacity * 2L, MemoryReport.REFERENCE);
+    report.add("Video cache", bytes, size + " of " + (protectedCapacity + probationCapacity) + " videos, "
+        + hits.sum() + " hits, " + misses.sum() + " misses");
+  }
+}
@@ -0,0 +1,79 @@
+package com.google;
+
+/**
+ * A class used to find the ordinal of a video from its video id.
+ * It is an open addressing hash table of ordinals: the video ids themselves are not stored in the index,
+ * they are compared with the video ids of the store.
+ */
+class VideoIdIndex {
+
+  private final VideoStore store;
+  private int[] slots = new int[16]; //The ordinal of the video + 1, or 0 for an empty slot
+  private int size = 0;
+
+  /**
+   * @param store The store the indexed videos are in
+   */
+  VideoIdIndex(VideoStore store) {
+    this.store = store;
+  }
+
+  /**
+   * Add a video of the store to the index.
+   * @param ordinal The ordinal of the video
+   */
+  void add(int ordinal) {
+    if ((size + 1) * 2 > slots.length) {
+      int[] previousSlots = slots;
+      slots = new int[slots.length * 2];
+      for (int slot: previousSlots) {
+        if (slot != 0) {
+          insert(slot - 1);
+        }
+      }
+    }
+    insert(ordinal);
+    size++;
+  }
+
+  private void insert(int ordinal) {
+    int mask = slots.length - 1;
+    int index = (int) store.hashVideoId(ordinal) & mask;
+    while (slots[index] != 0) {
+      index = (index + 1) & mask;
+    }
+    slots[index] = ordinal + 1;
+  }
+
+  /**
+   * Get the ordinal of a video.
+   * @param videoId The video id of the video
+   * @return The ordinal of the video, or -1 if there is no video with this id
+   */
+  int find(String videoId) {
+    int mask = slots.length - 1;
+    int index = (int) ByteArena.hash(videoId) & mask;
+    while (slots[index] != 0) {
+      int ordinal = slots[index] - 1;
+      if (store.hasVideoId(ordinal, videoId)) {
+        return ordinal;
+      }
+      index = (index + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Get the number of videos in the index.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Add the estimated memory used by the index to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    report.add("Video id index", MemoryReport.array(slots.length, 4), size + " videos");
+  }
+}
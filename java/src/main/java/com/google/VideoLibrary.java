@@ -2,58 +2,452 @@ package com.google;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.List;
 import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
  * A class used to represent a Video Library.
+ * The videos are kept in a columnar VideoStore, and Video objects are only created as views when requested.
+ * The storage is configured with system properties:
+ * youtube.storage.dir stores the titles and video ids in memory-mapped files of this directory instead of
+ * direct memory, and youtube.cache.videos keeps up to this number of videos looked up by id decoded on the heap.
+ * Videos can be appended to the library after it is loaded, e.g. by a CatalogTailer: a batch of videos is added
+ * while holding the write lock of the library, and the commands run while holding its read lock, so that they
+ * never see a batch partially added.
+ * A library is closed once it is replaced by a reloaded catalog and no command reads it anymore: the commands retain
+ * the library while they run, and the last one to release it closes its store.
  */
-class VideoLibrary {
+class VideoLibrary implements AutoCloseable {
 
-  private final HashMap<String, Video> videos;
+  private static final int[] NO_TAGS = new int[0];
+
+  private final TagDictionary tagDictionary = new TagDictionary();
+  private final VideoStore store = createStore(tagDictionary);
+  private final VideoCache videoCache = createCache(store);
+  private final IndexBuilder indexBuilder = new IndexBuilder(this::readIfOpen);
+  private final TitleIndex titleIndex = new TitleIndex(store, indexBuilder);
+  private final TitleScanner titleScanner = new TitleScanner(store, indexBuilder);
+  private final TagIndex tagIndex = new TagIndex(store, tagDictionary, indexBuilder);
+  private final QueryPlanner queryPlanner = new QueryPlanner(store, tagDictionary, tagIndex, titleScanner);
+  private final RelevanceIndex relevanceIndex = new RelevanceIndex(store, indexBuilder);
+  private final CompletionIndex completionIndex = new CompletionIndex(store, tagDictionary, indexBuilder);
+  private final FuzzyIndex fuzzyIndex = new FuzzyIndex(store, relevanceIndex, titleIndex, indexBuilder);
+  private PerfectHashIndex perfectHashIndex; //The index of the videos of the catalog, built once it is loaded
+  private VideoIdIndex videoIdIndex = new VideoIdIndex(store); //The index of the videos not in perfectHashIndex
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final AtomicInteger references = new AtomicInteger(1); //The owner of the library, and its readers
+  private final AtomicBoolean closed = new AtomicBoolean();
+  private File catalog;
+  private long loadedBytes; //The size of the catalog file when it was loaded
 
   VideoLibrary() {
-    this.videos = new HashMap<>();
+    this(new File(VideoLibrary.class.getResource("/videos.txt").getFile()));
+  }
+
+  /**
+   * Load the videos of the given catalog file, one "title | video_id | tag1, tag2" video per line.
+   * If several lines have the same video id, only the first one is kept.
+   * @param file The catalog file
+   */
+  VideoLibrary(File file) {
+    CatalogLoadEvent event = new CatalogLoadEvent();
+    event.begin();
+    long lines = 0;
+    catalog = file;
     try {
-      File file = new File(this.getClass().getResource("/videos.txt").getFile());
+      event.source = file.getPath();
+      event.bytes = file.length();
+      loadedBytes = event.bytes;
 
       Scanner scanner = new Scanner(file);
       while (scanner.hasNextLine()) {
-        String line = scanner.nextLine();
-        String[] split = line.split("\\|");
-        String title = split[0].strip();
-        String id = split[1].strip();
-        List<String> tags;
-        if (split.length > 2) {
-          tags = Arrays.stream(split[2].split(",")).map(String::strip).collect(
-              Collectors.toList());
-        } else {
-          tags = new ArrayList<>();
-        }
-        this.videos.put(id, new Video(title, id, tags));
+        addLine(scanner.nextLine());
+        lines++;
       }
     } catch (FileNotFoundException e) {
-      System.out.println("Couldn't find videos.txt");
+      System.out.println("Couldn't find " + file.getName());
       e.printStackTrace();
     }
+    event.lines = lines;
+    event.videos = store.size();
+    event.commit();
+
+    //We replace the hash table used to find duplicates while loading by a smaller perfect hash index
+    perfectHashIndex = PerfectHashIndex.build(store, store.size());
+    if (perfectHashIndex != null) {
+      videoIdIndex = new VideoIdIndex(store);
+    }
+  }
+
+  /**
+   * Add the video of a catalog line, unless a video with the same video id is already in the library.
+   * @return True if the video was added
+   */
+  private boolean addLine(String line) {
+    String[] split = line.split("\\|");
+    if (split.length < 2) { //Not a video, e.g. an empty line
+      return false;
+    }
+    String title = split[0].strip();
+    String id = split[1].strip();
+    if ((perfectHashIndex != null && perfectHashIndex.find(id) >= 0) || videoIdIndex.find(id) >= 0) {
+      return false;
+    }
+    int[] tagIds = NO_TAGS;
+    if (split.length > 2) {
+      String[] tags = split[2].split(",");
+      tagIds = new int[tags.length];
+      for (int index = 0; index < tags.length; index++) {
+        tagIds[index] = tagDictionary.add(tags[index].strip());
+      }
+    }
+    videoIdIndex.add(store.add(title, id, tagIds));
+    return true;
+  }
+
+  /**
+   * Add the videos of catalog lines appended to the catalog after it was loaded, as a single batch: the commands
+   * see either none or all of the videos of the batch. The indexes that are built are merged with the new videos,
+   * except the relevance, completion and fuzzy indexes, whose content depends on all the videos: they are dropped
+   * and built again on their next use.
+   * @param lines The lines, one "title | video_id | tag1, tag2" video per line
+   * @return The number of videos added, the lines with the video id of a video of the library being skipped
+   */
+  int append(List<String> lines) {
+    if (!retain()) { //The library was replaced by a reloaded catalog
+      return 0;
+    }
+    lock.writeLock().lock();
+    try {
+      int from = store.size();
+      for (String line: lines) {
+        addLine(line);
+      }
+      if (store.size() == from) {
+        return 0;
+      }
+      titleIndex.append();
+      titleScanner.append();
+      tagIndex.append();
+      relevanceIndex.invalidate();
+      completionIndex.invalidate();
+      fuzzyIndex.invalidate();
+      //The hash table of the appended videos is slower than the perfect hash index, we rebuild it once it is large
+      if (perfectHashIndex != null && videoIdIndex.size() > store.size() / 8) {
+        PerfectHashIndex rebuilt = PerfectHashIndex.build(store, store.size());
+        if (rebuilt != null) {
+          perfectHashIndex = rebuilt;
+          videoIdIndex = new VideoIdIndex(store);
+        }
+      }
+      return store.size() - from;
+    } finally {
+      lock.writeLock().unlock();
+      release();
+    }
+  }
+
+  /**
+   * Build the indexes built in the given library now, rather than on first use, so that the commands do not wait for
+   * them once this library replaces it.
+   * @param previous The library replaced by this library, when the catalog is reloaded
+   */
+  void warmUp(VideoLibrary previous) {
+    titleIndex.warmUp(previous.titleIndex);
+    titleScanner.warmUp(previous.titleScanner);
+    tagIndex.warmUp(previous.tagIndex);
+    relevanceIndex.warmUp(previous.relevanceIndex);
+    completionIndex.warmUp(previous.completionIndex);
+    fuzzyIndex.warmUp(previous.fuzzyIndex);
+  }
+
+  /**
+   * Flag the videos flagged in the given library, with the same reasons. The videos are found by video id, the
+   * flagged videos not in this library are not carried over.
+   * @param previous The library replaced by this library, when the catalog is reloaded
+   * @param missingVideos Called with the video id of each flagged video not in this library
+   * @return The number of videos flagged
+   */
+  int copyFlags(VideoLibrary previous, Consumer<String> missingVideos) {
+    int flagged = 0;
+    VideoStore previousStore = previous.store;
+    for (int ordinal = previousStore.nextFlagged(0); ordinal >= 0; ordinal = previousStore.nextFlagged(ordinal + 1)) {
+      Video video = getVideo(previousStore.getVideoId(ordinal));
+      if (video != null && !video.isFlagged()) {
+        String reason = previousStore.getFlagReason(ordinal);
+        completionIndex.update(video.getOrdinal(), false, () -> video.flag(reason));
+        flagged++;
+      } else if (video == null) {
+        missingVideos.accept(previousStore.getVideoId(ordinal));
+      }
+    }
+    return flagged;
+  }
+
+  /**
+   * Run an action reading the library, while no videos are appended to it.
+   * @param action The action, e.g. a command
+   */
+  void read(Runnable action) {
+    lock.readLock().lock();
+    try {
+      action.run();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void readIfOpen(Runnable action) {
+    if (retain()) {
+      try {
+        read(action);
+      } finally {
+        release();
+      }
+    }
+  }
+
+  /**
+   * Retain the library, so that it is not closed while it is read.
+   * @return True if the library is retained and must be released, false if it is already closed
+   */
+  boolean retain() {
+    while (true) {
+      int count = references.get();
+      if (count == 0) {
+        return false;
+      }
+      if (references.compareAndSet(count, count + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Release the library once it is no longer read. The last release closes the store.
+   */
+  void release() {
+    if (references.decrementAndGet() == 0) {
+      store.close();
+    }
+  }
+
+  /**
+   * Close the library once the commands reading it release it, when it is replaced by a reloaded catalog.
+   */
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      release();
+    }
+  }
+
+  /**
+   * Whether the library is closed: replaced, and released by all the commands reading it.
+   */
+  boolean isClosed() {
+    return references.get() == 0;
+  }
+
+  /**
+   * Get the catalog file the library was loaded from.
+   */
+  File getCatalog() {
+    return catalog;
+  }
+
+  /**
+   * Get the size of the catalog file when the library was loaded, where the videos appended later start.
+   */
+  long getLoadedBytes() {
+    return loadedBytes;
+  }
+
+  private static VideoStore createStore(TagDictionary tagDictionary) {
+    String directory = System.getProperty("youtube.storage.dir");
+    if (directory == null) {
+      return new VideoStore(tagDictionary);
+    }
+    return new VideoStore(tagDictionary, new MappedByteArena(Path.of(directory), "titles"),
+        new MappedByteArena(Path.of(directory), "video-ids"));
+  }
+
+  private static VideoCache createCache(VideoStore store) {
+    int capacity = Integer.getInteger("youtube.cache.videos", 0);
+    return capacity > 0 ? new VideoCache(store, capacity) : null;
+  }
+
+  /**
+   * Record the metrics of the library, such as the hit ratio of its cache, in the given metrics.
+   */
+  void setMetrics(Metrics metrics) {
+    if (videoCache != null) {
+      videoCache.setMetrics(metrics);
+    }
+    relevanceIndex.setMetrics(metrics);
+  }
+
+  /**
+   * Register the structures of the library that can be dropped when the heap is almost full.
+   */
+  void registerOptionalStructures(MemoryGovernor memoryGovernor) {
+    if (videoCache != null) {
+      memoryGovernor.register("Video cache", MemoryGovernor.Priority.CACHE,
+          () -> videoCache.setEnabled(false), () -> videoCache.setEnabled(true));
+    }
+    memoryGovernor.register("Title index", MemoryGovernor.Priority.INDEX,
+        () -> titleIndex.setEnabled(false), () -> titleIndex.setEnabled(true));
+    memoryGovernor.register("Folded titles", MemoryGovernor.Priority.INDEX,
+        () -> titleScanner.setEnabled(false), () -> titleScanner.setEnabled(true));
+    memoryGovernor.register("Tag index", MemoryGovernor.Priority.INDEX,
+        () -> tagIndex.setEnabled(false), () -> tagIndex.setEnabled(true));
+    memoryGovernor.register("Relevance index", MemoryGovernor.Priority.INDEX,
+        () -> relevanceIndex.setEnabled(false), () -> relevanceIndex.setEnabled(true));
+    memoryGovernor.register("Completion index", MemoryGovernor.Priority.INDEX,
+        () -> completionIndex.setEnabled(false), () -> completionIndex.setEnabled(true));
+    memoryGovernor.register("Fuzzy index", MemoryGovernor.Priority.INDEX,
+        () -> fuzzyIndex.setEnabled(false), () -> fuzzyIndex.setEnabled(true));
+  }
+
+  /**
+   * Add the estimated memory used by the library to the given report.
+   * The estimate is computed from the sizes of the columns of the store, it does not go through the videos.
+   */
+  void estimateMemory(MemoryReport report) {
+    store.estimateMemory(report);
+    if (perfectHashIndex != null) {
+      perfectHashIndex.estimateMemory(report);
+    }
+    videoIdIndex.estimateMemory(report);
+    tagDictionary.estimateMemory(report);
+    titleIndex.estimateMemory(report);
+    titleScanner.estimateMemory(report);
+    tagIndex.estimateMemory(report);
+    relevanceIndex.estimateMemory(report);
+    completionIndex.estimateMemory(report);
+    fuzzyIndex.estimateMemory(report);
+    if (videoCache != null) {
+      videoCache.estimateMemory(report);
+    }
+  }
+
+  /**
+   * Get the dictionary of the tags of the videos.
+   * @return The tag dictionary
+   */
+  TagDictionary getTagDictionary() {
+    return tagDictionary;
   }
 
   /**
-   * Get the videos in the library as a HashMap of their videoId and their Video object.
-   * @return The videos as a HashMap
+   * Get the index of the videos in the order of their titles.
+   * @return The title index
    */
-  HashMap<String, Video> getVideos() {
-    return videos;
+  TitleIndex getTitleIndex() {
+    return titleIndex;
+  }
+
+  /**
+   * Get the scanner finding the videos whose lower case title contains a search term.
+   * @return The title scanner
+   */
+  TitleScanner getTitleScanner() {
+    return titleScanner;
+  }
+
+  /**
+   * Get the index of the videos of each tag.
+   * @return The tag index
+   */
+  TagIndex getTagIndex() {
+    return tagIndex;
+  }
+
+  /**
+   * Get the planner choosing the indexes a QUERY goes through.
+   * @return The query planner
+   */
+  QueryPlanner getQueryPlanner() {
+    return queryPlanner;
+  }
+
+  /**
+   * Get the index ranking the videos by relevance to a query.
+   * @return The relevance index
+   */
+  RelevanceIndex getRelevanceIndex() {
+    return relevanceIndex;
+  }
+
+  /**
+   * Get the index completing the beginning of the titles and tags.
+   * @return The completion index
+   */
+  CompletionIndex getCompletionIndex() {
+    return completionIndex;
+  }
+
+  /**
+   * Get the index finding the titles with words close to the words of a search term.
+   * @return The fuzzy index
+   */
+  FuzzyIndex getFuzzyIndex() {
+    return fuzzyIndex;
+  }
+
+  /**
+   * Get the number of videos in the library.
+   * @return The number of videos
+   */
+  int size() {
+    return store.size();
+  }
+
+  /**
+   * Get the videos in the library, ordered by ordinal.
+   * The returned List is a view of the library: each Video is created when it is read.
+   * @return The videos as a List
+   */
+  List<Video> getVideos() {
+    return new AbstractList<>() {
+      @Override
+      public Video get(int ordinal) {
+        return getVideo(ordinal);
+      }
+
+      @Override
+      public int size() {
+        return store.size();
+      }
+    };
+  }
+
+  /**
+   * Get a video by ordinal. The video does not go through the cache, so that scans do not fill it.
+   */
+  Video getVideo(int ordinal) {
+    return new Video(store, ordinal);
   }
 
   /**
    * Get a video by id. Returns null if the video is not found.
+   * Unknown ids are rejected by the fingerprints of the perfect hash index, most of the time without reading
+   * the stored video ids.
    */
   Video getVideo(String videoId) {
-    return this.videos.get(videoId);
+    int ordinal = perfectHashIndex == null ? -1 : perfectHashIndex.find(videoId);
+    if (ordinal < 0) {
+      ordinal = videoIdIndex.find(videoId);
+    }
+    if (ordinal < 0) {
+      return null;
+    }
+    return videoCache == null ? new Video(store, ordinal) : videoCache.get(ordinal);
   }
 }
@@ -1,70 +1,433 @@
 package com.google;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class VideoPlayer {
 
-  private final VideoLibrary videoLibrary;
-  private final List<Video> videos;
+  //The version of the catalog the commands start on, and the version the command of each thread started on
+  private final AtomicReference<CatalogVersion> currentVersion = new AtomicReference<>();
+  private final ThreadLocal<CatalogVersion> pinnedVersion = new ThreadLocal<>();
+  //Held by the commands changing the state while they run, and by the swap of a reloaded catalog
+  private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+  private final AtomicBoolean reloading = new AtomicBoolean();
+  //The search results the user chooses a video to play from, once the search command ends
+  private final ThreadLocal<List<Video>> pendingChoice = new ThreadLocal<>();
+  //The messages of the work finished in the background, displayed before the next prompt
+  private final Queue<String> notices = new ConcurrentLinkedQueue<>();
   private Video currentlyPlayingVideo;
-  private final HashMap<String, Video> videosPerId;
   private boolean videoIsPaused = true;
-  private TreeMap<String, VideoPlaylist> playlists;
+  private volatile TreeMap<String, VideoPlaylist> playlists;
+  private boolean interactive = true;
+  private final Metrics metrics = new Metrics();
+  private ParallelScan parallelScan = ParallelScan.fromSystemProperties();
+  private final ChangeFeed changeFeed = new ChangeFeed(metrics);
+  private MemoryGovernor memoryGovernor;
+  private CatalogTailer catalogTailer;
+  private long tailIntervalMillis;
+
+  /**
+   * A version of the catalog: the library loaded from a catalog file, and the results of the searches in it.
+   */
+  private static final class CatalogVersion {
+    private final long number;
+    private final VideoLibrary videoLibrary;
+    private final SearchCache searchCache;
+
+    private CatalogVersion(long number, VideoLibrary videoLibrary, Metrics metrics) {
+      this.number = number;
+      this.videoLibrary = videoLibrary;
+      this.searchCache = SearchCache.fromSystemProperties(videoLibrary);
+      videoLibrary.setMetrics(metrics);
+      searchCache.setMetrics(metrics);
+    }
+  }
 
   public VideoPlayer() {
-    this.videoLibrary = new VideoLibrary();
-    this.videosPerId = videoLibrary.getVideos();
-    this.videos = new ArrayList<>(this.videosPerId.values());
+    this(new VideoLibrary());
+  }
+
+  VideoPlayer(VideoLibrary videoLibrary) {
+    currentVersion.set(new CatalogVersion(1, videoLibrary, metrics));
     playlists = new TreeMap<>();
   }
 
 
+  /**
+   * Whether the search commands ask the user to choose a video to play after displaying the results.
+   * @return True if the search commands read the user's choice from the standard input
+   */
+  public boolean isInteractive() {
+    return interactive;
+  }
+
+  /**
+   * Set whether the search commands ask the user to choose a video to play.
+   * When not interactive, searches only display their results and never change the state of the player.
+   * @param interactive False to disable the prompt after the search results
+   */
+  public void setInteractive(boolean interactive) {
+    this.interactive = interactive;
+  }
+
+  /**
+   * Set how the searches and listings scan the videos on several threads.
+   * @param parallelScan The parallel scan, whose pool is closed by the caller
+   */
+  void setParallelScan(ParallelScan parallelScan) {
+    this.parallelScan = parallelScan;
+  }
+
+  /**
+   * Get the version of the catalog the command of the current thread started on, or the current version outside of
+   * the commands.
+   */
+  private CatalogVersion getVersion() {
+    CatalogVersion version = pinnedVersion.get();
+    return version != null ? version : currentVersion.get();
+  }
+
+  /**
+   * Get the library the videos are played from, the library of the version of the catalog of the current command.
+   */
+  VideoLibrary getVideoLibrary() {
+    return getVersion().videoLibrary;
+  }
+
+  private SearchCache getSearchCache() {
+    return getVersion().searchCache;
+  }
+
+  /**
+   * Run a command on the current version of the catalog, while no videos are appended to it. The command keeps
+   * reading this version if a reloaded catalog is swapped in meanwhile, but the swap waits for the commands changing
+   * the state, so that their changes are carried over to the reloaded catalog. The library of the version is
+   * retained while the command runs, so that it is only closed once the commands reading it end.
+   * When a search asks the user to choose a video to play, the choice is read once the search ends, and the video is
+   * played as a command changing the state.
+   * @param readOnly True if the command does not change the playlists and flags
+   * @param command The command
+   */
+  void runCommand(boolean readOnly, Runnable command) {
+    List<Video> choices;
+    if (!readOnly) {
+      stateLock.readLock().lock();
+    }
+    try {
+      CatalogVersion version = currentVersion.get();
+      while (!version.videoLibrary.retain()) { //The version was replaced and closed meanwhile
+        version = currentVersion.get();
+      }
+      pinnedVersion.set(version);
+      try {
+        version.videoLibrary.read(command);
+      } finally {
+        pinnedVersion.remove();
+        version.videoLibrary.release();
+      }
+    } finally {
+      choices = pendingChoice.get();
+      pendingChoice.remove();
+      if (!readOnly) {
+        stateLock.readLock().unlock();
+      }
+    }
+    if (choices != null) {
+      playChoice(choices);
+    }
+  }
+
+  /**
+   * Load the videos of a catalog file in the background, then replace the videos by them. The end of the reload is
+   * displayed by showNotices, once the commands run on the new videos.
+   * @param path The path of the catalog file
+   */
+  public void reloadCatalog(String path) {
+    File catalog = new File(path);
+    if (!catalog.isFile()) {
+      CommandOutput.out().println("Cannot reload catalog: File does not exist");
+      return;
+    }
+    CompletableFuture<String> reloaded = reloadCatalog(catalog);
+    if (reloaded == null) {
+      CommandOutput.out().println("Cannot reload catalog: A catalog is already being reloaded");
+      return;
+    }
+    CommandOutput.out().println("Reloading catalog from " + path);
+    reloaded.whenComplete((description, error) -> notices.add(
+        error == null ? description : "Cannot reload catalog: " + describe(error)));
+  }
+
+  /**
+   * Describe the failure of some work done in the background, by its cause if it was wrapped, e.g. by a future.
+   * @return The message of the failure, or its class if it has no message
+   */
+  private static String describe(Throwable error) {
+    Throwable failure = error.getCause() != null ? error.getCause() : error;
+    return failure.getMessage() != null ? failure.getMessage() : failure.toString();
+  }
+
+  /**
+   * Display the messages of the work finished in the background since the last call, e.g. the end of a reload, so
+   * that they are displayed before the prompt rather than in the middle of the output of a command.
+   */
+  public void showNotices() {
+    for (String notice = notices.poll(); notice != null; notice = notices.poll()) {
+      CommandOutput.out().println(notice);
+    }
+  }
+
+  /**
+   * Load a new version of the catalog in the background, while the commands keep running on the current version.
+   * @param catalog The catalog file
+   * @return The future completed with the description of the reload once the new version is swapped in, or null if
+   *     a catalog is already being reloaded
+   */
+  CompletableFuture<String> reloadCatalog(File catalog) {
+    if (!reloading.compareAndSet(false, true)) {
+      return null;
+    }
+    return CompletableFuture.supplyAsync(() -> reload(catalog), runnable -> {
+      Thread thread = new Thread(runnable, "catalog-reload");
+      thread.setDaemon(true);
+      thread.start();
+    }).whenComplete((description, error) -> reloading.set(false));
+  }
+
+  /**
+   * Load a new version of the catalog and swap it in. The indexes built for the current version are built for the
+   * new version before the swap, so that the commands do not wait for them. The swap only waits for the commands
+   * changing the state: the commands reading the catalog keep running on the version they started on, the new
+   * version being used by the commands started after the swap. The flags and playlist videos not carried over are
+   * published to the change feed, and the previous version is closed once the commands reading it end.
+   * @param catalog The catalog file
+   * @return The description of the reload
+   */
+  private String reload(File catalog) {
+    long start = System.nanoTime();
+    VideoLibrary videoLibrary = new VideoLibrary(catalog);
+    videoLibrary.warmUp(currentVersion.get().videoLibrary);
+    metrics.histogram("catalog_reload").record(System.nanoTime() - start);
+
+    stateLock.writeLock().lock();
+    long swapStart = System.nanoTime();
+    try {
+      CatalogVersion previous = currentVersion.get();
+      //The flags and playlists are carried over by video id, the videos not in the new catalog are dropped
+      int[] flags = new int[1];
+      List<String> unflaggedVideos = new ArrayList<>();
+      previous.videoLibrary.read(() -> flags[0] = videoLibrary.copyFlags(previous.videoLibrary, unflaggedVideos::add));
+      for (String videoId: unflaggedVideos) {
+        changeFeed.publish(ChangeEvent.Type.VIDEO_ALLOWED, videoId, null, null);
+      }
+      int playlistVideos = 0;
+      int droppedVideos = 0;
+      TreeMap<String, VideoPlaylist> reloadedPlaylists = new TreeMap<>();
+      for (Map.Entry<String, VideoPlaylist> entry: playlists.entrySet()) {
+        VideoPlaylist playlist = new VideoPlaylist(entry.getValue().getName());
+        for (Video video: entry.getValue()) {
+          Video reloadedVideo = videoLibrary.getVideo(video.getVideoId());
+          if (reloadedVideo != null) {
+            playlist.add(reloadedVideo);
+            playlistVideos++;
+          } else {
+            droppedVideos++;
+            changeFeed.publish(ChangeEvent.Type.PLAYLIST_VIDEO_REMOVED, video.getVideoId(), playlist.getName(), null);
+          }
+        }
+        reloadedPlaylists.put(entry.getKey(), playlist);
+      }
+      playlists = reloadedPlaylists;
+      String stoppedVideo = null;
+      if (currentlyPlayingVideo != null) {
+        Video reloadedVideo = videoLibrary.getVideo(currentlyPlayingVideo.getVideoId());
+        if (reloadedVideo == null) { //The video is stopped, as by STOP
+          stoppedVideo = currentlyPlayingVideo.getTitle();
+          videoIsPaused = true;
+        }
+        currentlyPlayingVideo = reloadedVideo;
+      }
+
+      CatalogVersion version = new CatalogVersion(previous.number + 1, videoLibrary, metrics);
+      if (memoryGovernor != null) { //The structures of the new version replace the structures of the previous one
+        registerOptionalStructures(version);
+      }
+      currentVersion.set(version);
+      previous.videoLibrary.close();
+      restartTailing();
+      metrics.counter("catalog_reloads_total").increment();
+      return "Reloaded catalog version " + version.number + ": " + videoLibrary.size() + " videos, " + flags[0]
+          + " flagged videos and " + playlistVideos + " playlist videos carried over"
+          + (droppedVideos > 0 ? ", " + droppedVideos + " playlist videos not in the catalog removed" : "")
+          + (stoppedVideo != null ? ", stopped playing " + stoppedVideo + " as it is not in the catalog" : "");
+    } finally {
+      metrics.histogram("catalog_swap").record(System.nanoTime() - swapStart);
+      stateLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Start adding the videos appended to the catalog file to the library, following the reloaded catalogs.
+   * @param intervalMillis The maximum time between two reads of the catalog
+   */
+  synchronized void startTailing(long intervalMillis) throws IOException {
+    stopTailing();
+    VideoLibrary videoLibrary = currentVersion.get().videoLibrary;
+    catalogTailer = new CatalogTailer(videoLibrary, videoLibrary.getCatalog().toPath(), videoLibrary.getLoadedBytes(),
+        metrics);
+    catalogTailer.start(intervalMillis);
+    tailIntervalMillis = intervalMillis;
+  }
+
+  /**
+   * Stop adding the videos appended to the catalog file to the library.
+   */
+  synchronized void stopTailing() throws IOException {
+    if (catalogTailer != null) {
+      catalogTailer.close();
+      catalogTailer = null;
+    }
+  }
+
+  private synchronized void restartTailing() {
+    if (catalogTailer != null) {
+      try {
+        startTailing(tailIntervalMillis);
+      } catch (IOException e) {
+        notices.add("Couldn't tail the reloaded catalog: " + describe(e));
+      }
+    }
+  }
+
+  /**
+   * Get the feed of the changes of the flags and playlists made by the commands.
+   * @return The change feed, to subscribe to
+   */
+  ChangeFeed getChangeFeed() {
+    return changeFeed;
+  }
+
+  /**
+   * Get the metrics collected while executing commands.
+   * @return The metrics of the video player
+   */
+  Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Register the structures of the video player and its library that can be dropped when the heap is almost full.
+   * @param memoryGovernor The governor dropping the structures
+   */
+  void registerOptionalStructures(MemoryGovernor memoryGovernor) {
+    this.memoryGovernor = memoryGovernor;
+    registerOptionalStructures(currentVersion.get());
+  }
+
+  private void registerOptionalStructures(CatalogVersion version) {
+    version.videoLibrary.registerOptionalStructures(memoryGovernor);
+    memoryGovernor.register("Search cache", MemoryGovernor.Priority.CACHE,
+        () -> version.searchCache.setEnabled(false), () -> version.searchCache.setEnabled(true));
+  }
+
+  public void showStats() {
+    metrics.printStats(CommandOutput.out());
+  }
+
+  public void showMemoryStats() {
+    MemoryReport report = estimateMemory();
+    long playlistEntries = 0;
+    for (VideoPlaylist playlist: playlists.values()) {
+      playlistEntries += playlist.size();
+    }
+    report.print(CommandOutput.out(), getVideoLibrary().size(), playlistEntries, report.getSize("Playlists"));
+  }
+
+  /**
+   * Estimate the memory used by the library and the video player.
+   * The cost does not depend on the number of videos: only the playlists are gone through.
+   * @return The memory report
+   */
+  MemoryReport estimateMemory() {
+    MemoryReport report = new MemoryReport();
+    CatalogVersion version = getVersion();
+    version.videoLibrary.estimateMemory(report);
+
+    long playlistsBytes = MemoryReport.object(3 * 4 + 3 * MemoryReport.REFERENCE); //TreeMap
+    long playlistEntries = 0;
+    for (Map.Entry<String, VideoPlaylist> entry: playlists.entrySet()) {
+      VideoPlaylist playlist = entry.getValue();
+      playlistsBytes += MemoryReport.TREE_MAP_ENTRY + MemoryReport.string(entry.getKey())
+          + MemoryReport.string(playlist.getName()) + MemoryReport.object(4 + 4 + 2 * MemoryReport.REFERENCE)
+          + (playlist.isEmpty() ? 0
+              : MemoryReport.array(MemoryReport.arrayListCapacity(playlist.size()), MemoryReport.REFERENCE));
+      playlistEntries += playlist.size();
+    }
+    report.add("Playlists", playlistsBytes, playlists.size() + " playlists, " + playlistEntries + " entries");
+    version.searchCache.estimateMemory(report);
+    return report;
+  }
+
   public void numberOfVideos() {
-    System.out.printf("%s videos in the library%n", videos.size());
+    CommandOutput.out().printf("%s videos in the library%n", getVideoLibrary().size());
   }
 
   public void showAllVideos() {
+    VideoLibrary videoLibrary = getVideoLibrary();
 
-    //We sort the videos
-    TreeMap<String, Video> sortedVideos = new TreeMap<>();
-    for (Video video: videos) {
-      sortedVideos.put(video.getTitle(), video);
-    }
+    //We sort the videos, by chunks of ordinals on several threads for a large library
+    Deadline deadline = Deadline.current();
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    int[] sortedVideos = parallelScan.sortByTitle(videoLibrary.size(), ParallelScan::range, ordinal -> getTitle(videoLibrary, ordinal));
+    event.commitIfLarge("showAllVideos", videoLibrary.size(), sortedVideos.length);
 
     //We print the list of available videos
-    System.out.println("Here's a list of all available videos:");
-    for (Video video: sortedVideos.values()) {
-      System.out.println(video.getFullDisplayString());
+    CommandOutput.out().println("Here's a list of all available videos:");
+    long printed = 0;
+    for (int ordinal: sortedVideos) {
+      if (deadline.shouldStop(printed++)) {
+        break;
+      }
+      CommandOutput.out().println(videoLibrary.getVideo(ordinal).getFullDisplayString());
     }
+    showTruncation();
   }
 
   public void playVideo(String videoId) {
+    VideoLibrary videoLibrary = getVideoLibrary();
 
     //We check if there is a video associated with videoId
-    Video selectedVideo = videosPerId.get(videoId);
+    Video selectedVideo = videoLibrary.getVideo(videoId);
     if (selectedVideo == null) {
       //The video does not exist, we print a warning message and end the method
-      System.out.println("Cannot play video: Video does not exist");
+      CommandOutput.out().println("Cannot play video: Video does not exist");
       return;
     }
 
     //If the video is flagged, we print a warning message and end the method
     if (selectedVideo.isFlagged()) {
-      System.out.println("Cannot play video: Video is currently flagged (reason: " + selectedVideo.getFlagReason() + ")");
+      CommandOutput.out().println("Cannot play video: Video is currently flagged (reason: " + selectedVideo.getFlagReason() + ")");
       return;
     }
 
     //We stop the video that is currently playing
     if (currentlyPlayingVideo != null) {
-      System.out.println("Stopping video: " + currentlyPlayingVideo.getTitle());
+      CommandOutput.out().println("Stopping video: " + currentlyPlayingVideo.getTitle());
     }
 
     //We play the selected video (if the given videoId is valid)
     currentlyPlayingVideo = selectedVideo;
-    System.out.println("Playing video: " + currentlyPlayingVideo.getTitle());
+    CommandOutput.out().println("Playing video: " + currentlyPlayingVideo.getTitle());
     videoIsPaused = false;
 
   }
@@ -73,11 +436,11 @@ public class VideoPlayer {
 
     if (currentlyPlayingVideo != null) {
       //There is a video currently playing, we stop it
-      System.out.println("Stopping video: " + currentlyPlayingVideo.getTitle());
+      CommandOutput.out().println("Stopping video: " + currentlyPlayingVideo.getTitle());
       currentlyPlayingVideo = null;
     } else {
       //There is no video currently playing, we display a warning message
-      System.out.println("Cannot stop video: No video is currently playing");
+      CommandOutput.out().println("Cannot stop video: No video is currently playing");
     }
 
   }
@@ -90,7 +453,7 @@ public class VideoPlayer {
 
     if (numberOfVideos == 0) {
       //No videos available, we print a warning message and end the method
-      System.out.println("No videos available");
+      CommandOutput.out().println("No videos available");
       return;
     }
 
@@ -105,25 +468,28 @@ public class VideoPlayer {
    * @return The List of all available not flagged videos
    */
   private List<Video> getNotFlaggedVideos() {
-    List<Video> notFlaggedVideos = new ArrayList<>();
-    for (Video video: videos) {
-      if (! video.isFlagged()) {
-        notFlaggedVideos.add(video);
-      }
+    VideoLibrary videoLibrary = getVideoLibrary();
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    int[] ordinals = parallelScan.filter(videoLibrary.size(), ordinal -> !videoLibrary.getVideo(ordinal).isFlagged());
+    List<Video> notFlaggedVideos = new ArrayList<>(ordinals.length);
+    for (int ordinal: ordinals) {
+      notFlaggedVideos.add(videoLibrary.getVideo(ordinal));
     }
+    event.commitIfLarge("getNotFlaggedVideos", videoLibrary.size(), notFlaggedVideos.size());
     return notFlaggedVideos;
   }
 
   public void pauseVideo() {
 
     if (currentlyPlayingVideo == null) { //There is no video playing
-      System.out.println("Cannot pause video: No video is currently playing");
+      CommandOutput.out().println("Cannot pause video: No video is currently playing");
     }
     else if (videoIsPaused) { //The video is already paused
-      System.out.println("Video already paused: " + currentlyPlayingVideo.getTitle());
+      CommandOutput.out().println("Video already paused: " + currentlyPlayingVideo.getTitle());
     }
     else { //The video is not paused, we pause the video
-      System.out.println("Pausing video: " + currentlyPlayingVideo.getTitle());
+      CommandOutput.out().println("Pausing video: " + currentlyPlayingVideo.getTitle());
       videoIsPaused = true;
     }
 
@@ -133,14 +499,14 @@ public class VideoPlayer {
   public void continueVideo() {
 
     if (currentlyPlayingVideo == null) { //There is no video playing
-      System.out.println("Cannot continue video: No video is currently playing");
+      CommandOutput.out().println("Cannot continue video: No video is currently playing");
     }
     else if (videoIsPaused) { //The video is already paused, we continue the video
-      System.out.println("Continuing video: " + currentlyPlayingVideo.getTitle());
+      CommandOutput.out().println("Continuing video: " + currentlyPlayingVideo.getTitle());
       videoIsPaused = false;
     }
     else { //The video is not paused
-      System.out.println("Cannot continue video: Video is not paused");
+      CommandOutput.out().println("Cannot continue video: Video is not paused");
     }
 
   }
@@ -148,13 +514,13 @@ public class VideoPlayer {
   public void showPlaying() {
 
     if (currentlyPlayingVideo == null) { //There is no video playing
-      System.out.println("No video is currently playing");
+      CommandOutput.out().println("No video is currently playing");
     } else { //There is a video playing
-      System.out.print("Currently playing: " + currentlyPlayingVideo.getFullDisplayString());
+      CommandOutput.out().print("Currently playing: " + currentlyPlayingVideo.getFullDisplayString());
       if (videoIsPaused) {
-        System.out.print(" - PAUSED");
+        CommandOutput.out().print(" - PAUSED");
       }
-      System.out.println();
+      CommandOutput.out().println();
     }
 
   }
@@ -166,19 +532,21 @@ public class VideoPlayer {
 
     if (playlists.get(playlistName.toLowerCase()) == null) { //There is no playlist with the same name
       playlists.put(playlistName.toLowerCase(), new VideoPlaylist(playlistName));
-      System.out.println("Successfully created new playlist: " + playlistName);
+      changeFeed.publish(ChangeEvent.Type.PLAYLIST_CREATED, null, playlistName, null);
+      CommandOutput.out().println("Successfully created new playlist: " + playlistName);
     } else { //There is already a playlist with the same name
-      System.out.println("Cannot create playlist: A playlist with the same name already exists");
+      CommandOutput.out().println("Cannot create playlist: A playlist with the same name already exists");
     }
 
   }
 
   public void addVideoToPlaylist(String playlistName, String videoId) {
+    VideoLibrary videoLibrary = getVideoLibrary();
 
     VideoPlaylist selectedPlaylist = playlists.get(playlistName.toLowerCase());
     if (selectedPlaylist != null) {
 
-      Video selectedVideo = videosPerId.get(videoId);
+      Video selectedVideo = videoLibrary.getVideo(videoId);
       if (selectedVideo != null) {
 
         //Both the playlist and the video exist
@@ -186,25 +554,27 @@ public class VideoPlayer {
         //We check if the video is flagged
         if (selectedVideo.isFlagged()) {
           //We print a warning message and end the method
-          System.out.println("Cannot add video to " + playlistName + ": Video is currently flagged (reason: " + selectedVideo.getFlagReason() + ")");
+          CommandOutput.out().println("Cannot add video to " + playlistName + ": Video is currently flagged (reason: " + selectedVideo.getFlagReason() + ")");
           return;
         }
 
         if (selectedPlaylist.contains(selectedVideo)) {
           //The video is already in the playlist
-          System.out.println("Cannot add video to " + playlistName + ": Video already added");
+          CommandOutput.out().println("Cannot add video to " + playlistName + ": Video already added");
         } else {
           //We add the video to the playlist
           selectedPlaylist.add(selectedVideo);
-          System.out.println("Added video to " + playlistName + ": " + selectedVideo.getTitle());
+          changeFeed.publish(ChangeEvent.Type.PLAYLIST_VIDEO_ADDED, selectedVideo.getVideoId(),
+              selectedPlaylist.getName(), null);
+          CommandOutput.out().println("Added video to " + playlistName + ": " + selectedVideo.getTitle());
         }
 
       } else { //The video does not exist
-        System.out.println("Cannot add video to " + playlistName + ": Video does not exist");
+        CommandOutput.out().println("Cannot add video to " + playlistName + ": Video does not exist");
       }
 
     } else { //The playlist does not exist
-      System.out.println("Cannot add video to " + playlistName + ": Playlist does not exist");
+      CommandOutput.out().println("Cannot add video to " + playlistName + ": Playlist does not exist");
     }
 
   }
@@ -212,12 +582,12 @@ public class VideoPlayer {
   public void showAllPlaylists() {
 
     if (playlists.isEmpty()) { //No playlist created, we print a message
-      System.out.println("No playlists exist yet");
+      CommandOutput.out().println("No playlists exist yet");
     }
     else {
-      System.out.println("Showing all playlists:");
+      CommandOutput.out().println("Showing all playlists:");
       for (VideoPlaylist playlist: playlists.values()) {
-        System.out.println("  " + playlist.getName());
+        CommandOutput.out().println("  " + playlist.getName());
       }
     }
 
@@ -228,46 +598,59 @@ public class VideoPlayer {
     VideoPlaylist selectedPlaylist = playlists.get(playlistName.toLowerCase());
     if (selectedPlaylist != null) { //The playlist exists
 
-      System.out.println("Showing playlist: " + playlistName);
+      CommandOutput.out().println("Showing playlist: " + playlistName);
       if (selectedPlaylist.isEmpty()) { //There is no video in the playlist
-        System.out.println("  No videos here yet");
+        CommandOutput.out().println("  No videos here yet");
       }
       else { //There are videos in the playlist
+        ScanEvent event = new ScanEvent();
+        event.begin();
+        Deadline deadline = Deadline.current();
+        long shown = 0;
         for (Video video: selectedPlaylist) {
-          System.out.println("  " + video.getFullDisplayString());
+          if (deadline.shouldStop(shown)) {
+            break;
+          }
+          CommandOutput.out().println("  " + video.getFullDisplayString());
+          shown++;
         }
+        event.commitIfLarge("showPlaylist", selectedPlaylist.size(), shown);
+        showTruncation();
       }
 
     }
     else { //The playlist does not exist
-      System.out.println("Cannot show playlist " + playlistName + ": Playlist does not exist");
+      CommandOutput.out().println("Cannot show playlist " + playlistName + ": Playlist does not exist");
     }
 
   }
 
   public void removeFromPlaylist(String playlistName, String videoId) {
+    VideoLibrary videoLibrary = getVideoLibrary();
 
     VideoPlaylist selectedPlaylist = playlists.get(playlistName.toLowerCase());
     if (selectedPlaylist != null) { //The playlist exists
 
-      Video selectedVideo = videosPerId.get(videoId);
+      Video selectedVideo = videoLibrary.getVideo(videoId);
       if (selectedVideo != null) { //The video exists
 
         if (selectedPlaylist.contains(selectedVideo)) {
           //The video is in the playlist, we remove it
           selectedPlaylist.remove(selectedVideo);
-          System.out.println("Removed video from " + playlistName + ": " + selectedVideo.getTitle());
+          changeFeed.publish(ChangeEvent.Type.PLAYLIST_VIDEO_REMOVED, selectedVideo.getVideoId(),
+              selectedPlaylist.getName(), null);
+          CommandOutput.out().println("Removed video from " + playlistName + ": " + selectedVideo.getTitle());
         } else {
           //The video is not in the playlist
-          System.out.println("Cannot remove video from " + playlistName + ": Video is not in playlist");
+          CommandOutput.out().println("Cannot remove video from " + playlistName + ": Video is not in playlist");
         }
 
       } else { //The video does not exist
-        System.out.println("Cannot remove video from " + playlistName + ": Video does not exist");
+        CommandOutput.out().println("Cannot remove video from " + playlistName + ": Video does not exist");
       }
 
     } else { //The playlist does not exist
-      System.out.println("Cannot remove video from " + playlistName + ": Playlist does not exist");
+      CommandOutput.out().println("Cannot remove video from " + playlistName + ": Playlist does not exist");
     }
 
   }
@@ -277,10 +660,11 @@ public class VideoPlayer {
     VideoPlaylist selectedPlaylist = playlists.get(playlistName.toLowerCase());
     if (selectedPlaylist != null) { //The playlist exists
       selectedPlaylist.clear();
-      System.out.println("Successfully removed all videos from " + playlistName);
+      changeFeed.publish(ChangeEvent.Type.PLAYLIST_CLEARED, null, selectedPlaylist.getName(), null);
+      CommandOutput.out().println("Successfully removed all videos from " + playlistName);
     }
     else { //The playlist does not exist
-      System.out.println("Cannot clear playlist " + playlistName + ": Playlist does not exist");
+      CommandOutput.out().println("Cannot clear playlist " + playlistName + ": Playlist does not exist");
     }
 
   }
@@ -290,33 +674,289 @@ public class VideoPlayer {
     VideoPlaylist selectedPlaylist = playlists.get(playlistName.toLowerCase());
     if (selectedPlaylist != null) { //The playlist exists
       playlists.remove(playlistName.toLowerCase());
-      System.out.println("Deleted playlist: " + playlistName);
+      changeFeed.publish(ChangeEvent.Type.PLAYLIST_DELETED, null, selectedPlaylist.getName(), null);
+      CommandOutput.out().println("Deleted playlist: " + playlistName);
     }
     else { //The playlist does not exist
-      System.out.println("Cannot delete playlist " + playlistName + ": Playlist does not exist");
+      CommandOutput.out().println("Cannot delete playlist " + playlistName + ": Playlist does not exist");
     }
 
   }
 
   public void searchVideos(String searchTerm) {
 
-    //This list will contain the videos corresponding to the search
-    TreeMap<String, Video> searchResults = new TreeMap<>(); //Stores the search results and their title as key
-    //The current implementation does not support videos with duplicate titles (duplicate keys)
+    searchVideos(searchTerm, 0);
 
-    //Remove flagged videos from available videos
-    List<Video> notFlaggedVideos = getNotFlaggedVideos();
+  }
 
-    for (Video video: notFlaggedVideos) {
-      if (video.getTitle().toLowerCase().contains(searchTerm)) {
-        searchResults.put(video.getTitle(), video);
+  /**
+   * Display all the not flagged videos whose lower case title contains the search term, followed by the tags of the
+   * most of these videos.
+   * @param searchTerm The search term
+   * @param facets The number of tags to display, 0 to only display the videos
+   */
+  public void searchVideos(String searchTerm, int facets) {
+    SearchCache searchCache = getSearchCache();
+
+    List<Video> searchResults = searchCache.getTitleSearch(searchTerm);
+    if (searchResults == null) { //The results are not cached, we scan the videos
+      searchResults = findVideosByTitle(searchTerm);
+      if (!Deadline.current().wasReached()) { //Partial results are not cached
+        searchCache.putTitleSearch(searchTerm, searchResults);
       }
     }
 
+    showSearchResults(searchResults, searchTerm, null, facets);
+
+  }
+
+  /**
+   * Display the videos the most relevant to a query, the videos whose titles and tags contain the rarest words of the
+   * query coming first.
+   * @param query The words and tags searched
+   * @param limit The maximum number of results
+   */
+  public void searchVideosRanked(String query, int limit) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    List<Video> searchResults = new ArrayList<>();
+    for (int ordinal: videoLibrary.getRelevanceIndex().search(RelevanceIndex.queryTerms(query), limit)) {
+      searchResults.add(videoLibrary.getVideo(ordinal));
+    }
+
+    showSearchResults(searchResults, query);
+
+  }
+
+  /**
+   * Display the videos whose titles contain words close to the words of the search term, the closest first, up to
+   * FuzzyIndex.MAX_RESULTS videos.
+   * @param searchTerm The search term, possibly with typos
+   * @param maxEdits The maximum number of edits of each word, or -1 for a maximum depending on the length of the word
+   */
+  public void searchVideosFuzzy(String searchTerm, int maxEdits) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    List<Video> searchResults = new ArrayList<>();
+    for (int ordinal: videoLibrary.getFuzzyIndex().search(searchTerm, maxEdits, FuzzyIndex.MAX_RESULTS)) {
+      searchResults.add(videoLibrary.getVideo(ordinal));
+    }
+
     showSearchResults(searchResults, searchTerm);
 
   }
 
+  /**
+   * Display the videos matching all the predicates of a query, going through the index of the most selective one.
+   * @param query The query
+   * @param queryText The query as typed by the user
+   * @param facets The number of tags of the most of the videos to display after them, 0 to only display the videos
+   */
+  public void query(VideoQuery query, String queryText, int facets) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    QueryPlanner planner = videoLibrary.getQueryPlanner();
+    QueryPlanner.Plan plan = planner.plan(query);
+    int[] ordinals = planner.execute(plan);
+    showSearchResults(toVideosByTitle(videoLibrary, ordinals), queryText, null, facets);
+
+  }
+
+  /**
+   * Run a query and display its plan instead of its results: the access path and the filters it went through, with
+   * their estimated and actual numbers of videos, and the number of videos read by the access path.
+   * @param query The query
+   * @param queryText The query as typed by the user
+   */
+  public void explainQuery(VideoQuery query, String queryText) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    QueryPlanner planner = videoLibrary.getQueryPlanner();
+    QueryPlanner.Plan plan = planner.plan(query);
+    int[] ordinals = planner.execute(plan);
+    CommandOutput.out().println("Plan for " + queryText + ":");
+    int index = 1;
+    for (String step: plan.describe()) {
+      CommandOutput.out().println("  " + index++ + ") " + step);
+    }
+    CommandOutput.out().println("Rows examined: " + plan.getRowsExamined() + ", matched: " + ordinals.length
+        + ", estimated cost: " + Math.round(plan.getEstimatedCost()));
+    showTruncation();
+
+  }
+
+  /**
+   * Get videos sorted by title, as the search results are displayed.
+   * @param ordinals The ordinals of the videos, by increasing ordinal
+   * @return The videos sorted by title, the last video of the same title being kept
+   */
+  private List<Video> toVideosByTitle(VideoLibrary videoLibrary, int[] ordinals) {
+    return toVideos(videoLibrary, parallelScan.sortByTitle(ordinals.length,
+        (from, to) -> Arrays.copyOfRange(ordinals, from, to), ordinal -> getTitle(videoLibrary, ordinal)));
+  }
+
+  private static List<Video> toVideos(VideoLibrary videoLibrary, int[] ordinals) {
+    List<Video> list = new ArrayList<>(ordinals.length);
+    for (int ordinal: ordinals) {
+      list.add(videoLibrary.getVideo(ordinal));
+    }
+    return list;
+  }
+
+  private static String getTitle(VideoLibrary videoLibrary, int ordinal) {
+    return videoLibrary.getVideo(ordinal).getTitle();
+  }
+
+  /**
+   * Remove the flagged videos from a chunk of ordinals.
+   * @return The not flagged ordinals, in the same order
+   */
+  private static int[] withoutFlagged(VideoLibrary videoLibrary, int[] ordinals) {
+    int count = 0;
+    for (int ordinal: ordinals) {
+      if (!videoLibrary.getVideo(ordinal).isFlagged()) {
+        ordinals[count++] = ordinal;
+      }
+    }
+    return count == ordinals.length ? ordinals : Arrays.copyOf(ordinals, count);
+  }
+
+  /**
+   * Display the titles and tags of the not flagged videos starting with the given prefix, the titles and tags shared
+   * by the most videos first.
+   * @param prefix The beginning of a title or tag, in any case
+   * @param limit The maximum number of completions
+   */
+  public void autocomplete(String prefix, int limit) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    List<String> completions = videoLibrary.getCompletionIndex().complete(prefix, limit);
+    if (completions.isEmpty()) {
+      CommandOutput.out().println("No completions for " + prefix);
+    } else {
+      CommandOutput.out().println("Here are the completions for " + prefix + ":");
+      int index = 1;
+      for (String completion: completions) {
+        CommandOutput.out().println("  " + index++ + ") " + completion);
+      }
+    }
+    showTruncation();
+
+  }
+
+  /**
+   * Display a page of the results of a search by title. Only the videos of the page are kept in memory: the
+   * videos are read in the order of their titles and the scan stops once the page is full.
+   * @param searchTerm The search term
+   * @param limit The maximum number of results of the page
+   * @param cursor The cursor displayed at the end of the previous page, or null for the first page
+   */
+  public void searchVideos(String searchTerm, int limit, String cursor) {
+
+    String afterTitle = null;
+    if (cursor != null) {
+      try {
+        afterTitle = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      } catch (IllegalArgumentException e) {
+        CommandOutput.out().println("Cannot search videos: Invalid cursor");
+        return;
+      }
+    }
+
+    //We look for one more result than the limit to know if there is a next page
+    List<Video> searchResults = new ArrayList<>(findVideosByTitle(searchTerm, limit + 1, afterTitle).values());
+    String nextPage = null;
+    if (Deadline.current().wasReached()) { //The page can miss titles before its last one, there is no cursor
+      nextPage = null;
+    } else if (searchResults.size() > limit) {
+      searchResults.remove(limit);
+      String lastTitle = searchResults.get(limit - 1).getTitle();
+      String nextCursor = Base64.getUrlEncoder().withoutPadding()
+          .encodeToString(lastTitle.getBytes(StandardCharsets.UTF_8));
+      nextPage = "SEARCH_VIDEOS " + CommandTokenizer.quote(searchTerm) + " LIMIT " + limit + " AFTER " + nextCursor;
+    }
+
+    showSearchResults(searchResults, searchTerm, nextPage);
+
+  }
+
+  /**
+   * Get the first not flagged videos whose lower case title contains the search term, in the order of their titles.
+   * As for the full search, only the video with the highest ordinal is kept among the videos with the same title.
+   * @param searchTerm The search term
+   * @param limit The maximum number of videos
+   * @param afterTitle Only the videos whose title comes after this title are returned, can be null
+   * @return The videos, with their title as key
+   */
+  private TreeMap<String, Video> findVideosByTitle(String searchTerm, int limit, String afterTitle) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    TreeMap<String, Video> searchResults = new TreeMap<>();
+    long scanned = 0;
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    Deadline deadline = Deadline.current();
+    int[] titleOrder = videoLibrary.getTitleIndex().getOrdinals();
+    if (titleOrder != null) { //We stop at the first title after the page
+      int position = afterTitle == null ? 0 : videoLibrary.getTitleIndex().positionAfter(titleOrder, afterTitle);
+      for (; position < titleOrder.length; position++) {
+        if (deadline.shouldStop(scanned++)) {
+          break;
+        }
+        Video video = videoLibrary.getVideo(titleOrder[position]);
+        if (video.isFlagged() || !video.getTitle().toLowerCase().contains(searchTerm)) {
+          continue;
+        }
+        if (searchResults.size() == limit && !searchResults.containsKey(video.getTitle())) {
+          break;
+        }
+        searchResults.put(video.getTitle(), video);
+      }
+    } else { //The index was dropped to save memory, we scan all the videos but only keep the page
+      scanned = videoLibrary.size();
+      long matched = 0;
+      for (int ordinal: videoLibrary.getTitleScanner().scan(searchTerm)) {
+        if (deadline.shouldStop(matched++)) {
+          break;
+        }
+        Video video = videoLibrary.getVideo(ordinal);
+        if (video.isFlagged() || (afterTitle != null && video.getTitle().compareTo(afterTitle) <= 0)) {
+          continue;
+        }
+        searchResults.put(video.getTitle(), video);
+        if (searchResults.size() > limit) {
+          searchResults.pollLastEntry();
+        }
+      }
+    }
+    event.commitIfLarge("searchVideosPage", scanned, searchResults.size());
+
+    return searchResults;
+
+  }
+
+  /**
+   * Get the not flagged videos whose lower case title contains the search term.
+   * @param searchTerm The search term
+   * @return The videos sorted by title
+   */
+  private List<Video> findVideosByTitle(String searchTerm) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    //The current implementation does not support videos with duplicate titles, the last video of a title is kept
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    //The scanner goes through the lower case titles of each chunk without decoding them, we skip the flagged videos
+    //afterwards
+    TitleScanner titleScanner = videoLibrary.getTitleScanner();
+    int[] searchResults = parallelScan.sortByTitle(videoLibrary.size(),
+        (from, to) -> withoutFlagged(videoLibrary, titleScanner.scan(searchTerm, from, to)), ordinal -> getTitle(videoLibrary, ordinal));
+    event.commitIfLarge("searchVideos", videoLibrary.size(), searchResults.length);
+
+    return toVideos(videoLibrary, searchResults);
+
+  }
+
   /**
    * This method determines if a given String can be cast to an Integer object.
    * @param input The String object to check
@@ -334,20 +974,60 @@ public class VideoPlayer {
 
   public void searchVideosWithTag(String videoTag) {
 
-    //This list will contain the videos corresponding to the search
-    TreeMap<String, Video> searchResults = new TreeMap<>(); //Stores the search results and their title as key
-    //The current implementation does not support videos with duplicate titles (duplicate keys)
+    searchVideosWithTag(videoTag, 0);
 
-    //Remove flagged videos from available videos
-    List<Video> notFlaggedVideos = getNotFlaggedVideos();
+  }
 
-    for (Video video: notFlaggedVideos) {
-      if (video.getTags().contains(videoTag.toLowerCase())) {
-        searchResults.put(video.getTitle(), video);
+  /**
+   * Display all the not flagged videos with a tag, followed by the tags of the most of these videos.
+   * @param videoTag The tag, in any case
+   * @param facets The number of tags to display, 0 to only display the videos
+   */
+  public void searchVideosWithTag(String videoTag, int facets) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+    SearchCache searchCache = getSearchCache();
+
+    int foldedTagId = videoLibrary.getTagDictionary().findFoldedId(videoTag);
+    List<Video> searchResults;
+    if (foldedTagId == TagDictionary.UNKNOWN) { //No video has this tag
+      searchResults = new ArrayList<>();
+    } else {
+      searchResults = searchCache.getTagSearch(foldedTagId);
+      if (searchResults == null) { //The results are not cached, we scan the videos
+        searchResults = findVideosByTag(foldedTagId);
+        if (!Deadline.current().wasReached()) { //Partial results are not cached
+          searchCache.putTagSearch(foldedTagId, searchResults);
+        }
       }
     }
 
-    showSearchResults(searchResults, videoTag);
+    showSearchResults(searchResults, videoTag, null, facets);
+
+  }
+
+  /**
+   * Get the not flagged videos with a tag.
+   * @param foldedTagId The case-folded id of the tag in the tag dictionary
+   * @return The videos sorted by title
+   */
+  private List<Video> findVideosByTag(int foldedTagId) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    //The current implementation does not support videos with duplicate titles, the last video of a title is kept
+    int[] ordinals = videoLibrary.getTagIndex().find(foldedTagId);
+    if (ordinals != null) { //We only read the videos with the tag
+      return toVideos(videoLibrary, parallelScan.sortByTitle(ordinals.length,
+          (from, to) -> withoutFlagged(videoLibrary, Arrays.copyOfRange(ordinals, from, to)), ordinal -> getTitle(videoLibrary, ordinal)));
+    }
+
+    //The index was dropped to save memory, we scan the tags of the not flagged videos
+    ScanEvent event = new ScanEvent();
+    event.begin();
+    int[] searchResults = parallelScan.sortByTitle(videoLibrary.size(), (from, to) -> withoutFlagged(videoLibrary, ParallelScan.filterRange(
+        from, to, ordinal -> videoLibrary.getVideo(ordinal).hasTag(foldedTagId))), ordinal -> getTitle(videoLibrary, ordinal));
+    event.commitIfLarge("searchVideosWithTag", videoLibrary.size(), searchResults.length);
+
+    return toVideos(videoLibrary, searchResults);
 
   }
 
@@ -356,36 +1036,115 @@ public class VideoPlayer {
    * @param searchResults The videos corresponding to the search
    * @param searchTerm The term used for the search
    */
-  public void showSearchResults(TreeMap<String, Video> searchResults, String searchTerm) {
+  public void showSearchResults(List<Video> searchResults, String searchTerm) {
+    showSearchResults(searchResults, searchTerm, null);
+  }
+
+  /**
+   * Show a page of search results and ask for the user to choose one of the search results (if any).
+   * @param searchResults The videos of the page
+   * @param searchTerm The term used for the search
+   * @param nextPage The command displaying the next page, or null if this is the last page
+   */
+  public void showSearchResults(List<Video> searchResults, String searchTerm, String nextPage) {
+    showSearchResults(searchResults, searchTerm, nextPage, 0);
+  }
+
+  /**
+   * Show a page of search results followed by the tags of the most of them, and ask for the user to choose one of
+   * the search results (if any).
+   * @param searchResults The videos of the page
+   * @param searchTerm The term used for the search
+   * @param nextPage The command displaying the next page, or null if this is the last page
+   * @param facets The number of tags to display, 0 to only display the videos
+   */
+  public void showSearchResults(List<Video> searchResults, String searchTerm, String nextPage, int facets) {
 
     if (searchResults.isEmpty()) { //No corresponding video
-      System.out.println("No search results for " + searchTerm);
+      CommandOutput.out().println("No search results for " + searchTerm);
+      showTruncation();
     } else {
-      System.out.println("Here are the results for " + searchTerm + ":");
+      CommandOutput.out().println("Here are the results for " + searchTerm + ":");
       int index = 1;
-      ArrayList<Video> searchResultsVideos = new ArrayList<>(searchResults.values());
-      for (Video video: searchResultsVideos) {
-        System.out.println("  " + index++ + ") " + video.getFullDisplayString());
-      }
-      System.out.println("Would you like to play any of the above? If yes, specify the number of the video.");
-      System.out.println("If your answer is not a valid number, we will assume it's a no.");
-
-      //Catch user's input
-      try(BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
-        String input = reader.readLine();
-        if (isAnInteger(input) && Integer.parseInt(input) > 0 && Integer.parseInt(input) <= searchResults.size()) {
-          int selectedIndex = Integer.parseInt(input);
-          Video selectedVideo = searchResultsVideos.get(selectedIndex-1);
-          playVideo(selectedVideo.getVideoId());
-        }
-      } catch (IOException e) {
-        e.printStackTrace();
+      for (Video video: searchResults) {
+        CommandOutput.out().println("  " + index++ + ") " + video.getFullDisplayString());
+      }
+      if (nextPage != null) {
+        CommandOutput.out().println("Next page: " + nextPage);
+      }
+      if (facets > 0) {
+        showFacets(searchResults, facets);
+      }
+      showTruncation();
+      if (!interactive) { //The results are only displayed, there is no prompt
+        return;
+      }
+      CommandOutput.out().println("Would you like to play any of the above? If yes, specify the number of the video.");
+      CommandOutput.out().println("If your answer is not a valid number, we will assume it's a no.");
+      if (pinnedVersion.get() != null) { //The search does not read the library while waiting for the user
+        pendingChoice.set(searchResults);
+      } else {
+        playChoice(searchResults);
+      }
+    }
+
+  }
+
+  /**
+   * Read the user's choice of a search result, and play the chosen video as a command changing the state.
+   * @param searchResults The videos the user chooses from
+   */
+  private void playChoice(List<Video> searchResults) {
+    //Catch user's input
+    try(BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+      String input = reader.readLine();
+      if (isAnInteger(input) && Integer.parseInt(input) > 0 && Integer.parseInt(input) <= searchResults.size()) {
+        int selectedIndex = Integer.parseInt(input);
+        String videoId = searchResults.get(selectedIndex-1).getVideoId();
+        runCommand(false, () -> playVideo(videoId));
       }
+    } catch (IOException e) {
+      e.printStackTrace();
     }
+  }
+
 
+
+  /**
+   * Display that the results are partial if the deadline of the command was reached before the end of a scan.
+   */
+  private void showTruncation() {
+    Deadline deadline = Deadline.current();
+    if (deadline.wasReached()) {
+      metrics.counter("commands_truncated_total").increment();
+      CommandOutput.out().println("Results truncated: " + deadline.describe());
+    }
   }
 
+  /**
+   * Display the tags of the most videos of the search results, with their number of videos.
+   * @param searchResults The videos of the search results
+   * @param facets The maximum number of tags
+   */
+  private void showFacets(List<Video> searchResults, int facets) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+
+    int[] ordinals = new int[searchResults.size()];
+    for (int index = 0; index < ordinals.length; index++) {
+      ordinals[index] = searchResults.get(index).getOrdinal();
+    }
+    List<TagIndex.Facet> tagCounts = videoLibrary.getTagIndex().countTags(ordinals, facets);
+    if (tagCounts.isEmpty()) {
+      CommandOutput.out().println("Top tags: none");
+      return;
+    }
+    CommandOutput.out().println("Top tags:");
+    for (TagIndex.Facet facet: tagCounts) {
+      CommandOutput.out().println("  " + videoLibrary.getTagDictionary().getFoldedTag(facet.foldedTagId)
+          + ": " + facet.count);
+    }
 
+  }
 
   public void flagVideo(String videoId) {
 
@@ -394,44 +1153,52 @@ public class VideoPlayer {
   }
 
   public void flagVideo(String videoId, String reason) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+    SearchCache searchCache = getSearchCache();
 
-    Video selectedVideo = videosPerId.get(videoId);
+    Video selectedVideo = videoLibrary.getVideo(videoId);
     if (selectedVideo != null) { //The video exists
 
       if (selectedVideo.isFlagged()) { //Video already flagged
-        System.out.println("Cannot flag video: Video is already flagged");
+        CommandOutput.out().println("Cannot flag video: Video is already flagged");
       }
       else {
-        selectedVideo.flag(reason);
-        if (currentlyPlayingVideo == selectedVideo) {
+        videoLibrary.getCompletionIndex().update(selectedVideo.getOrdinal(), false, () -> selectedVideo.flag(reason));
+        searchCache.invalidate(selectedVideo);
+        changeFeed.publish(ChangeEvent.Type.VIDEO_FLAGGED, selectedVideo.getVideoId(), null, reason);
+        if (selectedVideo.equals(currentlyPlayingVideo)) {
           stopVideo();
         }
-        System.out.println("Successfully flagged video: " + selectedVideo.getTitle() + " (reason: " + reason + ")");
+        CommandOutput.out().println("Successfully flagged video: " + selectedVideo.getTitle() + " (reason: " + reason + ")");
       }
 
     }
     else { //The video does not exist
-      System.out.println("Cannot flag video: Video does not exist");
+      CommandOutput.out().println("Cannot flag video: Video does not exist");
     }
 
   }
 
   public void allowVideo(String videoId) {
+    VideoLibrary videoLibrary = getVideoLibrary();
+    SearchCache searchCache = getSearchCache();
 
-    Video selectedVideo = videosPerId.get(videoId);
+    Video selectedVideo = videoLibrary.getVideo(videoId);
 
     if (selectedVideo != null) { //The video exists
 
       if (selectedVideo.isFlagged()) {
-        selectedVideo.allow();
-        System.out.println("Successfully removed flag from video: " + selectedVideo.getTitle());
+        videoLibrary.getCompletionIndex().update(selectedVideo.getOrdinal(), true, selectedVideo::allow);
+        searchCache.invalidate(selectedVideo);
+        changeFeed.publish(ChangeEvent.Type.VIDEO_ALLOWED, selectedVideo.getVideoId(), null, null);
+        CommandOutput.out().println("Successfully removed flag from video: " + selectedVideo.getTitle());
       }
       else { //The video is not flagged
-        System.out.println("Cannot remove flag from video: Video is not flagged");
+        CommandOutput.out().println("Cannot remove flag from video: Video is not flagged");
       }
 
     } else { //The video does not exist
-      System.out.println("Cannot remove flag from video: Video does not exist");
+      CommandOutput.out().println("Cannot remove flag from video: Video does not exist");
     }
 
   }
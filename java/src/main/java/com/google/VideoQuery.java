@@ -0,0 +1,92 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A class used to represent a QUERY: videos matching all of a list of predicates.
+ * Each predicate is written field:value, and is negated by a leading -:
+ * title:cat matches the videos whose lower case title contains cat, whatever the case of the value,
+ * tag:#animal matches the videos with the tag, compared case-insensitively,
+ * and flagged:true or flagged:false matches the flagged or not flagged videos.
+ * A query without a flagged predicate only matches the not flagged videos, as the other searches do.
+ */
+class VideoQuery {
+
+  /**
+   * The fields a predicate can test.
+   */
+  enum Field {
+    TITLE, TAG, FLAGGED
+  }
+
+  /**
+   * A test of a field of the videos.
+   */
+  static final class Predicate {
+    final Field field;
+    final String value;
+    final boolean negated;
+
+    private Predicate(Field field, String value, boolean negated) {
+      this.field = field;
+      this.value = value;
+      this.negated = negated;
+    }
+
+    @Override
+    public String toString() {
+      return (negated ? "-" : "") + field.name().toLowerCase(Locale.ROOT) + ":" + value;
+    }
+  }
+
+  private final List<Predicate> predicates;
+
+  private VideoQuery(List<Predicate> predicates) {
+    this.predicates = predicates;
+  }
+
+  /**
+   * Parse the predicates of a query.
+   * @param arguments The predicates, one per argument, a value containing whitespaces being quoted with its field
+   * @return The query, or null if a predicate is invalid
+   */
+  static VideoQuery parse(List<String> arguments) {
+    List<Predicate> predicates = new ArrayList<>();
+    boolean hasFlaggedPredicate = false;
+    for (String argument: arguments) {
+      boolean negated = argument.startsWith("-");
+      int separator = argument.indexOf(':');
+      if (separator < 0 || separator == argument.length() - 1) {
+        return null;
+      }
+      String fieldName = argument.substring(negated ? 1 : 0, separator);
+      String value = argument.substring(separator + 1);
+      if (fieldName.equalsIgnoreCase("title")) {
+        predicates.add(new Predicate(Field.TITLE, value.toLowerCase(), negated));
+      } else if (fieldName.equalsIgnoreCase("tag")) {
+        predicates.add(new Predicate(Field.TAG, value, negated));
+      } else if (fieldName.equalsIgnoreCase("flagged")
+          && (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"))) {
+        predicates.add(new Predicate(Field.FLAGGED, value.toLowerCase(), negated));
+        hasFlaggedPredicate = true;
+      } else {
+        return null;
+      }
+    }
+    if (!hasFlaggedPredicate) {
+      predicates.add(new Predicate(Field.FLAGGED, "false", false));
+    }
+    return new VideoQuery(Collections.unmodifiableList(predicates));
+  }
+
+  /**
+   * Get the predicates of the query, including the flagged:false predicate added when there is no flagged predicate.
+   * @return The predicates, in the order of the query
+   */
+  List<Predicate> getPredicates() {
+    return predicates;
+  }
+}
@@ -0,0 +1,219 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A class used to store the videos of a library by columns.
+ * Each video is identified by a dense ordinal (its position in the store). Titles and video ids are stored
+ * off-heap in UTF-8 byte arenas, with one address per video on the heap, tag ids are stored in a single int
+ * array, and flags in a bitset. The heap only holds a few primitive arrays, whatever the number of videos.
+ * Videos are only added while no other thread reads the store, but they are flagged and allowed while other commands
+ * and the index builds read it: the flags are kept in an atomic bitset and the reasons in a concurrent map, so that
+ * the readers see each flag either set or not, and concurrent flags of videos sharing a word of the bitset are not
+ * lost.
+ */
+class VideoStore implements AutoCloseable {
+
+  private final TagDictionary tagDictionary;
+  private final ByteArena titles;
+  private final ByteArena videoIds;
+  private long[] titleAddresses = new long[16];
+  private long[] videoIdAddresses = new long[16];
+  private int[] tagOffsets = new int[17]; //The tags of video i are tagIds[tagOffsets[i]] to tagIds[tagOffsets[i + 1] - 1]
+  private int[] tagIds = new int[16];
+  private int size = 0;
+  private AtomicLongArray flagged = new AtomicLongArray(1); //Bit i % 64 of word i / 64 is set if video i is flagged
+  private final ConcurrentHashMap<Integer, String> flagReasons = new ConcurrentHashMap<>();
+
+  /**
+   * @param tagDictionary The dictionary the tag ids of the videos refer to
+   */
+  VideoStore(TagDictionary tagDictionary) {
+    this(tagDictionary, new ByteArena(), new ByteArena());
+  }
+
+  /**
+   * @param tagDictionary The dictionary the tag ids of the videos refer to
+   * @param titles The arena the titles are stored in
+   * @param videoIds The arena the video ids are stored in
+   */
+  VideoStore(TagDictionary tagDictionary, ByteArena titles, ByteArena videoIds) {
+    this.tagDictionary = tagDictionary;
+    this.titles = titles;
+    this.videoIds = videoIds;
+  }
+
+  /**
+   * Add a video at the end of the store.
+   * @param title The title of the video
+   * @param videoId The video id of the video
+   * @param videoTagIds The ids of the tags of the video in the tag dictionary
+   * @return The ordinal of the video
+   */
+  int add(String title, String videoId, int[] videoTagIds) {
+    if (size == titleAddresses.length) {
+      titleAddresses = Arrays.copyOf(titleAddresses, size * 2);
+      videoIdAddresses = Arrays.copyOf(videoIdAddresses, size * 2);
+      tagOffsets = Arrays.copyOf(tagOffsets, size * 2 + 1);
+    }
+    if (size == flagged.length() * 64) {
+      AtomicLongArray words = new AtomicLongArray(flagged.length() * 2);
+      for (int word = 0; word < flagged.length(); word++) {
+        words.set(word, flagged.get(word));
+      }
+      flagged = words;
+    }
+    int tagsEnd = tagOffsets[size] + videoTagIds.length;
+    if (tagsEnd > tagIds.length) {
+      tagIds = Arrays.copyOf(tagIds, Math.max(tagsEnd, tagIds.length * 2));
+    }
+    System.arraycopy(videoTagIds, 0, tagIds, tagOffsets[size], videoTagIds.length);
+
+    titleAddresses[size] = titles.append(title);
+    videoIdAddresses[size] = videoIds.append(videoId);
+    tagOffsets[size + 1] = tagsEnd;
+    return size++;
+  }
+
+  /**
+   * Get the number of videos of the store.
+   * @return The number of videos
+   */
+  int size() {
+    return size;
+  }
+
+  String getTitle(int ordinal) {
+    return titles.getString(titleAddresses[ordinal]);
+  }
+
+  String getVideoId(int ordinal) {
+    return videoIds.getString(videoIdAddresses[ordinal]);
+  }
+
+  /**
+   * Whether the video id of a video is equal to the given video id, without decoding the video id.
+   */
+  boolean hasVideoId(int ordinal, String videoId) {
+    return videoIds.equalsString(videoIdAddresses[ordinal], videoId);
+  }
+
+  /**
+   * Get the hash of the UTF-8 bytes of the video id of a video, as computed by ByteArena.hash(byte[]).
+   */
+  long hashVideoId(int ordinal) {
+    return videoIds.hash(videoIdAddresses[ordinal]);
+  }
+
+  /**
+   * Get the number of tags of a video.
+   */
+  int getTagCount(int ordinal) {
+    return tagOffsets[ordinal + 1] - tagOffsets[ordinal];
+  }
+
+  /**
+   * Get a tag of a video.
+   * @param ordinal The ordinal of the video
+   * @param index The index of the tag, between 0 and getTagCount(ordinal) - 1
+   * @return The tag
+   */
+  String getTag(int ordinal, int index) {
+    return tagDictionary.getTag(tagIds[tagOffsets[ordinal] + index]);
+  }
+
+  /**
+   * Get the case-folded id of a tag of a video.
+   * @param ordinal The ordinal of the video
+   * @param index The index of the tag, between 0 and getTagCount(ordinal) - 1
+   * @return The case-folded id of the tag in the tag dictionary
+   */
+  int getFoldedTagId(int ordinal, int index) {
+    return tagDictionary.getFoldedId(tagIds[tagOffsets[ordinal] + index]);
+  }
+
+  /**
+   * Whether a video has a tag, compared case-insensitively.
+   * @param ordinal The ordinal of the video
+   * @param foldedTagId The case-folded id of the tag in the tag dictionary
+   */
+  boolean hasTag(int ordinal, int foldedTagId) {
+    for (int index = tagOffsets[ordinal]; index < tagOffsets[ordinal + 1]; index++) {
+      if (tagDictionary.getFoldedId(tagIds[index]) == foldedTagId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  boolean isFlagged(int ordinal) {
+    return (flagged.get(ordinal >>> 6) & (1L << ordinal)) != 0;
+  }
+
+  String getFlagReason(int ordinal) {
+    return flagReasons.getOrDefault(ordinal, "");
+  }
+
+  void flag(int ordinal, String reason) {
+    //We set the reason first, so that a flagged video always has one
+    flagReasons.put(ordinal, reason);
+    flagged.getAndAccumulate(ordinal >>> 6, 1L << ordinal, (word, bit) -> word | bit);
+  }
+
+  void allow(int ordinal) {
+    flagged.getAndAccumulate(ordinal >>> 6, 1L << ordinal, (word, bit) -> word & ~bit);
+    flagReasons.remove(ordinal);
+  }
+
+  /**
+   * Get the first flagged video at or after the given ordinal.
+   * @return The ordinal of the video, or -1 if no video is flagged from this ordinal on
+   */
+  int nextFlagged(int ordinal) {
+    int word = ordinal >>> 6;
+    if (word >= flagged.length()) {
+      return -1;
+    }
+    long bits = flagged.get(word) & (-1L << ordinal);
+    while (bits == 0) {
+      if (++word == flagged.length()) {
+        return -1;
+      }
+      bits = flagged.get(word);
+    }
+    return word * 64 + Long.numberOfTrailingZeros(bits);
+  }
+
+  /**
+   * Get the number of flagged videos.
+   */
+  int getFlaggedCount() {
+    return flagReasons.size();
+  }
+
+  /**
+   * Close the arenas of the titles and video ids, once no video of the store is read anymore.
+   */
+  @Override
+  public void close() {
+    titles.close();
+    videoIds.close();
+  }
+
+  /**
+   * Add the estimated memory used by the store to the given report.
+   */
+  void estimateMemory(MemoryReport report) {
+    report.addOffHeap("Title arena", titles.getAllocatedBytes(), titles.getUsedBytes() + " bytes used");
+    report.addOffHeap("Video id arena", videoIds.getAllocatedBytes(), videoIds.getUsedBytes() + " bytes used");
+    report.add("Arena addresses", MemoryReport.array(titleAddresses.length, 8) * 2, "");
+    report.add("Tag ids", MemoryReport.array(tagOffsets.length, 4) + MemoryReport.array(tagIds.length, 4),
+        tagOffsets[size] + " tags");
+    report.add("Flags", MemoryReport.object(4 * MemoryReport.REFERENCE)
+            + MemoryReport.object(MemoryReport.REFERENCE) + MemoryReport.array(flagged.length(), 8) + MemoryReport.hashMap(flagReasons.size())
+            + flagReasons.size() * MemoryReport.object(4),
+        flagReasons.size() + " flagged videos");
+  }
+}
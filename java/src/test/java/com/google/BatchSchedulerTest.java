@@ -0,0 +1,76 @@
+package com.google;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class BatchSchedulerTest extends TestBase {
+
+  private static final List<String> SCRIPT = List.of(
+      "NUMBER_OF_VIDEOS",
+      "SEARCH_VIDEOS cat",
+      "SHOW_ALL_VIDEOS",
+      "CREATE_PLAYLIST my_playlist",
+      "SHOW_PLAYLIST my_playlist",
+      "ADD_TO_PLAYLIST my_playlist amazing_cats_video_id",
+      "SHOW_PLAYLIST my_playlist",
+      "SEARCH_VIDEOS_WITH_TAG #cat",
+      "FLAG_VIDEO amazing_cats_video_id",
+      "SEARCH_VIDEOS cat",
+      "SHOW_ALL_PLAYLISTS",
+      "EXIT",
+      "NUMBER_OF_VIDEOS");
+
+  private static List<List<String>> tokenize(List<String> lines) {
+    List<List<String>> commands = new ArrayList<>();
+    for (String line: lines) {
+      commands.add(CommandTokenizer.tokenize(line));
+    }
+    return commands;
+  }
+
+  @Test
+  public void testReadOnlyClassification() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    assertTrue(parser.isReadOnly(List.of("SEARCH_VIDEOS", "cat")));
+    assertTrue(parser.isReadOnly(List.of("show_playlist", "my_playlist")));
+    assertTrue(parser.isReadOnly(List.of("PLAY")));
+    assertFalse(parser.isReadOnly(List.of("PLAY", "amazing_cats_video_id")));
+    assertFalse(parser.isReadOnly(List.of("FLAG_VIDEO", "amazing_cats_video_id")));
+  }
+
+  @Test
+  public void testSearchesAreNotReadOnlyWhenInteractive() {
+    var parser = new CommandParser(videoPlayer);
+    assertFalse(parser.isReadOnly(List.of("SEARCH_VIDEOS", "cat")));
+  }
+
+  @Test
+  public void testBatchOutputIsInCommandOrder() {
+    //Reference output, executing the commands one by one
+    var sequentialPlayer = new VideoPlayer();
+    sequentialPlayer.setInteractive(false);
+    var sequentialParser = new CommandParser(sequentialPlayer);
+    for (String line: SCRIPT.subList(0, SCRIPT.indexOf("EXIT"))) {
+      sequentialParser.executeCommand(line);
+    }
+    String expected = outputStream.toString();
+    outputStream.reset();
+
+    videoPlayer.setInteractive(false);
+    try (var scheduler = new BatchScheduler(new CommandParser(videoPlayer), 4)) {
+      scheduler.execute(tokenize(SCRIPT));
+    }
+
+    assertEquals(expected, outputStream.toString());
+    assertThat(outputStream.toString(), not(containsString("Would you like to play")));
+  }
+}
@@ -0,0 +1,135 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatalogTailerTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testAppendedVideosAreIdenticalToLoadedVideos() throws Exception {
+    Path fullCatalog = GeneratedCatalog.write(directory, 6_000, 23);
+    Path tailedCatalog = directory.resolve("tailed-catalog.txt");
+    List<String> lines = Files.readAllLines(fullCatalog);
+    Files.write(tailedCatalog, lines.subList(0, 2_000));
+    var fullLibrary = new VideoLibrary(fullCatalog.toFile());
+    var tailedLibrary = new VideoLibrary(tailedCatalog.toFile());
+    var fullPlayer = new VideoPlayer(fullLibrary);
+    var tailedPlayer = new VideoPlayer(tailedLibrary);
+    var tailer = new CatalogTailer(tailedLibrary, tailedCatalog, tailedLibrary.getLoadedBytes(),
+        tailedPlayer.getMetrics());
+    String word = fullLibrary.getVideo(4_000).getTitle().split(" ")[0];
+    List<String> commands = List.of("SHOW_ALL_VIDEOS", "SEARCH_VIDEOS " + word,
+        "SEARCH_VIDEOS_WITH_TAG " + CatalogGenerator.tagName(2), "SEARCH_VIDEOS_RANKED " + word,
+        "SEARCH_VIDEOS_FUZZY " + word, "AUTOCOMPLETE " + word.substring(0, 2),
+        "QUERY title:" + word + " -tag:" + CatalogGenerator.tagName(1));
+    for (String command: commands) { //The indexes are built before the videos are appended
+      execute(tailedPlayer, command);
+    }
+
+    //The last line is written in two parts, it is only added once it is complete
+    String appended = String.join("\n", lines.subList(2_000, lines.size())) + "\n";
+    int split = appended.length() - 10;
+    append(tailedCatalog, appended.substring(0, split));
+    assertEquals(3_999, tailer.poll());
+    assertEquals(5_999, tailedLibrary.size());
+    append(tailedCatalog, appended.substring(split));
+    assertEquals(1, tailer.poll());
+    assertEquals(0, tailer.poll());
+    assertEquals(Files.size(tailedCatalog), tailer.getOffset());
+
+    for (String command: commands) {
+      assertEquals(execute(fullPlayer, command), execute(tailedPlayer, command), command);
+    }
+    String videoId = CatalogGenerator.videoId(5_999);
+    assertEquals(fullLibrary.getVideo(videoId).getTitle(), tailedLibrary.getVideo(videoId).getTitle());
+    assertEquals(2, tailedPlayer.getMetrics().counter("catalog_ingest_batches_total").sum());
+    assertEquals(4_000, tailedPlayer.getMetrics().counter("catalog_ingested_videos_total").sum());
+  }
+
+  @Test
+  public void testReplacedCatalogIsReadAgain() throws Exception {
+    Path catalog = directory.resolve("catalog.txt");
+    Files.writeString(catalog, "Amazing Cats | amazing_cats_video_id | #cat , #animal\n");
+    var library = new VideoLibrary(catalog.toFile());
+    var player = new VideoPlayer(library);
+    var tailer = new CatalogTailer(library, catalog, library.getLoadedBytes(), player.getMetrics());
+    assertEquals("Here are the results for cat:\n  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]\n",
+        search(player, "SEARCH_VIDEOS cat"));
+
+    //The catalog is truncated, then written again with a video already in the library and a malformed line
+    Files.writeString(catalog, "");
+    assertEquals(0, tailer.poll());
+    assertEquals(1, player.getMetrics().counter("catalog_ingest_truncations_total").sum());
+    Files.writeString(catalog, "Amazing Cats | amazing_cats_video_id\nno video\nCat Tricks | cat_tricks_id |\n");
+    assertEquals(1, tailer.poll());
+    assertEquals(2, player.getMetrics().counter("catalog_ingest_skipped_lines_total").sum());
+    //The cached results of the search are outdated
+    assertEquals("Here are the results for cat:\n  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]\n"
+        + "  2) Cat Tricks (cat_tricks_id) []\n", search(player, "SEARCH_VIDEOS cat"));
+  }
+
+  @Test
+  public void testWatchedCatalogIsTailed() throws Exception {
+    Path catalog = directory.resolve("catalog.txt");
+    try (var ignored = new CatalogTailerCloser()) {
+      Files.writeString(catalog, "Amazing Cats | amazing_cats_video_id | #cat , #animal\n");
+      var library = new VideoLibrary(catalog.toFile());
+      ignored.tailer = new CatalogTailer(library, catalog, library.getLoadedBytes(), new Metrics());
+      ignored.tailer.start(50);
+      append(catalog, "Funny Dogs | funny_dogs_video_id | #dog , #animal\n");
+      long deadline = System.nanoTime() + 10_000_000_000L;
+      while (library.size() < 2 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(2, library.size());
+      assertTrue(library.getVideo("funny_dogs_video_id") != null);
+    }
+  }
+
+  /**
+   * Closes the tailer started by a test, if any.
+   */
+  private static final class CatalogTailerCloser implements AutoCloseable {
+    CatalogTailer tailer;
+
+    //We do not declare Exception, which may be an InterruptedException the try-with-resources would have to handle
+    @Override
+    public void close() {
+      if (tailer != null) {
+        try {
+          tailer.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+  }
+
+  private static void append(Path catalog, String text) throws Exception {
+    Files.write(catalog, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+  }
+
+  private String search(VideoPlayer player, String command) {
+    return execute(player, command).replace("\r\n", "\n").split("Would you like")[0];
+  }
+
+  private String execute(VideoPlayer player, String command) {
+    player.setInteractive(false);
+    outputStream.reset();
+    new CommandParser(player, 0).executeCommand(command);
+    return outputStream.toString();
+  }
+}
@@ -0,0 +1,201 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ChangeFeedTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  /**
+   * A subscriber keeping its batches, and requesting them only when asked to.
+   */
+  private static final class RecordingSubscriber implements Flow.Subscriber<List<ChangeEvent>> {
+    final BlockingQueue<List<ChangeEvent>> batches = new LinkedBlockingQueue<>();
+    final BlockingQueue<Throwable> errors = new LinkedBlockingQueue<>();
+    final CountDownLatch completed = new CountDownLatch(1);
+    final long initialDemand;
+    Flow.Subscription subscription;
+
+    RecordingSubscriber(long initialDemand) {
+      this.initialDemand = initialDemand;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (initialDemand > 0) {
+        subscription.request(initialDemand);
+      }
+    }
+
+    @Override
+    public void onNext(List<ChangeEvent> batch) {
+      batches.add(batch);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      errors.add(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      completed.countDown();
+    }
+
+    List<String> take(int count) throws InterruptedException {
+      List<String> events = new ArrayList<>();
+      while (events.size() < count) {
+        List<ChangeEvent> batch = batches.poll(10, TimeUnit.SECONDS);
+        assertNotNull(batch, "Received " + events);
+        for (ChangeEvent event: batch) {
+          events.add(event.toString());
+        }
+      }
+      return events;
+    }
+  }
+
+  @Test
+  public void testCommandsPublishTheirChanges() throws Exception {
+    var subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+    videoPlayer.getChangeFeed().subscribe(subscriber);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("FLAG_VIDEO amazing_cats_video_id");
+    parser.executeCommand("FLAG_VIDEO amazing_cats_video_id"); //Already flagged, nothing changes
+    parser.executeCommand("ALLOW_VIDEO amazing_cats_video_id");
+    parser.executeCommand("CREATE_PLAYLIST My_Playlist");
+    parser.executeCommand("ADD_TO_PLAYLIST my_playlist funny_dogs_video_id");
+    parser.executeCommand("REMOVE_FROM_PLAYLIST my_playlist funny_dogs_video_id");
+    parser.executeCommand("CLEAR_PLAYLIST my_playlist");
+    parser.executeCommand("DELETE_PLAYLIST my_playlist");
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #unknown"); //Read-only, nothing changes
+
+    assertEquals(List.of(
+        "1 VIDEO_FLAGGED amazing_cats_video_id (reason: Not supplied)",
+        "2 VIDEO_ALLOWED amazing_cats_video_id",
+        "3 PLAYLIST_CREATED My_Playlist",
+        "4 PLAYLIST_VIDEO_ADDED My_Playlist funny_dogs_video_id",
+        "5 PLAYLIST_VIDEO_REMOVED My_Playlist funny_dogs_video_id",
+        "6 PLAYLIST_CLEARED My_Playlist",
+        "7 PLAYLIST_DELETED My_Playlist"), subscriber.take(7));
+    videoPlayer.getChangeFeed().close();
+    assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testReloadPublishesTheChangesNotCarriedOver() throws Exception {
+    Path catalog = directory.resolve("catalog.txt");
+    Files.writeString(catalog, "Amazing Cats | amazing_cats_video_id | #cat , #animal\n");
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("CREATE_PLAYLIST My_Playlist");
+    parser.executeCommand("ADD_TO_PLAYLIST my_playlist funny_dogs_video_id");
+    parser.executeCommand("ADD_TO_PLAYLIST my_playlist amazing_cats_video_id");
+    parser.executeCommand("FLAG_VIDEO nothing_video_id");
+    var subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+    videoPlayer.getChangeFeed().subscribe(subscriber);
+
+    videoPlayer.reloadCatalog(catalog.toFile()).get(10, TimeUnit.SECONDS);
+    assertEquals(List.of(
+        "1 VIDEO_ALLOWED nothing_video_id",
+        "2 PLAYLIST_VIDEO_REMOVED My_Playlist funny_dogs_video_id"), subscriber.take(2));
+  }
+
+  @Test
+  public void testFullBufferDropsTheOldestChanges() throws Exception {
+    var feed = new ChangeFeed(new Metrics());
+    var subscriber = new RecordingSubscriber(0);
+    feed.subscribe(subscriber, 3, ChangeFeed.OverflowPolicy.DROP_OLDEST, 2);
+    for (int video = 1; video <= 5; video++) {
+      feed.publish(ChangeEvent.Type.VIDEO_FLAGGED, "video" + video, null, "spam");
+    }
+    //The batches are of 2 changes at most, each one being one requested item
+    subscriber.subscription.request(1);
+    assertEquals(List.of("3 VIDEO_FLAGGED video3 (reason: spam)", "4 VIDEO_FLAGGED video4 (reason: spam)"),
+        subscriber.take(2));
+    subscriber.subscription.request(1);
+    assertEquals(List.of("5 VIDEO_FLAGGED video5 (reason: spam)"), subscriber.take(1));
+  }
+
+  @Test
+  public void testCoalescedChangesKeepTheLatestStateOfEachVideo() throws Exception {
+    var metrics = new Metrics();
+    var feed = new ChangeFeed(metrics);
+    var subscriber = new RecordingSubscriber(0);
+    feed.subscribe(subscriber, 10, ChangeFeed.OverflowPolicy.COALESCE, 10);
+    feed.publish(ChangeEvent.Type.VIDEO_FLAGGED, "a", null, "spam");
+    feed.publish(ChangeEvent.Type.PLAYLIST_VIDEO_ADDED, "b", "list", null);
+    feed.publish(ChangeEvent.Type.VIDEO_ALLOWED, "a", null, null);
+    feed.publish(ChangeEvent.Type.VIDEO_FLAGGED, "b", null, "off topic");
+    feed.publish(ChangeEvent.Type.VIDEO_FLAGGED, "a", null, "duplicate");
+    subscriber.subscription.request(1);
+    assertEquals(List.of("2 PLAYLIST_VIDEO_ADDED list b", "4 VIDEO_FLAGGED b (reason: off topic)",
+        "5 VIDEO_FLAGGED a (reason: duplicate)"), subscriber.take(3));
+    assertEquals(2, metrics.counter("change_events_coalesced_total").sum());
+  }
+
+  @Test
+  public void testCoalescingIsBoundedByTheCapacity() throws Exception {
+    var metrics = new Metrics();
+    var feed = new ChangeFeed(metrics);
+    var subscriber = new RecordingSubscriber(0);
+    feed.subscribe(subscriber, 4, ChangeFeed.OverflowPolicy.COALESCE, 10);
+    for (int change = 1; change <= 1000; change++) {
+      feed.publish(change % 2 == 0 ? ChangeEvent.Type.VIDEO_ALLOWED : ChangeEvent.Type.VIDEO_FLAGGED,
+          "video" + change % 3, null, null);
+    }
+    feed.publish(ChangeEvent.Type.PLAYLIST_CREATED, null, "list", null);
+    feed.publish(ChangeEvent.Type.PLAYLIST_CLEARED, null, "list", null);
+    //The 3 videos have one pending change each, the oldest of them is dropped for the last playlist change
+    subscriber.subscription.request(1);
+    assertEquals(List.of("999 VIDEO_FLAGGED video0", "1000 VIDEO_ALLOWED video1", "1001 PLAYLIST_CREATED list",
+        "1002 PLAYLIST_CLEARED list"), subscriber.take(4));
+    assertEquals(997, metrics.counter("change_events_coalesced_total").sum());
+    assertEquals(1, metrics.counter("change_events_dropped_total").sum());
+  }
+
+  @Test
+  public void testInvalidRequestIsDeliveredAsAnError() throws Exception {
+    var feed = new ChangeFeed(new Metrics());
+    var subscriber = new RecordingSubscriber(0);
+    feed.subscribe(subscriber);
+    feed.publish(ChangeEvent.Type.VIDEO_ALLOWED, "video", null, null);
+    subscriber.subscription.request(0);
+    assertTrue(subscriber.errors.poll(10, TimeUnit.SECONDS) instanceof IllegalArgumentException);
+    //The subscription is cancelled
+    subscriber.subscription.request(1);
+    feed.publish(ChangeEvent.Type.VIDEO_ALLOWED, "video", null, null);
+    assertNull(subscriber.batches.poll(100, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testStalledSubscriberDoesNotStallTheCommands() throws Exception {
+    var stalled = new RecordingSubscriber(0);
+    videoPlayer.getChangeFeed().subscribe(stalled, 1, ChangeFeed.OverflowPolicy.DROP_OLDEST, 1);
+    var parser = new CommandParser(videoPlayer);
+    for (int round = 0; round < 5; round++) {
+      parser.executeCommand("FLAG_VIDEO amazing_cats_video_id");
+      parser.executeCommand("ALLOW_VIDEO amazing_cats_video_id");
+    }
+    //The commands never wait for the full buffer, the oldest change is dropped
+    assertEquals(9, videoPlayer.getMetrics().counter("change_events_dropped_total").sum());
+    stalled.subscription.request(1);
+    assertEquals(List.of("10 VIDEO_ALLOWED amazing_cats_video_id"), stalled.take(1));
+  }
+}
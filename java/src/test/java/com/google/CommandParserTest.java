@@ -0,0 +1,115 @@
+package com.google;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CommandParserTest extends TestBase {
+
+  private CommandParser commandParser;
+
+  @BeforeEach
+  public void setUpParser() {
+    commandParser = new CommandParser(videoPlayer);
+  }
+
+  @Test
+  public void testTokenizeSplitsOnWhitespaces() {
+    assertEquals(List.of("PLAY", "amazing_cats_video_id"),
+        CommandTokenizer.tokenize("  PLAY \t amazing_cats_video_id  "));
+  }
+
+  @Test
+  public void testTokenizeQuotedArguments() {
+    assertEquals(List.of("FLAG_VIDEO", "amazing_cats_video_id", "dont like cats"),
+        CommandTokenizer.tokenize("FLAG_VIDEO amazing_cats_video_id \"dont like cats\""));
+    assertEquals(List.of("SEARCH_VIDEOS", "open quote"),
+        CommandTokenizer.tokenize("SEARCH_VIDEOS \"open quote"));
+  }
+
+  @Test
+  public void testQuotedWordsAreTokenizedBack() {
+    assertEquals("cats", CommandTokenizer.quote("cats"));
+    assertEquals("\"dont like\tcats\"", CommandTokenizer.quote("dont like\tcats"));
+    for (String word: List.of("cats", "dont like cats", "tab\tseparated", "em\u2003space")) {
+      assertEquals(List.of("SEARCH_VIDEOS", word),
+          CommandTokenizer.tokenize("SEARCH_VIDEOS " + CommandTokenizer.quote(word)));
+    }
+  }
+
+  @Test
+  public void testTokenizeBlankLine() {
+    assertTrue(CommandTokenizer.tokenize("   ").isEmpty());
+  }
+
+  @Test
+  public void testCommandIsCaseInsensitive() {
+    commandParser.executeCommand("number_of_videos");
+    assertThat(outputStream.toString(), containsString("5 videos in the library"));
+  }
+
+  @Test
+  public void testUnknownCommand() {
+    commandParser.executeCommand("DANCE");
+    assertThat(outputStream.toString(), containsString("Please enter a valid command"));
+  }
+
+  @Test
+  public void testMissingArgument() {
+    commandParser.executeCommand("PLAY");
+    assertEquals(1, getOutputLines().length);
+    assertThat(outputStream.toString(),
+        containsString("Please enter PLAY command followed by video_id."));
+  }
+
+  @Test
+  public void testFlagVideoWithOptionalReason() {
+    commandParser.executeCommand("FLAG_VIDEO amazing_cats_video_id \"dont like cats\"");
+    commandParser.executeCommand("FLAG_VIDEO funny_dogs_video_id");
+    commandParser.executeCommand("FLAG_VIDEO");
+
+    var lines = getOutputLines();
+    assertEquals(3, lines.length, outputStream.toString());
+    assertThat(lines[0],
+        containsString("Successfully flagged video: Amazing Cats (reason: dont like cats)"));
+    assertThat(lines[1],
+        containsString("Successfully flagged video: Funny Dogs (reason: Not supplied)"));
+    assertThat(lines[2], containsString(
+        "Please enter FLAG_VIDEO command followed by a video_id and an optional flag reason."));
+  }
+
+  @Test
+  public void testFlagVideoReasonOfSeveralWords() {
+    commandParser.executeCommand("FLAG_VIDEO amazing_cats_video_id dont like cats");
+    assertEquals("Successfully flagged video: Amazing Cats (reason: dont like cats)", getOutputLines()[0]);
+  }
+
+  @Test
+  public void testExtraArgumentsOfFixedCommandsAreIgnored() {
+    commandParser.executeCommand("NUMBER_OF_VIDEOS now");
+    commandParser.executeCommand("PLAY amazing_cats_video_id please");
+    commandParser.executeCommand("AUTOCOMPLETE a 2 more");
+
+    var lines = getOutputLines();
+    assertEquals("5 videos in the library", lines[0]);
+    assertEquals("Playing video: Amazing Cats", lines[1]);
+    assertThat(lines[2], containsString("Please enter AUTOCOMPLETE command followed by a prefix"));
+  }
+
+  @Test
+  public void testParsePositiveInt() {
+    assertEquals(0, CommandParser.parsePositiveInt("0"));
+    assertEquals(42, CommandParser.parsePositiveInt("42"));
+    assertEquals(Integer.MAX_VALUE, CommandParser.parsePositiveInt("2147483647"));
+    assertEquals(-1, CommandParser.parsePositiveInt("2147483648"));
+    assertEquals(-1, CommandParser.parsePositiveInt("-1"));
+    assertEquals(-1, CommandParser.parsePositiveInt("+1"));
+    assertEquals(-1, CommandParser.parsePositiveInt("many"));
+    assertEquals(-1, CommandParser.parsePositiveInt(""));
+  }
+}
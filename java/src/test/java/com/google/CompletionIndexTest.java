@@ -0,0 +1,107 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CompletionIndexTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testAutocomplete() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("AUTOCOMPLETE a");
+    parser.executeCommand("AUTOCOMPLETE #");
+    parser.executeCommand("AUTOCOMPLETE #CA 1");
+    parser.executeCommand("AUTOCOMPLETE x");
+    String[] lines = getOutputLines();
+    assertEquals(12, lines.length);
+    assertEquals("Here are the completions for a:", lines[0]);
+    assertEquals("  1) Amazing Cats", lines[1]);
+    assertEquals("  2) Another Cat Video", lines[2]);
+    //The tags of the most videos come first
+    assertEquals("Here are the completions for #:", lines[3]);
+    assertEquals("  1) #animal", lines[4]);
+    assertEquals("  2) #cat", lines[5]);
+    assertEquals("  3) #career", lines[6]);
+    assertEquals("  4) #dog", lines[7]);
+    assertEquals("  5) #google", lines[8]);
+    assertEquals("Here are the completions for #CA:", lines[9]);
+    assertEquals("  1) #cat", lines[10]);
+    assertEquals("No completions for x", lines[11]);
+  }
+
+  @Test
+  public void testAutocompleteWithInvalidNumberOfCompletions() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("AUTOCOMPLETE a 0");
+    parser.executeCommand("AUTOCOMPLETE a 11");
+    parser.executeCommand("AUTOCOMPLETE a many");
+    String[] lines = getOutputLines();
+    assertEquals(3, lines.length);
+    assertEquals("Please enter AUTOCOMPLETE command followed by a prefix, "
+        + "optionally followed by a number of completions between 1 and 10.", lines[0]);
+    assertEquals(lines[0], lines[1]);
+    assertEquals(lines[0], lines[2]);
+  }
+
+  @Test
+  public void testAutocompleteExcludesFlaggedVideos() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("AUTOCOMPLETE #");
+    parser.executeCommand("FLAG_VIDEO funny_dogs_video_id");
+    parser.executeCommand("FLAG_VIDEO amazing_cats_video_id");
+    outputStream.reset();
+    parser.executeCommand("AUTOCOMPLETE a");
+    parser.executeCommand("AUTOCOMPLETE #");
+    parser.executeCommand("ALLOW_VIDEO amazing_cats_video_id");
+    parser.executeCommand("AUTOCOMPLETE #c");
+    String[] lines = getOutputLines();
+    assertEquals("Here are the completions for a:", lines[0]);
+    assertEquals("  1) Another Cat Video", lines[1]);
+    assertEquals("Here are the completions for #:", lines[2]);
+    assertEquals("  1) #animal", lines[3]);
+    assertEquals("  2) #career", lines[4]);
+    assertEquals("  3) #cat", lines[5]);
+    assertEquals("  4) #google", lines[6]);
+    assertEquals("Successfully removed flag from video: Amazing Cats", lines[7]);
+    assertEquals("Here are the completions for #c:", lines[8]);
+    assertEquals("  1) #cat", lines[9]);
+    assertEquals("  2) #career", lines[10]);
+    assertEquals(11, lines.length);
+  }
+
+  @Test
+  public void testCompletionsAreIdenticalToScanningTheVideos() throws Exception {
+    var library = GeneratedCatalog.load(directory, 3_000, 7);
+    var index = library.getCompletionIndex();
+    Random random = new Random(5);
+
+    for (int round = 0; round < 300; round++) {
+      //We flag or allow a video, then complete a prefix of the title or of a tag of another video
+      Video changed = library.getVideo(random.nextInt(library.size()));
+      if (changed.isFlagged()) {
+        index.update(changed.getOrdinal(), true, changed::allow);
+      } else {
+        index.update(changed.getOrdinal(), false, () -> changed.flag("Not supplied"));
+      }
+      Video video = library.getVideo(random.nextInt(library.size()));
+      String text = random.nextBoolean() || video.getTags().isEmpty()
+          ? video.getTitle() : video.getTags().get(0).toUpperCase();
+      String prefix = text.substring(0, random.nextInt(Math.min(6, text.length()) + 1));
+      int limit = 1 + random.nextInt(CompletionIndex.MAX_COMPLETIONS);
+
+      assertEquals(index.completeByScanning(prefix, limit), index.complete(prefix, limit), prefix);
+    }
+
+    index.setEnabled(false); //The index is built again from the current flags once it is enabled
+    index.setEnabled(true);
+    assertEquals(index.completeByScanning("", 10), index.complete("", 10));
+  }
+}
@@ -0,0 +1,214 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DeadlineTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testSpentBudgetTruncatesSearches() throws Exception {
+    VideoPlayer player = loadPlayer();
+    var parser = new CommandParser(player, 0);
+    parser.executeCommand(CommandTokenizer.tokenize("SEARCH_VIDEOS a"), Deadline.after(0, TimeUnit.MILLISECONDS));
+    parser.executeCommand(CommandTokenizer.tokenize("QUERY title:a"), Deadline.after(0, TimeUnit.MILLISECONDS));
+    String[] lines = getOutputLines();
+    assertEquals(4, lines.length);
+    assertEquals("No search results for a", lines[0]);
+    assertEquals("Results truncated: the time budget of 0 ms was spent", lines[1]);
+    assertEquals("No search results for title:a", lines[2]);
+    assertEquals(lines[1], lines[3]);
+
+    //The partial results were not cached, the search without budget finds all the videos
+    outputStream.reset();
+    parser.executeCommand("SEARCH_VIDEOS a");
+    lines = getOutputLines();
+    assertTrue(lines.length > Deadline.CHECK_INTERVAL);
+    assertFalse(lines[lines.length - 1].startsWith("Results truncated"));
+  }
+
+  @Test
+  public void testSpentBudgetTruncatesRankedSearches() throws Exception {
+    VideoPlayer player = loadPlayer();
+    String word = firstTitleWord(player);
+    //The first search scans the videos while the index is built in the background, the next one uses the index
+    for (int run = 0; run < 2; run++) {
+      outputStream.reset();
+      executeWithSpentBudget(player, "SEARCH_VIDEOS_RANKED " + word);
+      assertTruncated("No search results for " + word);
+      new CommandParser(player, 0).executeCommand("SEARCH_VIDEOS_RANKED " + word);
+    }
+    assertEquals(2, player.getMetrics().counter("commands_truncated_total").sum());
+  }
+
+  @Test
+  public void testSpentBudgetTruncatesFuzzySearches() throws Exception {
+    VideoPlayer player = loadPlayer();
+    String word = firstTitleWord(player);
+    for (int run = 0; run < 2; run++) {
+      outputStream.reset();
+      executeWithSpentBudget(player, "SEARCH_VIDEOS_FUZZY " + word);
+      assertTruncated("No search results for " + word);
+      new CommandParser(player, 0).executeCommand("SEARCH_VIDEOS_FUZZY " + word);
+    }
+    assertEquals(2, player.getMetrics().counter("commands_truncated_total").sum());
+  }
+
+  @Test
+  public void testSpentBudgetTruncatesCompletionsByScanning() throws Exception {
+    VideoPlayer player = loadPlayer();
+    String prefix = firstTitleWord(player).substring(0, 2);
+    executeWithSpentBudget(player, "AUTOCOMPLETE " + prefix);
+    assertTruncated("No completions for " + prefix);
+
+    //Once built, the index completes a prefix without going through the videos
+    outputStream.reset();
+    new CommandParser(player, 0).executeCommand("AUTOCOMPLETE " + prefix);
+    String completions = outputStream.toString();
+    outputStream.reset();
+    executeWithSpentBudget(player, "AUTOCOMPLETE " + prefix);
+    assertEquals(completions, outputStream.toString());
+  }
+
+  @Test
+  public void testSpentBudgetTruncatesPlaylists() throws Exception {
+    VideoPlayer player = loadPlayer();
+    var parser = new CommandParser(player, 0);
+    parser.executeCommand("CREATE_PLAYLIST my_playlist");
+    for (int ordinal = 0; ordinal < 2 * Deadline.CHECK_INTERVAL; ordinal++) {
+      parser.executeCommand("ADD_TO_PLAYLIST my_playlist " + CatalogGenerator.videoId(ordinal));
+    }
+    outputStream.reset();
+    executeWithSpentBudget(player, "SHOW_PLAYLIST my_playlist");
+    assertTruncated("Showing playlist: my_playlist");
+  }
+
+  @Test
+  public void testCancelledCommands() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer, 0);
+    Deadline deadline = Deadline.cancellable();
+    deadline.cancel();
+    parser.executeCommand(CommandTokenizer.tokenize("SHOW_ALL_VIDEOS"), deadline);
+    //A command modifying the state is not bounded
+    parser.executeCommand(CommandTokenizer.tokenize("FLAG_VIDEO amazing_cats_video_id"), deadline);
+    String[] lines = getOutputLines();
+    assertEquals(3, lines.length);
+    assertEquals("Here's a list of all available videos:", lines[0]);
+    assertEquals("Results truncated: the command was cancelled", lines[1]);
+    assertEquals("Successfully flagged video: Amazing Cats (reason: Not supplied)", lines[2]);
+    assertEquals(1, videoPlayer.getMetrics().counter("commands_truncated_total").sum());
+  }
+
+  @Test
+  public void testBudgetLeftDoesNotTruncate() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer, 60_000);
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #cat");
+    String[] lines = getOutputLines();
+    assertEquals(3, lines.length);
+    assertEquals("Here are the results for #cat:", lines[0]);
+    assertEquals("  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[1]);
+    assertEquals("  2) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[2]);
+    assertFalse(Deadline.current().isReached());
+  }
+
+  @Test
+  public void testVideosAreFlaggedWhileIndexesAreBuiltInTheBackground() throws Exception {
+    Path catalog = GeneratedCatalog.write(directory, 20_000, 13);
+    var library = new VideoLibrary(catalog.toFile());
+    var player = new VideoPlayer(library);
+    player.setInteractive(false);
+    String word = firstTitleWord(player);
+    List<String> commands = List.of("SEARCH_VIDEOS_RANKED " + word, "SEARCH_VIDEOS_FUZZY " + word,
+        "AUTOCOMPLETE " + word.substring(0, 2), "QUERY flagged:true tag:" + CatalogGenerator.tagName(1));
+    //The commands with budget left start building the indexes in the background
+    for (String command: commands) {
+      new CommandParser(player, 60_000).executeCommand(command);
+    }
+
+    //We flag every third video from 4 threads at once, in the same words of the flags, and allow every sixth one
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> flags = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        int first = 3 * thread;
+        flags.add(threads.submit(() -> library.read(() -> {
+          for (int ordinal = first; ordinal < library.size(); ordinal += 12) {
+            Video video = library.getVideo(ordinal);
+            library.getCompletionIndex().update(ordinal, false, () -> video.flag("Not supplied"));
+            if (ordinal % 6 == 0) {
+              library.getCompletionIndex().update(ordinal, true, video::allow);
+            }
+          }
+        })));
+      }
+      for (Future<?> flag: flags) {
+        flag.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      threads.shutdown();
+    }
+
+    var expectedLibrary = new VideoLibrary(catalog.toFile());
+    for (int ordinal = 3; ordinal < expectedLibrary.size(); ordinal += 6) {
+      expectedLibrary.getVideo(ordinal).flag("Not supplied");
+    }
+    for (int ordinal = 0; ordinal < library.size(); ordinal++) {
+      assertEquals(expectedLibrary.getVideo(ordinal).isFlagged(), library.getVideo(ordinal).isFlagged());
+    }
+    //A new player does not read the results cached before the flags
+    var flaggedPlayer = new VideoPlayer(library);
+    var expectedPlayer = new VideoPlayer(expectedLibrary);
+    for (String command: commands) {
+      assertEquals(execute(expectedPlayer, command), execute(flaggedPlayer, command), command);
+    }
+  }
+
+  private VideoPlayer loadPlayer() throws IOException {
+    var player = new VideoPlayer(GeneratedCatalog.load(directory, 20_000, 13));
+    player.setInteractive(false);
+    return player;
+  }
+
+  private static String firstTitleWord(VideoPlayer player) {
+    return RelevanceIndex.titleWords(player.getVideoLibrary().getVideo(0).getTitle()).get(0);
+  }
+
+  private String execute(VideoPlayer player, String command) {
+    player.setInteractive(false);
+    outputStream.reset();
+    new CommandParser(player, 0).executeCommand(command);
+    return outputStream.toString();
+  }
+
+  /**
+   * Execute a command with a budget of 1 ms, spent before the command starts.
+   */
+  private static void executeWithSpentBudget(VideoPlayer player, String command) throws InterruptedException {
+    Deadline deadline = Deadline.after(1, TimeUnit.MILLISECONDS);
+    Thread.sleep(2);
+    new CommandParser(player, 0).executeCommand(CommandTokenizer.tokenize(command), deadline);
+  }
+
+  private void assertTruncated(String firstLine) {
+    String[] lines = getOutputLines();
+    assertEquals(2, lines.length, outputStream.toString());
+    assertEquals(firstLine, lines[0]);
+    assertEquals("Results truncated: the time budget of 1 ms was spent", lines[1]);
+  }
+}
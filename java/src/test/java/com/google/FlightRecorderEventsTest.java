@@ -0,0 +1,73 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+public class FlightRecorderEventsTest extends TestBase {
+
+  private static List<RecordedEvent> record(Runnable action) throws Exception {
+    Path file = Files.createTempFile("youtube", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("com.google.youtube.Command");
+      recording.enable("com.google.youtube.CatalogLoad");
+      recording.enable("com.google.youtube.IndexBuild");
+      recording.start();
+      action.run();
+      recording.stop();
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void testCommandEvents() throws Exception {
+    var parser = new CommandParser(videoPlayer);
+    var events = record(() -> {
+      parser.executeCommand("PLAY amazing_cats_video_id");
+      parser.executeCommand("PLAY");
+    }).stream()
+        .filter(event -> event.getEventType().getName().equals("com.google.youtube.Command"))
+        .collect(Collectors.toList());
+
+    assertEquals(2, events.size());
+    assertEquals("PLAY", events.get(0).getString("command"));
+    assertEquals(1, events.get(0).getInt("argumentsSize"));
+    assertEquals("executed", events.get(0).getString("result"));
+    assertEquals("invalid arguments", events.get(1).getString("result"));
+  }
+
+  @Test
+  public void testCatalogLoadEvent() throws Exception {
+    var events = record(VideoLibrary::new).stream()
+        .filter(event -> event.getEventType().getName().equals("com.google.youtube.CatalogLoad"))
+        .collect(Collectors.toList());
+
+    assertEquals(1, events.size());
+    assertEquals(5, events.get(0).getLong("lines"));
+    assertEquals(5, events.get(0).getLong("videos"));
+    assertTrue(events.get(0).getLong("bytes") > 0);
+  }
+
+  @Test
+  public void testIndexBuildEvent() throws Exception {
+    var events = record(VideoLibrary::new).stream()
+        .filter(event -> event.getEventType().getName().equals("com.google.youtube.IndexBuild"))
+        .collect(Collectors.toList());
+
+    assertEquals(1, events.size());
+    assertEquals("Video id perfect hash", events.get(0).getString("index"));
+    assertEquals(5, events.get(0).getLong("entries"));
+    assertEquals(1, events.get(0).getInt("attempts"));
+  }
+}
@@ -0,0 +1,119 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FuzzyIndexTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testSearchVideosFuzzy() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS_FUZZY \"amazng cats\"");
+    parser.executeCommand("SEARCH_VIDEOS_FUZZY cat");
+    parser.executeCommand("SEARCH_VIDEOS_FUZZY caat 0");
+    String[] lines = getOutputLines();
+    assertEquals(7, lines.length);
+    assertEquals("Here are the results for amazng cats:", lines[0]);
+    assertEquals("  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[1]);
+    //The title with the exact word comes first, "cats" and "at" are one edit away
+    assertEquals("Here are the results for cat:", lines[2]);
+    assertEquals("  1) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[3]);
+    assertEquals("  2) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[4]);
+    assertEquals("  3) Life at Google (life_at_google_video_id) [#google #career]", lines[5]);
+    assertEquals("No search results for caat", lines[6]);
+  }
+
+  @Test
+  public void testSearchVideosFuzzyWithInvalidMaxEdits() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS_FUZZY cat 3");
+    parser.executeCommand("SEARCH_VIDEOS_FUZZY cat many");
+    String[] lines = getOutputLines();
+    assertEquals(2, lines.length);
+    assertEquals("Please enter SEARCH_VIDEOS_FUZZY command followed by a search term, "
+        + "optionally followed by a maximum number of edits between 0 and 2.", lines[0]);
+    assertEquals(lines[0], lines[1]);
+  }
+
+  @Test
+  public void testDistance() {
+    assertEquals(0, FuzzyIndex.distance("cat", "cat"));
+    assertEquals(1, FuzzyIndex.distance("amazng", "amazing"));
+    assertEquals(2, FuzzyIndex.distance("caat", "at"));
+    assertEquals(3, FuzzyIndex.distance("kitten", "sitting"));
+    assertEquals(4, FuzzyIndex.distance("", "abcd"));
+  }
+
+  @Test
+  public void testResultsAreIdenticalToScanningTheTitles() throws Exception {
+    var library = GeneratedCatalog.load(directory, 3_000, 13, 11);
+    var index = library.getFuzzyIndex();
+    Set<String> titleWords = new HashSet<>();
+    for (int ordinal = 0; ordinal < library.size(); ordinal++) {
+      titleWords.addAll(RelevanceIndex.titleWords(library.getVideo(ordinal).getTitle()));
+    }
+
+    //We search words of the titles with random typos
+    Random random = new Random(3);
+    String letters = "abcdefghijklmnopqrstuvwxyz";
+    for (int query = 0; query < 200; query++) {
+      StringBuilder searchTerm = new StringBuilder();
+      for (int word = 0; word <= random.nextInt(2); word++) {
+        String[] words = library.getVideo(random.nextInt(library.size())).getTitle().toLowerCase().split(" ");
+        StringBuilder typo = new StringBuilder(words[random.nextInt(words.length)]);
+        for (int edit = 0; edit < random.nextInt(3) && typo.length() > 1; edit++) {
+          int position = random.nextInt(typo.length());
+          switch (random.nextInt(3)) {
+            case 0:
+              typo.deleteCharAt(position);
+              break;
+            case 1:
+              typo.insert(position, letters.charAt(random.nextInt(letters.length())));
+              break;
+            default:
+              typo.setCharAt(position, letters.charAt(random.nextInt(letters.length())));
+          }
+        }
+        searchTerm.append(typo).append(' ');
+      }
+      int maxEdits = random.nextInt(FuzzyIndex.MAX_EDITS + 2) - 1;
+      if (matchesTooManyWords(searchTerm.toString(), maxEdits, titleWords)) {
+        continue; //Only the closest words are matched through the index
+      }
+
+      int limit = random.nextBoolean() ? 10 : Integer.MAX_VALUE;
+      library.getTitleIndex().setEnabled(random.nextBoolean()); //The best results are sorted without the index
+      int[] expected = index.searchByScanning(searchTerm.toString(), maxEdits, Integer.MAX_VALUE);
+      assertArrayEquals(Arrays.copyOf(expected, Math.min(limit, expected.length)),
+          index.search(searchTerm.toString(), maxEdits, limit), searchTerm + " " + maxEdits);
+    }
+  }
+
+  private static boolean matchesTooManyWords(String searchTerm, int maxEdits, Set<String> titleWords) {
+    for (String searchedWord: RelevanceIndex.titleWords(searchTerm)) {
+      int wordMaxEdits = maxEdits == -1 ? FuzzyIndex.defaultMaxEdits(searchedWord) : maxEdits;
+      int matches = 0;
+      for (String titleWord: titleWords) {
+        if (FuzzyIndex.distance(searchedWord, titleWord) <= wordMaxEdits) {
+          matches++;
+        }
+      }
+      if (matches > FuzzyIndex.MAX_EXPANSIONS) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,49 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A class used by the tests to write and load the catalogs of CatalogGenerator, in the temporary directory of a
+ * test (a JUnit @TempDir), which is deleted after the test.
+ */
+final class GeneratedCatalog {
+
+  private GeneratedCatalog() {
+  }
+
+  /**
+   * Write a generated catalog in a directory.
+   * @param directory The directory, e.g. the temporary directory of the test
+   * @param numberOfVideos The number of videos of the catalog
+   * @param seed The seed of the generator, the same seed generating the same catalog
+   * @return The catalog file
+   */
+  static Path write(Path directory, int numberOfVideos, long seed) throws IOException {
+    Path catalog = directory.resolve("catalog-" + numberOfVideos + "-" + seed + ".txt");
+    new CatalogGenerator(numberOfVideos, seed).write(catalog);
+    return catalog;
+  }
+
+  /**
+   * Write a generated catalog in a directory, and load it.
+   * @return The library of the videos of the catalog
+   */
+  static VideoLibrary load(Path directory, int numberOfVideos, long seed) throws IOException {
+    return new VideoLibrary(write(directory, numberOfVideos, seed).toFile());
+  }
+
+  /**
+   * Write a generated catalog in a directory, and load it with some of its videos flagged, so that the searches
+   * compared in a test also skip flagged videos.
+   * @param flaggedInterval The interval between the ordinals of the flagged videos, the first video being flagged
+   * @return The library of the videos of the catalog
+   */
+  static VideoLibrary load(Path directory, int numberOfVideos, long seed, int flaggedInterval) throws IOException {
+    VideoLibrary library = load(directory, numberOfVideos, seed);
+    for (int ordinal = 0; ordinal < library.size(); ordinal += flaggedInterval) {
+      library.getVideo(ordinal).flag("Not supplied");
+    }
+    return library;
+  }
+}
@@ -0,0 +1,34 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class IntSorterTest {
+
+  @Test
+  public void testSortIsStable() {
+    Random random = new Random(7);
+    for (int length: new int[] {0, 1, 31, 33, 1_000, 10_000}) {
+      int[] keys = random.ints(length, 0, 50).toArray();
+      int[] values = new int[length + 2];
+      Integer[] expected = new Integer[length];
+      for (int index = 0; index < length; index++) {
+        values[index + 1] = index;
+        expected[index] = index;
+      }
+      //Only the range between the first and the last value is sorted
+      values[0] = -1;
+      values[length + 1] = -1;
+      IntSorter.sort(values, 1, length + 1, (first, second) -> Integer.compare(keys[first], keys[second]));
+      Arrays.sort(expected, Comparator.comparingInt(index -> keys[index]));
+
+      int[] sorted = Arrays.copyOfRange(values, 1, length + 1);
+      assertArrayEquals(Arrays.stream(expected).mapToInt(Integer::intValue).toArray(), sorted);
+      assertArrayEquals(new int[] {-1, -1}, new int[] {values[0], values[length + 1]});
+    }
+  }
+}
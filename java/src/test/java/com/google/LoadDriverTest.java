@@ -0,0 +1,59 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LoadDriverTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  private Path catalog;
+
+  @BeforeEach
+  public void generateCatalog() throws IOException {
+    catalog = GeneratedCatalog.write(directory, 2000, 7);
+  }
+
+  @Test
+  public void testGeneratedCatalogLoads() {
+    var videoLibrary = new VideoLibrary(catalog.toFile());
+
+    assertEquals(2000, videoLibrary.getVideos().size());
+    var video = videoLibrary.getVideo(CatalogGenerator.videoId(1999));
+    assertNotNull(video);
+    assertFalse(video.getTitle().isEmpty());
+    assertTrue(video.getTags().size() <= 5);
+    assertFalse(video.getTags().contains(""));
+  }
+
+  @Test
+  public void testGeneratorIsDeterministic() throws IOException {
+    Path other = GeneratedCatalog.write(Files.createDirectory(directory.resolve("other")), 2000, 7);
+    assertEquals(Files.readAllLines(catalog), Files.readAllLines(other));
+  }
+
+  @Test
+  public void testDriverRecordsEveryCommand() {
+    var videoLibrary = new VideoLibrary(new File(catalog.toString()));
+    var videoPlayer = new VideoPlayer(videoLibrary);
+    videoPlayer.setInteractive(false);
+    var driver = new LoadDriver(videoPlayer, videoLibrary,
+        LoadDriver.parseMix("search:1,tag:1,play:1,flag:1,playlist:1"), 42);
+
+    var latencies = new LatencyHistogram();
+    driver.run(500, 0, latencies);
+
+    assertEquals(500, latencies.getCount());
+  }
+}
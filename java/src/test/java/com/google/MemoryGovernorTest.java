@@ -0,0 +1,82 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MemoryGovernorTest extends TestBase {
+
+  private static final long CEILING = 1000;
+
+  @Test
+  public void testShedsCachesBeforeIndexesAndRestoresInReverseOrder() {
+    var metrics = new Metrics();
+    var governor = new MemoryGovernor(CEILING, 0.8, 0.5, metrics);
+    List<String> events = new ArrayList<>();
+    governor.register("index", MemoryGovernor.Priority.INDEX, () -> events.add("shed index"),
+        () -> events.add("restore index"));
+    governor.register("cache", MemoryGovernor.Priority.CACHE, () -> events.add("shed cache"),
+        () -> events.add("restore cache"));
+
+    governor.check(700, 1); //Under the shed ratio
+    governor.check(900, 2);
+    governor.check(900, 2); //No collection since the caches were dropped
+    assertEquals(List.of("cache"), governor.getShedStructures());
+    governor.check(850, 3);
+    governor.check(850, 4); //Everything is already dropped
+    governor.check(600, 5); //Between the two ratios
+    governor.check(400, 6);
+    governor.check(400, 7);
+
+    assertEquals(List.of("shed cache", "shed index", "restore index", "restore cache"), events);
+    assertEquals(2, metrics.counter("memory_sheds_total").sum());
+    assertEquals(2, metrics.counter("memory_restores_total").sum());
+  }
+
+  @Test
+  public void testStructuresRegisteredWhileShedAreShed() {
+    var governor = new MemoryGovernor(CEILING, 0.8, 0.5, new Metrics());
+    governor.check(900, 1);
+    List<String> events = new ArrayList<>();
+    governor.register("cache", MemoryGovernor.Priority.CACHE, () -> events.add("shed cache"),
+        () -> events.add("restore cache"));
+
+    assertEquals(List.of("shed cache"), events);
+  }
+
+  @Test
+  public void testVideoPlayerServesTheSameResultsWithoutItsCaches() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    var governor = new MemoryGovernor(CEILING, 0.8, 0.5, videoPlayer.getMetrics());
+    videoPlayer.registerOptionalStructures(governor);
+    String before = new String(CommandOutput.capture(() -> parser.executeCommand("SEARCH_VIDEOS cat")),
+        StandardCharsets.UTF_8);
+
+    governor.check(900, 1);
+    String during = new String(CommandOutput.capture(() -> parser.executeCommand("SEARCH_VIDEOS cat")),
+        StandardCharsets.UTF_8);
+    governor.check(100, 2);
+    String after = new String(CommandOutput.capture(() -> parser.executeCommand("SEARCH_VIDEOS cat")),
+        StandardCharsets.UTF_8);
+
+    assertEquals(before, during);
+    assertEquals(before, after);
+    //The results cached before the shed were dropped, and the cache is used again after the restore
+    var hits = videoPlayer.getMetrics().counter("search_cache_hits_total");
+    assertEquals(0, hits.sum());
+    parser.executeCommand("SEARCH_VIDEOS cat");
+    assertEquals(1, hits.sum());
+  }
+
+  @Test
+  public void testStartAndClose() {
+    try (var governor = MemoryGovernor.fromSystemProperties(new Metrics())) {
+      governor.start(60);
+      assertEquals(List.of(), governor.getShedStructures());
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package com.google;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MemoryReportTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  @Test
+  public void testStringSize() {
+    //24 bytes for the String object, 16 bytes of array header and 5 bytes of characters aligned to 24
+    assertEquals(MemoryReport.STRING + MemoryReport.array(5, 1), MemoryReport.string("#cats"));
+    assertEquals(MemoryReport.STRING + MemoryReport.array(2, 2), MemoryReport.string("\u732b\u732b"));
+  }
+
+  @Test
+  public void testStatsMemoryCommand() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("CREATE_PLAYLIST my_playlist");
+    parser.executeCommand("ADD_TO_PLAYLIST my_playlist amazing_cats_video_id");
+    outputStream.reset();
+
+    parser.executeCommand("STATS MEMORY");
+
+    String output = outputStream.toString();
+    assertThat(output, containsString("Title arena:"));
+    assertThat(output, containsString("Tag dictionary:"));
+    assertThat(output, containsString("Playlists:"));
+    assertThat(output, containsString("1 playlists, 1 entries"));
+    assertThat(output, containsString("Per video:"));
+    assertThat(output, containsString("Per playlist entry:"));
+  }
+
+  @Test
+  public void testEstimateMatchesHeapMeasurement() throws Exception {
+    var library = GeneratedCatalog.load(directory, 400_000, 3);
+    var report = new MemoryReport();
+    library.estimateMemory(report);
+    long estimated = report.getTotal();
+    assertEquals(400_000, library.getVideos().size());
+
+    //We measure the memory released by the library rather than allocated while loading it,
+    //as the test framework may release its own buffers in the meantime
+    long withLibrary = usedHeap();
+    Reference.reachabilityFence(library);
+    library = null;
+    long measured = withLibrary - usedHeap();
+
+    //The measure includes some unrelated allocations, the estimate must be within 15% of it
+    assertTrue(Math.abs(estimated - measured) < measured * 0.15,
+        "estimated " + estimated + " bytes, measured " + measured + " bytes");
+  }
+}
@@ -0,0 +1,60 @@
+package com.google;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsTest extends TestBase {
+
+  @Test
+  public void testHistogramBucketsKeepPrecision() {
+    for (long value: new long[] {0, 1, 31, 32, 33, 1_000, 123_456, 987_654_321L, Long.MAX_VALUE}) {
+      int index = LatencyHistogram.bucketIndex(value);
+      long highest = LatencyHistogram.highestValueOf(index);
+      assertTrue(highest >= value, "bucket of " + value);
+      assertTrue(highest - value <= value / 32, "precision of " + value);
+    }
+  }
+
+  @Test
+  public void testHistogramQuantiles() {
+    var histogram = new LatencyHistogram();
+    for (long value = 1; value <= 1000; value++) {
+      histogram.record(value * 1000);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1_000_000, histogram.getMax());
+    assertEquals(500_000, histogram.getValueAtQuantile(0.5), 500_000 / 32.0);
+    assertEquals(990_000, histogram.getValueAtQuantile(0.99), 990_000 / 32.0);
+    assertEquals(0, new LatencyHistogram().getValueAtQuantile(0.5));
+  }
+
+  @Test
+  public void testStatsCommand() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("PLAY amazing_cats_video_id");
+    parser.executeCommand("PLAY funny_dogs_video_id");
+    parser.executeCommand("DANCE");
+    outputStream.reset();
+
+    parser.executeCommand("STATS");
+
+    assertThat(outputStream.toString(), containsString("PLAY: count=2 p50="));
+    assertThat(outputStream.toString(), containsString("commands_invalid_total: 1"));
+  }
+
+  @Test
+  public void testPrometheusText() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("NUMBER_OF_VIDEOS");
+
+    String text = videoPlayer.getMetrics().toPrometheusText();
+    assertThat(text, containsString("# TYPE youtube_command_latency_seconds summary"));
+    assertThat(text,
+        containsString("youtube_command_latency_seconds{command=\"NUMBER_OF_VIDEOS\",quantile=\"0.99\"}"));
+    assertThat(text, containsString("youtube_command_latency_seconds_count{command=\"NUMBER_OF_VIDEOS\"} 1"));
+  }
+}
@@ -0,0 +1,80 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParallelScanTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testParallelCommandsAreIdenticalToSequentialCommands() throws Exception {
+    try (var parallelScan = new ParallelScan(4, 1)) {
+      var library = GeneratedCatalog.load(directory, 30_000, 17, 13);
+      var sequentialPlayer = new VideoPlayer(library);
+      sequentialPlayer.setParallelScan(new ParallelScan(1, 1));
+      var parallelPlayer = new VideoPlayer(library);
+      parallelPlayer.setParallelScan(parallelScan);
+      String word = library.getVideo(5).getTitle().split(" ")[1];
+      List<String> commands = List.of("SHOW_ALL_VIDEOS", "SEARCH_VIDEOS a", "SEARCH_VIDEOS " + word,
+          "SEARCH_VIDEOS_WITH_TAG " + CatalogGenerator.tagName(3), "QUERY title:o -tag:" + CatalogGenerator.tagName(1));
+
+      for (boolean tagIndexEnabled: new boolean[] {true, false}) {
+        //Without the tag index, the tags of all the videos are scanned
+        library.getTagIndex().setEnabled(tagIndexEnabled);
+        for (String command: commands) {
+          assertEquals(execute(sequentialPlayer, command), execute(parallelPlayer, command), command);
+        }
+      }
+    }
+  }
+
+  private String execute(VideoPlayer player, String command) {
+    player.setInteractive(false);
+    outputStream.reset();
+    new CommandParser(player, 0).executeCommand(command);
+    return outputStream.toString();
+  }
+
+  @Test
+  public void testSortByTitleKeepsTheLastVideoOfEachTitle() {
+    Random random = new Random(41);
+    String[] titles = new String[50_000];
+    for (int ordinal = 0; ordinal < titles.length; ordinal++) {
+      titles[ordinal] = "Title " + random.nextInt(20_000); //Most titles are shared by several videos
+    }
+    TreeMap<String, Integer> expected = new TreeMap<>();
+    for (int ordinal = 0; ordinal < titles.length; ordinal++) {
+      expected.put(titles[ordinal], ordinal);
+    }
+
+    try (var parallelScan = new ParallelScan(3, 1)) {
+      int[] sorted = parallelScan.sortByTitle(titles.length, ParallelScan::range, ordinal -> titles[ordinal]);
+      assertArrayEquals(expected.values().stream().mapToInt(Integer::intValue).toArray(), sorted);
+      int[] even = parallelScan.filter(titles.length, ordinal -> ordinal % 2 == 0);
+      assertEquals(titles.length / 2, even.length);
+      assertEquals(titles.length - 2, even[even.length - 1]);
+    }
+  }
+
+  @Test
+  public void testCancelledDeadlineStopsEveryChunk() {
+    try (var parallelScan = new ParallelScan(4, 1)) {
+      Deadline deadline = Deadline.cancellable();
+      deadline.cancel();
+      int[][] ordinals = new int[1][];
+      Deadline.run(deadline, () -> ordinals[0] = parallelScan.filter(100_000, ordinal -> true));
+      assertEquals(0, ordinals[0].length);
+      assertTrue(deadline.wasReached());
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class QueryPlannerTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testQuery() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("QUERY title:CAT tag:#animal -tag:#dog");
+    parser.executeCommand("QUERY tag:#ANIMAL -title:cat");
+    parser.executeCommand("QUERY \"title:about nothing\"");
+    parser.executeCommand("QUERY tag:#unknown");
+    String[] lines = getOutputLines();
+    assertEquals(8, lines.length);
+    assertEquals("Here are the results for title:CAT tag:#animal -tag:#dog:", lines[0]);
+    assertEquals("  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[1]);
+    assertEquals("  2) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[2]);
+    assertEquals("Here are the results for tag:#ANIMAL -title:cat:", lines[3]);
+    assertEquals("  1) Funny Dogs (funny_dogs_video_id) [#dog #animal]", lines[4]);
+    assertEquals("Here are the results for \"title:about nothing\":", lines[5]);
+    assertEquals("  1) Video about nothing (nothing_video_id) []", lines[6]);
+    assertEquals("No search results for tag:#unknown", lines[7]);
+  }
+
+  @Test
+  public void testQueryFlaggedVideos() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("FLAG_VIDEO funny_dogs_video_id dont_like_dogs");
+    outputStream.reset();
+    parser.executeCommand("QUERY tag:#dog");
+    parser.executeCommand("QUERY flagged:true");
+    parser.executeCommand("QUERY tag:#animal -flagged:true");
+    String[] lines = getOutputLines();
+    assertEquals(6, lines.length);
+    assertEquals("No search results for tag:#dog", lines[0]);
+    assertEquals("Here are the results for flagged:true:", lines[1]);
+    assertEquals("  1) Funny Dogs (funny_dogs_video_id) [#dog #animal] - FLAGGED (reason: dont_like_dogs)", lines[2]);
+    assertEquals("Here are the results for tag:#animal -flagged:true:", lines[3]);
+    assertEquals("  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[4]);
+    assertEquals("  2) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[5]);
+  }
+
+  @Test
+  public void testQueryWithInvalidPredicates() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("QUERY cat");
+    parser.executeCommand("QUERY views:10");
+    parser.executeCommand("QUERY flagged:maybe");
+    parser.executeCommand("EXPLAIN title:");
+    String[] lines = getOutputLines();
+    assertEquals(4, lines.length);
+    assertEquals("Please enter QUERY command followed by predicates, "
+        + "e.g. title:cat tag:#animal -tag:#dog flagged:false, optionally followed by FACETS <n>.", lines[0]);
+    assertEquals(lines[0], lines[1]);
+    assertEquals(lines[0], lines[2]);
+    assertEquals("Please enter EXPLAIN command followed by the predicates of a query, "
+        + "e.g. title:cat tag:#animal -tag:#dog flagged:false.", lines[3]);
+    assertNull(VideoQuery.parse(List.of("title:cat", "-:x")));
+  }
+
+  @Test
+  public void testExplain() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("EXPLAIN title:life tag:#google");
+    parser.executeCommand("EXPLAIN -tag:#animal");
+    String[] lines = getOutputLines();
+    assertEquals(10, lines.length);
+    //The tag index reads the only video with the tag, the title is only tested on this video
+    assertEquals("Plan for title:life tag:#google:", lines[0]);
+    assertEquals("  1) Tag index lookup tag:#google (estimated rows: 1, actual rows: 1)", lines[1]);
+    assertEquals("  2) Filter title:life (estimated rows: 0, actual rows: 1)", lines[2]);
+    assertEquals("  3) Filter flagged:false (estimated rows: 0, actual rows: 1)", lines[3]);
+    assertEquals("Rows examined: 1, matched: 1, estimated cost: 11", lines[4]);
+    //A negated tag has no index, all the videos are read
+    assertEquals("Plan for -tag:#animal:", lines[5]);
+    assertEquals("  1) Full scan (estimated rows: 5, actual rows: 5)", lines[6]);
+    assertEquals("  2) Filter -tag:#animal (estimated rows: 2, actual rows: 2)", lines[7]);
+    assertEquals("  3) Filter flagged:false (estimated rows: 2, actual rows: 2)", lines[8]);
+    assertEquals("Rows examined: 5, matched: 2, estimated cost: 12", lines[9]);
+  }
+
+  @Test
+  public void testPlansAreIdenticalToTestingEveryVideo() throws Exception {
+    var library = GeneratedCatalog.load(directory, 3_000, 13, 29);
+    var planner = library.getQueryPlanner();
+    Random random = new Random(31);
+
+    for (int round = 0; round < 300; round++) {
+      //We build the predicates from the titles and tags of the catalog, so that they have results
+      List<String> predicates = new ArrayList<>();
+      for (int count = 0; count <= random.nextInt(3); count++) {
+        Video video = library.getVideo(random.nextInt(library.size()));
+        String negation = random.nextInt(4) == 0 ? "-" : "";
+        int field = random.nextInt(5);
+        if (field < 2) {
+          String title = video.getTitle();
+          int start = random.nextInt(title.length());
+          predicates.add(negation + "title:" + title.substring(start, Math.min(title.length(), start + 4)));
+        } else if (field < 4 && !video.getTags().isEmpty()) {
+          predicates.add(negation + "tag:" + video.getTags().get(0).toUpperCase());
+        } else {
+          predicates.add(negation + "flagged:" + random.nextBoolean());
+        }
+      }
+      //The access paths fall back to scanning the videos when their index is dropped
+      library.getTagIndex().setEnabled(random.nextInt(4) != 0);
+      library.getTitleScanner().setEnabled(random.nextInt(4) != 0);
+
+      VideoQuery query = VideoQuery.parse(predicates);
+      assertArrayEquals(testEveryVideo(library, query), planner.execute(planner.plan(query)),
+          predicates.toString());
+    }
+  }
+
+  private static int[] testEveryVideo(VideoLibrary library, VideoQuery query) {
+    int[] ordinals = new int[library.size()];
+    int count = 0;
+    for (int ordinal = 0; ordinal < library.size(); ordinal++) {
+      Video video = library.getVideo(ordinal);
+      boolean matches = true;
+      for (VideoQuery.Predicate predicate: query.getPredicates()) {
+        boolean matchesField;
+        if (predicate.field == VideoQuery.Field.TITLE) {
+          matchesField = video.getTitle().toLowerCase().contains(predicate.value);
+        } else if (predicate.field == VideoQuery.Field.TAG) {
+          matchesField = video.getTags().stream().anyMatch(tag -> tag.equalsIgnoreCase(predicate.value));
+        } else {
+          matchesField = video.isFlagged() == Boolean.parseBoolean(predicate.value);
+        }
+        matches &= matchesField != predicate.negated;
+      }
+      if (matches) {
+        ordinals[count++] = ordinal;
+      }
+    }
+    return Arrays.copyOf(ordinals, count);
+  }
+
+  @Test
+  public void testPlannerDrivesFromTheMostSelectivePredicate() throws Exception {
+    var library = GeneratedCatalog.load(directory, 20_000, 13);
+    library.getVideo(7).flag("Not supplied");
+    var planner = library.getQueryPlanner();
+    String rareTag = CatalogGenerator.tagName(900);
+    String word = library.getVideo(3).getTitle().split(" ")[1];
+
+    assertEquals(QueryPlanner.Access.TAG_INDEX,
+        planner.plan(VideoQuery.parse(List.of("title:a", "tag:" + rareTag))).getAccess());
+    assertEquals(QueryPlanner.Access.FLAGGED_VIDEOS,
+        planner.plan(VideoQuery.parse(List.of("title:a", "flagged:true"))).getAccess());
+    assertEquals(QueryPlanner.Access.TITLE_SCAN,
+        planner.plan(VideoQuery.parse(List.of("title:" + word, "-tag:" + rareTag))).getAccess());
+    assertEquals(QueryPlanner.Access.FULL_SCAN,
+        planner.plan(VideoQuery.parse(List.of("-tag:" + rareTag))).getAccess());
+  }
+}
@@ -0,0 +1,89 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RelevanceIndexTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testSearchVideosRanked() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS_RANKED cat");
+    String[] lines = getOutputLines();
+    assertEquals(3, lines.length);
+    assertEquals("Here are the results for cat:", lines[0]);
+    //The title and a tag of the second video contain the word, only a tag of the first one does
+    assertEquals("  1) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[1]);
+    assertEquals("  2) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[2]);
+  }
+
+  @Test
+  public void testSearchVideosRankedWithLimit() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS_RANKED \"#ANIMAL video\" LIMIT 1");
+    parser.executeCommand("SEARCH_VIDEOS_RANKED blah");
+    parser.executeCommand("SEARCH_VIDEOS_RANKED cat LIMIT -1");
+    String[] lines = getOutputLines();
+    assertEquals(4, lines.length);
+    assertEquals("Here are the results for #ANIMAL video:", lines[0]);
+    assertEquals("  1) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[1]);
+    assertEquals("No search results for blah", lines[2]);
+    assertEquals("Please enter SEARCH_VIDEOS_RANKED command followed by a search query, "
+        + "optionally followed by LIMIT <k>.", lines[3]);
+  }
+
+  @Test
+  public void testSearchVideosRankedSkipsFlaggedVideos() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("FLAG_VIDEO another_cat_video_id");
+    outputStream.reset();
+    parser.executeCommand("SEARCH_VIDEOS_RANKED cat");
+    String[] lines = getOutputLines();
+    assertEquals(2, lines.length);
+    assertEquals("  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[1]);
+  }
+
+  @Test
+  public void testQueryTerms() {
+    assertEquals(List.of("funny", "#funny", "cats", "#cats", "#dog"),
+        RelevanceIndex.queryTerms(" Funny, cats! #DOG funny"));
+  }
+
+  @Test
+  public void testTopResultsAreIdenticalToExhaustiveScoring() throws Exception {
+    var library = GeneratedCatalog.load(directory, 5_000, 3, 13);
+    var index = library.getRelevanceIndex();
+
+    Random random = new Random(17);
+    for (int query = 0; query < 200; query++) {
+      //We build the queries from the words and tags of the catalog, so that they have results
+      StringBuilder text = new StringBuilder();
+      for (int word = 0; word <= random.nextInt(4); word++) {
+        Video video = library.getVideo(random.nextInt(library.size()));
+        String[] words = video.getTitle().split(" ");
+        text.append(random.nextInt(4) == 0 && !video.getTags().isEmpty()
+            ? video.getTags().get(0) : words[random.nextInt(words.length)]).append(' ');
+      }
+      List<String> terms = RelevanceIndex.queryTerms(text.toString());
+      int limit = 1 + random.nextInt(20);
+
+      index.setEnabled(true);
+      int[] expected = index.searchExhaustively(terms, limit);
+      assertArrayEquals(expected, index.search(terms, limit), text.toString());
+      index.setEnabled(false); //Scores are computed by scanning the videos
+      assertArrayEquals(expected, index.search(terms, limit), text.toString());
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ReloadCatalogTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  private static final String RELOADED_CATALOG = "Funny Dogs 2 | funny_dogs_video_id | #dog\n"
+      + "Amazing Cats | amazing_cats_video_id | #cat , #animal\n"
+      + "Life at Google | life_at_google_video_id | #google , #career\n"
+      + "Hiking | hiking_video_id | #outdoors\n";
+
+  @Test
+  public void testReloadCarriesOverFlagsAndPlaylists() throws Exception {
+    Path catalog = writeReloadedCatalog();
+    var parser = new CommandParser(videoPlayer);
+    videoPlayer.setInteractive(false);
+    parser.executeCommand("CREATE_PLAYLIST my_playlist");
+    parser.executeCommand("ADD_TO_PLAYLIST my_playlist funny_dogs_video_id");
+    parser.executeCommand("ADD_TO_PLAYLIST my_playlist another_cat_video_id");
+    parser.executeCommand("FLAG_VIDEO amazing_cats_video_id dont_like_cats");
+    parser.executeCommand("FLAG_VIDEO nothing_video_id");
+    parser.executeCommand("PLAY life_at_google_video_id");
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #animal"); //Cached for the previous catalog
+    outputStream.reset();
+
+    assertEquals("Reloaded catalog version 2: 4 videos, 1 flagged videos and 1 playlist videos carried over, "
+        + "1 playlist videos not in the catalog removed", videoPlayer.reloadCatalog(catalog.toFile()).get());
+    parser.executeCommand("NUMBER_OF_VIDEOS");
+    parser.executeCommand("SHOW_PLAYLIST my_playlist");
+    parser.executeCommand("SHOW_PLAYING");
+    parser.executeCommand("PLAY amazing_cats_video_id");
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #animal");
+    String[] lines = getOutputLines();
+    assertEquals("4 videos in the library", lines[0]);
+    assertEquals("Showing playlist: my_playlist", lines[1]);
+    assertEquals("  Funny Dogs 2 (funny_dogs_video_id) [#dog]", lines[2]);
+    assertEquals("Currently playing: Life at Google (life_at_google_video_id) [#google #career]", lines[3]);
+    assertEquals("Cannot play video: Video is currently flagged (reason: dont_like_cats)", lines[4]);
+    assertEquals("No search results for #animal", lines[5]);
+    assertEquals(1, videoPlayer.getMetrics().counter("catalog_reloads_total").sum());
+  }
+
+  @Test
+  public void testRunningCommandsKeepTheirVersion() throws Exception {
+    Path catalog = writeReloadedCatalog();
+    VideoLibrary previous = videoPlayer.getVideoLibrary();
+    //A read-only command does not delay the swap, and keeps reading the catalog it started on
+    videoPlayer.runCommand(true, () -> {
+      try {
+        videoPlayer.reloadCatalog(catalog.toFile()).get(10, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+      assertSame(previous, videoPlayer.getVideoLibrary());
+      videoPlayer.numberOfVideos();
+    });
+    videoPlayer.runCommand(true, videoPlayer::numberOfVideos);
+    assertEquals("5 videos in the library", getOutputLines()[0]);
+    assertEquals("4 videos in the library", getOutputLines()[1]);
+  }
+
+  @Test
+  public void testReloadCommand() throws Exception {
+    Path catalog = writeReloadedCatalog();
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("RELOAD_CATALOG " + catalog.resolveSibling("missing_catalog.txt"));
+    parser.executeCommand("RELOAD_CATALOG " + catalog);
+    //The end of the reload is displayed before the next prompt
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!outputStream.toString().contains("Reloaded catalog") && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+      videoPlayer.showNotices();
+    }
+    String[] lines = getOutputLines();
+    assertEquals("Cannot reload catalog: File does not exist", lines[0]);
+    assertEquals("Reloading catalog from " + catalog, lines[1]);
+    assertTrue(lines[2].startsWith("Reloaded catalog version 2: 4 videos"), lines[2]);
+    assertNull(videoPlayer.getVideoLibrary().getVideo("nothing_video_id"));
+  }
+
+  @Test
+  public void testReloadStopsTheVideoNotInTheCatalog() throws Exception {
+    Path catalog = writeReloadedCatalog();
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("PLAY nothing_video_id");
+    parser.executeCommand("PAUSE");
+    outputStream.reset();
+
+    assertEquals("Reloaded catalog version 2: 4 videos, 0 flagged videos and 0 playlist videos carried over, "
+        + "stopped playing Video about nothing as it is not in the catalog",
+        videoPlayer.reloadCatalog(catalog.toFile()).get());
+    parser.executeCommand("SHOW_PLAYING");
+    parser.executeCommand("CONTINUE");
+    String[] lines = getOutputLines();
+    assertEquals("No video is currently playing", lines[0]);
+    assertEquals("Cannot continue video: No video is currently playing", lines[1]);
+  }
+
+  @Test
+  public void testSearchChoiceIsReadOutsideOfTheLibrary() {
+    VideoLibrary library = videoPlayer.getVideoLibrary();
+    //The user answers once a batch of videos is appended, which waits for the commands reading the library
+    System.setIn(new InputStream() {
+      private final InputStream answer = new ByteArrayInputStream("1\n".getBytes());
+      private boolean appended = false;
+
+      @Override
+      public int read() throws IOException {
+        if (!appended) {
+          appended = true;
+          var append = CompletableFuture.supplyAsync(
+              () -> library.append(List.of("Hiking | hiking_video_id | #outdoors")));
+          try {
+            assertEquals(1, append.get(10, TimeUnit.SECONDS));
+          } catch (Exception e) {
+            throw new AssertionError(e);
+          }
+        }
+        return answer.read();
+      }
+    });
+    new CommandParser(videoPlayer).executeCommand("SEARCH_VIDEOS_WITH_TAG #cat");
+    String[] lines = getOutputLines();
+    assertEquals("Playing video: Amazing Cats", lines[lines.length - 1]);
+  }
+
+  @Test
+  public void testReloadClosesThePreviousLibraryOnceItIsNotRead() throws Exception {
+    Path catalog = writeReloadedCatalog();
+    VideoLibrary first = videoPlayer.getVideoLibrary();
+    //The command reading the first version keeps it open until it ends
+    videoPlayer.runCommand(true, () -> {
+      try {
+        videoPlayer.reloadCatalog(catalog.toFile()).get(10, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+      assertFalse(first.isClosed());
+    });
+    assertTrue(first.isClosed());
+    VideoLibrary second = videoPlayer.getVideoLibrary();
+    videoPlayer.reloadCatalog(catalog.toFile()).get(10, TimeUnit.SECONDS);
+    assertTrue(second.isClosed());
+    assertFalse(videoPlayer.getVideoLibrary().isClosed());
+  }
+
+  private Path writeReloadedCatalog() throws IOException {
+    return Files.writeString(directory.resolve("catalog.txt"), RELOADED_CATALOG);
+  }
+}
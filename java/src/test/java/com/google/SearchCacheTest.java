@@ -0,0 +1,123 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SearchCacheTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testRepeatedSearchesHitTheCache() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #cat");
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #CAT");
+    parser.executeCommand("SEARCH_VIDEOS cat");
+    parser.executeCommand("SEARCH_VIDEOS cat");
+
+    var metrics = videoPlayer.getMetrics();
+    assertEquals(2, metrics.counter("search_cache_hits_total").sum());
+    assertEquals(2, metrics.counter("search_cache_misses_total").sum());
+  }
+
+  @Test
+  public void testFlagOnlyInvalidatesTheTagsOfTheVideo() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #cat");
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #dog");
+    parser.executeCommand("FLAG_VIDEO amazing_cats_video_id");
+    outputStream.reset();
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #dog");
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #cat");
+
+    var metrics = videoPlayer.getMetrics();
+    assertEquals(1, metrics.counter("search_cache_hits_total").sum());
+    assertEquals(3, metrics.counter("search_cache_misses_total").sum());
+    String[] lines = getOutputLines();
+    assertEquals("Here are the results for #cat:", lines[2]);
+    assertEquals("  1) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[3]);
+    assertEquals(4, lines.length);
+  }
+
+  @Test
+  public void testCacheIsBounded() {
+    var cache = new SearchCache(new VideoLibrary(), 2, 1 << 20);
+    List<Video> results = new ArrayList<>();
+    cache.putTitleSearch("a", results);
+    cache.putTitleSearch("b", results);
+    cache.getTitleSearch("a");
+    cache.putTitleSearch("c", results);
+
+    assertEquals(2, cache.size());
+    assertNotNull(cache.getTitleSearch("a"));
+    assertNull(cache.getTitleSearch("b"));
+
+    var smallCache = new SearchCache(new VideoLibrary(), 100, 200);
+    smallCache.putTitleSearch("a", results);
+    smallCache.putTitleSearch("b", results);
+    smallCache.putTitleSearch("c", results);
+    assertTrue(smallCache.size() < 3);
+  }
+
+  @Test
+  public void testCachedResultsAreIdenticalToUncachedResults() throws Exception {
+    Path catalog = GeneratedCatalog.write(directory, 2_000, 5);
+    var cachedPlayer = new VideoPlayer(new VideoLibrary(catalog.toFile()));
+    System.setProperty("youtube.searchCache.entries", "0");
+    VideoPlayer uncachedPlayer;
+    try {
+      uncachedPlayer = new VideoPlayer(new VideoLibrary(catalog.toFile()));
+    } finally {
+      System.clearProperty("youtube.searchCache.entries");
+    }
+    cachedPlayer.setInteractive(false);
+    uncachedPlayer.setInteractive(false);
+    var cachedParser = new CommandParser(cachedPlayer);
+    var uncachedParser = new CommandParser(uncachedPlayer);
+
+    //The search terms are the first words of some titles, in lower case as they are searched
+    var library = new VideoLibrary(catalog.toFile());
+    String[] searchTerms = new String[50];
+    for (int index = 0; index < searchTerms.length; index++) {
+      searchTerms[index] = library.getVideo(index).getTitle().split(" ")[0].toLowerCase();
+    }
+
+    var random = new Random(11);
+    for (int index = 0; index < 2_000; index++) {
+      String command;
+      switch (random.nextInt(4)) {
+        case 0:
+          command = "SEARCH_VIDEOS " + searchTerms[random.nextInt(searchTerms.length)];
+          break;
+        case 1:
+          String tag = CatalogGenerator.tagName(random.nextInt(20));
+          command = "SEARCH_VIDEOS_WITH_TAG " + (random.nextBoolean() ? tag : tag.toUpperCase());
+          break;
+        case 2:
+          command = "FLAG_VIDEO " + CatalogGenerator.videoId(random.nextInt(2_000));
+          break;
+        default:
+          command = "ALLOW_VIDEO " + CatalogGenerator.videoId(random.nextInt(2_000));
+      }
+      String expected = new String(CommandOutput.capture(() -> uncachedParser.executeCommand(command)),
+          StandardCharsets.UTF_8);
+      String actual = new String(CommandOutput.capture(() -> cachedParser.executeCommand(command)),
+          StandardCharsets.UTF_8);
+      assertEquals(expected, actual, command);
+    }
+    assertTrue(cachedPlayer.getMetrics().counter("search_cache_hits_total").sum() > 0);
+  }
+}
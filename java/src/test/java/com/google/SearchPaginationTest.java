@@ -0,0 +1,121 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SearchPaginationTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testSearchVideosWithLimit() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS a LIMIT 2");
+    String[] lines = getOutputLines();
+    assertEquals(4, lines.length);
+    assertEquals("Here are the results for a:", lines[0]);
+    assertEquals("  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[1]);
+    assertEquals("  2) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[2]);
+    assertTrue(lines[3].startsWith("Next page: SEARCH_VIDEOS a LIMIT 2 AFTER "));
+
+    outputStream.reset();
+    parser.executeCommand(lines[3].substring("Next page: ".length()));
+    lines = getOutputLines();
+    assertEquals(3, lines.length);
+    assertEquals("Here are the results for a:", lines[0]);
+    assertEquals("  1) Life at Google (life_at_google_video_id) [#google #career]", lines[1]);
+    assertEquals("  2) Video about nothing (nothing_video_id) []", lines[2]);
+  }
+
+  @Test
+  public void testSearchVideosWithLimitSkipsFlaggedVideos() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("FLAG_VIDEO amazing_cats_video_id");
+    outputStream.reset();
+    parser.executeCommand("SEARCH_VIDEOS cat LIMIT 5");
+    String[] lines = getOutputLines();
+    assertEquals(2, lines.length);
+    assertEquals("  1) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[1]);
+  }
+
+  @Test
+  public void testSearchVideosWithInvalidPage() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS cat LIMIT 0");
+    parser.executeCommand("SEARCH_VIDEOS cat FIRST 2");
+    parser.executeCommand("SEARCH_VIDEOS cat LIMIT 2 AFTER");
+    parser.executeCommand("SEARCH_VIDEOS cat LIMIT 2 AFTER *");
+    String[] lines = getOutputLines();
+    assertEquals(4, lines.length);
+    assertEquals("Please enter SEARCH_VIDEOS command followed by a search term, "
+        + "optionally followed by LIMIT <k> and AFTER <cursor>, or by FACETS <n>.", lines[0]);
+    assertEquals(lines[0], lines[1]);
+    assertEquals(lines[0], lines[2]);
+    assertEquals("Cannot search videos: Invalid cursor", lines[3]);
+  }
+
+  @Test
+  public void testPagesAreIdenticalToTheFullSearch() throws Exception {
+    var library = GeneratedCatalog.load(directory, 3_000, 11);
+    var player = new VideoPlayer(library);
+    player.setInteractive(false);
+    var parser = new CommandParser(player);
+    parser.executeCommand("FLAG_VIDEO " + library.getVideo(7).getVideoId());
+
+    for (boolean indexEnabled: new boolean[] {true, false}) {
+      library.getTitleIndex().setEnabled(indexEnabled);
+      for (String term: new String[] {"a", "e", "the"}) {
+        List<String> fullResults = results(parser, "SEARCH_VIDEOS " + term);
+        List<String> pagedResults = new ArrayList<>();
+        String command = "SEARCH_VIDEOS " + term + " LIMIT 37";
+        while (command != null) {
+          List<String> nextPage = output(parser, command, pagedResults);
+          command = nextPage.isEmpty() ? null : nextPage.get(0);
+        }
+        assertEquals(fullResults, pagedResults);
+      }
+    }
+  }
+
+  private static List<String> results(CommandParser parser, String command) {
+    List<String> results = new ArrayList<>();
+    output(parser, command, results);
+    return results;
+  }
+
+  /**
+   * Execute a search and add its numbered results to the given list, without their number.
+   * @return The command displaying the next page, or an empty list if this is the last page
+   */
+  private static List<String> output(CommandParser parser, String command, List<String> results) {
+    PrintStream out = System.out;
+    ByteArrayOutputStream commandOutput = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(commandOutput));
+    try {
+      parser.executeCommand(command);
+    } finally {
+      System.setOut(out);
+    }
+    List<String> nextPage = new ArrayList<>();
+    for (String line: commandOutput.toString().split("\\r?\\n")) {
+      if (line.startsWith("  ")) {
+        results.add(line.substring(line.indexOf(')') + 2));
+      } else if (line.startsWith("Next page: ")) {
+        nextPage.add(line.substring("Next page: ".length()));
+      }
+    }
+    return nextPage;
+  }
+}
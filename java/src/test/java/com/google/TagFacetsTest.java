@@ -0,0 +1,107 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TagFacetsTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testSearchVideosWithFacets() {
+    videoPlayer.setInteractive(false);
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS a FACETS 2");
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #ANIMAL facets 5");
+    parser.executeCommand("QUERY title:nothing FACETS 3");
+    String[] lines = getOutputLines();
+    assertEquals(19, lines.length);
+    assertEquals("Here are the results for a:", lines[0]);
+    assertEquals("  1) Amazing Cats (amazing_cats_video_id) [#cat #animal]", lines[1]);
+    assertEquals("  2) Another Cat Video (another_cat_video_id) [#cat #animal]", lines[2]);
+    assertEquals("  3) Life at Google (life_at_google_video_id) [#google #career]", lines[3]);
+    assertEquals("  4) Video about nothing (nothing_video_id) []", lines[4]);
+    //Tags with the same number of videos are sorted by name
+    assertEquals("Top tags:", lines[5]);
+    assertEquals("  #animal: 2", lines[6]);
+    assertEquals("  #cat: 2", lines[7]);
+    assertEquals("Here are the results for #ANIMAL:", lines[8]);
+    assertEquals("Top tags:", lines[12]);
+    assertEquals("  #animal: 3", lines[13]);
+    assertEquals("  #cat: 2", lines[14]);
+    assertEquals("  #dog: 1", lines[15]);
+    assertEquals("Here are the results for title:nothing:", lines[16]);
+    assertEquals("  1) Video about nothing (nothing_video_id) []", lines[17]);
+    assertEquals("Top tags: none", lines[18]);
+  }
+
+  @Test
+  public void testSearchVideosWithInvalidFacets() {
+    var parser = new CommandParser(videoPlayer);
+    parser.executeCommand("SEARCH_VIDEOS a FACETS 0");
+    parser.executeCommand("SEARCH_VIDEOS_WITH_TAG #cat FACETS many");
+    parser.executeCommand("QUERY tag:#cat FACETS 21");
+    String[] lines = getOutputLines();
+    assertEquals(3, lines.length);
+    assertEquals("Please enter SEARCH_VIDEOS command followed by a search term, "
+        + "optionally followed by LIMIT <k> and AFTER <cursor>, or by FACETS <n>.", lines[0]);
+    assertEquals("Please enter SEARCH_VIDEOS_WITH_TAG command followed by a video tag, "
+        + "optionally followed by FACETS <n>.", lines[1]);
+    assertEquals("Please enter QUERY command followed by predicates, "
+        + "e.g. title:cat tag:#animal -tag:#dog flagged:false, optionally followed by FACETS <n>.", lines[2]);
+  }
+
+  @Test
+  public void testFacetsAreIdenticalToCountingTheTagsOfEachVideo() throws Exception {
+    var library = GeneratedCatalog.load(directory, 5_000, 19);
+    var tagIndex = library.getTagIndex();
+    Random random = new Random(37);
+
+    for (int round = 0; round < 200; round++) {
+      //The result sets go from a few videos to almost all of them
+      double density = Math.pow(random.nextDouble(), 3);
+      List<Integer> results = new ArrayList<>();
+      for (int ordinal = 0; ordinal < library.size(); ordinal++) {
+        if (random.nextDouble() < density) {
+          results.add(ordinal);
+        }
+      }
+      int[] ordinals = results.stream().mapToInt(Integer::intValue).toArray();
+      int limit = 1 + random.nextInt(20);
+
+      List<String> expected = describe(library, tagIndex.countTagsByScanning(ordinals, limit));
+      assertEquals(expected, describe(library, tagIndex.countTagsByIntersecting(ordinals, limit)), "Round " + round);
+      assertEquals(expected, describe(library, tagIndex.countTags(ordinals, limit)), "Round " + round);
+    }
+  }
+
+  @Test
+  public void testSmallResultSetsAreCountedByScanning() throws Exception {
+    var library = GeneratedCatalog.load(directory, 50_000, 19);
+    var tagIndex = library.getTagIndex();
+    int tags = library.getTagDictionary().size();
+
+    //A result set with less videos than tags is counted by scanning, a larger one with the index
+    assertTrue(tagIndex.isCountedByScanning(tags - 1));
+    assertFalse(tagIndex.isCountedByScanning(Math.max(tags, library.size() / 256)));
+    tagIndex.setEnabled(false);
+    assertTrue(tagIndex.isCountedByScanning(library.size()));
+  }
+
+  private static List<String> describe(VideoLibrary library, List<TagIndex.Facet> facets) {
+    List<String> tags = new ArrayList<>();
+    for (TagIndex.Facet facet: facets) {
+      tags.add(library.getTagDictionary().getFoldedTag(facet.foldedTagId) + ": " + facet.count);
+    }
+    return tags;
+  }
+}
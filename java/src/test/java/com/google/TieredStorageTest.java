@@ -0,0 +1,123 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TieredStorageTest {
+
+  private static final List<String> STORAGE_PROPERTIES = List.of("youtube.storage.dir", "youtube.cache.videos");
+
+  @TempDir
+  Path directory;
+
+  private VideoStore store;
+  private final Map<String, String> previousProperties = new HashMap<>();
+
+  @BeforeEach
+  public void setUp() {
+    store = new VideoStore(new TagDictionary());
+    for (int ordinal = 0; ordinal < 100; ordinal++) {
+      store.add("Video " + ordinal, "video_" + ordinal, new int[0]);
+    }
+    for (String property: STORAGE_PROPERTIES) {
+      previousProperties.put(property, System.getProperty(property));
+    }
+  }
+
+  @AfterEach
+  public void restoreProperties() {
+    //The storage properties are read by every library created afterwards, in this test or the next ones
+    previousProperties.forEach((property, value) -> {
+      if (value == null) {
+        System.clearProperty(property);
+      } else {
+        System.setProperty(property, value);
+      }
+    });
+  }
+
+  @Test
+  public void testCacheReturnsDecodedVideos() {
+    var cache = new VideoCache(store, 10);
+    var metrics = new Metrics();
+    cache.setMetrics(metrics);
+
+    var video = cache.get(42);
+    assertEquals("Video 42", video.getTitle());
+    assertEquals("video_42", video.getVideoId());
+    assertSame(video, cache.get(42));
+    assertEquals(1, metrics.counter("video_cache_hits_total").sum());
+    assertEquals(1, metrics.counter("video_cache_misses_total").sum());
+    assertEquals(1, metrics.histogram("video_cache_miss_latency").getCount());
+  }
+
+  @Test
+  public void testCacheIsBoundedAndResistsScans() {
+    var cache = new VideoCache(store, 10);
+    var hotVideo = cache.get(0);
+    cache.get(0);
+
+    //A scan through all the videos only goes through the probation segment
+    for (int ordinal = 1; ordinal < 100; ordinal++) {
+      cache.get(ordinal);
+    }
+
+    assertTrue(cache.size() <= 10);
+    assertSame(hotVideo, cache.get(0));
+  }
+
+  @Test
+  public void testMappedArena() throws Exception {
+    try (var arena = new MappedByteArena(directory, "test")) {
+      long[] addresses = new long[10_000];
+      for (int index = 0; index < addresses.length; index++) {
+        addresses[index] = arena.append("entry " + index);
+      }
+
+      for (int index = 0; index < addresses.length; index++) {
+        assertEquals("entry " + index, arena.getString(addresses[index]));
+      }
+      assertTrue(arena.getAllocatedBytes() >= arena.getUsedBytes());
+    }
+  }
+
+  @Test
+  public void testClosedMappedArenaReleasesItsFile() throws Exception {
+    var arena = new MappedByteArena(directory, "test");
+    arena.close();
+    //The file is closed, no chunk can be mapped anymore
+    assertThrows(UncheckedIOException.class, () -> arena.append("entry"));
+  }
+
+  @Test
+  public void testLibraryWithTieredStorage() throws Exception {
+    System.setProperty("youtube.storage.dir", directory.toString());
+    System.setProperty("youtube.cache.videos", "2");
+    try (var videoLibrary = new VideoLibrary()) {
+      var metrics = new Metrics();
+      videoLibrary.setMetrics(metrics);
+
+      assertEquals("Amazing Cats", videoLibrary.getVideo("amazing_cats_video_id").getTitle());
+      assertEquals("Amazing Cats", videoLibrary.getVideo("amazing_cats_video_id").getTitle());
+      assertNull(videoLibrary.getVideo("unknown_video_id"));
+      assertEquals(1, metrics.counter("video_cache_hits_total").sum());
+
+      var report = new MemoryReport();
+      videoLibrary.estimateMemory(report);
+      assertTrue(report.getSize("Video cache") > 0);
+    }
+  }
+}
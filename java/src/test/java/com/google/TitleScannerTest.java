@@ -0,0 +1,73 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TitleScannerTest extends TestBase {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testSearchVideosWithoutFoldedTitles() {
+    var library = new VideoLibrary();
+    var player = new VideoPlayer(library);
+    player.setInteractive(false);
+    var parser = new CommandParser(player);
+    parser.executeCommand("SEARCH_VIDEOS cat");
+    parser.executeCommand("SEARCH_VIDEOS vid LIMIT 1");
+    String expected = outputStream.toString();
+    outputStream.reset();
+    //Without the folded titles nor the title order, the titles are decoded and lower cased
+    library.getTitleScanner().setEnabled(false);
+    library.getTitleIndex().setEnabled(false);
+    parser.executeCommand("SEARCH_VIDEOS cat");
+    parser.executeCommand("SEARCH_VIDEOS vid LIMIT 1");
+    assertEquals(expected, outputStream.toString());
+    assertEquals(6, getOutputLines().length);
+  }
+
+  @Test
+  public void testScanIsIdenticalToScanningTheTitles() throws Exception {
+    Path catalog = GeneratedCatalog.write(directory, 3_000, 11);
+    try (BufferedWriter writer = Files.newBufferedWriter(catalog, StandardCharsets.UTF_8,
+        StandardOpenOption.APPEND)) {
+      //Lower casing these titles changes their length, in chars or in bytes
+      writer.write("Caf\u00E9 au Lait | cafe_video_id | #drink\n");
+      writer.write("STRASSE or Stra\u00DFe | strasse_video_id |\n");
+      writer.write("\u0130stanbul by Night | istanbul_video_id |\n");
+      writer.write("\u03A3\u038A\u03A3\u03A5\u03A6\u039F\u03A3 Rolls a Stone | sisyphus_video_id |\n");
+      writer.write("Party \uD83D\uDE00 Time \uD83D\uDE00 | party_video_id |\n");
+    }
+    var library = new VideoLibrary(catalog.toFile());
+    var scanner = library.getTitleScanner();
+    Random random = new Random(23);
+
+    String[] terms = {"", "a", "\u00E9", "caf", "caf\u00E9", "stra\u00DFe", "ss", "i\u0307", "\u03C3", "\u03C2",
+        "\uD83D\uDE00", "\uD83D", "\uDE00 time", "\u03C1oll", "CAT", "zzzzzzzzzzzzzzzzzzzz"};
+    for (String term: terms) {
+      assertArrayEquals(scanner.scanStrings(term), scanner.scan(term), term);
+    }
+    for (int query = 0; query < 500; query++) {
+      //We search the substrings of the titles, across word boundaries, sometimes with a changed letter
+      String title = library.getVideo(random.nextInt(library.size())).getTitle().toLowerCase();
+      int start = random.nextInt(title.length());
+      int end = Math.min(title.length(), start + 1 + random.nextInt(12));
+      char[] term = title.substring(start, end).toCharArray();
+      if (random.nextInt(4) == 0) {
+        term[random.nextInt(term.length)] = (char) ('a' + random.nextInt(26));
+      }
+      String searchTerm = new String(term);
+      assertArrayEquals(scanner.scanStrings(searchTerm), scanner.scan(searchTerm), searchTerm);
+    }
+  }
+}
@@ -1,16 +1,24 @@
 package com.google;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class VideoLibraryTest {
 
+  @TempDir
+  Path directory;
+
   private VideoLibrary videoLibrary;
 
   @BeforeEach
@@ -42,4 +50,56 @@ public class VideoLibraryTest {
     assertEquals("nothing_video_id", video.getVideoId());
     assertTrue(video.getTags().isEmpty());
   }
+
+  @Test
+  public void testLibraryInternsTags() {
+    var dictionary = videoLibrary.getTagDictionary();
+
+    assertEquals(5, dictionary.size());
+    assertSame(videoLibrary.getVideo("amazing_cats_video_id").getTags().get(1),
+        videoLibrary.getVideo("funny_dogs_video_id").getTags().get(1));
+    int animal = dictionary.findFoldedId("#ANIMAL");
+    assertTrue(videoLibrary.getVideo("another_cat_video_id").hasTag(animal));
+    assertFalse(videoLibrary.getVideo("life_at_google_video_id").hasTag(animal));
+    assertEquals(TagDictionary.UNKNOWN, dictionary.findFoldedId("#unknown"));
+  }
+
+  @Test
+  public void testLibraryFindsEveryVideoOfLargeCatalog() throws Exception {
+    var library = GeneratedCatalog.load(directory, 50_000, 7);
+
+    for (int ordinal = 0; ordinal < library.size(); ordinal++) {
+      String videoId = CatalogGenerator.videoId(ordinal);
+      assertEquals(videoId, library.getVideo(videoId).getVideoId());
+      assertEquals(ordinal, library.getVideo(videoId).getOrdinal());
+    }
+    for (int ordinal = library.size(); ordinal < 2 * library.size(); ordinal++) {
+      assertNull(library.getVideo(CatalogGenerator.videoId(ordinal)));
+    }
+    assertNull(library.getVideo(""));
+  }
+
+  @Test
+  public void testPerfectHashIndexOfEmptyStore() {
+    var index = PerfectHashIndex.build(new VideoStore(new TagDictionary()), 0);
+
+    assertNotNull(index);
+    assertEquals(-1, index.find("amazing_cats_video_id"));
+  }
+
+  @Test
+  public void testPerfectHashIndexFindsEveryVideo() {
+    //The slots of 3000 videos take 20 bits, so some of them span two packed words
+    var store = new VideoStore(new TagDictionary());
+    for (int ordinal = 0; ordinal < 3_000; ordinal++) {
+      store.add("Video " + ordinal, CatalogGenerator.videoId(ordinal), new int[0]);
+    }
+    var index = PerfectHashIndex.build(store, store.size());
+
+    assertNotNull(index);
+    for (int ordinal = 0; ordinal < 3_000; ordinal++) {
+      assertEquals(ordinal, index.find(CatalogGenerator.videoId(ordinal)));
+    }
+    assertEquals(-1, index.find(CatalogGenerator.videoId(3_000)));
+  }
 }